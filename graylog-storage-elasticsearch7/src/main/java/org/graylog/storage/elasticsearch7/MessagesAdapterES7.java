@@ -133,7 +133,10 @@ public class MessagesAdapterES7 implements MessagesAdapter {
             }
             throw new org.graylog2.indexer.ElasticsearchException(e);
         }
-        return new ChunkedBulkIndexer.BulkIndexResult(indexingResultsFrom(result, chunk), result::buildFailureMessage, result.getItems().length);
+        final int rejectedMessages = (int) Arrays.stream(result.getItems())
+                .filter(item -> item.isFailed() && item.status() == RestStatus.TOO_MANY_REQUESTS)
+                .count();
+        return new ChunkedBulkIndexer.BulkIndexResult(indexingResultsFrom(result, chunk), result::buildFailureMessage, result.getItems().length, rejectedMessages);
     }
 
     private ChunkedBulkIndexer.CircuitBreakerException.Durability durabilityFrom(ElasticsearchException elasticsearchException) {
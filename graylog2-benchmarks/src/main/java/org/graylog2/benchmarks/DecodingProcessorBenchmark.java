@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.benchmarks;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.eventbus.EventBus;
+import com.google.common.net.InetAddresses;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.graylog.failure.FailureSubmissionService;
+import org.graylog2.audit.NullAuditEventSender;
+import org.graylog2.inputs.codecs.GelfChunkAggregator;
+import org.graylog2.inputs.codecs.GelfCodec;
+import org.graylog2.inputs.codecs.SyslogCodec;
+import org.graylog2.inputs.codecs.gelf.GELFBulkDroppedMsgService;
+import org.graylog2.inputs.diagnosis.InputDiagnosisMetrics;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.ServerStatus;
+import org.graylog2.plugin.buffers.MessageEvent;
+import org.graylog2.plugin.configuration.Configuration;
+import org.graylog2.plugin.inputs.codecs.Codec;
+import org.graylog2.plugin.journal.RawMessage;
+import org.graylog2.plugin.system.SimpleNodeId;
+import org.graylog2.shared.bindings.providers.ObjectMapperProvider;
+import org.graylog2.shared.buffers.processors.DecodingProcessor;
+import org.graylog2.shared.messageq.noop.NoopMessageQueueAcknowledger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Function;
+
+/**
+ * Measures decoding raw GELF and syslog messages, once with the bare codec and once through the
+ * {@link DecodingProcessor} which also does the post-processing of decoded messages.
+ */
+@State(Scope.Benchmark)
+public class DecodingProcessorBenchmark extends BenchmarkBase {
+    private static final String INPUT_ID = "5a1f0e0c0000000000000001";
+
+    @Param({"gelf", "syslog"})
+    public String codecName;
+
+    @Param({"10"})
+    public int extraFields;
+
+    private List<RawMessage> rawMessages;
+    private ScheduledExecutorService scheduler;
+    private Codec codec;
+    private DecodingProcessor decodingProcessor;
+    private MessageEvent messageEvent;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final MetricRegistry metricRegistry = new MetricRegistry();
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("decoding-benchmark-%d")
+                .setDaemon(true)
+                .build());
+        final InputDiagnosisMetrics inputDiagnosisMetrics = new InputDiagnosisMetrics(metricRegistry);
+        final GelfChunkAggregator gelfChunkAggregator = new GelfChunkAggregator(scheduler, metricRegistry);
+        final GELFBulkDroppedMsgService gelfBulkDroppedMsgService = new GELFBulkDroppedMsgService(inputDiagnosisMetrics);
+
+        final Map<String, Codec.Factory<? extends Codec>> codecFactories = ImmutableMap.of(
+                "gelf", new CodecFactory<>(config -> new GelfCodec(config, gelfChunkAggregator, SyntheticMessages.MESSAGE_FACTORY, gelfBulkDroppedMsgService)),
+                "syslog", new CodecFactory<>(config -> new SyslogCodec(config, metricRegistry, SyntheticMessages.MESSAGE_FACTORY)));
+        final Configuration codecConfig = new Configuration(ImmutableMap.of());
+        codec = codecFactories.get(codecName).create(codecConfig);
+
+        final List<byte[]> payloads = switch (codecName) {
+            case "gelf" -> SyntheticMessages.gelfPayloads(corpusSize, extraFields, seed);
+            case "syslog" -> SyntheticMessages.syslogPayloads(corpusSize, seed);
+            default -> throw new IllegalArgumentException("Unknown codec: " + codecName);
+        };
+        final SimpleNodeId nodeId = new SimpleNodeId("5ca1ab1e-0000-4000-a000-000000000001");
+        final InetSocketAddress remoteAddress = new InetSocketAddress(InetAddresses.forString("192.0.2.1"), 12201);
+        rawMessages = new ArrayList<>(payloads.size());
+        for (byte[] payload : payloads) {
+            final RawMessage rawMessage = new RawMessage(payload, remoteAddress);
+            rawMessage.setCodecName(codecName);
+            rawMessage.setCodecConfig(codecConfig);
+            rawMessage.addSourceNode(INPUT_ID, nodeId);
+            rawMessages.add(rawMessage);
+        }
+
+        final ServerStatus serverStatus = new ServerStatus(new org.graylog2.Configuration(),
+                EnumSet.of(ServerStatus.Capability.SERVER), new EventBus("decoding-benchmark"), NullAuditEventSender::new, nodeId);
+        // Only used for messages that fail to decode, which the synthetic corpus doesn't contain
+        final FailureSubmissionService failureSubmissionService = new FailureSubmissionService(null, null,
+                inputDiagnosisMetrics, new ObjectMapperProvider());
+        decodingProcessor = new DecodingProcessor(codecFactories, serverStatus, metricRegistry, new NoopMessageQueueAcknowledger(),
+                failureSubmissionService, metricRegistry.timer("decodeTime"), metricRegistry.timer("parseTime"));
+        messageEvent = new MessageEvent();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Benchmark
+    public Optional<Message> decode(Cursor cursor) {
+        return codec.decodeSafe(cursor.next(rawMessages));
+    }
+
+    @Benchmark
+    public Message process(Cursor cursor) throws Exception {
+        messageEvent.setRaw(cursor.next(rawMessages));
+        decodingProcessor.onEvent(messageEvent, 0L, true);
+        return messageEvent.getMessage();
+    }
+
+    private record CodecFactory<C extends Codec>(Function<Configuration, C> factory) implements Codec.Factory<C> {
+        @Override
+        public C create(Configuration configuration) {
+            return factory.apply(configuration);
+        }
+
+        @Override
+        public Codec.Config getConfig() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Codec.Descriptor getDescriptor() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.benchmarks;
+
+import com.codahale.metrics.MetricRegistry;
+import com.github.joschi.jadconfig.util.Size;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.eventbus.EventBus;
+import com.google.common.io.MoreFiles;
+import com.google.common.io.RecursiveDeleteOption;
+import com.google.common.net.InetAddresses;
+import com.google.common.util.concurrent.Service;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.graylog2.audit.NullAuditEventSender;
+import org.graylog2.plugin.ServerStatus;
+import org.graylog2.plugin.configuration.Configuration;
+import org.graylog2.plugin.journal.RawMessage;
+import org.graylog2.plugin.system.SimpleNodeId;
+import org.graylog2.shared.journal.Journal;
+import org.graylog2.shared.journal.JournalCompression;
+import org.graylog2.shared.journal.JournalFsyncPolicy;
+import org.graylog2.shared.journal.LocalKafkaJournal;
+import org.graylog2.shared.journal.MappedSegmentJournal;
+import org.graylog2.shared.journal.SegmentedJournal;
+import org.joda.time.Duration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Compares the Kafka based journal with the memory-mapped journal. Both benchmarks write batches of encoded GELF
+ * messages, {@code writeAndRead} also reads and decodes them again like the journal reader does. Committed segments
+ * are cleaned up regularly to keep the journal small. Scores are messages per second.
+ */
+@State(Scope.Benchmark)
+public class JournalBenchmark extends BenchmarkBase {
+    private static final int BATCH_SIZE = 100;
+    private static final int RETENTION_INTERVAL_BATCHES = 1024;
+
+    @Param({"kafka", "mapped"})
+    public String journalType;
+
+    @Param({"interval"})
+    public String fsyncPolicy;
+
+    // Only used by the Kafka based journal, e.g. "-p compression=snappy"
+    @Param({"none"})
+    public String compression;
+
+    private Path journalDirectory;
+    private ScheduledExecutorService scheduler;
+    private SegmentedJournal journal;
+    private List<List<Journal.Entry>> batches;
+    private long writtenBatches;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        journalDirectory = Files.createTempDirectory(Path.of(System.getProperty("java.io.tmpdir")), "journal-benchmark");
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("journal-benchmark-%d")
+                .setDaemon(true)
+                .build());
+        final SimpleNodeId nodeId = new SimpleNodeId("5ca1ab1e-0000-4000-a000-000000000001");
+        final ServerStatus serverStatus = new ServerStatus(new org.graylog2.Configuration(),
+                EnumSet.of(ServerStatus.Capability.SERVER), new EventBus("journal-benchmark"), NullAuditEventSender::new, nodeId);
+
+        final Size segmentSize = Size.megabytes(64L);
+        final Size retentionSize = Size.gigabytes(1L);
+        final Duration age = Duration.standardHours(1L);
+        journal = switch (journalType) {
+            case "kafka" -> new LocalKafkaJournal(journalDirectory, scheduler, segmentSize, age, retentionSize, age,
+                    1_000_000, Duration.standardMinutes(1L), SegmentedJournal.THRESHOLD_THROTTLING_DISABLED,
+                    new JournalCompression.Converter().convertFrom(compression), new MetricRegistry(), serverStatus);
+            case "mapped" -> new MappedSegmentJournal(journalDirectory, scheduler, segmentSize, age, retentionSize, age,
+                    1_000_000, Duration.standardMinutes(1L), new JournalFsyncPolicy.Converter().convertFrom(fsyncPolicy),
+                    SegmentedJournal.THRESHOLD_THROTTLING_DISABLED, new MetricRegistry(), serverStatus);
+            default -> throw new IllegalArgumentException("Unknown journal type: " + journalType);
+        };
+        ((Service) journal).startAsync().awaitRunning();
+
+        final InetSocketAddress remoteAddress = new InetSocketAddress(InetAddresses.forString("192.0.2.1"), 12201);
+        final List<byte[]> payloads = SyntheticMessages.gelfPayloads(corpusSize, 10, seed);
+        final Configuration codecConfig = new Configuration(ImmutableMap.of());
+        batches = new ArrayList<>();
+        List<Journal.Entry> batch = new ArrayList<>(BATCH_SIZE);
+        for (byte[] payload : payloads) {
+            final RawMessage rawMessage = new RawMessage(payload, remoteAddress);
+            rawMessage.setCodecName("gelf");
+            rawMessage.setCodecConfig(codecConfig);
+            batch.add(journal.createEntry(rawMessage.getIdBytes(), rawMessage.encode()));
+            if (batch.size() == BATCH_SIZE) {
+                batches.add(batch);
+                batch = new ArrayList<>(BATCH_SIZE);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        ((Service) journal).stopAsync().awaitTerminated();
+        scheduler.shutdownNow();
+        MoreFiles.deleteRecursively(journalDirectory, RecursiveDeleteOption.ALLOW_INSECURE);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public long write(Cursor cursor) {
+        final long lastOffset = journal.write(cursor.next(batches));
+        journal.markJournalOffsetCommitted(lastOffset);
+        maybeRunRetention();
+        return lastOffset;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void writeAndRead(Cursor cursor, Blackhole blackhole) {
+        journal.write(cursor.next(batches));
+        long lastOffset = -1L;
+        for (Journal.JournalReadEntry entry : journal.read(BATCH_SIZE)) {
+            blackhole.consume(RawMessage.decode(entry.getPayloadBuffer(), entry.getOffset(), null));
+            lastOffset = entry.getOffset();
+        }
+        journal.markJournalOffsetCommitted(lastOffset);
+        maybeRunRetention();
+    }
+
+    private void maybeRunRetention() {
+        if (++writtenBatches % RETENTION_INTERVAL_BATCHES == 0) {
+            journal.runRetention();
+        }
+    }
+}
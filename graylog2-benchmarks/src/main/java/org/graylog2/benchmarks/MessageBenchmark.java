@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.benchmarks;
+
+import com.codahale.metrics.Meter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.graylog2.indexer.messages.SerializationContext;
+import org.graylog2.plugin.Message;
+import org.graylog2.shared.bindings.providers.ObjectMapperProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Measures creating messages, adding fields and serializing messages for indexing. Run with {@code -prof gc} to see
+ * the allocation rate per message.
+ */
+@State(Scope.Benchmark)
+public class MessageBenchmark extends BenchmarkBase {
+    @Param({"10", "50"})
+    public int extraFields;
+
+    private List<Map<String, Object>> corpus;
+    private List<Message> messages;
+    private ObjectMapper objectMapper;
+    private Meter invalidTimestampMeter;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        corpus = SyntheticMessages.fields(corpusSize, extraFields, seed);
+        messages = SyntheticMessages.messages(corpusSize, extraFields, seed);
+        objectMapper = new ObjectMapperProvider().get();
+        invalidTimestampMeter = new Meter();
+    }
+
+    @Benchmark
+    public Message createMessage(Cursor cursor) {
+        return SyntheticMessages.MESSAGE_FACTORY.createMessage(new LinkedHashMap<>(cursor.next(corpus)));
+    }
+
+    @Benchmark
+    public Message addFields(Cursor cursor) {
+        final Map<String, Object> fields = cursor.next(corpus);
+        final Message message = SyntheticMessages.MESSAGE_FACTORY.createMessage(
+                (String) fields.get(Message.FIELD_MESSAGE), (String) fields.get(Message.FIELD_SOURCE), SyntheticMessages.BASE_TIMESTAMP);
+        message.addFields(fields);
+        return message;
+    }
+
+    @Benchmark
+    public void getFields(Cursor cursor, Blackhole blackhole) {
+        final Message message = cursor.next(messages);
+        for (String fieldName : message.getFieldNames()) {
+            blackhole.consume(message.getField(fieldName));
+        }
+    }
+
+    @Benchmark
+    public Map<String, Object> toElasticSearchObject(Cursor cursor) {
+        return cursor.next(messages).toElasticSearchObject(objectMapper, invalidTimestampMeter);
+    }
+
+    @Benchmark
+    public byte[] serializeViaElasticSearchObject(Cursor cursor) throws IOException {
+        return objectMapper.writeValueAsBytes(cursor.next(messages).toElasticSearchObject(objectMapper, invalidTimestampMeter));
+    }
+
+    @Benchmark
+    public byte[] serialize(Cursor cursor) throws IOException {
+        return cursor.next(messages).serialize(SerializationContext.of(objectMapper, invalidTimestampMeter));
+    }
+
+    @Benchmark
+    public void getWellKnownFields(Cursor cursor, Blackhole blackhole) {
+        final Message message = cursor.next(messages);
+        blackhole.consume(message.getField(Message.FIELD_MESSAGE));
+        blackhole.consume(message.getField(Message.FIELD_SOURCE));
+        blackhole.consume(message.getField(Message.FIELD_TIMESTAMP));
+        blackhole.consume(message.getField(Message.FIELD_GL2_SOURCE_INPUT));
+        blackhole.consume(message.getField(Message.FIELD_STREAMS));
+    }
+}
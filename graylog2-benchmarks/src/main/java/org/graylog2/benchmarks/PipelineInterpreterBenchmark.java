@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.benchmarks;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.eventbus.EventBus;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.graylog.plugins.pipelineprocessor.db.PipelineDao;
+import org.graylog.plugins.pipelineprocessor.db.RuleDao;
+import org.graylog.plugins.pipelineprocessor.db.RuleMetricsConfigDto;
+import org.graylog.plugins.pipelineprocessor.db.RuleMetricsConfigService;
+import org.graylog.plugins.pipelineprocessor.db.memory.InMemoryPipelineService;
+import org.graylog.plugins.pipelineprocessor.db.memory.InMemoryPipelineStreamConnectionsService;
+import org.graylog.plugins.pipelineprocessor.db.memory.InMemoryRuleService;
+import org.graylog.plugins.pipelineprocessor.parser.FunctionRegistry;
+import org.graylog.plugins.pipelineprocessor.parser.PipelineRuleParser;
+import org.graylog.plugins.pipelineprocessor.processors.ConfigurationStateUpdater;
+import org.graylog.plugins.pipelineprocessor.processors.PipelineInterpreter;
+import org.graylog.plugins.pipelineprocessor.processors.PipelineResolver;
+import org.graylog.plugins.pipelineprocessor.rest.PipelineConnections;
+import org.graylog2.events.ClusterEventBus;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.Messages;
+import org.graylog2.plugin.streams.Stream;
+import org.graylog2.shared.messageq.noop.NoopMessageQueueAcknowledger;
+import org.graylog2.streams.StreamImpl;
+import org.graylog2.streams.StreamMock;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Measures running messages through a single pipeline connected to the default stream.
+ */
+@State(Scope.Benchmark)
+public class PipelineInterpreterBenchmark extends BenchmarkBase {
+    @Param({"10", "100"})
+    public int ruleCount;
+
+    @Param({"1", "5"})
+    public int stageCount;
+
+    @Param({"20"})
+    public int extraFields;
+
+    private List<Message> messages;
+    private ScheduledExecutorService scheduler;
+    private PipelineInterpreter interpreter;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final Stream defaultStream = new StreamMock(ImmutableMap.of(
+                "_id", Stream.DEFAULT_STREAM_ID,
+                StreamImpl.FIELD_TITLE, "Default Stream",
+                StreamImpl.FIELD_DEFAULT_STREAM, true));
+        messages = SyntheticMessages.messages(corpusSize, extraFields, seed);
+        messages.forEach(message -> message.addStream(defaultStream));
+
+        final ClusterEventBus clusterEventBus = new ClusterEventBus("pipeline-benchmark", MoreExecutors.directExecutor());
+        final InMemoryRuleService ruleService = new InMemoryRuleService(clusterEventBus);
+        for (RuleDao rule : SyntheticPipelines.rules(ruleCount, extraFields, seed)) {
+            ruleService.save(rule);
+        }
+        final InMemoryPipelineService pipelineService = new InMemoryPipelineService(clusterEventBus);
+        final PipelineDao pipeline = pipelineService.save(SyntheticPipelines.pipeline(ruleCount, stageCount));
+        final InMemoryPipelineStreamConnectionsService connectionsService = new InMemoryPipelineStreamConnectionsService(clusterEventBus);
+        connectionsService.save(PipelineConnections.create(null, Stream.DEFAULT_STREAM_ID, Set.of(pipeline.id())));
+
+        final FunctionRegistry functionRegistry = new FunctionRegistry(SyntheticPipelines.functions());
+        final MetricRegistry metricRegistry = new MetricRegistry();
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("pipeline-benchmark-%d")
+                .setDaemon(true)
+                .build());
+        final ConfigurationStateUpdater stateUpdater = new ConfigurationStateUpdater(ruleService,
+                pipelineService,
+                connectionsService,
+                new PipelineRuleParser(functionRegistry),
+                (config, ruleParser) -> new PipelineResolver(ruleParser, config),
+                new DefaultRuleMetricsConfigService(),
+                metricRegistry,
+                scheduler,
+                new EventBus("pipeline-benchmark"),
+                (currentPipelines, streamPipelineConnections, ruleMetricsConfig) ->
+                        new PipelineInterpreter.State(currentPipelines, streamPipelineConnections, ruleMetricsConfig, metricRegistry, 1, true));
+        interpreter = new PipelineInterpreter(new NoopMessageQueueAcknowledger(), metricRegistry, stateUpdater);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Benchmark
+    public Messages process(Cursor cursor) {
+        return interpreter.process(cursor.next(messages));
+    }
+
+    /**
+     * Always returns the default rule metrics configuration instead of reading it from the cluster config.
+     */
+    private static class DefaultRuleMetricsConfigService extends RuleMetricsConfigService {
+        DefaultRuleMetricsConfigService() {
+            super(null, null);
+        }
+
+        @Override
+        public RuleMetricsConfigDto get() {
+            return RuleMetricsConfigDto.createDefault();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.benchmarks;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.graylog2.Configuration;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.streams.Stream;
+import org.graylog2.streams.IndexedStreamRouterEngine;
+import org.graylog2.streams.StreamFaultManager;
+import org.graylog2.streams.StreamImpl;
+import org.graylog2.streams.StreamMetrics;
+import org.graylog2.streams.StreamMock;
+import org.graylog2.streams.StreamRouterEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Measures routing messages into streams with the regular and the indexed {@link StreamRouterEngine}.
+ */
+@State(Scope.Benchmark)
+public class StreamRouterEngineBenchmark extends BenchmarkBase {
+    @Param({"10", "100", "1000"})
+    public int streamCount;
+
+    @Param({"3"})
+    public int rulesPerStream;
+
+    @Param({"20"})
+    public int extraFields;
+
+    @Param({"default", "indexed"})
+    public String engineType;
+
+    private List<Message> messages;
+    private ExecutorService executorService;
+    private StreamRouterEngine engine;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        messages = SyntheticMessages.messages(corpusSize, extraFields, seed);
+        executorService = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+                .setNameFormat("stream-router-benchmark-%d")
+                .setDaemon(true)
+                .build());
+
+        final List<Stream> streams = SyntheticStreams.streams(streamCount, rulesPerStream, extraFields, seed);
+        final Stream defaultStream = new StreamMock(ImmutableMap.of(
+                "_id", Stream.DEFAULT_STREAM_ID,
+                StreamImpl.FIELD_TITLE, "Default Stream",
+                StreamImpl.FIELD_DEFAULT_STREAM, true));
+        final MetricRegistry metricRegistry = new MetricRegistry();
+        final StreamMetrics streamMetrics = new StreamMetrics(metricRegistry);
+        final StreamFaultManager streamFaultManager = new StreamFaultManager(new Configuration(), streamMetrics, null, null);
+
+        engine = switch (engineType) {
+            case "default" -> new StreamRouterEngine(streams, executorService, streamFaultManager, streamMetrics,
+                    () -> defaultStream, metricRegistry);
+            case "indexed" -> new IndexedStreamRouterEngine(streams, executorService, streamFaultManager, streamMetrics,
+                    () -> defaultStream, metricRegistry);
+            default -> throw new IllegalArgumentException("Unknown engine type: " + engineType);
+        };
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    @Benchmark
+    public List<Stream> match(Cursor cursor) {
+        return engine.match(cursor.next(messages));
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.benchmarks;
+
+import com.google.common.collect.ImmutableList;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.MessageFactory;
+import org.graylog2.plugin.TestMessageFactory;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Generates reproducible message corpora for the benchmarks. The same seed always yields the same messages, so
+ * results of different builds are comparable.
+ * <p>
+ * Every message contains a fixed set of well-known fields (see the {@code FIELD_*} constants) which the synthetic
+ * stream rules and pipeline rules match on, plus a configurable number of additional {@code extra_<n>} fields.
+ */
+public final class SyntheticMessages {
+    public static final long DEFAULT_SEED = 0x6772_6179_6c6f_67L;
+    public static final MessageFactory MESSAGE_FACTORY = new TestMessageFactory();
+
+    public static final String FIELD_HTTP_METHOD = "http_method";
+    public static final String FIELD_HTTP_STATUS = "http_response_code";
+    public static final String FIELD_USER = "user_name";
+    public static final String FIELD_LEVEL = "level";
+    public static final String FIELD_FACILITY = "facility";
+    public static final String EXTRA_FIELD_PREFIX = "extra_";
+
+    static final List<String> HTTP_METHODS = ImmutableList.of("GET", "POST", "PUT", "DELETE", "HEAD");
+    static final List<Integer> HTTP_STATUSES = ImmutableList.of(200, 201, 204, 301, 302, 400, 401, 403, 404, 500, 503);
+    static final List<String> FACILITIES = ImmutableList.of("kernel", "user-level", "mail", "daemon", "auth", "local0");
+    static final List<String> WORDS = ImmutableList.of(
+            "connection", "accepted", "refused", "timeout", "request", "response", "user", "login", "logout",
+            "failed", "succeeded", "session", "opened", "closed", "error", "warning", "disk", "memory", "cpu",
+            "cache", "miss", "hit", "upstream", "backend", "proxy", "query", "slow", "retry", "shutdown", "started");
+
+    static final DateTime BASE_TIMESTAMP = new DateTime(2024, 1, 1, 0, 0, DateTimeZone.UTC);
+
+    private SyntheticMessages() {
+    }
+
+    /**
+     * Returns the field maps of {@code count} messages, each with {@code extraFields} additional fields.
+     */
+    public static List<Map<String, Object>> fields(int count, int extraFields, long seed) {
+        final Random random = new Random(seed);
+        final List<Map<String, Object>> corpus = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            corpus.add(fields(random, i, extraFields));
+        }
+        return corpus;
+    }
+
+    /**
+     * Returns {@code count} messages, each with {@code extraFields} additional fields.
+     */
+    public static List<Message> messages(int count, int extraFields, long seed) {
+        final List<Message> messages = new ArrayList<>(count);
+        for (Map<String, Object> fields : fields(count, extraFields, seed)) {
+            messages.add(MESSAGE_FACTORY.createMessage(new LinkedHashMap<>(fields)));
+        }
+        return messages;
+    }
+
+    /**
+     * Returns {@code count} uncompressed GELF payloads, each with {@code extraFields} additional fields.
+     */
+    public static List<byte[]> gelfPayloads(int count, int extraFields, long seed) {
+        final List<byte[]> payloads = new ArrayList<>(count);
+        for (Map<String, Object> fields : fields(count, extraFields, seed)) {
+            final StringBuilder sb = new StringBuilder(256)
+                    .append("{\"version\":\"1.1\"")
+                    .append(",\"host\":\"").append(fields.get(Message.FIELD_SOURCE)).append('"')
+                    .append(",\"short_message\":\"").append(fields.get(Message.FIELD_MESSAGE)).append('"')
+                    .append(",\"timestamp\":").append(((DateTime) fields.get(Message.FIELD_TIMESTAMP)).getMillis() / 1000.0d)
+                    .append(",\"level\":").append(fields.get(FIELD_LEVEL));
+            for (Map.Entry<String, Object> field : fields.entrySet()) {
+                final String key = field.getKey();
+                if (Message.FIELD_SOURCE.equals(key) || Message.FIELD_MESSAGE.equals(key)
+                        || Message.FIELD_TIMESTAMP.equals(key) || FIELD_LEVEL.equals(key)) {
+                    continue;
+                }
+                sb.append(",\"_").append(key).append("\":");
+                if (field.getValue() instanceof Number) {
+                    sb.append(field.getValue());
+                } else {
+                    sb.append('"').append(field.getValue()).append('"');
+                }
+            }
+            payloads.add(sb.append('}').toString().getBytes(StandardCharsets.UTF_8));
+        }
+        return payloads;
+    }
+
+    /**
+     * Returns {@code count} RFC 3164 syslog payloads.
+     */
+    public static List<byte[]> syslogPayloads(int count, long seed) {
+        final List<byte[]> payloads = new ArrayList<>(count);
+        for (Map<String, Object> fields : fields(count, 0, seed)) {
+            final int priority = FACILITIES.indexOf((String) fields.get(FIELD_FACILITY)) * 8 + (int) fields.get(FIELD_LEVEL);
+            final DateTime timestamp = (DateTime) fields.get(Message.FIELD_TIMESTAMP);
+            final String payload = String.format(Locale.ENGLISH, "<%d>%s %s app[%d]: %s",
+                    priority,
+                    timestamp.toString("MMM dd HH:mm:ss", Locale.ENGLISH),
+                    fields.get(Message.FIELD_SOURCE),
+                    1000 + (int) fields.get(FIELD_HTTP_STATUS),
+                    fields.get(Message.FIELD_MESSAGE));
+            payloads.add(payload.getBytes(StandardCharsets.UTF_8));
+        }
+        return payloads;
+    }
+
+    private static Map<String, Object> fields(Random random, int index, int extraFields) {
+        final Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put(Message.FIELD_ID, new UUID(random.nextLong(), random.nextLong()).toString());
+        fields.put(Message.FIELD_MESSAGE, sentence(random, 4 + random.nextInt(12)));
+        fields.put(Message.FIELD_SOURCE, "host-" + random.nextInt(64) + ".example.org");
+        fields.put(Message.FIELD_TIMESTAMP, BASE_TIMESTAMP.plusMillis(index * 7));
+        fields.put(FIELD_LEVEL, random.nextInt(8));
+        fields.put(FIELD_FACILITY, pick(random, FACILITIES));
+        fields.put(FIELD_HTTP_METHOD, pick(random, HTTP_METHODS));
+        fields.put(FIELD_HTTP_STATUS, pick(random, HTTP_STATUSES));
+        fields.put(FIELD_USER, "user" + random.nextInt(1000));
+        for (int i = 0; i < extraFields; i++) {
+            // Not every message has every extra field, so presence rules match only part of the corpus
+            if (random.nextInt(4) != 0) {
+                fields.put(EXTRA_FIELD_PREFIX + i, random.nextBoolean() ? pick(random, WORDS) : random.nextInt(100_000));
+            }
+        }
+        return fields;
+    }
+
+    static String sentence(Random random, int words) {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            sb.append(pick(random, WORDS));
+        }
+        return sb.toString();
+    }
+
+    static <T> T pick(Random random, List<T> values) {
+        return values.get(random.nextInt(values.size()));
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.benchmarks;
+
+import com.google.common.collect.ImmutableMap;
+import org.graylog.plugins.pipelineprocessor.ast.functions.Function;
+import org.graylog.plugins.pipelineprocessor.db.PipelineDao;
+import org.graylog.plugins.pipelineprocessor.db.RuleDao;
+import org.graylog.plugins.pipelineprocessor.functions.conversion.LongConversion;
+import org.graylog.plugins.pipelineprocessor.functions.conversion.StringConversion;
+import org.graylog.plugins.pipelineprocessor.functions.messages.HasField;
+import org.graylog.plugins.pipelineprocessor.functions.messages.SetField;
+import org.graylog.plugins.pipelineprocessor.functions.strings.Contains;
+import org.graylog.plugins.pipelineprocessor.functions.strings.RegexMatch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+import static org.graylog2.benchmarks.SyntheticMessages.FIELD_HTTP_METHOD;
+import static org.graylog2.benchmarks.SyntheticMessages.FIELD_HTTP_STATUS;
+import static org.graylog2.benchmarks.SyntheticMessages.HTTP_METHODS;
+import static org.graylog2.benchmarks.SyntheticMessages.WORDS;
+import static org.graylog2.benchmarks.SyntheticMessages.pick;
+
+/**
+ * Generates reproducible pipeline rules and pipelines which operate on the fields of {@link SyntheticMessages}.
+ * <p>
+ * All rule actions only set fields to constant values, so a message can be processed repeatedly and always takes
+ * the same path through the pipeline.
+ */
+public final class SyntheticPipelines {
+    private SyntheticPipelines() {
+    }
+
+    /**
+     * Returns the functions used by the generated rules.
+     */
+    public static Map<String, Function<?>> functions() {
+        return ImmutableMap.<String, Function<?>>builder()
+                .put(HasField.NAME, new HasField())
+                .put(SetField.NAME, new SetField())
+                .put(StringConversion.NAME, new StringConversion())
+                .put(LongConversion.NAME, new LongConversion())
+                .put(Contains.NAME, new Contains())
+                .put(RegexMatch.NAME, new RegexMatch())
+                .build();
+    }
+
+    /**
+     * Returns {@code ruleCount} rules named {@code rule-0} to {@code rule-<ruleCount - 1>}.
+     *
+     * @param extraFields the number of extra fields in the message corpus, {@code has_field} conditions pick one of them
+     */
+    public static List<RuleDao> rules(int ruleCount, int extraFields, long seed) {
+        final Random random = new Random(seed);
+        final List<RuleDao> rules = new ArrayList<>(ruleCount);
+        for (int i = 0; i < ruleCount; i++) {
+            rules.add(RuleDao.create(null, ruleName(i), null, ruleSource(random, i, extraFields), null, null, null, null));
+        }
+        return rules;
+    }
+
+    /**
+     * Returns a pipeline which distributes the rules {@code rule-0} to {@code rule-<ruleCount - 1>} evenly over
+     * {@code stageCount} stages.
+     */
+    public static PipelineDao pipeline(int ruleCount, int stageCount) {
+        final StringBuilder source = new StringBuilder("pipeline \"benchmark\"\n");
+        final int rulesPerStage = Math.max(1, (ruleCount + stageCount - 1) / stageCount);
+        for (int stage = 0; stage < stageCount; stage++) {
+            source.append("stage ").append(stage).append(" match either\n");
+            for (int i = stage * rulesPerStage; i < Math.min(ruleCount, (stage + 1) * rulesPerStage); i++) {
+                source.append("  rule \"").append(ruleName(i)).append("\";\n");
+            }
+        }
+        source.append("end\n");
+        return PipelineDao.create(null, null, "benchmark", null, source.toString(), null, null);
+    }
+
+    private static String ruleName(int index) {
+        return "rule-" + index;
+    }
+
+    private static String ruleSource(Random random, int index, int extraFields) {
+        final String condition = switch (random.nextInt(extraFields > 0 ? 5 : 4)) {
+            case 0 -> String.format(Locale.ENGLISH, "to_string($message.%s) == \"%s\"",
+                    FIELD_HTTP_METHOD, pick(random, HTTP_METHODS));
+            case 1 -> String.format(Locale.ENGLISH, "contains(to_string($message.message), \"%s\")",
+                    pick(random, WORDS));
+            case 2 -> String.format(Locale.ENGLISH, "regex(\"^host-%d[0-9]?[.]\", to_string($message.source)).matches == true",
+                    1 + random.nextInt(6));
+            case 3 -> String.format(Locale.ENGLISH, "to_long($message.%s) >= %d",
+                    FIELD_HTTP_STATUS, 200 + random.nextInt(300));
+            default -> String.format(Locale.ENGLISH, "has_field(\"%s%d\")",
+                    SyntheticMessages.EXTRA_FIELD_PREFIX, random.nextInt(extraFields));
+        };
+        return "rule \"" + ruleName(index) + "\"\n" +
+                "when\n" +
+                "  " + condition + "\n" +
+                "then\n" +
+                "  set_field(\"matched_" + ruleName(index).replace('-', '_') + "\", true);\n" +
+                "end\n";
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.benchmarks;
+
+import com.google.common.collect.ImmutableMap;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.streams.Stream;
+import org.graylog2.plugin.streams.StreamRule;
+import org.graylog2.plugin.streams.StreamRuleType;
+import org.graylog2.streams.StreamImpl;
+import org.graylog2.streams.StreamMock;
+import org.graylog2.streams.StreamRuleImpl;
+import org.graylog2.streams.matchers.StreamRuleMock;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+import static org.graylog2.benchmarks.SyntheticMessages.FACILITIES;
+import static org.graylog2.benchmarks.SyntheticMessages.FIELD_FACILITY;
+import static org.graylog2.benchmarks.SyntheticMessages.FIELD_HTTP_METHOD;
+import static org.graylog2.benchmarks.SyntheticMessages.FIELD_HTTP_STATUS;
+import static org.graylog2.benchmarks.SyntheticMessages.FIELD_LEVEL;
+import static org.graylog2.benchmarks.SyntheticMessages.HTTP_METHODS;
+import static org.graylog2.benchmarks.SyntheticMessages.WORDS;
+import static org.graylog2.benchmarks.SyntheticMessages.pick;
+
+/**
+ * Generates reproducible stream configurations whose rules match on the fields of {@link SyntheticMessages}.
+ * <p>
+ * The rule types are mixed roughly like in production setups: mostly exact and presence rules, some contains,
+ * regex and numeric comparisons, a few of them inverted.
+ */
+public final class SyntheticStreams {
+    private SyntheticStreams() {
+    }
+
+    /**
+     * Returns {@code streamCount} streams with {@code rulesPerStream} rules each.
+     *
+     * @param extraFields the number of extra fields in the message corpus, presence rules pick one of them
+     */
+    public static List<Stream> streams(int streamCount, int rulesPerStream, int extraFields, long seed) {
+        final Random random = new Random(seed);
+        final List<Stream> streams = new ArrayList<>(streamCount);
+        int ids = 0;
+        for (int i = 0; i < streamCount; i++) {
+            final String streamId = objectId(ids++);
+            final StreamMock stream = new StreamMock(ImmutableMap.of(
+                    "_id", streamId,
+                    StreamImpl.FIELD_TITLE, "stream-" + i,
+                    StreamImpl.FIELD_MATCHING_TYPE, random.nextInt(4) == 0 ? Stream.MatchingType.OR : Stream.MatchingType.AND));
+            final List<StreamRule> rules = new ArrayList<>(rulesPerStream);
+            for (int j = 0; j < rulesPerStream; j++) {
+                rules.add(rule(random, objectId(ids++), streamId, extraFields));
+            }
+            stream.setStreamRules(rules);
+            streams.add(stream);
+        }
+        return streams;
+    }
+
+    private static StreamRule rule(Random random, String id, String streamId, int extraFields) {
+        final int kind = random.nextInt(100);
+        final StreamRuleType type;
+        final String field;
+        final String value;
+        if (kind < 35) {
+            type = StreamRuleType.EXACT;
+            if (random.nextBoolean()) {
+                field = FIELD_HTTP_METHOD;
+                value = pick(random, HTTP_METHODS);
+            } else {
+                field = FIELD_FACILITY;
+                value = pick(random, FACILITIES);
+            }
+        } else if (kind < 60 && extraFields > 0) {
+            type = StreamRuleType.PRESENCE;
+            field = SyntheticMessages.EXTRA_FIELD_PREFIX + random.nextInt(extraFields);
+            value = null;
+        } else if (kind < 75) {
+            type = StreamRuleType.CONTAINS;
+            field = Message.FIELD_MESSAGE;
+            value = pick(random, WORDS);
+        } else if (kind < 90) {
+            type = StreamRuleType.REGEX;
+            field = Message.FIELD_SOURCE;
+            value = String.format(Locale.ENGLISH, "^host-%d\\d?\\.example", 1 + random.nextInt(6));
+        } else if (random.nextBoolean()) {
+            type = StreamRuleType.GREATER;
+            field = FIELD_HTTP_STATUS;
+            value = String.valueOf(200 + random.nextInt(300));
+        } else {
+            type = StreamRuleType.SMALLER;
+            field = FIELD_LEVEL;
+            value = String.valueOf(random.nextInt(8));
+        }
+
+        final Map<String, Object> rule = new HashMap<>();
+        rule.put("_id", id);
+        rule.put(StreamRuleImpl.FIELD_STREAM_ID, streamId);
+        rule.put(StreamRuleImpl.FIELD_TYPE, type.toInteger());
+        rule.put(StreamRuleImpl.FIELD_FIELD, field);
+        rule.put(StreamRuleImpl.FIELD_VALUE, value);
+        rule.put(StreamRuleImpl.FIELD_INVERTED, random.nextInt(10) == 0);
+        return new StreamRuleMock(rule);
+    }
+
+    static String objectId(int counter) {
+        return String.format(Locale.ENGLISH, "%024x", counter);
+    }
+}
@@ -0,0 +1,292 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.events.processor.aggregation;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.github.joschi.jadconfig.util.Duration;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+import jakarta.inject.Singleton;
+import org.graylog.events.configuration.EventsConfigurationProvider;
+import org.graylog.plugins.views.search.Filter;
+import org.graylog.plugins.views.search.ParameterProvider;
+import org.graylog.plugins.views.search.Query;
+import org.graylog.plugins.views.search.QueryResult;
+import org.graylog.plugins.views.search.Search;
+import org.graylog.plugins.views.search.SearchJob;
+import org.graylog.plugins.views.search.SearchType;
+import org.graylog.plugins.views.search.db.SearchJobService;
+import org.graylog.plugins.views.search.elasticsearch.ElasticsearchQueryString;
+import org.graylog.plugins.views.search.engine.QueryEngine;
+import org.graylog.plugins.views.search.engine.normalization.SearchNormalization;
+import org.graylog.plugins.views.search.errors.SearchError;
+import org.graylog.plugins.views.search.errors.SearchTypeError;
+import org.graylog.plugins.views.search.filter.OrFilter;
+import org.graylog.plugins.views.search.filter.StreamFilter;
+import org.graylog2.plugin.indexer.searches.timeranges.TimeRange;
+import org.joda.time.DateTimeZone;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static com.google.common.base.MoreObjects.firstNonNull;
+import static java.util.stream.Collectors.toSet;
+import static org.graylog.plugins.views.search.SearchJob.NO_CANCELLATION;
+
+/**
+ * Plans the searches of aggregation event definitions which run at the same time.
+ * <p>
+ * Searches for the same time range and search owner which are submitted within the configured batch window are
+ * combined into a single query. Every search type keeps its own query string, streams and filters, so the search
+ * backend runs them as one multi-search request instead of one request per query. The results are split up again
+ * per definition.
+ * <p>
+ * A search which has no partner within the batch window is not executed by the batcher, the caller runs it on its own.
+ * The same happens if its batch could not be started in time.
+ */
+@Singleton
+public class AggregationSearchBatcher {
+    private static final Logger LOG = LoggerFactory.getLogger(AggregationSearchBatcher.class);
+
+    private static final String BATCH_QUERY_ID = "aggregation-batch-query";
+    // Time granted on top of the search timeout for splitting up the results of a batch
+    private static final long RESULT_GRACE_PERIOD_MS = 1000;
+    // Without batching, every definition runs the aggregation query and the source streams query separately
+    private static final int QUERIES_PER_DEFINITION = 2;
+
+    private final long batchWindowMs;
+    private final int maxBatchSize;
+    private final SearchJobService searchJobService;
+    private final QueryEngine queryEngine;
+    private final EventsConfigurationProvider configurationProvider;
+    private final SearchNormalization searchNormalization;
+    // Only fires the batch windows, searches run on the executor so a slow search never delays the start of a batch
+    private final ScheduledExecutorService scheduler;
+    // Grows with the number of concurrently running batches, which is bounded by the number of waiting callers
+    private final ExecutorService executor;
+    private final Map<BatchKey, Batch> pendingBatches = new HashMap<>();
+
+    private final Meter batchedSearches;
+    private final Meter batchedDefinitions;
+    private final Meter savedQueries;
+
+    @Inject
+    public AggregationSearchBatcher(@Named("event_aggregation_search_batch_window") Duration batchWindow,
+                                    @Named("event_aggregation_search_batch_max_size") int maxBatchSize,
+                                    SearchJobService searchJobService,
+                                    QueryEngine queryEngine,
+                                    EventsConfigurationProvider configurationProvider,
+                                    SearchNormalization searchNormalization,
+                                    MetricRegistry metricRegistry) {
+        this.batchWindowMs = batchWindow.toMilliseconds();
+        this.maxBatchSize = maxBatchSize;
+        this.searchJobService = searchJobService;
+        this.queryEngine = queryEngine;
+        this.configurationProvider = configurationProvider;
+        this.searchNormalization = searchNormalization;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("aggregation-search-batcher-scheduler-%d").build());
+        this.executor = Executors.newCachedThreadPool(
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("aggregation-search-batcher-%d").build());
+
+        this.batchedSearches = metricRegistry.meter(MetricRegistry.name(AggregationSearchBatcher.class, "searches"));
+        this.batchedDefinitions = metricRegistry.meter(MetricRegistry.name(AggregationSearchBatcher.class, "definitions"));
+        this.savedQueries = metricRegistry.meter(MetricRegistry.name(AggregationSearchBatcher.class, "saved-queries"));
+    }
+
+    public boolean isEnabled() {
+        return batchWindowMs > 0 && maxBatchSize > 1;
+    }
+
+    /**
+     * Submits the search types of one aggregation search and waits for the batch to be executed.
+     *
+     * @param key         the time range and search owner, only searches with the same key are combined
+     * @param searchTypes search types with unique IDs which contain their own query, streams and filters
+     * @param streams     the streams searched by the search types
+     * @return the results of the given search types, or an empty optional if no other search was submitted within the
+     * batch window or the batch could not be started in time. The caller has to run the search on its own in that case.
+     */
+    public Optional<QueryResult> search(BatchKey key, Set<SearchType> searchTypes, Set<String> streams) throws ExecutionException, TimeoutException {
+        final Member member = new Member(searchTypes, streams, new CompletableFuture<>(), new CompletableFuture<>());
+        final Batch batch;
+        final List<Member> fullBatch;
+        synchronized (pendingBatches) {
+            batch = pendingBatches.computeIfAbsent(key, k -> {
+                final Batch newBatch = new Batch();
+                scheduler.schedule(() -> flush(k, newBatch), batchWindowMs, TimeUnit.MILLISECONDS);
+                return newBatch;
+            });
+            batch.members.add(member);
+            if (batch.members.size() >= maxBatchSize) {
+                pendingBatches.remove(key);
+                fullBatch = batch.members;
+            } else {
+                fullBatch = null;
+            }
+        }
+        if (fullBatch != null) {
+            executor.execute(() -> execute(key, fullBatch));
+        }
+
+        // The search timeout only starts once the batch is executed, waiting for other members doesn't count
+        final long searchTimeoutMs = configurationProvider.get().eventsSearchTimeout();
+        try {
+            Uninterruptibles.getUninterruptibly(member.started(), batchWindowMs + searchTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            synchronized (pendingBatches) {
+                if (!member.started().isDone()) {
+                    withdraw(key, batch, member);
+                    LOG.debug("Aggregation search batch was not started in time, running the search on its own");
+                    return Optional.empty();
+                }
+            }
+        }
+        return Uninterruptibles.getUninterruptibly(member.result(), searchTimeoutMs + RESULT_GRACE_PERIOD_MS, TimeUnit.MILLISECONDS);
+    }
+
+    // Must be called with the pendingBatches lock held
+    private void withdraw(BatchKey key, Batch batch, Member member) {
+        batch.members.remove(member);
+        if (batch.members.isEmpty()) {
+            pendingBatches.remove(key, batch);
+        }
+    }
+
+    private void flush(BatchKey key, Batch batch) {
+        synchronized (pendingBatches) {
+            // The batch might have been executed already because it was full
+            if (!pendingBatches.remove(key, batch)) {
+                return;
+            }
+        }
+        executor.execute(() -> execute(key, batch.members));
+    }
+
+    private void execute(BatchKey key, List<Member> members) {
+        synchronized (pendingBatches) {
+            // Members can't withdraw from the batch anymore once it is started
+            members.forEach(member -> member.started().complete(null));
+        }
+        if (members.isEmpty()) {
+            return;
+        }
+        if (members.size() == 1) {
+            members.get(0).result().complete(Optional.empty());
+            return;
+        }
+
+        try {
+            final QueryResult queryResult = runSearch(key, members);
+            batchedSearches.mark();
+            batchedDefinitions.mark(members.size());
+            savedQueries.mark((long) members.size() * QUERIES_PER_DEFINITION - 1);
+            LOG.debug("Executed aggregation searches of {} event definitions with a single query", members.size());
+
+            for (final Member member : members) {
+                member.result().complete(Optional.of(resultFor(member, queryResult)));
+            }
+        } catch (Exception e) {
+            members.forEach(member -> member.result().completeExceptionally(e));
+        }
+    }
+
+    private QueryResult runSearch(BatchKey key, List<Member> members) throws ExecutionException, TimeoutException {
+        final ImmutableSet.Builder<SearchType> searchTypes = ImmutableSet.builder();
+        final Set<String> streams = new HashSet<>();
+        for (final Member member : members) {
+            searchTypes.addAll(member.searchTypes());
+            streams.addAll(member.streams());
+        }
+
+        final Query query = searchNormalization.postValidation(Query.builder()
+                        .id(BATCH_QUERY_ID)
+                        .query(ElasticsearchQueryString.empty())
+                        .timerange(key.timerange())
+                        .filter(filteringForStreamIds(streams))
+                        .searchTypes(searchTypes.build())
+                        .build(),
+                ParameterProvider.of(Collections.emptySet()));
+        final Search search = Search.builder()
+                .queries(ImmutableSet.of(query))
+                .build();
+
+        final SearchJob searchJob = queryEngine.execute(searchJobService.create(search, key.username(), NO_CANCELLATION),
+                Collections.emptySet(), key.timezone());
+        Uninterruptibles.getUninterruptibly(searchJob.getResultFuture(),
+                configurationProvider.get().eventsSearchTimeout(), TimeUnit.MILLISECONDS);
+        return searchJob.results().get(BATCH_QUERY_ID);
+    }
+
+    private static QueryResult resultFor(Member member, QueryResult queryResult) {
+        final Set<String> searchTypeIds = member.searchTypes().stream().map(SearchType::id).collect(toSet());
+        final Map<String, SearchType.Result> results = new HashMap<>();
+        queryResult.searchTypes().forEach((id, result) -> {
+            if (searchTypeIds.contains(id)) {
+                results.put(id, result);
+            }
+        });
+        // Errors of other search types don't concern this member, errors of the whole query do
+        final Set<SearchError> errors = firstNonNull(queryResult.errors(), Collections.<SearchError>emptySet()).stream()
+                .filter(error -> !(error instanceof SearchTypeError searchTypeError) || searchTypeIds.contains(searchTypeError.searchTypeId()))
+                .collect(toSet());
+
+        return queryResult.toBuilder()
+                .searchTypes(results)
+                .errors(errors)
+                .build();
+    }
+
+    private static Filter filteringForStreamIds(Set<String> streamIds) {
+        return OrFilter.builder()
+                .filters(streamIds.stream().map(StreamFilter::ofId).collect(toSet()))
+                .build();
+    }
+
+    /**
+     * Searches can only be combined if they search the same time range on behalf of the same user.
+     */
+    public record BatchKey(TimeRange timerange, String username, DateTimeZone timezone) {
+    }
+
+    private record Member(Set<SearchType> searchTypes, Set<String> streams,
+                          CompletableFuture<Void> started, CompletableFuture<Optional<QueryResult>> result) {
+    }
+
+    private static class Batch {
+        private final List<Member> members = new ArrayList<>();
+    }
+}
@@ -43,6 +43,7 @@ import org.graylog.plugins.views.search.engine.normalization.SearchNormalization
 import org.graylog.plugins.views.search.errors.EmptyParameterError;
 import org.graylog.plugins.views.search.errors.QueryError;
 import org.graylog.plugins.views.search.errors.SearchError;
+import org.graylog.plugins.views.search.errors.SearchTypeError;
 import org.graylog.plugins.views.search.filter.OrFilter;
 import org.graylog.plugins.views.search.filter.StreamFilter;
 import org.graylog.plugins.views.search.rest.PermittedStreams;
@@ -66,11 +67,14 @@ import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -105,6 +109,7 @@ public class PivotAggregationSearch implements AggregationSearch {
     private final QueryStringDecorators queryStringDecorators;
     private final StreamService streamService;
     private final SearchNormalization searchNormalization;
+    private final AggregationSearchBatcher searchBatcher;
     private final boolean isCloud;
 
     @Inject
@@ -121,6 +126,7 @@ public class PivotAggregationSearch implements AggregationSearch {
                                   QueryStringDecorators queryStringDecorators,
                                   StreamService streamService,
                                   SearchNormalization searchNormalization,
+                                  AggregationSearchBatcher searchBatcher,
                                   @Named("is_cloud") boolean isCloud) {
         this.config = config;
         this.parameters = parameters;
@@ -135,6 +141,7 @@ public class PivotAggregationSearch implements AggregationSearch {
         this.queryStringDecorators = queryStringDecorators;
         this.streamService = streamService;
         this.searchNormalization = searchNormalization;
+        this.searchBatcher = searchBatcher;
         this.isCloud = isCloud;
     }
 
@@ -144,9 +151,17 @@ public class PivotAggregationSearch implements AggregationSearch {
 
     @Override
     public AggregationResult doSearch() throws EventProcessorException {
-        final SearchJob searchJob = getSearchJob(parameters, searchOwner, config.searchWithinMs(), config.executeEveryMs());
-        final QueryResult queryResult = searchJob.results().get(QUERY_ID);
-        final QueryResult streamQueryResult = searchJob.results().get(STREAMS_QUERY_ID);
+        final QueryResult queryResult;
+        final QueryResult streamQueryResult;
+        final Optional<BatchedResults> batchedResults = searchBatched();
+        if (batchedResults.isPresent()) {
+            queryResult = batchedResults.get().queryResult();
+            streamQueryResult = batchedResults.get().streamQueryResult();
+        } else {
+            final SearchJob searchJob = getSearchJob(parameters, searchOwner, config.searchWithinMs(), config.executeEveryMs());
+            queryResult = searchJob.results().get(QUERY_ID);
+            streamQueryResult = searchJob.results().get(STREAMS_QUERY_ID);
+        }
         final Map<String, SearchType.Result> additionalResults = additionalSearchTypes.stream()
                 .filter(searchType -> queryResult.searchTypes().containsKey(searchType.id()))
                 .map(searchType -> queryResult.searchTypes().get(searchType.id()))
@@ -401,6 +416,72 @@ public class PivotAggregationSearch implements AggregationSearch {
         return permittedStreams.loadAllMessageStreams((streamId) -> true);
     }
 
+    /**
+     * Runs the aggregation and the source streams search together with the searches of other event definitions for
+     * the same time range. Returns an empty optional if batching is disabled, not possible for this definition, or no
+     * other search could be combined with this one.
+     */
+    private Optional<BatchedResults> searchBatched() throws EventProcessorException {
+        // Query parameters and additional search types are specific to a search, they cannot be shared with others
+        if (!searchBatcher.isEnabled() || !config.queryParameters().isEmpty() || !additionalSearchTypes.isEmpty()) {
+            return Optional.empty();
+        }
+
+        final String batchId = UUID.randomUUID().toString();
+        final String pivotId = PIVOT_ID + "-" + batchId;
+        final String streamsPivotId = STREAMS_PIVOT_ID + "-" + batchId;
+        // The batched query has no streams of its own, so every search type needs explicit streams
+        final Set<String> definitionStreams = getStreams(parameters);
+        final Set<String> streams = definitionStreams.isEmpty() ? loadAllStreams() : definitionStreams;
+
+        final Pivot pivot = buildAggregationPivot(parameters, config.searchWithinMs(), config.executeEveryMs()).toBuilder()
+                .id(pivotId)
+                .query(decorateQuery(config))
+                .filters(config.filters())
+                .streams(streams)
+                .build();
+        final Pivot streamsPivot = buildSourceStreamsPivot().toBuilder()
+                .id(streamsPivotId)
+                .query(ElasticsearchQueryString.of(config.query()))
+                .streams(streams)
+                .build();
+
+        final Optional<QueryResult> batchResult;
+        try {
+            batchResult = searchBatcher.search(
+                    new AggregationSearchBatcher.BatchKey(parameters.timerange(), searchOwner.name(), searchOwner.timezone()),
+                    ImmutableSet.of(pivot, streamsPivot),
+                    streams);
+        } catch (ExecutionException e) {
+            throw new EventProcessorException("Error executing search job: " + e.getMessage(), false, eventDefinition, e);
+        } catch (TimeoutException e) {
+            throw new EventProcessorException("Timeout while executing search job.", false, eventDefinition, e);
+        } catch (Exception e) {
+            throw new EventProcessorException("Unhandled exception in search job.", false, eventDefinition, e);
+        }
+
+        return batchResult.map(result -> new BatchedResults(
+                resultForSearchType(result, pivotId, PIVOT_ID),
+                resultForSearchType(result, streamsPivotId, STREAMS_PIVOT_ID)));
+    }
+
+    private static QueryResult resultForSearchType(QueryResult batchResult, String batchSearchTypeId, String searchTypeId) {
+        final Map<String, SearchType.Result> results = new HashMap<>();
+        if (batchResult.searchTypes().containsKey(batchSearchTypeId)) {
+            results.put(searchTypeId, batchResult.searchTypes().get(batchSearchTypeId));
+        }
+        final Set<SearchError> errors = firstNonNull(batchResult.errors(), Collections.<SearchError>emptySet()).stream()
+                .filter(error -> !(error instanceof SearchTypeError searchTypeError) || searchTypeError.searchTypeId().equals(batchSearchTypeId))
+                .collect(toSet());
+        return batchResult.toBuilder()
+                .searchTypes(results)
+                .errors(errors)
+                .build();
+    }
+
+    private record BatchedResults(QueryResult queryResult, QueryResult streamQueryResult) {
+    }
+
     protected SearchJob getSearchJob(AggregationEventProcessorParameters parameters, User user,
                            long searchWithinMs, long executeEveryMs) throws EventProcessorException {
         final var username = user.name();
@@ -439,14 +520,7 @@ public class PivotAggregationSearch implements AggregationSearch {
      * @return source streams query
      */
     private Query getSourceStreamsQuery(AggregationEventProcessorParameters parameters) {
-        final Pivot pivot = Pivot.builder()
-                .id(STREAMS_PIVOT_ID)
-                .rollup(true)
-                .rowGroups(ImmutableList.of(Values.builder().limit(Integer.MAX_VALUE).field("streams").build()))
-                .series(ImmutableList.of(Count.builder().id(STREAMS_PIVOT_COUNT_ID).build()))
-                .build();
-
-        final Set<SearchType> searchTypes = Collections.singleton(pivot);
+        final Set<SearchType> searchTypes = Collections.singleton(buildSourceStreamsPivot());
         final Query.Builder queryBuilder = Query.builder()
                 .id(STREAMS_QUERY_ID)
                 .searchTypes(searchTypes)
@@ -461,6 +535,15 @@ public class PivotAggregationSearch implements AggregationSearch {
         return queryBuilder.build();
     }
 
+    private Pivot buildSourceStreamsPivot() {
+        return Pivot.builder()
+                .id(STREAMS_PIVOT_ID)
+                .rollup(true)
+                .rowGroups(ImmutableList.of(Values.builder().limit(Integer.MAX_VALUE).field("streams").build()))
+                .series(ImmutableList.of(Count.builder().id(STREAMS_PIVOT_COUNT_ID).build()))
+                .build();
+    }
+
     /**
      * Returns the query to compute the aggregation.
      *
@@ -470,6 +553,25 @@ public class PivotAggregationSearch implements AggregationSearch {
      * @return aggregation query
      */
     protected Query getAggregationQuery(AggregationEventProcessorParameters parameters, long searchWithinMs, long executeEveryMs) {
+        final Set<SearchType> searchTypes = Sets.newHashSet(buildAggregationPivot(parameters, searchWithinMs, executeEveryMs));
+        searchTypes.addAll(additionalSearchTypes);
+
+        final Query.Builder queryBuilder = Query.builder()
+                .id(QUERY_ID)
+                .searchTypes(searchTypes)
+                .query(decorateQuery(config))
+                .timerange(parameters.timerange())
+                .filters(config.filters());
+
+        final Set<String> streams = getStreams(parameters);
+        if (!streams.isEmpty()) {
+            queryBuilder.filter(filteringForStreamIds(streams));
+        }
+
+        return queryBuilder.build();
+    }
+
+    private Pivot buildAggregationPivot(AggregationEventProcessorParameters parameters, long searchWithinMs, long executeEveryMs) {
         final Pivot.Builder pivotBuilder = Pivot.builder()
                 .id(PIVOT_ID)
                 .rollup(true);
@@ -521,22 +623,7 @@ public class PivotAggregationSearch implements AggregationSearch {
         // We always have row groups because of the date range buckets
         pivotBuilder.rowGroups(groupBy);
 
-        final Set<SearchType> searchTypes = Sets.newHashSet(pivotBuilder.build());
-        searchTypes.addAll(additionalSearchTypes);
-
-        final Query.Builder queryBuilder = Query.builder()
-                .id(QUERY_ID)
-                .searchTypes(searchTypes)
-                .query(decorateQuery(config))
-                .timerange(parameters.timerange())
-                .filters(config.filters());
-
-        final Set<String> streams = getStreams(parameters);
-        if (!streams.isEmpty()) {
-            queryBuilder.filter(filteringForStreamIds(streams));
-        }
-
-        return queryBuilder.build();
+        return pivotBuilder.build();
     }
 
     private BackendQuery decorateQuery(AggregationEventProcessorConfig config) {
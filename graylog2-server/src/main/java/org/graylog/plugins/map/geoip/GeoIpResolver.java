@@ -30,7 +30,7 @@ public abstract class GeoIpResolver<V> {
 
     private static final Logger LOG = LoggerFactory.getLogger(GeoIpResolver.class);
 
-    protected String lastError = null;
+    private final ThreadLocal<String> lastError = new ThreadLocal<>();
     protected final Timer resolveTime;
     private final boolean enabled;
 
@@ -57,7 +57,7 @@ public abstract class GeoIpResolver<V> {
     abstract boolean createDataProvider(File configFile);
 
     public Optional<V> getGeoIpData(InetAddress address) {
-        lastError = null;
+        lastError.remove();
         if (!enabled || address == null) {
             return Optional.empty();
         }
@@ -65,13 +65,37 @@ public abstract class GeoIpResolver<V> {
     }
 
     /**
-     * Get the last error, if any, produced after having called {@link #getGeoIpData(InetAddress)}.
+     * Look up the data for the given address together with the error of this lookup, if any. Unlike
+     * {@link #getGeoIpData(InetAddress)} followed by {@link #getLastError()}, the result can be used to tell a failed
+     * lookup from an address which is not in the database.
+     *
+     * @param address the address to look up
+     * @return the data and the error of this lookup
+     */
+    public Lookup<V> lookup(InetAddress address) {
+        final Optional<V> data = getGeoIpData(address);
+        return new Lookup<>(data, getLastError());
+    }
+
+    /**
+     * Get the last error, if any, produced after having called {@link #getGeoIpData(InetAddress)} on the current
+     * thread.
      *
      * @return optional error message
      */
     public Optional<String> getLastError() {
-        return Optional.ofNullable(lastError);
+        return Optional.ofNullable(lastError.get());
+    }
+
+    protected void setLastError(String error) {
+        lastError.set(error);
     }
 
     protected abstract Optional<V> doGetGeoIpData(InetAddress address);
+
+    public record Lookup<V>(Optional<V> data, Optional<String> error) {
+        public boolean failed() {
+            return data.isEmpty() && error.isPresent();
+        }
+    }
 }
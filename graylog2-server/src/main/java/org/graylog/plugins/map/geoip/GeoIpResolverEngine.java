@@ -16,8 +16,12 @@
  */
 package org.graylog.plugins.map.geoip;
 
+import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
 import com.codahale.metrics.Timer;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.net.InetAddresses;
 import org.apache.commons.lang3.StringUtils;
@@ -30,9 +34,11 @@ import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
 import java.net.InetAddress;
+import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Optional;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -74,10 +80,36 @@ public class GeoIpResolverEngine {
     private final boolean enabled;
     private final boolean enforceGraylogSchema;
 
+    // The caches live as long as this engine. A new engine is created whenever the configuration or the database
+    // files change, so cached results never outlive the databases they were read from.
+    @Nullable
+    private final Cache<AddressKey, Optional<GeoLocationInformation>> locationCache;
+    @Nullable
+    private final Cache<AddressKey, Optional<GeoAsnInformation>> asnCache;
+    private final Meter cacheHits;
+    private final Meter cacheMisses;
 
     public GeoIpResolverEngine(GeoIpVendorResolverService resolverService, GeoIpResolverConfig config, S3GeoIpFileService s3GeoIpFileService,
                                MetricRegistry metricRegistry) {
+        this(resolverService, config, s3GeoIpFileService, metricRegistry, 0);
+    }
+
+    public GeoIpResolverEngine(GeoIpVendorResolverService resolverService, GeoIpResolverConfig config, S3GeoIpFileService s3GeoIpFileService,
+                               MetricRegistry metricRegistry, int cacheSize) {
         Timer resolveTime = metricRegistry.timer(name(GeoIpResolverEngine.class, "resolveTime"));
+        final Meter hits = metricRegistry.meter(name(GeoIpResolverEngine.class, "cacheHits"));
+        final Meter misses = metricRegistry.meter(name(GeoIpResolverEngine.class, "cacheMisses"));
+        metricRegistry.gauge(name(GeoIpResolverEngine.class, "cacheHitRatio"), () -> cacheHitRatio(hits, misses));
+        cacheHits = hits;
+        cacheMisses = misses;
+
+        if (cacheSize > 0) {
+            locationCache = Caffeine.newBuilder().maximumSize(cacheSize).build();
+            asnCache = Caffeine.newBuilder().maximumSize(cacheSize).build();
+        } else {
+            locationCache = null;
+            asnCache = null;
+        }
 
         enforceGraylogSchema = config.enforceGraylogSchema();
         if (config.useS3()) {
@@ -97,7 +129,19 @@ public class GeoIpResolverEngine {
 
     }
 
-    public boolean filter(Message message) {
+    // The registry keeps the first gauge for the lifetime of the server. It must only reference the meters, not the
+    // engine, or the first engine would stay reachable together with its caches and database readers.
+    private static RatioGauge cacheHitRatio(Meter hits, Meter misses) {
+        return new RatioGauge() {
+            @Override
+            protected Ratio getRatio() {
+                final double hitRate = hits.getOneMinuteRate();
+                return Ratio.of(hitRate, hitRate + misses.getOneMinuteRate());
+            }
+        };
+    }
+
+        public boolean filter(Message message) {
         if (!enabled) {
             return false;
         }
@@ -128,7 +172,7 @@ public class GeoIpResolverEngine {
 
     // Pre-4.3 logic for adding geo fields to message.
     private void addLegacyGeoIpDataIfPresent(Message message, InetAddress address, String key) {
-        ipLocationResolver.getGeoIpData(address).ifPresent(locationInformation -> {
+        resolve(ipLocationResolver, locationCache, address).ifPresent(locationInformation -> {
             // We will store the coordinates as a "lat,long" string
             message.addField(key + "_geolocation", locationInformation.latitude() + "," + locationInformation.longitude());
             message.addField(key + "_country_code", locationInformation.countryIsoCode());
@@ -137,7 +181,7 @@ public class GeoIpResolverEngine {
     }
 
     private void addGIMGeoIpDataIfPresent(Message message, InetAddress address, String newFieldPrefix) {
-        ipLocationResolver.getGeoIpData(address).ifPresent(locationInformation -> {
+        resolve(ipLocationResolver, locationCache, address).ifPresent(locationInformation -> {
             message.addField(newFieldPrefix + "_geo_coordinates", locationInformation.latitude() + "," + locationInformation.longitude());
             message.addField(newFieldPrefix + "_geo_country_iso", locationInformation.countryIsoCode());
             message.addField(newFieldPrefix + "_geo_city", locationInformation.cityName());
@@ -154,13 +198,34 @@ public class GeoIpResolverEngine {
             }
         });
 
-        ipAsnResolver.getGeoIpData(address).ifPresent(info -> {
+        resolve(ipAsnResolver, asnCache, address).ifPresent(info -> {
 
             message.addField(newFieldPrefix + "_as_organization", info.organization());
             message.addField(newFieldPrefix + "_as_number", info.asn());
         });
     }
 
+    private <V> Optional<V> resolve(GeoIpResolver<V> resolver, @Nullable Cache<AddressKey, Optional<V>> cache, InetAddress address) {
+        if (cache == null) {
+            return resolver.getGeoIpData(address);
+        }
+
+        final AddressKey key = AddressKey.of(address);
+        final Optional<V> cached = cache.getIfPresent(key);
+        if (cached != null) {
+            cacheHits.mark();
+            return cached;
+        }
+
+        cacheMisses.mark();
+        final GeoIpResolver.Lookup<V> lookup = resolver.lookup(address);
+        // Addresses which are not in the database are cached as well, but failed lookups are retried.
+        if (!lookup.failed()) {
+            cache.put(key, lookup.data());
+        }
+        return lookup.data();
+    }
+
     /**
      * Get the message fields that will be checked for IP addresses.
      *
@@ -219,4 +284,18 @@ public class GeoIpResolverEngine {
     private static Function<String, String> mapFieldNameToPrefix() {
         return string -> string.replace("_ip", "");
     }
+
+    /**
+     * Cache key holding the raw address bytes. IPv4 addresses are stored in their IPv4-mapped IPv6 form.
+     */
+    @VisibleForTesting
+    record AddressKey(long high, long low) {
+        static AddressKey of(InetAddress address) {
+            final ByteBuffer bytes = ByteBuffer.wrap(address.getAddress());
+            if (bytes.capacity() == 4) {
+                return new AddressKey(0L, 0xffff_0000_0000L | (bytes.getInt() & 0xffff_ffffL));
+            }
+            return new AddressKey(bytes.getLong(), bytes.getLong());
+        }
+    }
 }
@@ -54,7 +54,7 @@ public class IpInfoIpAsnResolver extends IpInfoIpResolver<GeoAsnInformation> {
             if (!(e instanceof AddressNotFoundException)) {
                 String error = String.format(Locale.US, "Error getting ASN for IP Address '%s'. %s", address, e.getMessage());
                 LOG.warn(error, e);
-                lastError = e.getMessage();
+                setLastError(e.getMessage());
             }
         }
         return Optional.ofNullable(info);
@@ -56,7 +56,7 @@ public class IpInfoLocationResolver extends IpInfoIpResolver<GeoLocationInformat
             if (!(e instanceof AddressNotFoundException)) {
                 String error = String.format(Locale.US, "Error getting IP location info for '%s'. %s", address, e.getMessage());
                 LOG.error(error, e);
-                lastError = e.getMessage();
+                setLastError(e.getMessage());
             }
         }
         return Optional.ofNullable(info);
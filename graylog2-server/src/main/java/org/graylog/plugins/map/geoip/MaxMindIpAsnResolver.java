@@ -55,7 +55,7 @@ public class MaxMindIpAsnResolver extends MaxMindIpResolver<GeoAsnInformation> {
             if (!(e instanceof AddressNotFoundException)) {
                 String error = String.format(Locale.US, "Error getting ASN for IP Address '%s'. %s", address, e.getMessage());
                 LOG.warn(error, e);
-                lastError = e.getMessage();
+                setLastError(e.getMessage());
             }
         }
 
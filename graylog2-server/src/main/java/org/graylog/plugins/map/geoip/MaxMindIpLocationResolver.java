@@ -65,7 +65,7 @@ public class MaxMindIpLocationResolver extends MaxMindIpResolver<GeoLocationInfo
         } catch (Exception e) {
             if (!(e instanceof AddressNotFoundException)) {
                 LOG.debug("Could not get location from IP {}", address.getHostAddress(), e);
-                lastError = e.getMessage();
+                setLastError(e.getMessage());
             }
             return Optional.empty();
         }
@@ -61,6 +61,7 @@ public class GeoIpProcessor implements MessageProcessor {
     private final GeoIpVendorResolverService geoIpVendorResolverService;
     private final ServerStatus serverStatus;
     private final S3GeoIpFileService s3GeoIpFileService;
+    private final int cacheSize;
 
     private final AtomicReference<GeoIpResolverEngine> filterEngine = new AtomicReference<>(null);
 
@@ -71,13 +72,15 @@ public class GeoIpProcessor implements MessageProcessor {
                           MetricRegistry metricRegistry,
                           GeoIpVendorResolverService geoIpVendorResolverService,
                           ServerStatus serverStatus,
-                          S3GeoIpFileService s3GeoIpFileService) {
+                          S3GeoIpFileService s3GeoIpFileService,
+                          @Named("geoip_resolver_cache_size") int cacheSize) {
         this.clusterConfigService = clusterConfigService;
         this.scheduler = scheduler;
         this.metricRegistry = metricRegistry;
         this.geoIpVendorResolverService = geoIpVendorResolverService;
         this.serverStatus = serverStatus;
         this.s3GeoIpFileService = s3GeoIpFileService;
+        this.cacheSize = cacheSize;
 
         eventBus.register(this);
     }
@@ -125,6 +128,6 @@ public class GeoIpProcessor implements MessageProcessor {
                 GeoIpResolverConfig.defaultConfig());
 
         LOG.debug("Updating GeoIP resolver engine - {}", newConfig);
-        filterEngine.set(new GeoIpResolverEngine(geoIpVendorResolverService, newConfig, s3GeoIpFileService, metricRegistry));
+        filterEngine.set(new GeoIpResolverEngine(geoIpVendorResolverService, newConfig, s3GeoIpFileService, metricRegistry, cacheSize));
     }
 }
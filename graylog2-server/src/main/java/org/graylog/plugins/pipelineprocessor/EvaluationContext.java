@@ -18,6 +18,7 @@ package org.graylog.plugins.pipelineprocessor;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import org.graylog.plugins.pipelineprocessor.ast.CommonSubexpressions;
 import org.graylog.plugins.pipelineprocessor.ast.Rule;
 import org.graylog.plugins.pipelineprocessor.ast.exceptions.FunctionEvaluationException;
 import org.graylog.plugins.pipelineprocessor.ast.expressions.Expression;
@@ -30,6 +31,7 @@ import org.graylog2.plugin.Messages;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -38,6 +40,7 @@ import static org.graylog2.shared.utilities.ExceptionUtils.getRootCause;
 import static org.graylog2.shared.utilities.StringUtils.f;
 
 public class EvaluationContext {
+    private static final Object NOT_CACHED = new Object();
 
     private static final EvaluationContext EMPTY_CONTEXT = new EvaluationContext() {
         @Override
@@ -61,6 +64,10 @@ public class EvaluationContext {
     private List<EvalError> evalErrors;
     @Nullable
     private Rule currentRule;
+    @Nullable
+    private CommonSubexpressions subexpressions;
+    @Nullable
+    private Object[] subexpressionValues;
 
     public void setRule(Rule rule) {
         currentRule = rule;
@@ -116,6 +123,52 @@ public class EvaluationContext {
         }
     }
 
+    /**
+     * Evaluate each of the given common subexpressions at most once until {@link #disableSubexpressionCache()} is
+     * called. This must only be enabled while the message is not modified, i.e. while evaluating rule conditions.
+     *
+     * @param subexpressions the common subexpressions of the current stage
+     */
+    public void enableSubexpressionCache(CommonSubexpressions subexpressions) {
+        if (subexpressions.isEmpty()) {
+            disableSubexpressionCache();
+            return;
+        }
+        this.subexpressions = subexpressions;
+        this.subexpressionValues = new Object[subexpressions.size()];
+        Arrays.fill(subexpressionValues, NOT_CACHED);
+    }
+
+    /**
+     * Drops all cached subexpression values, e.g. before executing rule actions which might modify the message.
+     */
+    public void disableSubexpressionCache() {
+        this.subexpressions = null;
+        this.subexpressionValues = null;
+    }
+
+    /**
+     * @return the cache slot of the given expression, or {@code -1} if its value must not be cached
+     */
+    public int subexpressionSlot(Expression expression) {
+        return subexpressions == null ? -1 : subexpressions.slot(expression);
+    }
+
+    public boolean isSubexpressionCached(int slot) {
+        return subexpressionValues != null && subexpressionValues[slot] != NOT_CACHED;
+    }
+
+    @Nullable
+    public Object cachedSubexpression(int slot) {
+        return subexpressionValues == null ? null : subexpressionValues[slot];
+    }
+
+    public void cacheSubexpression(int slot, @Nullable Object value) {
+        if (subexpressionValues != null) {
+            subexpressionValues[slot] = value;
+        }
+    }
+
     public static EvaluationContext emptyContext() {
         return EMPTY_CONTEXT;
     }
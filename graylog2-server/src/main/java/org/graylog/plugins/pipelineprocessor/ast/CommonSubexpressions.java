@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.plugins.pipelineprocessor.ast;
+
+import org.graylog.plugins.pipelineprocessor.ast.expressions.ConstantExpression;
+import org.graylog.plugins.pipelineprocessor.ast.expressions.Expression;
+import org.graylog.plugins.pipelineprocessor.ast.expressions.FieldAccessExpression;
+import org.graylog.plugins.pipelineprocessor.ast.expressions.FieldRefExpression;
+import org.graylog.plugins.pipelineprocessor.ast.expressions.FunctionExpression;
+import org.graylog.plugins.pipelineprocessor.ast.expressions.MessageRefExpression;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The common subexpressions of the rule conditions in a {@link Stage}.
+ * <p>
+ * Pure function calls and message field accesses which occur more than once in the conditions of a stage, either in
+ * the same rule or in different rules, are assigned a slot. Structurally identical expressions share the same slot,
+ * which allows the {@link org.graylog.plugins.pipelineprocessor.EvaluationContext} to evaluate them only once per
+ * message while the conditions of the stage are evaluated.
+ */
+public class CommonSubexpressions {
+    public static final CommonSubexpressions NONE = new CommonSubexpressions(new IdentityHashMap<>(), 0);
+
+    private final IdentityHashMap<Expression, Integer> slots;
+    private final int size;
+
+    private CommonSubexpressions(IdentityHashMap<Expression, Integer> slots, int size) {
+        this.slots = slots;
+        this.size = size;
+    }
+
+    public static CommonSubexpressions of(List<Rule> rules) {
+        final Map<String, List<Expression>> candidates = new HashMap<>();
+        for (Rule rule : rules) {
+            if (rule.when() != null) {
+                collectCandidates(rule.when(), candidates);
+            }
+        }
+
+        final IdentityHashMap<Expression, Integer> slots = new IdentityHashMap<>();
+        int size = 0;
+        for (List<Expression> expressions : candidates.values()) {
+            if (expressions.size() > 1) {
+                for (Expression expression : expressions) {
+                    slots.put(expression, size);
+                }
+                size++;
+            }
+        }
+        return size == 0 ? NONE : new CommonSubexpressions(slots, size);
+    }
+
+    /**
+     * Returns the slot of the given expression.
+     *
+     * @param expression an expression of a rule condition
+     * @return the slot shared by all expressions structurally identical to the given one, or {@code -1} if the
+     * expression is not a common subexpression
+     */
+    public int slot(Expression expression) {
+        final Integer slot = slots.get(expression);
+        return slot == null ? -1 : slot;
+    }
+
+    /**
+     * @return the number of distinct common subexpressions
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    private static void collectCandidates(Expression expression, Map<String, List<Expression>> candidates) {
+        if (expression instanceof FunctionExpression
+                || expression instanceof FieldAccessExpression
+                || (expression instanceof MessageRefExpression messageRef && messageRef.getFieldExpr() != messageRef)) {
+            final String key = key(expression);
+            if (key != null) {
+                candidates.computeIfAbsent(key, k -> new ArrayList<>()).add(expression);
+            }
+        }
+        for (Expression child : expression.children()) {
+            if (child != null) {
+                collectCandidates(child, candidates);
+            }
+        }
+    }
+
+    /**
+     * Builds a key which is equal for structurally identical expressions. Returns {@code null} for expressions that
+     * cannot be shared, e.g. because they call a function with side effects or refer to rule variables.
+     */
+    @Nullable
+    static String key(Expression expression) {
+        final StringBuilder sb = new StringBuilder();
+        return appendKey(expression, sb) ? sb.toString() : null;
+    }
+
+    private static boolean appendKey(@Nullable Expression expression, StringBuilder sb) {
+        if (expression == null) {
+            sb.append("null");
+            return true;
+        }
+        if (expression instanceof ConstantExpression) {
+            final String value = String.valueOf(expression.evaluateUnsafe());
+            // Length-prefixed to keep keys unambiguous for arbitrary string values
+            sb.append(expression.getClass().getSimpleName()).append('[').append(value.length()).append(']').append(value);
+            return true;
+        }
+        if (expression instanceof FieldRefExpression fieldRef) {
+            final String name = fieldRef.fieldName();
+            sb.append("ref[").append(name.length()).append(']').append(name);
+            return true;
+        }
+        if (expression instanceof MessageRefExpression messageRef) {
+            sb.append("$message");
+            if (messageRef.getFieldExpr() == messageRef) {
+                return true;
+            }
+            sb.append('(');
+            final boolean keyable = appendKey(messageRef.getFieldExpr(), sb);
+            sb.append(')');
+            return keyable;
+        }
+        if (expression instanceof FieldAccessExpression fieldAccess) {
+            sb.append("access(");
+            final boolean keyable = appendKey(fieldAccess.object(), sb);
+            sb.append(',');
+            final boolean fieldKeyable = appendKey(fieldAccess.field(), sb);
+            sb.append(')');
+            return keyable && fieldKeyable;
+        }
+        if (expression instanceof FunctionExpression function) {
+            if (!function.getFunction().descriptor().pure()) {
+                return false;
+            }
+            sb.append("fn:").append(function.getFunction().descriptor().name()).append('(');
+            for (Map.Entry<String, Expression> arg : new TreeMap<>(function.getArgs().getArgs()).entrySet()) {
+                sb.append(arg.getKey()).append('=');
+                if (!appendKey(arg.getValue(), sb)) {
+                    return false;
+                }
+                sb.append(';');
+            }
+            sb.append(')');
+            return true;
+        }
+        // Everything else, e.g. variable references or operators, is not supported
+        return false;
+    }
+}
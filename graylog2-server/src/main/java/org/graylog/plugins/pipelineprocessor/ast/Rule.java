@@ -23,6 +23,8 @@ import org.antlr.v4.runtime.CommonToken;
 import org.graylog.plugins.pipelineprocessor.ast.expressions.BooleanExpression;
 import org.graylog.plugins.pipelineprocessor.ast.expressions.LogicalExpression;
 import org.graylog.plugins.pipelineprocessor.ast.statements.Statement;
+import org.graylog.plugins.pipelineprocessor.compiler.CompiledCondition;
+import org.graylog.plugins.pipelineprocessor.compiler.RuleCompiler;
 import org.graylog.plugins.pipelineprocessor.processors.PipelineMetricRegistry;
 
 import javax.annotation.Nullable;
@@ -44,6 +46,8 @@ public abstract class Rule {
     private transient Meter globalNotMatched;
     private transient Meter localNotMatched;
 
+    private transient CompiledCondition compiledCondition;
+
     @Nullable
     public abstract String id();
 
@@ -53,6 +57,22 @@ public abstract class Rule {
 
     public abstract Collection<Statement> then();
 
+    /**
+     * Returns the {@link #when() condition} of this rule compiled by the {@link RuleCompiler}. The condition is compiled
+     * on first use.
+     *
+     * @return the compiled condition
+     */
+    public CompiledCondition compiledCondition() {
+        CompiledCondition condition = compiledCondition;
+        if (condition == null) {
+            // Benign race, compiling is deterministic and the compiled closures are immutable
+            condition = RuleCompiler.compileCondition(when());
+            compiledCondition = condition;
+        }
+        return condition;
+    }
+
     public static Builder builder() {
         return new AutoValue_Rule.Builder();
     }
@@ -32,6 +32,7 @@ public abstract class Stage implements Comparable<Stage> {
     // not an autovalue property, because it introduces a cycle in hashCode() and we have no way of excluding it
     private transient Pipeline pipeline;
     private transient Meter executed;
+    private transient CommonSubexpressions commonSubexpressions = CommonSubexpressions.NONE;
 
     public abstract int stage();
 
@@ -45,6 +46,14 @@ public abstract class Stage implements Comparable<Stage> {
 
     public void setRules(List<Rule> rules) {
         this.rules = rules;
+        this.commonSubexpressions = CommonSubexpressions.of(rules);
+    }
+
+    /**
+     * @return the expressions which occur more than once in the rule conditions of this stage
+     */
+    public CommonSubexpressions getCommonSubexpressions() {
+        return commonSubexpressions;
     }
 
     public static Builder builder() {
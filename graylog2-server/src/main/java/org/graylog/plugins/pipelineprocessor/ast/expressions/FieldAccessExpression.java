@@ -46,6 +46,19 @@ public class FieldAccessExpression extends BaseExpression {
 
     @Override
     public Object evaluateUnsafe(EvaluationContext context) {
+        final int slot = context.subexpressionSlot(this);
+        if (slot < 0) {
+            return evaluateFieldAccess(context);
+        }
+        if (context.isSubexpressionCached(slot)) {
+            return context.cachedSubexpression(slot);
+        }
+        final Object value = evaluateFieldAccess(context);
+        context.cacheSubexpression(slot, value);
+        return value;
+    }
+
+    private Object evaluateFieldAccess(EvaluationContext context) {
         final Object bean = this.object.evaluateUnsafe(context);
         final Object fieldValue = field.evaluateUnsafe(context);
         if (bean == null || fieldValue == null) {
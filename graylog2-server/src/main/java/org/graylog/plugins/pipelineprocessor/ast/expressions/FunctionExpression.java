@@ -60,6 +60,19 @@ public class FunctionExpression extends BaseExpression {
 
     @Override
     public Object evaluateUnsafe(EvaluationContext context) {
+        final int slot = context.subexpressionSlot(this);
+        if (slot < 0) {
+            return evaluateFunction(context);
+        }
+        if (context.isSubexpressionCached(slot)) {
+            return context.cachedSubexpression(slot);
+        }
+        final Object value = evaluateFunction(context);
+        context.cacheSubexpression(slot, value);
+        return value;
+    }
+
+    private Object evaluateFunction(EvaluationContext context) {
         try {
             if (Boolean.TRUE.equals(function.descriptor().deprecated())) {
                 LOG.warn("Using deprecated function {}", function.descriptor().name());
@@ -40,6 +40,19 @@ public class MessageRefExpression extends BaseExpression {
         if (fieldExpr == null) {
             return context.currentMessage();
         }
+        final int slot = context.subexpressionSlot(this);
+        if (slot < 0) {
+            return evaluateField(context);
+        }
+        if (context.isSubexpressionCached(slot)) {
+            return context.cachedSubexpression(slot);
+        }
+        final Object value = evaluateField(context);
+        context.cacheSubexpression(slot, value);
+        return value;
+    }
+
+    private Object evaluateField(EvaluationContext context) {
         final Object fieldName = fieldExpr.evaluateUnsafe(context);
         if (fieldName == null) {
             return null;
@@ -0,0 +1,33 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.plugins.pipelineprocessor.compiler;
+
+import org.graylog.plugins.pipelineprocessor.EvaluationContext;
+
+import javax.annotation.Nullable;
+
+/**
+ * An expression compiled by {@link RuleCompiler}.
+ * <p>
+ * Behaves exactly like {@link org.graylog.plugins.pipelineprocessor.ast.expressions.Expression#evaluateUnsafe(EvaluationContext)}
+ * of the expression it was compiled from, including the exceptions it throws.
+ */
+@FunctionalInterface
+public interface CompiledExpression {
+    @Nullable
+    Object evaluate(EvaluationContext context);
+}
@@ -0,0 +1,315 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.plugins.pipelineprocessor.compiler;
+
+import com.swrve.ratelimitedlogger.RateLimitedLog;
+import org.graylog.plugins.pipelineprocessor.EvaluationContext;
+import org.graylog.plugins.pipelineprocessor.ast.expressions.BinaryExpression;
+import org.graylog.plugins.pipelineprocessor.ast.expressions.BooleanValuedFunctionWrapper;
+import org.graylog.plugins.pipelineprocessor.ast.expressions.ComparisonExpression;
+import org.graylog.plugins.pipelineprocessor.ast.expressions.EqualityExpression;
+import org.graylog.plugins.pipelineprocessor.ast.expressions.Expression;
+import org.graylog.plugins.pipelineprocessor.ast.expressions.LogicalExpression;
+import org.graylog.plugins.pipelineprocessor.ast.expressions.NotExpression;
+import org.joda.time.DateTime;
+
+import static org.graylog.plugins.pipelineprocessor.processors.PipelineInterpreter.getRateLimitedLog;
+
+/**
+ * Compiles rule conditions into trees of closures.
+ * <p>
+ * The compiled closures evaluate logical operators, comparisons and equality checks without going through the AST
+ * nodes: operators are resolved once at compile time, constant subexpressions are folded and comparisons against
+ * numeric or string constants take a typed fast path. Function calls, message field accesses and all other
+ * expressions are evaluated by their AST nodes, so the compiled condition produces the same results and throws the
+ * same exceptions as {@link LogicalExpression#evaluateBool(EvaluationContext)}.
+ */
+public final class RuleCompiler {
+    // Same logger as the interpreted equality check, the compiled version logs the same messages
+    private static final RateLimitedLog EQUALITY_LOG = getRateLimitedLog(EqualityExpression.class);
+
+    private static final CompiledCondition TRUE = context -> true;
+    private static final CompiledCondition FALSE = context -> false;
+    private static final Object NOT_FOLDABLE = new Object();
+
+    private RuleCompiler() {
+    }
+
+    public static CompiledCondition compileCondition(LogicalExpression expression) {
+        if (isFoldable(expression)) {
+            try {
+                return expression.evaluateBool(EvaluationContext.emptyContext()) ? TRUE : FALSE;
+            } catch (Exception e) {
+                // Leave it to the evaluation to report the error
+            }
+        }
+
+        final Expression.Type type = expression.nodeType();
+        if (type == null) {
+            return interpreted(expression);
+        }
+        return switch (type) {
+            case AND -> {
+                final BinaryExpression and = (BinaryExpression) expression;
+                if (!(and.left() instanceof LogicalExpression left) || !(and.right() instanceof LogicalExpression right)) {
+                    yield interpreted(expression);
+                }
+                final CompiledCondition compiledLeft = compileCondition(left);
+                final CompiledCondition compiledRight = compileCondition(right);
+                yield context -> compiledLeft.evaluate(context) && compiledRight.evaluate(context);
+            }
+            case OR -> {
+                final BinaryExpression or = (BinaryExpression) expression;
+                if (!(or.left() instanceof LogicalExpression left) || !(or.right() instanceof LogicalExpression right)) {
+                    yield interpreted(expression);
+                }
+                final CompiledCondition compiledLeft = compileCondition(left);
+                final CompiledCondition compiledRight = compileCondition(right);
+                yield context -> compiledLeft.evaluate(context) || compiledRight.evaluate(context);
+            }
+            case NOT -> {
+                if (!(((NotExpression) expression).right() instanceof LogicalExpression operand)) {
+                    yield interpreted(expression);
+                }
+                final CompiledCondition compiledOperand = compileCondition(operand);
+                yield context -> !compiledOperand.evaluate(context);
+            }
+            case BOOLEAN_FUNC_WRAPPER -> {
+                final CompiledExpression function = compile(((BooleanValuedFunctionWrapper) expression).expression());
+                yield context -> {
+                    final Object value = function.evaluate(context);
+                    return value != null && (Boolean) value;
+                };
+            }
+            case COMPARISON -> compileComparison((ComparisonExpression) expression);
+            case EQUALITY -> compileEquality((EqualityExpression) expression);
+            default -> interpreted(expression);
+        };
+    }
+
+    public static CompiledExpression compile(Expression expression) {
+        final Object constant = foldConstant(expression);
+        if (constant != NOT_FOLDABLE) {
+            return context -> constant;
+        }
+
+        final Expression.Type type = expression.nodeType();
+        if (type == null) {
+            return interpreted(expression);
+        }
+        return switch (type) {
+            case AND, OR, NOT, BOOLEAN_FUNC_WRAPPER, COMPARISON, EQUALITY -> {
+                final CompiledCondition condition = compileCondition((LogicalExpression) expression);
+                yield context -> condition.evaluate(context);
+            }
+            default -> interpreted(expression);
+        };
+    }
+
+    private static CompiledCondition interpreted(LogicalExpression expression) {
+        return expression::evaluateBool;
+    }
+
+    private static CompiledExpression interpreted(Expression expression) {
+        return expression::evaluateUnsafe;
+    }
+
+    private static CompiledCondition compileComparison(ComparisonExpression comparison) {
+        final Comparison operator = Comparison.of(comparison.getOperator());
+        final CompiledExpression left = compile(comparison.left());
+        final Object rightConstant = foldConstant(comparison.right());
+
+        if (rightConstant instanceof Long longConstant) {
+            final long right = longConstant;
+            return context -> {
+                final Object leftValue = left.evaluate(context);
+                if (leftValue instanceof Long leftLong) {
+                    return operator.test(leftLong.longValue(), right);
+                }
+                return compare(operator, leftValue, longConstant);
+            };
+        }
+        if (rightConstant instanceof Double doubleConstant) {
+            final double right = doubleConstant;
+            return context -> {
+                final Object leftValue = left.evaluate(context);
+                if (leftValue instanceof Double leftDouble) {
+                    return operator.test(leftDouble.doubleValue(), right);
+                }
+                return compare(operator, leftValue, doubleConstant);
+            };
+        }
+
+        final CompiledExpression right = compile(comparison.right());
+        return context -> {
+            final Object leftValue = left.evaluate(context);
+            return compare(operator, leftValue, right.evaluate(context));
+        };
+    }
+
+    private static boolean compare(Comparison operator, Object leftValue, Object rightValue) {
+        if (leftValue instanceof DateTime leftDate && rightValue instanceof DateTime rightDate) {
+            return operator.test(leftDate, rightDate);
+        }
+        if (leftValue instanceof Double || rightValue instanceof Double) {
+            return operator.test((double) leftValue, (double) rightValue);
+        }
+        return operator.test((long) leftValue, (long) rightValue);
+    }
+
+    private static CompiledCondition compileEquality(EqualityExpression equality) {
+        final Expression leftExpression = equality.left();
+        final Expression rightExpression = equality.right();
+        final boolean checkEquality = equality.isCheckEquality();
+        final CompiledExpression left = compile(leftExpression);
+
+        if (foldConstant(rightExpression) instanceof String stringConstant) {
+            return context -> {
+                final Object leftValue = left.evaluate(context);
+                if (leftValue instanceof String leftString) {
+                    final boolean equals = leftString.equals(stringConstant);
+                    if (EQUALITY_LOG.isTraceEnabled()) {
+                        traceEquality(leftExpression, rightExpression, leftValue, stringConstant, equals, checkEquality);
+                    }
+                    return checkEquality == equals;
+                }
+                return checkEquality(leftExpression, rightExpression, checkEquality, context, leftValue, stringConstant);
+            };
+        }
+
+        final CompiledExpression right = compile(rightExpression);
+        return context -> {
+            final Object leftValue = left.evaluate(context);
+            return checkEquality(leftExpression, rightExpression, checkEquality, context, leftValue, right.evaluate(context));
+        };
+    }
+
+    private static boolean checkEquality(Expression leftExpression,
+                                         Expression rightExpression,
+                                         boolean checkEquality,
+                                         EvaluationContext context,
+                                         Object leftValue,
+                                         Object rightValue) {
+        if (leftValue == null) {
+            EQUALITY_LOG.warn(context.pipelineErrorMessage("left expression evaluated to null, returning false: " + leftExpression));
+            return false;
+        }
+        final boolean equals;
+        // sigh: DateTime::equals takes the chronology into account, so identical instants expressed in different timezones are not equal
+        if (leftValue instanceof DateTime leftDate && rightValue instanceof DateTime rightDate) {
+            equals = leftDate.isEqual(rightDate);
+        } else {
+            equals = leftValue.equals(rightValue);
+        }
+        if (EQUALITY_LOG.isTraceEnabled()) {
+            traceEquality(leftExpression, rightExpression, leftValue, rightValue, equals, checkEquality);
+        }
+        return checkEquality == equals;
+    }
+
+    private static void traceEquality(Expression leftExpression,
+                                      Expression rightExpression,
+                                      Object left,
+                                      Object right,
+                                      boolean equals,
+                                      boolean checkEquality) {
+        EQUALITY_LOG.trace(checkEquality
+                        ? "[{}] {} == {} : {} == {}"
+                        : "[{}] {} != {} : {} != {}",
+                checkEquality == equals, leftExpression, rightExpression, left, right);
+    }
+
+    /**
+     * Evaluates the expression at compile time if it only consists of literals and operators.
+     *
+     * @return the value of the expression or {@link #NOT_FOLDABLE}
+     */
+    private static Object foldConstant(Expression expression) {
+        if (!isFoldable(expression)) {
+            return NOT_FOLDABLE;
+        }
+        try {
+            return expression.evaluateUnsafe(EvaluationContext.emptyContext());
+        } catch (Exception e) {
+            return NOT_FOLDABLE;
+        }
+    }
+
+    private static boolean isFoldable(Expression expression) {
+        final Expression.Type type = expression.nodeType();
+        if (type == null) {
+            return false;
+        }
+        final boolean foldableNode = switch (type) {
+            case BOOLEAN, STRING, LONG, DOUBLE, ADD, MULT, SIGNED, COMPARISON, EQUALITY, AND, OR, NOT -> true;
+            default -> false;
+        };
+        if (!foldableNode) {
+            return false;
+        }
+        for (Expression child : expression.children()) {
+            if (!isFoldable(child)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private enum Comparison {
+        GREATER, GREATER_OR_EQUAL, LESS, LESS_OR_EQUAL, UNKNOWN;
+
+        static Comparison of(String operator) {
+            return switch (operator) {
+                case ">" -> GREATER;
+                case ">=" -> GREATER_OR_EQUAL;
+                case "<" -> LESS;
+                case "<=" -> LESS_OR_EQUAL;
+                default -> UNKNOWN;
+            };
+        }
+
+        boolean test(long left, long right) {
+            return switch (this) {
+                case GREATER -> left > right;
+                case GREATER_OR_EQUAL -> left >= right;
+                case LESS -> left < right;
+                case LESS_OR_EQUAL -> left <= right;
+                case UNKNOWN -> false;
+            };
+        }
+
+        boolean test(double left, double right) {
+            return switch (this) {
+                case GREATER -> left > right;
+                case GREATER_OR_EQUAL -> left >= right;
+                case LESS -> left < right;
+                case LESS_OR_EQUAL -> left <= right;
+                case UNKNOWN -> false;
+            };
+        }
+
+        boolean test(DateTime left, DateTime right) {
+            return switch (this) {
+                case GREATER -> left.isAfter(right);
+                case GREATER_OR_EQUAL -> !left.isBefore(right);
+                case LESS -> left.isBefore(right);
+                case LESS_OR_EQUAL -> !left.isAfter(right);
+                case UNKNOWN -> false;
+            };
+        }
+    }
+}
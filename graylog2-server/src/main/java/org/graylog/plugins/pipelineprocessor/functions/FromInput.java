@@ -80,6 +80,7 @@ public class FromInput extends AbstractFunction<Boolean> {
     public FunctionDescriptor<Boolean> descriptor() {
         return FunctionDescriptor.<Boolean>builder()
                 .name(NAME)
+                .pure(true)
                 .returnType(Boolean.class)
                 .params(of(
                         idParam,
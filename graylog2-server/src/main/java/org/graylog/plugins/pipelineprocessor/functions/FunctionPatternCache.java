@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.plugins.pipelineprocessor.functions;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.jayway.jsonpath.JsonPath;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import org.graylog2.metrics.CacheStatsSet;
+import org.graylog2.shared.metrics.MetricUtils;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Compiled regular expressions and JsonPath expressions shared by the pipeline functions.
+ * <p>
+ * Constant pattern arguments are compiled once when a rule is parsed, but patterns built from message fields or
+ * lookup results would otherwise be compiled again for every message. Like the grok cache of the
+ * {@link org.graylog2.grok.GrokPatternRegistry}, entries expire when they haven't been used for a minute. On top of
+ * that the number of entries is bounded, because dynamic patterns can have a high cardinality.
+ */
+@Singleton
+public class FunctionPatternCache {
+    @VisibleForTesting
+    static final long MAXIMUM_SIZE = 1000;
+
+    private final LoadingCache<RegexKey, Pattern> regexCache;
+    private final LoadingCache<String, JsonPath> jsonPathCache;
+
+    @Inject
+    public FunctionPatternCache(MetricRegistry metricRegistry) {
+        regexCache = CacheBuilder.newBuilder()
+                .maximumSize(MAXIMUM_SIZE)
+                .expireAfterAccess(1, TimeUnit.MINUTES) // prevent from hanging on to memory forever
+                .recordStats()
+                .build(new CacheLoader<>() {
+                    @Override
+                    public Pattern load(@Nonnull RegexKey key) {
+                        return Pattern.compile(key.pattern(), key.flags());
+                    }
+                });
+        jsonPathCache = CacheBuilder.newBuilder()
+                .maximumSize(MAXIMUM_SIZE)
+                .expireAfterAccess(1, TimeUnit.MINUTES) // prevent from hanging on to memory forever
+                .recordStats()
+                .build(new CacheLoader<>() {
+                    @Override
+                    public JsonPath load(@Nonnull String path) {
+                        return JsonPath.compile(path);
+                    }
+                });
+
+        MetricUtils.safelyRegisterAll(metricRegistry, new CacheStatsSet(name(FunctionPatternCache.class, "regex"), regexCache));
+        MetricUtils.safelyRegisterAll(metricRegistry, new CacheStatsSet(name(FunctionPatternCache.class, "jsonpath"), jsonPathCache));
+    }
+
+    public Pattern regex(String pattern) {
+        return regex(pattern, 0);
+    }
+
+    /**
+     * @throws java.util.regex.PatternSyntaxException if the pattern is invalid, just like {@link Pattern#compile(String, int)}
+     */
+    public Pattern regex(String pattern, int flags) {
+        return get(regexCache, new RegexKey(pattern, flags));
+    }
+
+    /**
+     * @throws com.jayway.jsonpath.InvalidPathException if the path is invalid, just like {@link JsonPath#compile(String, com.jayway.jsonpath.Predicate...)}
+     */
+    public JsonPath jsonPath(String path) {
+        return get(jsonPathCache, path);
+    }
+
+    @VisibleForTesting
+    long size() {
+        return regexCache.size() + jsonPathCache.size();
+    }
+
+    private static <K, V> V get(LoadingCache<K, V> cache, K key) {
+        try {
+            return cache.getUnchecked(key);
+        } catch (UncheckedExecutionException e) {
+            // Surface the compilation error instead of the cache's wrapper, the functions report it to the user
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private record RegexKey(String pattern, int flags) {
+    }
+}
@@ -48,6 +48,7 @@ public class IsNull extends AbstractFunction<Boolean> {
     public FunctionDescriptor<Boolean> descriptor() {
         return FunctionDescriptor.<Boolean>builder()
                 .name(NAME)
+                .pure(true)
                 .returnType(Boolean.class)
                 .params(of(valueParam))
                 .description("Checks whether a value is 'null'")
@@ -52,6 +52,7 @@ public class BooleanConversion extends AbstractFunction<Boolean> {
     public FunctionDescriptor<Boolean> descriptor() {
         return FunctionDescriptor.<Boolean>builder()
                 .name(NAME)
+                .pure(true)
                 .returnType(Boolean.class)
                 .params(of(valueParam, defaultParam))
                 .description("Converts a value to a boolean value using its string representation")
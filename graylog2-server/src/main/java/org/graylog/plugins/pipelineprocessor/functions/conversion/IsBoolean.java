@@ -54,6 +54,7 @@ public class IsBoolean extends AbstractFunction<Boolean> {
     public FunctionDescriptor<Boolean> descriptor() {
         return FunctionDescriptor.<Boolean>builder()
                 .name(NAME)
+                .pure(true)
                 .returnType(Boolean.class)
                 .params(valueParam, conversionParam)
                 .description("Checks whether a value is a boolean value (true or false)")
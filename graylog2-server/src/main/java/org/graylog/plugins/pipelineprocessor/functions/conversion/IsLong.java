@@ -59,6 +59,7 @@ public class IsLong extends AbstractFunction<Boolean> {
     public FunctionDescriptor<Boolean> descriptor() {
         return FunctionDescriptor.<Boolean>builder()
                 .name(NAME)
+                .pure(true)
                 .returnType(Boolean.class)
                 .params(valueParam, conversionParam)
                 .description("Checks whether a value is a long integer")
@@ -55,6 +55,7 @@ public class IsNumber extends AbstractFunction<Boolean> {
     public FunctionDescriptor<Boolean> descriptor() {
         return FunctionDescriptor.<Boolean>builder()
                 .name(NAME)
+                .pure(true)
                 .returnType(Boolean.class)
                 .params(valueParam, conversionParam)
                 .description("Checks whether a value is a number")
@@ -44,6 +44,7 @@ public class IsString extends AbstractFunction<Boolean> {
     public FunctionDescriptor<Boolean> descriptor() {
         return FunctionDescriptor.<Boolean>builder()
                 .name(NAME)
+                .pure(true)
                 .returnType(Boolean.class)
                 .params(valueParam)
                 .description("Checks whether a value is a string")
@@ -63,6 +63,7 @@ public class LongConversion extends AbstractFunction<Long> {
     public FunctionDescriptor<Long> descriptor() {
         return FunctionDescriptor.<Long>builder()
                 .name(NAME)
+                .pure(true)
                 .returnType(Long.class)
                 .params(of(
                         valueParam,
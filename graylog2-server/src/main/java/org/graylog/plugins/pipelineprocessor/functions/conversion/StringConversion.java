@@ -98,6 +98,7 @@ public class StringConversion extends AbstractFunction<String> {
     public FunctionDescriptor<String> descriptor() {
         return FunctionDescriptor.<String>builder()
                 .name(NAME)
+                .pure(true)
                 .returnType(String.class)
                 .params(of(
                         valueParam,
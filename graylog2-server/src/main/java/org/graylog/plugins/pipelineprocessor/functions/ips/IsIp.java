@@ -60,6 +60,7 @@ public class IsIp extends AbstractFunction<Boolean> {
     public FunctionDescriptor<Boolean> descriptor() {
         return FunctionDescriptor.<Boolean>builder()
                 .name(NAME)
+                .pure(true)
                 .returnType(Boolean.class)
                 .params(valueParam, conversionParam)
                 .description("Checks whether a value is an IP address")
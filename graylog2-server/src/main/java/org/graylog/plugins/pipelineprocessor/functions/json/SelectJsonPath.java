@@ -31,6 +31,7 @@ import org.graylog.plugins.pipelineprocessor.ast.functions.AbstractFunction;
 import org.graylog.plugins.pipelineprocessor.ast.functions.FunctionArgs;
 import org.graylog.plugins.pipelineprocessor.ast.functions.FunctionDescriptor;
 import org.graylog.plugins.pipelineprocessor.ast.functions.ParameterDescriptor;
+import org.graylog.plugins.pipelineprocessor.functions.FunctionPatternCache;
 
 import javax.annotation.Nullable;
 import java.io.IOException;
@@ -54,7 +55,7 @@ public class SelectJsonPath extends AbstractFunction<Map<String, Object>> {
 
 
     @Inject
-    public SelectJsonPath(ObjectMapper objectMapper) {
+    public SelectJsonPath(ObjectMapper objectMapper, FunctionPatternCache patternCache) {
         this.objectMapper = objectMapper;
         configuration = Configuration.builder()
                 .options(Option.SUPPRESS_EXCEPTIONS)
@@ -69,7 +70,7 @@ public class SelectJsonPath extends AbstractFunction<Map<String, Object>> {
                         (Class<Map<String, JsonPath>>) new TypeLiteral<Map<String, JsonPath>>() {}.getRawType())
                 .transform(inputMap -> inputMap
                         .entrySet().stream()
-                        .collect(toMap(Map.Entry::getKey, e -> JsonPath.compile(e.getValue()))))
+                        .collect(toMap(Map.Entry::getKey, e -> patternCache.jsonPath(e.getValue()))))
                 .description("A map of names to a JsonPath expression, see http://jsonpath.com")
                 .build();
         excludeEmptyArraysParam = ParameterDescriptor.bool("exclude_empty_arrays").optional().description("Exclude any empty arrays from results map").build();
@@ -80,6 +80,7 @@ public class Lookup extends AbstractFunction<Map<Object, Object>> {
         //noinspection unchecked
         return FunctionDescriptor.<Map<Object, Object>>builder()
                 .name(NAME)
+                .pure(true)
                 .description("Looks up a multi value in the named lookup table.")
                 .params(lookupTableParam, keyParam, defaultParam)
                 .returnType((Class<? extends Map<Object, Object>>) new TypeLiteral<Map<Object, Object>>() {}.getRawType())
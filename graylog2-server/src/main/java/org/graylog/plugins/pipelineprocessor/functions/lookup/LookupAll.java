@@ -33,6 +33,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.stream.Collectors;
 
@@ -72,9 +73,10 @@ public class LookupAll extends AbstractFunction<List<Object>> {
         if (table == null) {
             return List.of();
         }
+        final Map<Object, LookupResult> lookupResults = table.lookupAll(keys);
         final List<Object> results = new ArrayList<>();
         for (Object key : keys) {
-            LookupResult result = table.lookup(key);
+            LookupResult result = lookupResults.get(key);
             if (result != null && !result.isEmpty()) {
                 results.add(result.singleValue());
             }
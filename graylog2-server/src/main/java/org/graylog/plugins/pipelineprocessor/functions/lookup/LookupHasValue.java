@@ -67,6 +67,7 @@ public class LookupHasValue extends AbstractFunction<Object> {
         //noinspection unchecked
         return FunctionDescriptor.builder()
                 .name(NAME)
+                .pure(true)
                 .description("Checks if lookup table contains a given key.")
                 .params(lookupTableParam, keyParam)
                 .returnType(Boolean.class)
@@ -75,6 +75,7 @@ public class LookupValue extends AbstractFunction<Object> {
         //noinspection unchecked
         return FunctionDescriptor.builder()
                 .name(NAME)
+                .pure(true)
                 .description("Looks up a single value in the named lookup table.")
                 .params(lookupTableParam, keyParam, defaultParam)
                 .returnType(Object.class)
@@ -48,7 +48,6 @@ public class DropMessage extends AbstractFunction<Void> {
     public FunctionDescriptor<Void> descriptor() {
         return FunctionDescriptor.<Void>builder()
                 .name(NAME)
-                .pure(true)
                 .returnType(Void.class)
                 .params(ImmutableList.of(
                         messageParam
@@ -51,6 +51,7 @@ public class HasField extends AbstractFunction<Boolean> {
     public FunctionDescriptor<Boolean> descriptor() {
         return FunctionDescriptor.<Boolean>builder()
                 .name(NAME)
+                .pure(true)
                 .returnType(Boolean.class)
                 .params(ImmutableList.of(fieldParam, messageParam))
                 .description("Checks whether a message contains a value for a field")
@@ -17,11 +17,13 @@
 package org.graylog.plugins.pipelineprocessor.functions.messages;
 
 import com.google.common.collect.ImmutableList;
+import jakarta.inject.Inject;
 import org.graylog.plugins.pipelineprocessor.EvaluationContext;
 import org.graylog.plugins.pipelineprocessor.ast.functions.AbstractFunction;
 import org.graylog.plugins.pipelineprocessor.ast.functions.FunctionArgs;
 import org.graylog.plugins.pipelineprocessor.ast.functions.FunctionDescriptor;
 import org.graylog.plugins.pipelineprocessor.ast.functions.ParameterDescriptor;
+import org.graylog.plugins.pipelineprocessor.functions.FunctionPatternCache;
 import org.graylog.plugins.pipelineprocessor.rulebuilder.RuleBuilderFunctionGroup;
 import org.graylog2.plugin.Message;
 
@@ -38,9 +40,10 @@ public class RemoveField extends AbstractFunction<Void> {
     private final ParameterDescriptor<Message, Message> messageParam;
     private final ParameterDescriptor<Boolean, Boolean> invertParam;
 
-    public RemoveField() {
+    @Inject
+    public RemoveField(FunctionPatternCache patternCache) {
         fieldParam = ParameterDescriptor.string(FIELD, Pattern.class)
-                .transform(Pattern::compile)
+                .transform(patternCache::regex)
                 .description("The field(s) to remove (name or regex)").build();
         messageParam = type("message", Message.class).optional().description("The message to use, defaults to '$message'").build();
         invertParam = ParameterDescriptor.bool(INVERT).optional().description("Invert: keep matching field(s) and remove all others").build();
@@ -17,11 +17,13 @@
 package org.graylog.plugins.pipelineprocessor.functions.messages;
 
 import com.google.common.collect.ImmutableList;
+import jakarta.inject.Inject;
 import org.graylog.plugins.pipelineprocessor.EvaluationContext;
 import org.graylog.plugins.pipelineprocessor.ast.functions.AbstractFunction;
 import org.graylog.plugins.pipelineprocessor.ast.functions.FunctionArgs;
 import org.graylog.plugins.pipelineprocessor.ast.functions.FunctionDescriptor;
 import org.graylog.plugins.pipelineprocessor.ast.functions.ParameterDescriptor;
+import org.graylog.plugins.pipelineprocessor.functions.FunctionPatternCache;
 import org.graylog.plugins.pipelineprocessor.rulebuilder.RuleBuilderFunctionGroup;
 import org.graylog2.plugin.Message;
 
@@ -38,10 +40,11 @@ public class RemoveMultipleFields extends AbstractFunction<Void> {
     private final ParameterDescriptor<List, List> namesParam;
     private final ParameterDescriptor<Message, Message> messageParam;
 
-    public RemoveMultipleFields() {
+    @Inject
+    public RemoveMultipleFields(FunctionPatternCache patternCache) {
         regexParam = ParameterDescriptor.string(REGEX_PATTERN, Pattern.class)
                 .optional()
-                .transform(Pattern::compile)
+                .transform(patternCache::regex)
                 .description("A regex specifying field names to be removed").build();
         namesParam = type(LIST_OF_NAMES, List.class).optional().description("A list of field names to be removed").build();
         messageParam = type("message", Message.class).optional().description("The message to use, defaults to '$message'").build();
@@ -19,11 +19,13 @@ package org.graylog.plugins.pipelineprocessor.functions.strings;
 import com.google.common.collect.ForwardingMap;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
+import jakarta.inject.Inject;
 import org.graylog.plugins.pipelineprocessor.EvaluationContext;
 import org.graylog.plugins.pipelineprocessor.ast.functions.AbstractFunction;
 import org.graylog.plugins.pipelineprocessor.ast.functions.FunctionArgs;
 import org.graylog.plugins.pipelineprocessor.ast.functions.FunctionDescriptor;
 import org.graylog.plugins.pipelineprocessor.ast.functions.ParameterDescriptor;
+import org.graylog.plugins.pipelineprocessor.functions.FunctionPatternCache;
 
 import java.util.Collections;
 import java.util.List;
@@ -41,8 +43,9 @@ public class RegexMatch extends AbstractFunction<RegexMatch.RegexMatchResult> {
     private final ParameterDescriptor<String, String> value;
     private final ParameterDescriptor<List, List> optionalGroupNames;
 
-    public RegexMatch() {
-        pattern = ParameterDescriptor.string("pattern", Pattern.class).transform(Pattern::compile).description("The regular expression to match against 'value', uses Java regex syntax").build();
+    @Inject
+    public RegexMatch(FunctionPatternCache patternCache) {
+        pattern = ParameterDescriptor.string("pattern", Pattern.class).transform(patternCache::regex).description("The regular expression to match against 'value', uses Java regex syntax").build();
         value = ParameterDescriptor.string("value").description("The string to match the pattern against").build();
         optionalGroupNames = ParameterDescriptor.type("group_names", List.class).optional().description("List of names to use for matcher groups").build();
     }
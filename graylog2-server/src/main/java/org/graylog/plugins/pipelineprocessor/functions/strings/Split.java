@@ -19,11 +19,13 @@ package org.graylog.plugins.pipelineprocessor.functions.strings;
 import com.google.common.collect.ImmutableList;
 import com.google.common.primitives.Ints;
 import com.google.common.reflect.TypeToken;
+import jakarta.inject.Inject;
 import org.graylog.plugins.pipelineprocessor.EvaluationContext;
 import org.graylog.plugins.pipelineprocessor.ast.functions.AbstractFunction;
 import org.graylog.plugins.pipelineprocessor.ast.functions.FunctionArgs;
 import org.graylog.plugins.pipelineprocessor.ast.functions.FunctionDescriptor;
 import org.graylog.plugins.pipelineprocessor.ast.functions.ParameterDescriptor;
+import org.graylog.plugins.pipelineprocessor.functions.FunctionPatternCache;
 import org.graylog.plugins.pipelineprocessor.rulebuilder.RuleBuilderFunctionGroup;
 
 import java.util.List;
@@ -43,9 +45,10 @@ public class Split extends AbstractFunction<List<String>> {
     private final ParameterDescriptor<String, String> value;
     private final ParameterDescriptor<Long, Integer> limit;
 
-    public Split() {
+    @Inject
+    public Split(FunctionPatternCache patternCache) {
         pattern = ParameterDescriptor.string("pattern", Pattern.class)
-                .transform(Pattern::compile)
+                .transform(patternCache::regex)
                 .description("The regular expression to split by, uses Java regex syntax")
                 .build();
         value = ParameterDescriptor.string("value").ruleBuilderVariable()
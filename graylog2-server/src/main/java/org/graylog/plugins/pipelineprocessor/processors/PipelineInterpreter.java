@@ -309,6 +309,8 @@ public class PipelineInterpreter implements MessageProcessor {
 
         // TODO the message should be decorated to allow layering changes and isolate stages
         final EvaluationContext context = new EvaluationContext(message);
+        // Conditions don't modify the message, so identical expressions in them only need to be evaluated once
+        context.enableSubexpressionCache(stage.getCommonSubexpressions());
 
         // 3. iterate over all the stages in these pipelines and execute them in order
         final List<Rule> stageRules = stage.getRules();
@@ -334,6 +336,8 @@ public class PipelineInterpreter implements MessageProcessor {
             }
         }
 
+        // Rule actions can modify the message and invalidate the cached values
+        context.disableSubexpressionCache();
         for (Rule rule : rulesToRun) {
             if (!executeRuleActions(rule, message, msgId, pipeline, context, interpreterListener)) {
                 log.warn("Error evaluating action for rule <{}/{}> in pipeline <{}/stage {}> with message: {} (Error: {})",
@@ -429,7 +433,7 @@ public class PipelineInterpreter implements MessageProcessor {
         final boolean matched;
         final LogicalExpression logicalExpression = rule.when();
         try {
-            matched = logicalExpression.evaluateBool(context);
+            matched = rule.compiledCondition().evaluate(context);
         } catch (Exception e) {
 
             context.onEvaluationException(e, logicalExpression);
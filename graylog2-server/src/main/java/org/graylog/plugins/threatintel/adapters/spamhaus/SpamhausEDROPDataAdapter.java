@@ -35,7 +35,7 @@ import org.graylog2.plugin.lookup.LookupCachePurge;
 import org.graylog2.plugin.lookup.LookupDataAdapter;
 import org.graylog2.plugin.lookup.LookupDataAdapterConfiguration;
 import org.graylog2.plugin.lookup.LookupResult;
-import org.graylog2.shared.utilities.ExceptionUtils;
+import org.graylog2.utilities.IPv4CIDRTrie;
 import org.joda.time.Duration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -65,7 +65,8 @@ public class SpamhausEDROPDataAdapter extends LookupDataAdapter {
     // the current cache-control header says max-age 14400 seconds
     private static final Duration REFRESH_INTERVAL = Duration.standardHours(4);
 
-    private final AtomicReference<Map<String, Map<SubnetUtils.SubnetInfo, String>>> subnets = new AtomicReference<>(Collections.emptyMap());
+    // One immutable index per list, replaced as a whole on refresh
+    private final AtomicReference<Map<String, IPv4CIDRTrie<Subnet>>> subnets = new AtomicReference<>(Collections.emptyMap());
     private final HTTPFileRetriever httpFileRetriever;
     private final PluginConfigService pluginConfigService;
 
@@ -86,9 +87,9 @@ public class SpamhausEDROPDataAdapter extends LookupDataAdapter {
         if (!pluginConfigService.config().getCurrent().spamhausEnabled()) {
             throw new AdapterDisabledException("Spamhaus service is disabled, not starting (E)DROP adapter. To enable it please go to System / Configurations.");
         }
-        final ImmutableMap.Builder<String, Map<SubnetUtils.SubnetInfo, String>> builder = ImmutableMap.builder();
+        final ImmutableMap.Builder<String, IPv4CIDRTrie<Subnet>> builder = ImmutableMap.builder();
         for (String list : lists) {
-            final Map<SubnetUtils.SubnetInfo, String> subnetMap = fetchSubnetsFromEDROPLists(list);
+            final IPv4CIDRTrie<Subnet> subnetMap = fetchSubnetsFromEDROPLists(list);
             if (subnetMap != null) {
                 builder.put(list, subnetMap);
             }
@@ -115,10 +116,10 @@ public class SpamhausEDROPDataAdapter extends LookupDataAdapter {
             throw new AdapterDisabledException("Spamhaus service is disabled, not refreshing (E)DROP adapter. To enable it please go to System / Configurations.");
         }
         // keep the old results, which will get overridden if we can fetch new lists
-        final Map<String, Map<SubnetUtils.SubnetInfo, String>> result = new HashMap<>(this.subnets.get());
+        final Map<String, IPv4CIDRTrie<Subnet>> result = new HashMap<>(this.subnets.get());
         boolean hasUpdates = false;
         for (String list : lists) {
-            final Map<SubnetUtils.SubnetInfo, String> newList = fetchSubnetsFromEDROPLists(list);
+            final IPv4CIDRTrie<Subnet> newList = fetchSubnetsFromEDROPLists(list);
             if (newList != null) {
                 result.put(list, newList);
                 hasUpdates = true;
@@ -128,12 +129,20 @@ public class SpamhausEDROPDataAdapter extends LookupDataAdapter {
         if (!hasUpdates) {
             return;
         }
-        this.subnets.set(ImmutableMap.copyOf(result));
+        // keep the order of the lists, earlier lists take precedence on lookups
+        final ImmutableMap.Builder<String, IPv4CIDRTrie<Subnet>> builder = ImmutableMap.builder();
+        for (String list : lists) {
+            final IPv4CIDRTrie<Subnet> subnetList = result.get(list);
+            if (subnetList != null) {
+                builder.put(list, subnetList);
+            }
+        }
+        this.subnets.set(builder.build());
         cachePurge.purgeAll();
     }
 
-    private Map<SubnetUtils.SubnetInfo, String> fetchSubnetsFromEDROPLists(String list) {
-        final ImmutableMap.Builder<SubnetUtils.SubnetInfo, String> builder = ImmutableMap.builder();
+    private IPv4CIDRTrie<Subnet> fetchSubnetsFromEDROPLists(String list) {
+        final IPv4CIDRTrie.Builder<Subnet> builder = IPv4CIDRTrie.builder();
         try {
             final Optional<String> body = httpFileRetriever.fetchFileIfNotModified(list);
             if (body.isPresent()) {
@@ -144,8 +153,8 @@ public class SpamhausEDROPDataAdapter extends LookupDataAdapter {
                         if (!line.isEmpty() && !line.startsWith(";") && line.contains(";")) {
                             final String[] parts = line.split(";");
 
-                            final SubnetUtils su = new SubnetUtils(parts[0].trim());
-                            builder.put(su.getInfo(), parts.length > 1 ? parts[1].trim() : "N/A");
+                            final String cidrSignature = new SubnetUtils(parts[0].trim()).getInfo().getCidrSignature();
+                            builder.add(cidrSignature, new Subnet(cidrSignature, parts.length > 1 ? parts[1].trim() : "N/A"));
                         }
                     }
                 }
@@ -164,28 +173,28 @@ public class SpamhausEDROPDataAdapter extends LookupDataAdapter {
     public LookupResult doGet(Object key) {
         final String ip = String.valueOf(key);
 
-        if (this.subnets.get().isEmpty()) {
+        final Map<String, IPv4CIDRTrie<Subnet>> currentSubnets = this.subnets.get();
+        if (currentSubnets.isEmpty()) {
             return LookupResult.empty();
         }
 
-        // TODO potentially use a RangeMap here instead of doing linear searches all the time
-        // We should be able to use ranges of the integer values of lowAddress and highAddress as keys
-        final Optional<Map.Entry<SubnetUtils.SubnetInfo, String>> match;
-        try {
-            match = subnets.get().values()
-                    .stream()
-                    .flatMap(list -> list.entrySet().stream())
-                    .filter(entry -> entry.getKey().isInRange(ip))
-                    .findFirst();
-        } catch (IllegalArgumentException e) {
+        final long address = IPv4CIDRTrie.parseAddress(ip);
+        if (address < 0) {
             // Gracefully handle the case when a blank or invalid IP is supplied.
-            LOG.debug("[{}] is an invalid IP address. Lookup aborted. {}", ip, ExceptionUtils.getRootCauseMessage(e));
+            LOG.debug("[{}] is an invalid IP address. Lookup aborted.", ip);
             return LookupResult.empty();
         }
 
-        return match.map(entry -> LookupResult.multi(true,
-                ImmutableMap.of("sbl_id", entry.getValue(), "subnet", entry.getKey().getCidrSignature())
-        )).orElse(LookupResult.single(false));
+        for (IPv4CIDRTrie<Subnet> subnetList : currentSubnets.values()) {
+            final Subnet match = subnetList.longestPrefixMatch((int) address);
+            if (match != null) {
+                return LookupResult.multi(true, ImmutableMap.of("sbl_id", match.sblId(), "subnet", match.cidrSignature()));
+            }
+        }
+        return LookupResult.single(false);
+    }
+
+    private record Subnet(String cidrSignature, String sblId) {
     }
 
     @Override
@@ -352,12 +352,76 @@ public class DBJobTriggerService {
     public Optional<JobTriggerDto> nextRunnableTrigger() {
         final DateTime now = clock.nowUTC();
 
+        // We want to lock the trigger with the oldest next time
+        final var sort = ascending(FIELD_NEXT_TIME);
+
+        // Atomically update, lock and return the next runnable trigger
+        final JobTriggerDto trigger = collection.findOneAndUpdate(runnableTriggerFilter(now), lockUpdate(now),
+                new FindOneAndUpdateOptions().sort(sort).returnDocument(ReturnDocument.AFTER)
+        );
+
+        return Optional.ofNullable(trigger);
+    }
+
+    /**
+     * Locks and returns up to {@code limit} runnable triggers, oldest next time first. The same triggers are eligible
+     * as for {@link #nextRunnableTrigger()}, but the number of database round trips doesn't depend on the number of
+     * triggers. The caller needs to take care of releasing the trigger locks.
+     * <p>
+     * Other nodes might lock some of the candidate triggers concurrently, so fewer triggers than available might be
+     * returned.
+     *
+     * @param limit maximum number of triggers to lock
+     * @return the locked triggers, an empty list if there are no runnable triggers
+     */
+    public List<JobTriggerDto> nextRunnableTriggers(int limit) {
+        if (limit <= 0) {
+            return List.of();
+        }
+        if (limit == 1) {
+            return nextRunnableTrigger().map(List::of).orElse(List.of());
+        }
+
+        final DateTime now = clock.nowUTC();
+        final var filter = runnableTriggerFilter(now);
+
+        final List<ObjectId> candidateIds;
+        try (final Stream<Document> candidates = stream(collection.find(filter, Document.class)
+                .sort(ascending(FIELD_NEXT_TIME))
+                .projection(new Document(FIELD_ID, 1))
+                .limit(limit))) {
+            candidateIds = candidates.map(document -> document.getObjectId(FIELD_ID)).toList();
+        }
+        if (candidateIds.isEmpty()) {
+            return List.of();
+        }
+
+        // Re-checking the filter makes sure we only lock candidates which haven't been locked by another node
+        // since we read them.
+        final long lockedCount = collection.updateMany(and(in(FIELD_ID, candidateIds), filter), lockUpdate(now))
+                .getModifiedCount();
+        if (lockedCount == 0) {
+            return List.of();
+        }
+
+        // The lock time identifies the triggers that have been locked by this call. Triggers which were locked by
+        // this node before cannot be candidates.
+        try (final Stream<JobTriggerDto> locked = stream(collection.find(and(
+                        in(FIELD_ID, candidateIds),
+                        eq(FIELD_LOCK_OWNER, nodeId),
+                        eq(FIELD_LAST_LOCK_TIME, now)))
+                .sort(ascending(FIELD_NEXT_TIME)))) {
+            return locked.toList();
+        }
+    }
+
+    private Bson runnableTriggerFilter(DateTime now) {
         // exclude triggers which require a constraint that is not satisfied by this node
         final var constraintsQuery = not(
                 elemMatch(FIELD_CONSTRAINTS, new Document("$nin", schedulerCapabilitiesService.getNodeCapabilities()))
         );
 
-        final var filter = or(and(
+        return or(and(
                         // We cannot lock a trigger that is already locked by another node
                         eq(FIELD_LOCK_OWNER, null),
                         eq(FIELD_STATUS, JobTriggerStatus.RUNNABLE),
@@ -379,23 +443,16 @@ public class DBJobTriggerService {
                         constraintsQuery,
                         lt(FIELD_LAST_LOCK_TIME, now.minus(lockExpirationDuration.toMilliseconds())))
         );
-        // We want to lock the trigger with the oldest next time
-        final var sort = ascending(FIELD_NEXT_TIME);
+    }
 
-        final var lockUpdate = combine(
+    private Bson lockUpdate(DateTime now) {
+        return combine(
                 set(FIELD_LOCK_OWNER, nodeId),
                 set(FIELD_LAST_LOCK_OWNER, nodeId),
                 set(FIELD_STATUS, JobTriggerStatus.RUNNING),
                 set(FIELD_TRIGGERED_AT, Optional.of(now)),
                 set(FIELD_LAST_LOCK_TIME, now)
         );
-
-        // Atomically update, lock and return the next runnable trigger
-        final JobTriggerDto trigger = collection.findOneAndUpdate(filter, lockUpdate,
-                new FindOneAndUpdateOptions().sort(sort).returnDocument(ReturnDocument.AFTER)
-        );
-
-        return Optional.ofNullable(trigger);
     }
 
     /**
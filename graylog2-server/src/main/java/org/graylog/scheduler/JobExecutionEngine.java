@@ -18,6 +18,7 @@ package org.graylog.scheduler;
 
 import com.codahale.metrics.Counter;
 import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
@@ -44,8 +45,8 @@ import org.joda.time.Duration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -84,6 +85,8 @@ public class JobExecutionEngine {
     private final Meter executionDenied;
     private final Meter executionRescheduled;
     private final Timer executionTime;
+    private final Timer triggerClaimTime;
+    private final Histogram triggerClaimBatchSize;
     private final LoadingCache<String, Long> gaugeCache;
 
     private final AtomicBoolean isRunning = new AtomicBoolean(true);
@@ -132,6 +135,8 @@ public class JobExecutionEngine {
         this.executionDenied = metricRegistry.meter(MetricRegistry.name(getClass(), "executions", "denied"));
         this.executionRescheduled = metricRegistry.meter(MetricRegistry.name(getClass(), "executions", "rescheduled"));
         this.executionTime = metricRegistry.timer(MetricRegistry.name(getClass(), "executions", "time"));
+        this.triggerClaimTime = metricRegistry.timer(MetricRegistry.name(getClass(), "triggers", "claim", "time"));
+        this.triggerClaimBatchSize = metricRegistry.histogram(MetricRegistry.name(getClass(), "triggers", "claim", "batch-size"));
 
         // We use a cache to avoid having every gauge metric hitting the database.
         this.gaugeCache = Caffeine.newBuilder()
@@ -180,10 +185,10 @@ public class JobExecutionEngine {
     }
 
     /**
-     * Execute the engine. This will try to lock a trigger and execute the job if there are free slots in the
-     * worker pool and the engine is not shutting down.
+     * Execute the engine. This will try to lock as many triggers as there are free slots in the worker pool and
+     * execute their jobs, unless the engine is shutting down.
      *
-     * @return true if a job trigger has been locked and the related job has been triggered, false otherwise
+     * @return true if at least one job trigger has been locked and the related job has been triggered, false otherwise
      */
     public boolean execute() {
         // Cleanup stale scheduler state *before* processing any triggers for the first time.
@@ -193,21 +198,31 @@ public class JobExecutionEngine {
         }
 
         // We want to avoid a call to the database if there are no free slots in the pool or the engine is shutting down
-        if (isRunning.get() && workerPool.hasFreeSlots()) {
-            final Optional<JobTriggerDto> triggerOptional = jobTriggerService.nextRunnableTrigger();
-
-            if (triggerOptional.isPresent()) {
-                final JobTriggerDto trigger = triggerOptional.get();
+        final int freeSlots = workerPool.freeSlots();
+        if (isRunning.get() && freeSlots > 0) {
+            final List<JobTriggerDto> triggers;
+            try (final Timer.Context ignored = triggerClaimTime.time()) {
+                triggers = jobTriggerService.nextRunnableTriggers(freeSlots);
+            }
+            triggerClaimBatchSize.update(triggers.size());
 
-                if (!workerPool.execute(() -> handleTriggerWithConcurrencyLimit(trigger))) {
+            boolean executed = false;
+            for (final JobTriggerDto trigger : triggers) {
+                if (workerPool.execute(() -> handleTriggerWithConcurrencyLimit(trigger))) {
+                    executed = true;
+                } else {
                     // The job couldn't be executed so we have to release the trigger again with the same nextTime
                     jobTriggerService.releaseTrigger(trigger, JobTriggerUpdate.withNextTime(trigger.nextTime()));
                     executionDenied.mark();
-                    return false;
                 }
-
+            }
+            if (executed) {
                 return true;
             }
+            if (!triggers.isEmpty()) {
+                // Denied executions have been marked already
+                return false;
+            }
         }
         executionDenied.mark();
         return false;
@@ -23,6 +23,7 @@ import com.github.joschi.jadconfig.ValidatorMethod;
 import com.github.joschi.jadconfig.converters.StringSetConverter;
 import com.github.joschi.jadconfig.converters.TrimmedStringSetConverter;
 import com.github.joschi.jadconfig.util.Duration;
+import com.github.joschi.jadconfig.util.Size;
 import com.github.joschi.jadconfig.validators.PositiveDurationValidator;
 import com.github.joschi.jadconfig.validators.PositiveIntegerValidator;
 import com.github.joschi.jadconfig.validators.PositiveLongValidator;
@@ -92,12 +93,33 @@ public class Configuration extends CaConfiguration implements CommonNodeConfigur
     @Parameter(value = "output_flush_interval", required = true, validators = PositiveIntegerValidator.class)
     private int outputFlushInterval = 1;
 
+    @Parameter(value = "output_concurrent_bulk_requests")
+    private int outputConcurrentBulkRequests = 0;
+
+    @Parameter(value = "output_adaptive_bulk_size")
+    private boolean outputAdaptiveBulkSize = false;
+
+    @Parameter(value = "output_adaptive_bulk_size_min")
+    private Size outputAdaptiveBulkSizeMin = Size.megabytes(1L);
+
+    @Parameter(value = "output_adaptive_bulk_size_max")
+    private Size outputAdaptiveBulkSizeMax = Size.megabytes(20L);
+
+    @Parameter(value = "output_adaptive_bulk_target_latency", validators = PositiveDurationValidator.class)
+    private Duration outputAdaptiveBulkTargetLatency = Duration.seconds(2L);
+
     @Parameter(value = "outputbuffer_processors", required = true, validators = PositiveIntegerValidator.class)
     private int outputBufferProcessors = defaultNumberOfOutputBufferProcessors();
 
     @Parameter(value = "outputbuffer_processor_threads_core_pool_size", required = true, validators = PositiveIntegerValidator.class)
     private int outputBufferProcessorThreadsCorePoolSize = 3;
 
+    @Parameter(value = "outputbuffer_processor_batch_dispatch")
+    private boolean outputBufferProcessorBatchDispatch = false;
+
+    @Parameter(value = "outputbuffer_processor_max_batch_size", validators = PositiveIntegerValidator.class)
+    private int outputBufferProcessorMaxBatchSize = 500;
+
     @Parameter(value = "node_id_file", validators = NodeIdFileValidator.class)
     private String nodeIdFile = "/etc/graylog/server/node-id";
 
@@ -132,6 +154,21 @@ public class Configuration extends CaConfiguration implements CommonNodeConfigur
     @Parameter(value = "stream_processing_max_faults", validators = PositiveIntegerValidator.class)
     private int streamProcessingMaxFaults = 3;
 
+    @Parameter(value = "stream_router_indexed_engine")
+    private boolean streamRouterIndexedEngine = false;
+
+    @Parameter(value = "stream_router_full_reload_interval", validators = PositiveDurationValidator.class)
+    private Duration streamRouterFullReloadInterval = Duration.minutes(5L);
+
+    @Parameter(value = "geoip_resolver_cache_size", validators = PositiveIntegerValidator.class)
+    private int geoIpResolverCacheSize = 10000;
+
+    @Parameter(value = "event_aggregation_search_batch_window", validators = PositiveDurationValidator.class)
+    private Duration eventAggregationSearchBatchWindow = Duration.milliseconds(0L);
+
+    @Parameter(value = "event_aggregation_search_batch_max_size", validators = PositiveIntegerValidator.class)
+    private int eventAggregationSearchBatchMaxSize = 50;
+
     @Parameter(value = "output_module_timeout", validators = PositiveLongValidator.class)
     private long outputModuleTimeout = 10000;
 
@@ -187,6 +224,12 @@ public class Configuration extends CaConfiguration implements CommonNodeConfigur
     @Parameter(value = "index_ranges_cleanup_interval", validators = PositiveDurationValidator.class)
     private Duration indexRangesCleanupInterval = Duration.hours(1L);
 
+    @Parameter(value = "cluster_config_cache_enabled")
+    private boolean clusterConfigCacheEnabled = true;
+
+    @Parameter(value = "cluster_config_cache_max_staleness", validators = PositiveDurationValidator.class)
+    private Duration clusterConfigCacheMaxStaleness = Duration.seconds(30L);
+
     @Parameter(value = "trusted_proxies", converter = IPSubnetConverter.class)
     private Set<IpSubnet> trustedProxies = Collections.emptySet();
 
@@ -357,6 +400,26 @@ public class Configuration extends CaConfiguration implements CommonNodeConfigur
         return outputFlushInterval;
     }
 
+    public int getOutputConcurrentBulkRequests() {
+        return outputConcurrentBulkRequests;
+    }
+
+    public boolean isOutputAdaptiveBulkSize() {
+        return outputAdaptiveBulkSize;
+    }
+
+    public Size getOutputAdaptiveBulkSizeMin() {
+        return outputAdaptiveBulkSizeMin;
+    }
+
+    public Size getOutputAdaptiveBulkSizeMax() {
+        return outputAdaptiveBulkSizeMax;
+    }
+
+    public Duration getOutputAdaptiveBulkTargetLatency() {
+        return outputAdaptiveBulkTargetLatency;
+    }
+
     public int getOutputBufferProcessors() {
         return outputBufferProcessors;
     }
@@ -365,6 +428,14 @@ public class Configuration extends CaConfiguration implements CommonNodeConfigur
         return outputBufferProcessorThreadsCorePoolSize;
     }
 
+    public boolean isOutputBufferProcessorBatchDispatch() {
+        return outputBufferProcessorBatchDispatch;
+    }
+
+    public int getOutputBufferProcessorMaxBatchSize() {
+        return outputBufferProcessorMaxBatchSize;
+    }
+
     public boolean isCloud() {
         return isCloud;
     }
@@ -425,6 +496,26 @@ public class Configuration extends CaConfiguration implements CommonNodeConfigur
         return streamProcessingMaxFaults;
     }
 
+    public boolean isStreamRouterIndexedEngine() {
+        return streamRouterIndexedEngine;
+    }
+
+    public Duration getStreamRouterFullReloadInterval() {
+        return streamRouterFullReloadInterval;
+    }
+
+    public int getGeoIpResolverCacheSize() {
+        return geoIpResolverCacheSize;
+    }
+
+    public Duration getEventAggregationSearchBatchWindow() {
+        return eventAggregationSearchBatchWindow;
+    }
+
+    public int getEventAggregationSearchBatchMaxSize() {
+        return eventAggregationSearchBatchMaxSize;
+    }
+
     public long getOutputModuleTimeout() {
         return outputModuleTimeout;
     }
@@ -491,6 +582,14 @@ public class Configuration extends CaConfiguration implements CommonNodeConfigur
         return indexRangesCleanupInterval;
     }
 
+    public boolean isClusterConfigCacheEnabled() {
+        return clusterConfigCacheEnabled;
+    }
+
+    public Duration getClusterConfigCacheMaxStaleness() {
+        return clusterConfigCacheMaxStaleness;
+    }
+
     public Set<IpSubnet> getTrustedProxies() {
         return trustedProxies;
     }
@@ -549,6 +648,17 @@ public class Configuration extends CaConfiguration implements CommonNodeConfigur
         }
     }
 
+    @ValidatorMethod
+    @SuppressWarnings("unused")
+    public void validateOutputAdaptiveBulkSize() throws ValidationException {
+        if (outputAdaptiveBulkSizeMin.toBytes() <= 0) {
+            throw new ValidationException("Parameter \"output_adaptive_bulk_size_min\" must be greater than 0.");
+        }
+        if (outputAdaptiveBulkSizeMin.toBytes() > outputAdaptiveBulkSizeMax.toBytes()) {
+            throw new ValidationException("Parameter \"output_adaptive_bulk_size_min\" must not be greater than \"output_adaptive_bulk_size_max\".");
+        }
+    }
+
     @ValidatorMethod
     public void validateLeaderElectionTimeouts() throws ValidationException {
         if (leaderElectionMode != LeaderElectionMode.AUTOMATIC) {
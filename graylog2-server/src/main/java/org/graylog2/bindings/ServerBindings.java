@@ -40,6 +40,7 @@ import org.graylog2.bindings.providers.SystemJobFactoryProvider;
 import org.graylog2.bindings.providers.SystemJobManagerProvider;
 import org.graylog2.bootstrap.uncaughtexeptions.DefaultUncaughtExceptionHandlerCreator;
 import org.graylog2.buffers.processors.OutputBufferProcessor;
+import org.graylog2.cluster.CachingClusterConfigService;
 import org.graylog2.cluster.ClusterConfigServiceImpl;
 import org.graylog2.cluster.leader.FakeLeaderElectionModule;
 import org.graylog2.cluster.leader.LeaderElectionModule;
@@ -89,6 +90,7 @@ import org.graylog2.shared.security.RestrictToLeaderFeature;
 import org.graylog2.shared.system.activities.ActivityWriter;
 import org.graylog2.storage.SupportedSearchVersionDynamicFeature;
 import org.graylog2.streams.DefaultStreamChangeHandler;
+import org.graylog2.streams.IndexedStreamRouterEngine;
 import org.graylog2.streams.StreamRouter;
 import org.graylog2.streams.StreamRouterEngine;
 import org.graylog2.system.activities.SystemMessageActivityWriter;
@@ -187,7 +189,12 @@ public class ServerBindings extends Graylog2Module {
         bind(SystemJobFactory.class).toProvider(SystemJobFactoryProvider.class);
         bind(GracefulShutdown.class).in(Scopes.SINGLETON);
         bind(ClusterStatsModule.class).asEagerSingleton();
-        bind(ClusterConfigService.class).to(ClusterConfigServiceImpl.class).asEagerSingleton();
+        if (configuration.isClusterConfigCacheEnabled()) {
+            bind(ClusterConfigServiceImpl.class).in(Scopes.SINGLETON);
+            bind(ClusterConfigService.class).to(CachingClusterConfigService.class).asEagerSingleton();
+        } else {
+            bind(ClusterConfigService.class).to(ClusterConfigServiceImpl.class).asEagerSingleton();
+        }
         bind(GrokPatternRegistry.class).in(Scopes.SINGLETON);
         bind(Engine.class).toInstance(Engine.createEngine());
         bind(Engine.class).annotatedWith(Names.named("HtmlSafe")).toProvider(HtmlSafeJmteEngineProvider.class).asEagerSingleton();
@@ -198,8 +205,8 @@ public class ServerBindings extends Graylog2Module {
     private void bindInterfaces() {
         bind(AlertSender.class).to(FormattedEmailAlertSender.class);
         bind(StreamRouter.class);
-        install(new FactoryModuleBuilder().implement(StreamRouterEngine.class, StreamRouterEngine.class).build(
-                StreamRouterEngine.Factory.class));
+        install(new FactoryModuleBuilder().implement(StreamRouterEngine.class, configuration.isStreamRouterIndexedEngine()
+                ? IndexedStreamRouterEngine.class : StreamRouterEngine.class).build(StreamRouterEngine.Factory.class));
         bind(ActivityWriter.class).to(SystemMessageActivityWriter.class);
         bind(PersistedInputs.class).to(PersistedInputsImpl.class);
 
@@ -36,10 +36,13 @@ import org.graylog2.plugin.Message;
 import org.graylog2.plugin.ServerStatus;
 import org.graylog2.plugin.buffers.MessageEvent;
 import org.graylog2.plugin.outputs.MessageOutput;
-import org.graylog2.shared.buffers.WorkHandler;
+import org.graylog2.shared.buffers.BatchWorkHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CountDownLatch;
@@ -52,7 +55,7 @@ import java.util.stream.Collectors;
 
 import static com.codahale.metrics.MetricRegistry.name;
 
-public class OutputBufferProcessor implements WorkHandler<MessageEvent> {
+public class OutputBufferProcessor implements BatchWorkHandler<MessageEvent> {
 
     private static final Logger LOG = LoggerFactory.getLogger(OutputBufferProcessor.class);
 
@@ -193,6 +196,77 @@ public class OutputBufferProcessor implements WorkHandler<MessageEvent> {
         event.clearMessages();
     }
 
+    /**
+     * Writes a batch of messages to the outputs, see {@link #onEvent(MessageEvent)}.
+     * <p>
+     * The messages are grouped per output and each output receives all its messages of the batch with a single
+     * {@link MessageOutput#write(List)} call. The time limit for stream outputs applies to the whole batch.
+     * </p>
+     *
+     * @param events the messages to write to outputs
+     * @throws Exception
+     */
+    @Override
+    public void onEvents(List<MessageEvent> events) throws Exception {
+        incomingMessages.mark(events.size());
+
+        final List<Message> messages = new ArrayList<>(events.size());
+        // Outputs don't implement equals/hashCode, every output instance is a separate output
+        final Map<MessageOutput, List<Message>> streamOutputBatches = new IdentityHashMap<>();
+        for (final MessageEvent event : events) {
+            final Message msg = event.getMessage();
+            if (msg == null) {
+                LOG.debug("Skipping null message.");
+                continue;
+            }
+            LOG.trace("Processing message <{}> from OutputBuffer.", msg.getId());
+
+            final Set<MessageOutput> messageOutputs = outputRouter.getStreamOutputsForMessage(msg);
+            msg.recordCounter(serverStatus, "matched-outputs", messageOutputs.size());
+
+            messages.add(msg);
+            for (final MessageOutput output : messageOutputs) {
+                streamOutputBatches.computeIfAbsent(output, o -> new ArrayList<>()).add(msg);
+            }
+        }
+        if (messages.isEmpty()) {
+            return;
+        }
+
+        final Future<?> defaultOutputCompletion = processMessages(messages, defaultMessageOutput, new CountDownLatch(0));
+
+        final CountDownLatch streamOutputsDoneSignal = new CountDownLatch(streamOutputBatches.size());
+        for (final Map.Entry<MessageOutput, List<Message>> batch : streamOutputBatches.entrySet()) {
+            processMessages(batch.getValue(), batch.getKey(), streamOutputsDoneSignal);
+        }
+
+        // Wait until all writer threads for stream outputs have finished or timeout is reached.
+        if (!streamOutputsDoneSignal.await(configuration.getOutputModuleTimeout(), TimeUnit.MILLISECONDS)) {
+            LOG.warn("Timeout reached. Not waiting any longer for stream output writer threads to complete.");
+        }
+
+        // Block until the default output has finished to exert back pressure, see onEvent()
+        if (defaultOutputCompletion != null) {
+            Uninterruptibles.getUninterruptibly(defaultOutputCompletion);
+        } else {
+            LOG.error("The default output future was null, this is a bug!");
+        }
+
+        for (final Message msg : messages) {
+            if (msg.hasRecordings()) {
+                LOG.debug("Message event trace: {}", msg.recordingsAsString());
+            }
+        }
+
+        outputThroughput.inc(messages.size());
+
+        LOG.debug("Wrote batch of {} messages to all outputs. Finished handling.", messages.size());
+
+        for (final MessageEvent event : events) {
+            event.clearMessages();
+        }
+    }
+
     private Future<?> processMessage(final Message msg, final MessageOutput defaultMessageOutput) {
         return processMessage(msg, defaultMessageOutput, new CountDownLatch(0));
     }
@@ -234,6 +308,37 @@ public class OutputBufferProcessor implements WorkHandler<MessageEvent> {
         return future;
     }
 
+    private Future<?> processMessages(final List<Message> messages, final MessageOutput output, final CountDownLatch doneSignal) {
+        if (output == null) {
+            LOG.error("Output was null!");
+            doneSignal.countDown();
+            return Futures.immediateCancelledFuture();
+        }
+        if (!output.isRunning()) {
+            LOG.debug("Skipping stopped output {}", output.getClass().getName());
+            doneSignal.countDown();
+            return Futures.immediateCancelledFuture();
+        }
+
+        Future<?> future = null;
+        try {
+            LOG.debug("Writing {} messages to [{}].", messages.size(), output.getClass());
+            future = executor.submit(() -> {
+                try (Timer.Context ignored = processTime.time()) {
+                    output.write(messages);
+                } catch (Exception e) {
+                    LOG.error("Error in output [" + output.getClass() + "].", e);
+                } finally {
+                    doneSignal.countDown();
+                }
+            });
+        } catch (Exception e) {
+            LOG.error("Could not write message batch to output [" + output.getClass() + "].", e);
+            doneSignal.countDown();
+        }
+        return future;
+    }
+
     public interface Factory {
         OutputBufferProcessor create(@Assisted int ordinal);
     }
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.cluster;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.joschi.jadconfig.util.Duration;
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+import org.graylog2.plugin.cluster.ClusterConfigService;
+import org.graylog2.shared.utilities.AutoValueUtils;
+
+import java.util.Optional;
+import java.util.Set;
+
+import static com.codahale.metrics.MetricRegistry.name;
+import static com.google.common.base.MoreObjects.firstNonNull;
+
+/**
+ * {@link ClusterConfigService} which caches the results of {@link #get(String, Class)} in memory.
+ * <p>
+ * Cached entries are invalidated on every node through the {@link ClusterConfigChangedEvent} which is posted when a
+ * config is written or removed. If an event gets lost, entries expire after the configured maximum staleness.
+ * Entries are loaded atomically per key, so an invalidation which happens during a load waits for it and then removes
+ * the possibly outdated result.
+ * <p>
+ * Cached payloads are shared between all callers and must not be modified.
+ */
+public class CachingClusterConfigService implements ClusterConfigService {
+    private final ClusterConfigServiceImpl delegate;
+    private final Cache<String, CacheEntry> cache;
+    private final Meter hitMeter;
+    private final Meter missMeter;
+
+    @Inject
+    public CachingClusterConfigService(ClusterConfigServiceImpl delegate,
+                                       EventBus serverEventBus,
+                                       MetricRegistry metricRegistry,
+                                       @Named("cluster_config_cache_max_staleness") Duration maxStaleness) {
+        this.delegate = delegate;
+        this.cache = Caffeine.newBuilder()
+                .expireAfterWrite(maxStaleness.getQuantity(), maxStaleness.getUnit())
+                .build();
+        this.hitMeter = metricRegistry.meter(name(ClusterConfigService.class, "cache", "hits"));
+        this.missMeter = metricRegistry.meter(name(ClusterConfigService.class, "cache", "misses"));
+
+        // The service is a singleton which lives as long as the server, so it never needs to unregister.
+        serverEventBus.register(this);
+    }
+
+    @Subscribe
+    @SuppressWarnings("unused")
+    public void handleClusterConfigChanged(ClusterConfigChangedEvent event) {
+        invalidate(event.type());
+    }
+
+    @Override
+    public <T> T extractPayload(Object payload, Class<T> type) {
+        return delegate.extractPayload(payload, type);
+    }
+
+    @Override
+    public <T> T get(String key, Class<T> type) {
+        CacheEntry entry = cache.getIfPresent(key);
+        if (entry != null && entry.type() == type) {
+            hitMeter.mark();
+            return type.cast(entry.payload().orElse(null));
+        }
+
+        missMeter.mark();
+        if (entry == null) {
+            entry = cache.get(key, k -> new CacheEntry(type, Optional.ofNullable(delegate.get(key, type))));
+        }
+        if (entry.type() != type) {
+            // The key is cached for another payload type, which is rare enough to not cache this one as well.
+            return delegate.get(key, type);
+        }
+        return type.cast(entry.payload().orElse(null));
+    }
+
+    @Override
+    public <T> T get(Class<T> type) {
+        return get(type.getCanonicalName(), type);
+    }
+
+    @Override
+    public ClusterConfig getRaw(Class<?> type) {
+        return delegate.getRaw(type);
+    }
+
+    @Override
+    public <T> T getOrDefault(Class<T> type, T defaultValue) {
+        return firstNonNull(get(type), defaultValue);
+    }
+
+    @Override
+    public <T> void write(T payload) {
+        if (payload == null) {
+            delegate.write(null);
+            return;
+        }
+        write(AutoValueUtils.getCanonicalName(payload.getClass()), payload);
+    }
+
+    @Override
+    public <T> void write(String key, T payload) {
+        try {
+            delegate.write(key, payload);
+        } finally {
+            // Invalidate right away, so this node reads its own writes before the change event arrives.
+            invalidate(key);
+        }
+    }
+
+    @Override
+    public <T> int remove(Class<T> type) {
+        try {
+            return delegate.remove(type);
+        } finally {
+            invalidate(type.getCanonicalName());
+        }
+    }
+
+    @Override
+    public Set<Class<?>> list() {
+        return delegate.list();
+    }
+
+    private void invalidate(String key) {
+        cache.invalidate(key);
+    }
+
+    private record CacheEntry(Class<?> type, Optional<Object> payload) {}
+}
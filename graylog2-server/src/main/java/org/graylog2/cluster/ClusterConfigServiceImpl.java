@@ -148,15 +148,23 @@ public class ClusterConfigServiceImpl implements ClusterConfigService {
 
         collection.replaceOne(Filters.eq("type", key), clusterConfig, new ReplaceOptions().upsert(true));
 
-        ClusterConfigChangedEvent event = ClusterConfigChangedEvent.create(
-                DateTime.now(DateTimeZone.UTC), nodeId.getNodeId(), key);
-        clusterEventBus.post(event);
+        postChangedEvent(key);
     }
 
     @Override
     public <T> int remove(Class<T> type) {
         final String canonicalName = type.getCanonicalName();
-        return Ints.saturatedCast(collection.deleteMany(Filters.eq("type", canonicalName)).getDeletedCount());
+        final int deleted = Ints.saturatedCast(collection.deleteMany(Filters.eq("type", canonicalName)).getDeletedCount());
+        if (deleted > 0) {
+            postChangedEvent(canonicalName);
+        }
+        return deleted;
+    }
+
+    private void postChangedEvent(String key) {
+        ClusterConfigChangedEvent event = ClusterConfigChangedEvent.create(
+                DateTime.now(DateTimeZone.UTC), nodeId.getNodeId(), key);
+        clusterEventBus.post(event);
     }
 
     @Override
@@ -22,6 +22,7 @@ import org.graylog2.bootstrap.CliCommand;
 import org.graylog2.bootstrap.CliCommandsProvider;
 import org.graylog2.bootstrap.commands.MigrateCmd;
 import org.graylog2.commands.journal.JournalDecode;
+import org.graylog2.commands.journal.JournalMigrate;
 import org.graylog2.commands.journal.JournalShow;
 import org.graylog2.commands.journal.JournalTruncate;
 
@@ -39,7 +40,8 @@ public class ServerCommandsProvider implements CliCommandsProvider {
                         ImmutableSet.of(
                                 JournalShow.class,
                                 JournalTruncate.class,
-                                JournalDecode.class
+                                JournalDecode.class,
+                                JournalMigrate.class
                         ));
 
     }
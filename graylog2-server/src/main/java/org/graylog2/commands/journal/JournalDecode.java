@@ -33,6 +33,7 @@ import org.graylog2.plugin.MessageBindings;
 import org.graylog2.plugin.ResolvableInetSocketAddress;
 import org.graylog2.plugin.inject.Graylog2Module;
 import org.graylog2.plugin.inputs.codecs.Codec;
+import org.graylog2.plugin.journal.CodecConfigStore;
 import org.graylog2.plugin.journal.RawMessage;
 import org.graylog2.shared.journal.Journal;
 import org.slf4j.helpers.MessageFormatter;
@@ -97,12 +98,14 @@ public class JournalDecode extends AbstractJournalCommand {
                 injector.getInstance(Key.get(new TypeLiteral<Map<String, Codec.Factory<? extends Codec>>>() {
                 }));
 
+        final CodecConfigStore codecConfigStore = injector.getInstance(CodecConfigStore.class);
+
         final Long readOffset = range.lowerEndpoint();
         final long count = range.upperEndpoint() - range.lowerEndpoint() + 1;
         final List<Journal.JournalReadEntry> entries = journal.read(readOffset,
                 count);
         for (final Journal.JournalReadEntry entry : entries) {
-            final RawMessage raw = RawMessage.decode(entry.getPayload(), entry.getOffset());
+            final RawMessage raw = RawMessage.decode(entry.getPayload(), entry.getOffset(), codecConfigStore);
             if (raw == null) {
                 System.err.println(MessageFormatter.format("Journal entry at offset {} failed to decode",
                         entry.getOffset()));
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.commands.journal;
+
+import com.github.rvesse.airline.annotations.Command;
+import com.github.rvesse.airline.annotations.Option;
+import org.graylog2.shared.journal.Journal;
+import org.graylog2.shared.journal.MappedSegmentJournal;
+import org.graylog2.shared.journal.SegmentedJournal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+@SuppressWarnings("LocalCanBeFinal")
+@Command(name = "migrate", description = "Moves the unprocessed messages of the Kafka journal into the memory-mapped journal")
+public class JournalMigrate extends AbstractJournalCommand {
+    private static final byte[] NO_KEY = new byte[0];
+
+    @Option(name = {"-b", "--batch-size"}, description = "Number of messages copied at once")
+    private int batchSize = 1000;
+
+    public JournalMigrate() {
+        super("migrate-journal");
+    }
+
+    @Override
+    protected void runCommand() {
+        final MappedSegmentJournal target = injector.getInstance(MappedSegmentJournal.class);
+        final long committedOffset = journal.getCommittedOffset();
+        final long endOffset = journal.getLogEndOffset();
+        long offset = committedOffset == SegmentedJournal.DEFAULT_COMMITTED_OFFSET
+                ? journal.getLogStartOffset()
+                : Math.max(committedOffset + 1, journal.getLogStartOffset());
+        long migrated = 0;
+        try {
+            if (target.size() > 0) {
+                System.err.println("The memory-mapped journal in " + kafkaJournalConfiguration.getMessageJournalDir().toAbsolutePath()
+                        + " already contains messages, not migrating.");
+                return;
+            }
+            while (offset < endOffset) {
+                final List<Journal.JournalReadEntry> entries = journal.readNext(offset, batchSize);
+                if (entries.isEmpty()) {
+                    break;
+                }
+                final List<Journal.Entry> batch = new ArrayList<>(entries.size());
+                for (Journal.JournalReadEntry entry : entries) {
+                    batch.add(target.createEntry(NO_KEY, entry.getPayload()));
+                }
+                target.write(batch);
+                migrated += batch.size();
+                offset = entries.get(entries.size() - 1).getOffset() + 1;
+            }
+        } finally {
+            try {
+                target.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        // Only mark the messages as processed once they are safely stored in the new journal.
+        if (endOffset > 0) {
+            journal.markJournalOffsetCommitted(endOffset - 1);
+            journal.flush();
+        }
+        System.out.println("Migrated " + migrated + " messages from the Kafka journal to the memory-mapped journal in "
+                + kafkaJournalConfiguration.getMessageJournalDir().toAbsolutePath() + ".");
+        System.out.println("Set \"message_journal_type = mapped\" in the configuration file to use it.");
+        System.out.flush();
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.indexer.messages;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.github.joschi.jadconfig.util.Duration;
+import com.github.joschi.jadconfig.util.Size;
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+import jakarta.inject.Singleton;
+import org.graylog2.indexer.IndexSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Limits the size in bytes of the bulk requests sent by the {@link ChunkedBulkIndexer} and adapts the limit of each
+ * index set to how well the search cluster copes with the load (additive increase, multiplicative decrease):
+ * <ul>
+ *     <li>The limit is halved when a request is rejected as too large, with "too many requests" or by a circuit
+ *     breaker, or when the cluster rejects documents of a request because of indexing pressure.</li>
+ *     <li>It is lowered by a quarter when a request takes longer than the target latency.</li>
+ *     <li>It is raised by the minimum size when a request which used up at least half of it finished in time.</li>
+ * </ul>
+ * The size of a request is estimated from the accounted size of its messages.
+ */
+@Singleton
+public class AdaptiveBulkSizeController {
+    private static final Logger LOG = LoggerFactory.getLogger(AdaptiveBulkSizeController.class);
+
+    private static final double REJECTED_DECREASE_FACTOR = 0.5;
+    private static final double SLOW_DECREASE_FACTOR = 0.75;
+
+    private final boolean enabled;
+    private final long minBytes;
+    private final long maxBytes;
+    private final long targetLatencyNanos;
+    private final MetricRegistry metricRegistry;
+    private final ConcurrentMap<String, Limit> limits = new ConcurrentHashMap<>();
+
+    @Inject
+    public AdaptiveBulkSizeController(@Named("output_adaptive_bulk_size") boolean enabled,
+                                      @Named("output_adaptive_bulk_size_min") Size minSize,
+                                      @Named("output_adaptive_bulk_size_max") Size maxSize,
+                                      @Named("output_adaptive_bulk_target_latency") Duration targetLatency,
+                                      MetricRegistry metricRegistry) {
+        this.enabled = enabled;
+        this.minBytes = minSize.toBytes();
+        this.maxBytes = maxSize.toBytes();
+        this.targetLatencyNanos = targetLatency.toNanoseconds();
+        this.metricRegistry = metricRegistry;
+    }
+
+    public static AdaptiveBulkSizeController disabled() {
+        return new AdaptiveBulkSizeController(false, Size.bytes(1L), Size.bytes(1L), Duration.seconds(1L), new MetricRegistry());
+    }
+
+    /**
+     * Returns how many of the given requests fit into a single bulk request without exceeding the limit of any of
+     * their index sets. The result is at least one and at most {@code maxCount}.
+     */
+    public int fittingRequests(List<IndexingRequest> requests, int maxCount) {
+        final int count = Math.min(requests.size(), maxCount);
+        if (!enabled) {
+            return count;
+        }
+
+        IndexSet indexSet = null;
+        long limit = Long.MAX_VALUE;
+        long bytes = 0L;
+        for (int i = 0; i < count; i++) {
+            final IndexingRequest request = requests.get(i);
+            // Batches usually contain long runs of messages for the same index set
+            if (request.indexSet() != indexSet) {
+                indexSet = request.indexSet();
+                limit = Math.min(limit, limitFor(indexSet).bytes());
+            }
+            bytes += request.message().getSize();
+            if (i > 0 && bytes > limit) {
+                return i;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Adapts the limits of the index sets of a bulk request which has been processed by the cluster.
+     *
+     * @param requests         the requests of the bulk request
+     * @param latencyNanos     the time it took to send the bulk request and receive the response
+     * @param rejectedRequests the number of requests which the cluster rejected with "too many requests"
+     */
+    public void onResponse(List<IndexingRequest> requests, long latencyNanos, int rejectedRequests) {
+        if (!enabled) {
+            return;
+        }
+        final long bytes = requests.stream().mapToLong(request -> request.message().getSize()).sum();
+        for (IndexSet indexSet : indexSetsOf(requests)) {
+            final Limit limit = limitFor(indexSet);
+            if (rejectedRequests > 0) {
+                limit.decrease(REJECTED_DECREASE_FACTOR);
+            } else if (latencyNanos > targetLatencyNanos) {
+                limit.decrease(SLOW_DECREASE_FACTOR);
+            } else if (bytes >= limit.bytes() / 2) {
+                limit.increase();
+            }
+        }
+    }
+
+    /**
+     * Halves the limits of the index sets of a bulk request which the cluster rejected as a whole.
+     */
+    public void onRejected(List<IndexingRequest> requests) {
+        if (!enabled) {
+            return;
+        }
+        indexSetsOf(requests).forEach(indexSet -> limitFor(indexSet).decrease(REJECTED_DECREASE_FACTOR));
+    }
+
+    private static Set<IndexSet> indexSetsOf(List<IndexingRequest> requests) {
+        return requests.stream().map(IndexingRequest::indexSet).collect(Collectors.toSet());
+    }
+
+    private Limit limitFor(IndexSet indexSet) {
+        return limits.computeIfAbsent(indexSet.getConfig().indexPrefix(), Limit::new);
+    }
+
+    private class Limit {
+        private final String indexPrefix;
+        private final AtomicLong bytes = new AtomicLong(maxBytes);
+        private final Meter increases;
+        private final Meter decreases;
+
+        Limit(String indexPrefix) {
+            this.indexPrefix = indexPrefix;
+            this.increases = metricRegistry.meter(name(AdaptiveBulkSizeController.class, indexPrefix, "increases"));
+            this.decreases = metricRegistry.meter(name(AdaptiveBulkSizeController.class, indexPrefix, "decreases"));
+            metricRegistry.gauge(name(AdaptiveBulkSizeController.class, indexPrefix, "limit"), () -> (Gauge<Long>) bytes::get);
+        }
+
+        long bytes() {
+            return bytes.get();
+        }
+
+        void increase() {
+            if (bytes.getAndUpdate(current -> Math.min(maxBytes, current + minBytes)) < maxBytes) {
+                increases.mark();
+            }
+        }
+
+        void decrease(double factor) {
+            final long previous = bytes.getAndUpdate(current -> Math.max(minBytes, (long) (current * factor)));
+            if (previous > minBytes) {
+                decreases.mark();
+                LOG.debug("Lowered bulk request size limit for index set <{}> from {} to {} bytes.", indexPrefix, previous, bytes.get());
+            }
+        }
+    }
+}
@@ -16,6 +16,7 @@
  */
 package org.graylog2.indexer.messages;
 
+import jakarta.inject.Inject;
 import org.graylog2.indexer.ElasticsearchException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -29,13 +30,31 @@ public class ChunkedBulkIndexer {
     private static final Logger LOG = LoggerFactory.getLogger(ChunkedBulkIndexer.class);
     private static final RetryWait retryWait = new RetryWait(100);
 
+    private final AdaptiveBulkSizeController bulkSizeController;
+
+    /**
+     * @param rejectedMessages the number of messages the cluster rejected with "too many requests", e.g. because of
+     *                         indexing pressure
+     */
     public record BulkIndexResult(IndexingResults indexingResults, Supplier<String> failureMessage,
-                                  int indexedMessages) {
+                                  int indexedMessages, int rejectedMessages) {
+        public BulkIndexResult(IndexingResults indexingResults, Supplier<String> failureMessage, int indexedMessages) {
+            this(indexingResults, failureMessage, indexedMessages, 0);
+        }
     }
     public interface BulkIndex {
         BulkIndexResult apply(int indexedSuccessfully, IndexingResults previousResults, List<IndexingRequest> chunk) throws ChunkedBulkIndexer.EntityTooLargeException, IOException;
     }
 
+    public ChunkedBulkIndexer() {
+        this(AdaptiveBulkSizeController.disabled());
+    }
+
+    @Inject
+    public ChunkedBulkIndexer(AdaptiveBulkSizeController bulkSizeController) {
+        this.bulkSizeController = bulkSizeController;
+    }
+
     public IndexingResults index(List<IndexingRequest> messageList, BulkIndex bulkIndex) throws IOException {
         if (messageList.isEmpty()) {
             return IndexingResults.empty();
@@ -89,8 +108,16 @@ public class ChunkedBulkIndexer {
         int chunkCount = 1;
         int indexedSuccessfully = 0;
         while (partitioner.hasNext()) {
-            final var chunk = partitioner.nextPartition(chunkSize);
-            final var response = bulkIndex.apply(indexedSuccessfully, accumulatedResults.build(), chunk);
+            final var chunk = partitioner.nextPartition(bulkSizeController.fittingRequests(partitioner.remaining(), chunkSize));
+            final long start = System.nanoTime();
+            final BulkIndexResult response;
+            try {
+                response = bulkIndex.apply(indexedSuccessfully, accumulatedResults.build(), chunk);
+            } catch (EntityTooLargeException e) {
+                bulkSizeController.onRejected(chunk);
+                throw e;
+            }
+            bulkSizeController.onResponse(chunk, System.nanoTime() - start, response.rejectedMessages());
             indexedSuccessfully += chunk.size();
             final IndexingResults results = response.indexingResults();
             accumulatedResults.addResults(results);
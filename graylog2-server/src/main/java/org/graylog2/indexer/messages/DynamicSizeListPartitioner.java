@@ -41,6 +41,10 @@ public class DynamicSizeListPartitioner<T> {
         return partition;
     }
 
+    public List<T> remaining() {
+        return list.subList(offset, list.size());
+    }
+
     public boolean hasNext() {
         return offset < list.size();
     }
@@ -170,13 +170,15 @@ public class GelfChunkAggregator implements CodecAggregator {
             // remove before operating on it, to avoid racing too much with the clean up job, some race is inevitable, though.
             entry = getAndCleanupEntry(messageId);
 
-            final byte[] allChunks[] = new byte[sequenceCount][];
+            // The chunk data isn't concatenated here, the composite buffer is copied only once into the raw message.
+            final ByteBuf[] allChunks = new ByteBuf[sequenceCount];
             for (int i = 0; i < entry.payloadArray.length(); i++) {
                 final GELFMessageChunk messageChunk = entry.payloadArray.get(i);
                 if (messageChunk == null) {
                     log.debug("Couldn't read chunk {} of message {}, skipping this chunk.", i, messageId);
+                    allChunks[i] = Unpooled.EMPTY_BUFFER;
                 } else {
-                    allChunks[i] = messageChunk.getData();
+                    allChunks[i] = messageChunk.getDataBuffer();
                 }
             }
             completeMessages.inc();
@@ -19,8 +19,17 @@ package org.graylog2.inputs.codecs;
 import com.eaio.uuid.UUID;
 import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.BigIntegerNode;
+import com.fasterxml.jackson.databind.node.BooleanNode;
+import com.fasterxml.jackson.databind.node.DoubleNode;
+import com.fasterxml.jackson.databind.node.IntNode;
+import com.fasterxml.jackson.databind.node.LongNode;
+import com.fasterxml.jackson.databind.node.MissingNode;
+import com.fasterxml.jackson.databind.node.NullNode;
+import com.fasterxml.jackson.databind.node.TextNode;
 import jakarta.inject.Inject;
 import org.apache.commons.lang3.StringUtils;
 import org.graylog2.inputs.codecs.gelf.GELFBulkDroppedMsgService;
@@ -35,15 +44,29 @@ import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
 import java.nio.charset.Charset;
-import java.util.Iterator;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
 
 public class GelfDecoder {
     private static final Logger log = LoggerFactory.getLogger(GelfDecoder.class);
 
+    // Inflated payloads up to this size keep their buffer for the next message decoded on the same thread.
+    private static final int MAX_RETAINED_BUFFER_SIZE = 1024 * 1024;
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+    private static final ThreadLocal<byte[]> INFLATE_BUFFER = ThreadLocal.withInitial(() -> new byte[8192]);
+
     private final MessageFactory messageFactory;
     private final Charset charset;
     private final ObjectMapper objectMapper;
@@ -68,35 +91,48 @@ public class GelfDecoder {
 
     public Optional<Message> decode(final RawMessage rawMessage) {
         final GELFMessage gelfMessage = new GELFMessage(rawMessage.getPayload(), rawMessage.getRemoteAddress());
-        final String json = gelfMessage.getJSON(decompressSizeLimit, charset);
-
-        final JsonNode node;
-
-        try {
-            final JsonParser parser = jsonFactory.createParser(json);
-            node = objectMapper.readTree(parser);
 
-            if (node == null || node.isNull()) {
-                throw new IOException("null result");
+        // Parse straight from the (inflated) payload bytes when they are plain UTF-8 JSON. Anything the byte parser
+        // rejects is decoded again from the charset-decoded string so that lenient decoding and error reporting
+        // stay exactly the same.
+        final JsonBytes jsonBytes = jsonBytes(gelfMessage);
+        GelfFields gelfFields = null;
+        if (jsonBytes != null) {
+            try {
+                gelfFields = readFields(jsonFactory.createParser(jsonBytes.bytes, 0, jsonBytes.length));
+            } catch (final Exception e) {
+                log.debug("Unable to parse GELF message <{}> from raw bytes, falling back to string decoding", rawMessage.getId(), e);
             }
+        }
 
-            if (parser.nextToken() != null) {
-                gelfBulkDroppedMsgService.handleDroppedMsgOccurrence(rawMessage);
+        final Supplier<String> json;
+        if (gelfFields != null) {
+            json = jsonBytes::asString;
+        } else {
+            final String jsonString = gelfMessage.getJSON(decompressSizeLimit, charset);
+            try {
+                gelfFields = readFields(jsonFactory.createParser(jsonString));
+            } catch (final Exception e) {
+                throw InputProcessingException.create("JSON is null/could not be parsed (invalid JSON)",
+                        e, rawMessage, jsonString);
             }
+            json = () -> jsonString;
+        }
 
-        } catch (final Exception e) {
-            throw InputProcessingException.create("JSON is null/could not be parsed (invalid JSON)",
-                    e, rawMessage, json);
+        if (gelfFields.trailingContent()) {
+            gelfBulkDroppedMsgService.handleDroppedMsgOccurrence(rawMessage);
         }
 
+        final Map<String, Object> fields = gelfFields.fields();
+
         try {
-            validateGELFMessage(node, rawMessage.getId(), rawMessage.getRemoteAddress());
+            validateGELFMessage(fields, rawMessage.getId(), rawMessage.getRemoteAddress());
         } catch (IllegalArgumentException e) {
-            throw InputProcessingException.create(e.getMessage(), e, rawMessage, json);
+            throw InputProcessingException.create(e.getMessage(), e, rawMessage, json.get());
         }
 
         // Timestamp.
-        final double messageTimestamp = timestampValue(node);
+        final double messageTimestamp = timestampValue(fields);
         final DateTime timestamp;
         if (messageTimestamp <= 0) {
             timestamp = rawMessage.getTimestamp();
@@ -106,42 +142,38 @@ public class GelfDecoder {
         }
 
         final Message message = messageFactory.createMessage(
-                stringValue(node, "short_message"),
-                stringValue(node, "host"),
+                stringValue(fields, "short_message"),
+                stringValue(fields, "host"),
                 timestamp
         );
 
-        message.addField(Message.FIELD_FULL_MESSAGE, stringValue(node, "full_message"));
+        message.addField(Message.FIELD_FULL_MESSAGE, stringValue(fields, "full_message"));
 
-        final String file = stringValue(node, "file");
+        final String file = stringValue(fields, "file");
 
         if (file != null && !file.isEmpty()) {
             message.addField("file", file);
         }
 
-        final long line = longValue(node, "line");
+        final long line = longValue(fields, "line");
         if (line > -1) {
             message.addField("line", line);
         }
 
         // Level is set by server if not specified by client.
-        final int level = intValue(node, "level");
+        final int level = intValue(fields, "level");
         if (level > -1) {
             message.addField("level", level);
         }
 
         // Facility is set by server if not specified by client.
-        final String facility = stringValue(node, "facility");
+        final String facility = stringValue(fields, "facility");
         if (facility != null && !facility.isEmpty()) {
             message.addField("facility", facility);
         }
 
         // Add additional data if there is some.
-        final Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
-
-        while (fields.hasNext()) {
-            final Map.Entry<String, JsonNode> entry = fields.next();
-
+        for (final Map.Entry<String, Object> entry : fields.entrySet()) {
             String key = entry.getKey();
             // Do not index useless GELF "version" field.
             if ("version".equals(key)) {
@@ -164,20 +196,20 @@ public class GelfDecoder {
             }
 
             // Convert JSON containers to Strings, and pick a suitable number representation.
-            final JsonNode value = entry.getValue();
+            final Object value = entry.getValue();
 
             final Object fieldValue;
-            if (value.isContainerNode()) {
-                fieldValue = value.toString();
-            } else if (value.isFloatingPointNumber()) {
-                fieldValue = value.asDouble();
-            } else if (value.isIntegralNumber()) {
-                fieldValue = value.asLong();
-            } else if (value.isNull()) {
+            if (value instanceof JsonNode node && node.isContainerNode()) {
+                fieldValue = node.toString();
+            } else if (value instanceof Double) {
+                fieldValue = value;
+            } else if (value instanceof Number number) {
+                fieldValue = number.longValue();
+            } else if (value instanceof NullNode) {
                 log.debug("Field [{}] is NULL. Skipping.", key);
                 continue;
-            } else if (value.isTextual()) {
-                fieldValue = value.asText();
+            } else if (value instanceof String) {
+                fieldValue = value;
             } else {
                 log.debug("Field [{}] has unknown value type. Skipping.", key);
                 continue;
@@ -189,10 +221,132 @@ public class GelfDecoder {
         return Optional.of(message);
     }
 
-    private void validateGELFMessage(JsonNode jsonNode, UUID id, ResolvableInetSocketAddress remoteAddress) {
+    /**
+     * Returns the JSON bytes of the given GELF message if they can be handed to the byte-based JSON parser, i. e. the
+     * configured charset is UTF-8 and the payload starts with a JSON object. Compressed payloads are inflated into a buffer which is
+     * reused by the current thread, honoring the configured decompression size limit.
+     *
+     * @return the JSON bytes or {@code null} if the payload has to be decoded through {@link GELFMessage#getJSON(long, Charset)}
+     */
+    @Nullable
+    private JsonBytes jsonBytes(GELFMessage gelfMessage) {
+        final byte[] payload = gelfMessage.getPayload();
+        // The byte parser only reads UTF-8, payloads in any other charset, compressed or not, are decoded as strings.
+        if (payload.length < 2 || decompressSizeLimit < 0 || !StandardCharsets.UTF_8.equals(charset)) {
+            return null;
+        }
+
+        final JsonBytes jsonBytes;
+        try {
+            jsonBytes = switch (gelfMessage.getGELFType()) {
+                case ZLIB -> inflate(new InflaterInputStream(new ByteArrayInputStream(payload)));
+                case GZIP -> inflate(new GZIPInputStream(new ByteArrayInputStream(payload)));
+                case UNCOMPRESSED -> new JsonBytes(payload, payload.length);
+                case CHUNKED, UNSUPPORTED -> null;
+            };
+        } catch (IOException e) {
+            return null;
+        }
+
+        return jsonBytes != null && isUtf8Object(jsonBytes) ? jsonBytes : null;
+    }
+
+    private JsonBytes inflate(InputStream compressed) throws IOException {
+        try (final InputStream in = compressed) {
+            byte[] buffer = INFLATE_BUFFER.get();
+            int length = 0;
+            while (length < decompressSizeLimit) {
+                if (length == buffer.length) {
+                    final long grownSize = Math.min(Math.min(2L * buffer.length, decompressSizeLimit), MAX_ARRAY_SIZE);
+                    if (grownSize <= length) {
+                        throw new IOException("Decompressed GELF message exceeds maximum buffer size");
+                    }
+                    buffer = Arrays.copyOf(buffer, (int) grownSize);
+                    if (buffer.length <= MAX_RETAINED_BUFFER_SIZE) {
+                        INFLATE_BUFFER.set(buffer);
+                    }
+                }
+                final int read = in.read(buffer, length, (int) Math.min(buffer.length - length, decompressSizeLimit - length));
+                if (read < 0) {
+                    break;
+                }
+                length += read;
+            }
+            return new JsonBytes(buffer, length);
+        }
+    }
+
+    // The byte parser auto-detects UTF-16/UTF-32 input, which the string-based decoding never accepted.
+    private static boolean isUtf8Object(JsonBytes jsonBytes) {
+        return jsonBytes.length >= 2 && jsonBytes.bytes[0] == '{' && jsonBytes.bytes[1] != 0;
+    }
+
+    /**
+     * Reads the top-level JSON object token by token. Scalar values are kept as plain Java objects ({@link String},
+     * {@link Integer}, {@link Long}, {@link BigInteger}, {@link Double}, {@link Boolean}), JSON {@code null} as
+     * {@link NullNode} and nested objects and arrays as {@link JsonNode}. Duplicate keys keep the position of their
+     * first and the value of their last occurrence, just like {@link ObjectMapper#readTree(JsonParser)}.
+     */
+    private GelfFields readFields(JsonParser parser) throws IOException {
+        try (parser) {
+            final JsonToken firstToken = parser.nextToken();
+            if (firstToken == null || firstToken == JsonToken.VALUE_NULL) {
+                throw new IOException("null result");
+            }
+
+            final Map<String, Object> fields = new LinkedHashMap<>();
+            if (firstToken == JsonToken.START_OBJECT) {
+                String key;
+                while ((key = parser.nextFieldName()) != null) {
+                    fields.put(key, readValue(parser, parser.nextToken()));
+                }
+            } else {
+                // Not a JSON object, validation will reject the message for missing mandatory fields.
+                parser.skipChildren();
+            }
+
+            return new GelfFields(fields, parser.nextToken() != null);
+        }
+    }
+
+    private Object readValue(JsonParser parser, JsonToken token) throws IOException {
+        return switch (token) {
+            case VALUE_STRING -> parser.getText();
+            case VALUE_NUMBER_INT -> parser.getNumberValue();
+            case VALUE_NUMBER_FLOAT -> parser.getDoubleValue();
+            case VALUE_TRUE -> Boolean.TRUE;
+            case VALUE_FALSE -> Boolean.FALSE;
+            case VALUE_NULL -> NullNode.getInstance();
+            default -> objectMapper.readTree(parser);
+        };
+    }
+
+    private static JsonNode node(final Map<String, Object> fields, final String fieldName) {
+        final Object value = fields.get(fieldName);
+        return value == null ? MissingNode.getInstance() : toNode(value);
+    }
+
+    private static JsonNode toNode(final Object value) {
+        if (value instanceof String text) {
+            return TextNode.valueOf(text);
+        } else if (value instanceof Integer intValue) {
+            return IntNode.valueOf(intValue);
+        } else if (value instanceof Long longValue) {
+            return LongNode.valueOf(longValue);
+        } else if (value instanceof BigInteger bigInteger) {
+            return BigIntegerNode.valueOf(bigInteger);
+        } else if (value instanceof Double doubleValue) {
+            return DoubleNode.valueOf(doubleValue);
+        } else if (value instanceof Boolean booleanValue) {
+            return BooleanNode.valueOf(booleanValue);
+        }
+        return (JsonNode) value;
+    }
+
+    private void validateGELFMessage(Map<String, Object> fields, UUID id, ResolvableInetSocketAddress remoteAddress) {
         final String prefix = "GELF message <" + id + "> " + (remoteAddress == null ? "" : "(received from <" + remoteAddress + ">) ");
 
-        final JsonNode hostNode = jsonNode.path("host");
+        final JsonNode hostNode = node(fields, "host");
         if (hostNode.isMissingNode()) {
             log.warn(prefix + "is missing mandatory \"host\" field.");
         } else {
@@ -204,8 +358,8 @@ public class GelfDecoder {
             }
         }
 
-        final JsonNode shortMessageNode = jsonNode.path("short_message");
-        final JsonNode messageNode = jsonNode.path("message");
+        final JsonNode shortMessageNode = node(fields, "short_message");
+        final JsonNode messageNode = node(fields, "message");
         if (!shortMessageNode.isMissingNode()) {
             if (!shortMessageNode.isTextual()) {
                 throw new IllegalArgumentException(prefix + "has invalid \"short_message\": " + shortMessageNode.asText());
@@ -224,47 +378,29 @@ public class GelfDecoder {
             throw new IllegalArgumentException(prefix + "is missing mandatory \"short_message\" or \"message\" field.");
         }
 
-        final JsonNode timestampNode = jsonNode.path("timestamp");
+        final JsonNode timestampNode = node(fields, "timestamp");
         if (timestampNode.isValueNode() && !timestampNode.isNumber()) {
             log.warn(prefix + "has invalid \"timestamp\": {}  (type: {})", timestampNode.asText(), timestampNode.getNodeType().name());
         }
     }
 
-    private static String stringValue(final JsonNode json, final String fieldName) {
-        if (json != null) {
-            final JsonNode value = json.get(fieldName);
-
-            if (value != null) {
-                return value.asText();
-            }
-        }
-        return null;
+    private static String stringValue(final Map<String, Object> fields, final String fieldName) {
+        final Object value = fields.get(fieldName);
+        return value == null ? null : toNode(value).asText();
     }
 
-    private static long longValue(final JsonNode json, final String fieldName) {
-        if (json != null) {
-            final JsonNode value = json.get(fieldName);
-
-            if (value != null) {
-                return value.asLong(-1L);
-            }
-        }
-        return -1L;
+    private static long longValue(final Map<String, Object> fields, final String fieldName) {
+        final Object value = fields.get(fieldName);
+        return value == null ? -1L : toNode(value).asLong(-1L);
     }
 
-    private static int intValue(final JsonNode json, final String fieldName) {
-        if (json != null) {
-            final JsonNode value = json.get(fieldName);
-
-            if (value != null) {
-                return value.asInt(-1);
-            }
-        }
-        return -1;
+    private static int intValue(final Map<String, Object> fields, final String fieldName) {
+        final Object value = fields.get(fieldName);
+        return value == null ? -1 : toNode(value).asInt(-1);
     }
 
-    private static double timestampValue(final JsonNode json) {
-        final JsonNode value = json.path(Message.FIELD_TIMESTAMP);
+    private static double timestampValue(final Map<String, Object> fields) {
+        final JsonNode value = node(fields, Message.FIELD_TIMESTAMP);
         if (value.isNumber()) {
             return value.asDouble(-1.0);
         } else if (value.isTextual()) {
@@ -278,4 +414,21 @@ public class GelfDecoder {
             return -1.0;
         }
     }
+
+    private record GelfFields(Map<String, Object> fields, boolean trailingContent) {
+    }
+
+    private static final class JsonBytes {
+        private final byte[] bytes;
+        private final int length;
+
+        JsonBytes(byte[] bytes, int length) {
+            this.bytes = bytes;
+            this.length = length;
+        }
+
+        String asString() {
+            return new String(bytes, 0, length, StandardCharsets.UTF_8);
+        }
+    }
 }
@@ -73,13 +73,23 @@ public class GELFMessage {
     public String getJSON(long maxBytes) {
         return getJSON(maxBytes, StandardCharsets.UTF_8);
     }
+
+    /**
+     * Return the JSON payload of the GELF message, decoded with the given charset.
+     *
+     * @param maxBytes The maximum number of bytes to read from a compressed GELF payload. {@code -1} means unlimited.
+     * @param charset  The charset of the (decompressed) payload.
+     * @return The extracted JSON payload of the GELF message.
+     * @see Tools#decompressGzip(byte[], long, Charset)
+     * @see Tools#decompressZlib(byte[], long, Charset)
+     */
     public String getJSON(long maxBytes, Charset charset) {
         try {
             switch (getGELFType()) {
                 case ZLIB:
-                    return Tools.decompressZlib(payload, maxBytes);
+                    return Tools.decompressZlib(payload, maxBytes, charset);
                 case GZIP:
-                    return Tools.decompressGzip(payload, maxBytes);
+                    return Tools.decompressGzip(payload, maxBytes, charset);
                 case UNCOMPRESSED:
                     return new String(payload, charset);
                 case CHUNKED:
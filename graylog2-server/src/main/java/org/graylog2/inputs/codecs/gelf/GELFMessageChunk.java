@@ -50,7 +50,7 @@ public final class GELFMessageChunk {
     public static final int HEADER_TOTAL_LENGTH = 12;
 
     private String id;
-    private byte[] data = new byte[1];
+    private byte[] data;
     private int sequenceNumber = -1;
     private int sequenceCount = -1;
     private long arrival = -1L;
@@ -86,9 +86,19 @@ public final class GELFMessageChunk {
     }
 
     public byte[] getData() {
+        if (this.data == null) {
+            extractData();
+        }
         return this.data;
     }
 
+    /**
+     * @return a view of the chunk data which, unlike {@link #getData()}, doesn't copy it
+     */
+    public ByteBuf getDataBuffer() {
+        return payload.slice(HEADER_TOTAL_LENGTH, payload.readableBytes() - HEADER_TOTAL_LENGTH);
+    }
+
     public int getSequenceCount() {
         return this.sequenceCount;
     }
@@ -105,7 +115,6 @@ public final class GELFMessageChunk {
         extractId();
         extractSequenceCount();
         extractSequenceNumber();
-        extractData();
         this.arrival = Tools.nowUTC().getMillis();
     }
 
@@ -43,6 +43,9 @@ public class NettyTransportConfiguration {
     @Parameter(value = PREFIX + "num_threads", required = true, validators = PositiveIntegerValidator.class)
     private int numThreads = Runtime.getRuntime().availableProcessors() * 2;
 
+    @Parameter(value = PREFIX + "udp_recvmmsg_batch_size", validators = PositiveIntegerValidator.class)
+    private int udpRecvmmsgBatchSize = 1;
+
     public NettyTransportConfiguration() {
     }
 
@@ -53,6 +56,12 @@ public class NettyTransportConfiguration {
         this.numThreads = numThreads;
     }
 
+    @VisibleForTesting
+    public NettyTransportConfiguration(String type, String tlsProvider, int numThreads, int udpRecvmmsgBatchSize) {
+        this(type, tlsProvider, numThreads);
+        this.udpRecvmmsgBatchSize = udpRecvmmsgBatchSize;
+    }
+
     public NettyTransportType getType() {
         switch (type.toLowerCase(Locale.ROOT)) {
             case "epoll":
@@ -105,4 +114,12 @@ public class NettyTransportConfiguration {
     public int getNumThreads() {
         return numThreads;
     }
+
+    /**
+     * The number of datagrams read with a single {@code recvmmsg} system call by UDP inputs using the epoll transport.
+     * A value of {@code 1} reads one datagram per system call.
+     */
+    public int getUdpRecvmmsgBatchSize() {
+        return udpRecvmmsgBatchSize;
+    }
 }
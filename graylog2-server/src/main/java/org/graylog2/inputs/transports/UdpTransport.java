@@ -29,6 +29,7 @@ import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.FixedRecvByteBufAllocator;
+import io.netty.channel.epoll.EpollChannelOption;
 import io.netty.channel.group.ChannelGroup;
 import io.netty.channel.group.DefaultChannelGroup;
 import io.netty.channel.socket.DatagramChannelConfig;
@@ -62,6 +63,9 @@ import java.util.concurrent.Callable;
 public class UdpTransport extends NettyTransport {
     private static final Logger LOG = LoggerFactory.getLogger(UdpTransport.class);
 
+    // Maximum possible UDP packet size
+    private static final int MAX_DATAGRAM_SIZE = 65535;
+
     private final NettyTransportConfiguration nettyTransportConfiguration;
     private final ChannelGroup channels;
     private EventLoopGroup eventLoopGroup;
@@ -85,14 +89,32 @@ public class UdpTransport extends NettyTransport {
 
         eventLoopGroup = eventLoopGroupFactory.create(workerThreads, localRegistry, "workers");
 
-        return new Bootstrap()
+        final Bootstrap bootstrap = new Bootstrap()
                 .group(eventLoopGroup)
                 .channelFactory(new DatagramChannelFactory(transportType))
-                .option(ChannelOption.RCVBUF_ALLOCATOR, new FixedRecvByteBufAllocator(65535)) // Maximum possible UDP packet size
+                .option(ChannelOption.RCVBUF_ALLOCATOR, new FixedRecvByteBufAllocator(getReceiveBufferAllocationSize(transportType)))
                 .option(ChannelOption.SO_RCVBUF, getRecvBufferSize())
                 .option(UnixChannelOption.SO_REUSEPORT, true)
-                .handler(getChannelInitializer(getChannelHandlers(input)))
-                .validate();
+                .handler(getChannelInitializer(getChannelHandlers(input)));
+
+        if (isRecvmmsgEnabled(transportType)) {
+            // Netty reads as many datagrams with one recvmmsg call as slices of this size fit into the receive buffer.
+            LOG.debug("Reading up to {} datagrams per recvmmsg call", nettyTransportConfiguration.getUdpRecvmmsgBatchSize());
+            bootstrap.option(EpollChannelOption.MAX_DATAGRAM_PAYLOAD_SIZE, MAX_DATAGRAM_SIZE);
+        }
+
+        return bootstrap.validate();
+    }
+
+    private boolean isRecvmmsgEnabled(NettyTransportType transportType) {
+        return transportType == NettyTransportType.EPOLL && nettyTransportConfiguration.getUdpRecvmmsgBatchSize() > 1;
+    }
+
+    @VisibleForTesting
+    int getReceiveBufferAllocationSize(NettyTransportType transportType) {
+        return isRecvmmsgEnabled(transportType)
+                ? MAX_DATAGRAM_SIZE * nettyTransportConfiguration.getUdpRecvmmsgBatchSize()
+                : MAX_DATAGRAM_SIZE;
     }
 
     @Override
@@ -39,10 +39,8 @@ public class EnvelopeMessageHandler extends SimpleChannelInboundHandler<Addresse
 
     @Override
     protected void channelRead0(ChannelHandlerContext ctx, AddressedEnvelope<ByteBuf, InetSocketAddress> envelope) throws Exception {
-        final ByteBuf msg = envelope.content();
-        final byte[] bytes = new byte[msg.readableBytes()];
-        msg.readBytes(bytes);
-        final RawMessage raw = new RawMessage(bytes, envelope.sender());
+        // Copy the datagram straight into the journal payload, the buffer is released once this handler returns.
+        final RawMessage raw = new RawMessage(envelope.content().nioBuffer(), envelope.sender());
         input.processRawMessage(raw);
     }
 
@@ -26,7 +26,12 @@ import org.graylog2.plugin.lookup.LookupResult;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 import static com.google.common.collect.Streams.stream;
@@ -70,8 +75,46 @@ public abstract class LookupTable {
 
     @Nullable
     public LookupResult lookup(@Nonnull Object key) {
-        final LookupResult result = cache().get(LookupCacheKey.create(dataAdapter(), key), () -> dataAdapter().get(key));
+        return withDefaults(cache().get(LookupCacheKey.create(dataAdapter(), key), () -> dataAdapter().get(key)));
+    }
+
+    /**
+     * Looks up the given key without blocking the calling thread if the data adapter supports it. Concurrent lookups
+     * for the same key which miss the cache might share a single data adapter request.
+     */
+    public CompletableFuture<LookupResult> lookupAsync(@Nonnull Object key) {
+        return cache().getAsync(LookupCacheKey.create(dataAdapter(), key), () -> dataAdapter().getAsync(key))
+                .thenApply(this::withDefaults);
+    }
+
+    /**
+     * Looks up all given keys. Keys which are not cached are passed to the data adapter in a single
+     * {@link LookupDataAdapter#getAll(Collection)} call.
+     *
+     * @return the lookup results by key, in the iteration order of the given keys
+     */
+    public Map<Object, LookupResult> lookupAll(@Nonnull Collection<?> keys) {
+        final Map<LookupCacheKey, Object> keysByCacheKey = new LinkedHashMap<>(keys.size());
+        for (Object key : keys) {
+            keysByCacheKey.put(LookupCacheKey.create(dataAdapter(), key), key);
+        }
+
+        final Map<LookupCacheKey, LookupResult> cached = cache().getAll(keysByCacheKey.keySet(), missingKeys -> {
+            final Map<Object, LookupResult> loaded = dataAdapter().getAll(missingKeys.stream().map(LookupCacheKey::key).toList());
+            final Map<LookupCacheKey, LookupResult> results = new HashMap<>(missingKeys.size());
+            for (LookupCacheKey cacheKey : missingKeys) {
+                results.put(cacheKey, loaded.getOrDefault(cacheKey.key(), LookupResult.empty()));
+            }
+            return results;
+        });
+
+        final Map<Object, LookupResult> results = new LinkedHashMap<>(keysByCacheKey.size());
+        keysByCacheKey.forEach((cacheKey, key) ->
+                results.put(key, withDefaults(cached.getOrDefault(cacheKey, LookupResult.empty()))));
+        return results;
+    }
 
+    private LookupResult withDefaults(LookupResult result) {
         if (result.hasError()) {
             return result;
         }
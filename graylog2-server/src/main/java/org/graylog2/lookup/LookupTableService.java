@@ -48,12 +48,14 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CountDownLatch;
@@ -303,6 +305,12 @@ public class LookupTableService extends AbstractIdleService {
                 .filter(Objects::nonNull)
                 .forEach(dataAdapter -> {
                     liveAdapters.remove(dataAdapter.name());
+                    dataAdapter.addListener(new Service.Listener() {
+                        @Override
+                        public void terminated(State from) {
+                            dataAdapter.delete();
+                        }
+                    }, scheduler);
                     dataAdapter.stopAsync();
                 }), 0, TimeUnit.SECONDS);
     }
@@ -638,8 +646,39 @@ public class LookupTableService extends AbstractIdleService {
                 return LookupResult.withError();
             }
 
-            final LookupResult result = lookupTable.lookup(key);
+            return normalizeResult(lookupTable.lookup(key));
+        }
+
+        /**
+         * Looks up the given key without blocking the calling thread if the data adapter of the table supports it.
+         */
+        public CompletableFuture<LookupResult> lookupAsync(@Nonnull Object key) {
+            final LookupTable lookupTable = lookupTableService.getTable(lookupTableName);
+            if (lookupTable == null) {
+                return CompletableFuture.completedFuture(LookupResult.withError());
+            }
+
+            return lookupTable.lookupAsync(key).thenApply(Function::normalizeResult);
+        }
+
+        /**
+         * Looks up all given keys, resolving the keys which are not cached in a single data adapter call.
+         *
+         * @return the lookup results by key, in the iteration order of the given keys
+         */
+        public Map<Object, LookupResult> lookupAll(@Nonnull Collection<?> keys) {
+            final LookupTable lookupTable = lookupTableService.getTable(lookupTableName);
+            final Map<Object, LookupResult> results = new LinkedHashMap<>(keys.size());
+            if (lookupTable == null) {
+                keys.forEach(key -> results.put(key, LookupResult.withError()));
+                return results;
+            }
+
+            lookupTable.lookupAll(keys).forEach((key, result) -> results.put(key, normalizeResult(result)));
+            return results;
+        }
 
+        private static LookupResult normalizeResult(@Nullable LookupResult result) {
             if (result == null) {
                 return LookupResult.empty();
             }
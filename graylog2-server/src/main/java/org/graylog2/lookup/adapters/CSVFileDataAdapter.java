@@ -32,6 +32,7 @@ import com.google.common.net.InetAddresses;
 import com.google.common.primitives.Ints;
 import com.google.inject.assistedinject.Assisted;
 import jakarta.inject.Inject;
+import jakarta.inject.Named;
 import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotEmpty;
 import jakarta.validation.constraints.Size;
@@ -60,8 +61,10 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -87,7 +90,9 @@ public class CSVFileDataAdapter extends LookupDataAdapter {
     private final AllowedAuxiliaryPathChecker pathChecker;
     private final AtomicReference<Map<String, String>> lookupRef = new AtomicReference<>(ImmutableMap.of());
     private final AtomicReference<CIDRPatriciaTrie> cidrLookupRef = new AtomicReference<>(new CIDRPatriciaTrie());
+    private final AtomicReference<CSVFileIndex> indexRef = new AtomicReference<>();
     private final String name;
+    private final Path dataDir;
 
     private FileInfo fileInfo = FileInfo.empty();
 
@@ -96,11 +101,13 @@ public class CSVFileDataAdapter extends LookupDataAdapter {
                               @Assisted("name") String name,
                               @Assisted LookupDataAdapterConfiguration config,
                               MetricRegistry metricRegistry,
-                              AllowedAuxiliaryPathChecker pathChecker) {
+                              AllowedAuxiliaryPathChecker pathChecker,
+                              @Named("data_dir") Path dataDir) {
         super(id, name, config, metricRegistry);
         this.name = name;
         this.config = (Config) config;
         this.pathChecker = pathChecker;
+        this.dataDir = dataDir;
     }
 
     @Override
@@ -165,11 +172,101 @@ public class CSVFileDataAdapter extends LookupDataAdapter {
     }
 
     private void setLookupRefFromCSV() throws IOException {
-        final InputStream inputStream = Files.newInputStream(Paths.get(config.path()));
-        final InputStreamReader fileReader = new InputStreamReader(inputStream, StandardCharsets.UTF_8);
+        if (config.isMemoryMapped()) {
+            setIndexFromCSV();
+            return;
+        }
+        // Memory-mapped mode might have been turned off
+        indexRef.set(null);
+        deleteIndexFile();
+
         final ImmutableMap.Builder<String, String> newLookupBuilder = ImmutableMap.builder();
         final CIDRPatriciaTrie cidrLookupTrie = new CIDRPatriciaTrie();
 
+        readCSV((key, value) -> {
+            if (!config.isCidrLookup()) {
+                newLookupBuilder.put(key, value);
+            } else {
+                cidrLookupTrie.insertCIDR(key, value);
+            }
+        });
+
+        if (config.isCidrLookup()) {
+            cidrLookupRef.set(cidrLookupTrie);
+        } else {
+            lookupRef.set(newLookupBuilder.build());
+        }
+    }
+
+    /**
+     * Compiles the CSV file into an index file in the data directory and swaps in a memory-mapped view of it. An
+     * existing index file is reused if it has been compiled from the same version of the CSV file, so restarting
+     * the server does not parse the whole file again.
+     */
+    private void setIndexFromCSV() throws IOException {
+        final Path csvPath = Paths.get(config.path());
+        final long sourceSize = Files.size(csvPath);
+        final long sourceModified = Files.getLastModifiedTime(csvPath).toMillis();
+        final int settings = config.indexSettingsHash();
+        final Path indexFile = indexFile();
+
+        final CSVFileIndex current = indexRef.get();
+        if (current != null && current.isUpToDate(config.isCidrLookup(), settings, sourceSize, sourceModified)) {
+            return;
+        }
+        if (current == null && Files.exists(indexFile)) {
+            try {
+                final CSVFileIndex existing = CSVFileIndex.open(indexFile);
+                if (existing.isUpToDate(config.isCidrLookup(), settings, sourceSize, sourceModified)) {
+                    LOG.debug("Using existing index file {} for CSV file {}", indexFile, config.path());
+                    indexRef.set(existing);
+                    return;
+                }
+            } catch (IOException e) {
+                LOG.warn("Couldn't open index file {} for CSV file {}, rebuilding it: {}", indexFile, config.path(), e.getMessage());
+            }
+        }
+
+        Files.createDirectories(indexFile.getParent());
+        // A unique file name, because the old and the new adapter instance might both build the index after an update
+        final Path tmpFile = Files.createTempFile(indexFile.getParent(), f("csv-%s-", id()), ".idx.tmp");
+        final CSVFileIndex index;
+        try {
+            try (final CSVFileIndex.Writer writer = CSVFileIndex.writer(tmpFile, config.isCidrLookup())) {
+                readCSV((key, value) -> {
+                    if (config.isCidrLookup()) {
+                        try {
+                            writer.addCIDR(key, value);
+                        } catch (IllegalArgumentException e) {
+                            LOG.warn("Key <{}> in CIDR lookup CSV data adapter <{}> is not a valid CIDR range. Skipping invalid line.", key, name);
+                        }
+                    } else {
+                        writer.add(key, value);
+                    }
+                });
+                writer.finish(settings, sourceSize, sourceModified);
+            }
+            // Map the index before moving it into place, so this instance uses its own index even if another instance
+            // replaces the file. Replacing the file does not affect existing mappings.
+            index = CSVFileIndex.open(tmpFile);
+            Files.move(tmpFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmpFile);
+        }
+
+        LOG.debug("Compiled {} entries of CSV file {} into index file {}", index.entryCount(), config.path(), indexFile);
+        indexRef.set(index);
+    }
+
+    /**
+     * Reads the key and value columns of all data lines. Keys are lower-cased for case-insensitive lookups and
+     * converted to CIDR ranges for CIDR lookups. Keys which are neither valid CIDR ranges nor IP addresses are skipped
+     * in that case.
+     */
+    private void readCSV(CSVEntryConsumer consumer) throws IOException {
+        final InputStream inputStream = Files.newInputStream(Paths.get(config.path()));
+        final InputStreamReader fileReader = new InputStreamReader(inputStream, StandardCharsets.UTF_8);
+
         try (final CSVReader csvReader = new CSVReader(fileReader, config.separatorAsChar(), config.quotecharAsChar())) {
             int line = 0;
             int keyColumn = -1;
@@ -219,19 +316,19 @@ public class CSVFileDataAdapter extends LookupDataAdapter {
 
                     if (!config.isCidrLookup()) {
                         if (config.isCaseInsensitiveLookup()) {
-                            newLookupBuilder.put(key.toLowerCase(Locale.ENGLISH), value);
+                            consumer.accept(key.toLowerCase(Locale.ENGLISH), value);
                         } else {
-                            newLookupBuilder.put(key, value);
+                            consumer.accept(key, value);
                         }
                     } else {
                         Optional<IpSubnet> optSubnet = ReservedIpChecker.stringToSubnet(key);
                         if (optSubnet.isPresent()) {
-                            cidrLookupTrie.insertCIDR(key, value);
+                            consumer.accept(key, value);
                         } else {
                             // If key in a CIDR lookup adapter is not already a valid CIDR range, check if it is an IP
                             String cidr = ipAddressToCIDR(key);
                             if (cidr != null) {
-                                cidrLookupTrie.insertCIDR(cidr, value);
+                                consumer.accept(cidr, value);
                             }
                         }
                     }
@@ -244,12 +341,11 @@ public class CSVFileDataAdapter extends LookupDataAdapter {
             setError(e);
             throw new IllegalStateException(e);
         }
+    }
 
-        if (config.isCidrLookup()) {
-            cidrLookupRef.set(cidrLookupTrie);
-        } else {
-            lookupRef.set(newLookupBuilder.build());
-        }
+    @FunctionalInterface
+    private interface CSVEntryConsumer {
+        void accept(String key, String value) throws IOException;
     }
 
     private String ipAddressToCIDR(String ip) {
@@ -276,13 +372,35 @@ public class CSVFileDataAdapter extends LookupDataAdapter {
         LOG.debug("Stopping CSV data adapter for file: {}", config.path());
     }
 
+    @Override
+    public void delete() {
+        indexRef.set(null);
+        deleteIndexFile();
+    }
+
+    private Path indexFile() {
+        return dataDir.resolve("lookup-tables").resolve(f("csv-%s.idx", id()));
+    }
+
+    private void deleteIndexFile() {
+        final Path indexFile = indexFile();
+        try {
+            if (Files.deleteIfExists(indexFile)) {
+                LOG.debug("Deleted index file {} of CSV data adapter <{}>", indexFile, name);
+            }
+        } catch (IOException e) {
+            LOG.warn("Couldn't delete index file {} of CSV data adapter <{}>: {}", indexFile, name, e.getMessage());
+        }
+    }
+
     @Override
     public LookupResult doGet(Object key) {
         if (config.isCidrLookup()) {
             return getResultForCIDRRange(key);
         }
         final String stringKey = config.isCaseInsensitiveLookup() ? String.valueOf(key).toLowerCase(Locale.ENGLISH) : String.valueOf(key);
-        final String value = lookupRef.get().get(stringKey);
+        final CSVFileIndex index = indexRef.get();
+        final String value = index != null ? index.get(stringKey) : lookupRef.get().get(stringKey);
 
         if (value == null) {
             return getEmptyResult();
@@ -294,7 +412,10 @@ public class CSVFileDataAdapter extends LookupDataAdapter {
     public LookupResult getResultForCIDRRange(Object ip) {
         LookupResult result = getEmptyResult();
         try {
-            final String resultValue = cidrLookupRef.get().longestPrefixRangeLookup(String.valueOf(ip));
+            final CSVFileIndex index = indexRef.get();
+            final String resultValue = index != null
+                    ? index.longestPrefixRangeLookup(String.valueOf(ip))
+                    : cidrLookupRef.get().longestPrefixRangeLookup(String.valueOf(ip));
             if (resultValue != null) {
                 result = LookupResult.single(resultValue);
             }
@@ -338,6 +459,7 @@ public class CSVFileDataAdapter extends LookupDataAdapter {
                     .checkInterval(60)
                     .caseInsensitiveLookup(false)
                     .cidrLookup(false)
+                    .memoryMapped(false)
                     .build();
         }
     }
@@ -400,6 +522,9 @@ public class CSVFileDataAdapter extends LookupDataAdapter {
         @JsonProperty("cidr_lookup")
         public abstract Optional<Boolean> cidrLookup();
 
+        @JsonProperty("memory_mapped")
+        public abstract Optional<Boolean> memoryMapped();
+
         public boolean isCaseInsensitiveLookup() {
             return caseInsensitiveLookup().isPresent() && caseInsensitiveLookup().get();
         }
@@ -408,6 +533,18 @@ public class CSVFileDataAdapter extends LookupDataAdapter {
             return cidrLookup().isPresent() && cidrLookup().get();
         }
 
+        public boolean isMemoryMapped() {
+            return memoryMapped().isPresent() && memoryMapped().get();
+        }
+
+        /**
+         * Hash of the settings which affect the contents of a compiled index file.
+         */
+        @JsonIgnore
+        public int indexSettingsHash() {
+            return Objects.hash(separator(), quotechar(), keyColumn(), valueColumn(), isCaseInsensitiveLookup(), isCidrLookup());
+        }
+
         public static Builder builder() {
             return new AutoValue_CSVFileDataAdapter_Config.Builder();
         }
@@ -468,6 +605,9 @@ public class CSVFileDataAdapter extends LookupDataAdapter {
             @JsonProperty("cidr_lookup")
             public abstract Builder cidrLookup(Boolean cidrLookup);
 
+            @JsonProperty("memory_mapped")
+            public abstract Builder memoryMapped(Boolean memoryMapped);
+
             public abstract Config build();
         }
     }
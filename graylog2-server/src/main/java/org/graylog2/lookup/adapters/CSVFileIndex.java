@@ -0,0 +1,424 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.lookup.adapters;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.net.InetAddresses;
+
+import javax.annotation.Nullable;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static org.graylog2.shared.utilities.StringUtils.f;
+
+/**
+ * A read-only hash index of CSV key/value pairs which is stored in a file and served from a memory-mapped view of it.
+ * <p>
+ * Keeping tens of millions of rows on the heap costs a lot of memory and long GC pauses whenever the data is reloaded.
+ * The index is compiled once by a {@link Writer} and lookups only touch the pages of the file they need, which are
+ * managed by the operating system's page cache.
+ * <p>
+ * File layout (all numbers big-endian):
+ * <pre>
+ * header  | fixed size, see the HEADER_* offsets
+ * records | [int hash][int key length][int value length][key bytes][value bytes], padded to 4 bytes
+ * table   | open addressing hash table with linear probing, one long offset of a record per slot, 0 for empty slots
+ * </pre>
+ * For CIDR lookups, the keys are the prefix length followed by the masked network address. A lookup probes all prefix
+ * lengths which occur in the file, starting with the longest one.
+ */
+public class CSVFileIndex {
+    private static final int MAGIC = 0x474c4349;
+    private static final int VERSION = 1;
+    private static final int FLAG_CIDR = 1;
+
+    private static final int HEADER_MAGIC = 0;
+    private static final int HEADER_VERSION = 4;
+    private static final int HEADER_FLAGS = 8;
+    private static final int HEADER_SETTINGS = 12;
+    private static final int HEADER_SOURCE_SIZE = 16;
+    private static final int HEADER_SOURCE_MODIFIED = 24;
+    private static final int HEADER_ENTRY_COUNT = 32;
+    private static final int HEADER_TABLE_OFFSET = 40;
+    private static final int HEADER_TABLE_CAPACITY = 48;
+    private static final int HEADER_PREFIX_LENGTHS = 56;
+    private static final int HEADER_SIZE = 256;
+
+    private static final int RECORD_HEADER_SIZE = 12;
+    private static final int IPV4_PREFIX_LENGTHS = 33;
+    private static final int IPV6_PREFIX_LENGTHS = 129;
+    private static final double MAX_LOAD_FACTOR = 0.7;
+
+    // MappedByteBuffer can only address 2 GB, larger files are mapped in several segments
+    private static final int SEGMENT_SHIFT = 30;
+    private static final long SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+
+    @SuppressWarnings("UnstableApiUsage")
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_32_fixed();
+
+    private final Segments segments;
+    private final boolean cidr;
+    private final int settings;
+    private final long sourceSize;
+    private final long sourceModified;
+    private final long entryCount;
+    private final long tableOffset;
+    private final long tableMask;
+    private final boolean[] ipv4PrefixLengths = new boolean[IPV4_PREFIX_LENGTHS];
+    private final boolean[] ipv6PrefixLengths = new boolean[IPV6_PREFIX_LENGTHS];
+
+    private CSVFileIndex(Segments segments) throws IOException {
+        this.segments = segments;
+        if (segments.size() < HEADER_SIZE || segments.getInt(HEADER_MAGIC) != MAGIC) {
+            throw new IOException("Not a CSV lookup index file");
+        }
+        if (segments.getInt(HEADER_VERSION) != VERSION) {
+            throw new IOException(f("Unsupported CSV lookup index version %d", segments.getInt(HEADER_VERSION)));
+        }
+        this.cidr = (segments.getInt(HEADER_FLAGS) & FLAG_CIDR) != 0;
+        this.settings = segments.getInt(HEADER_SETTINGS);
+        this.sourceSize = segments.getLong(HEADER_SOURCE_SIZE);
+        this.sourceModified = segments.getLong(HEADER_SOURCE_MODIFIED);
+        this.entryCount = segments.getLong(HEADER_ENTRY_COUNT);
+        this.tableOffset = segments.getLong(HEADER_TABLE_OFFSET);
+        final long tableCapacity = segments.getLong(HEADER_TABLE_CAPACITY);
+        if (Long.bitCount(tableCapacity) != 1 || tableOffset + tableCapacity * Long.BYTES > segments.size()) {
+            throw new IOException("Corrupt CSV lookup index file");
+        }
+        this.tableMask = tableCapacity - 1;
+
+        final byte[] prefixLengths = new byte[IPV4_PREFIX_LENGTHS + IPV6_PREFIX_LENGTHS];
+        segments.get(HEADER_PREFIX_LENGTHS, prefixLengths);
+        for (int i = 0; i < IPV4_PREFIX_LENGTHS; i++) {
+            ipv4PrefixLengths[i] = prefixLengths[i] != 0;
+        }
+        for (int i = 0; i < IPV6_PREFIX_LENGTHS; i++) {
+            ipv6PrefixLengths[i] = prefixLengths[IPV4_PREFIX_LENGTHS + i] != 0;
+        }
+    }
+
+    /**
+     * Maps an existing index file.
+     *
+     * @throws IOException if the file cannot be read or is not a valid index file
+     */
+    public static CSVFileIndex open(Path path) throws IOException {
+        try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel has been closed
+            return new CSVFileIndex(new Segments(channel, FileChannel.MapMode.READ_ONLY, channel.size()));
+        }
+    }
+
+    /**
+     * Creates a writer which compiles a new index into the given file. Existing files are overwritten.
+     */
+    public static Writer writer(Path path, boolean cidr) throws IOException {
+        return new Writer(path, cidr);
+    }
+
+    /**
+     * Returns whether the index has been compiled from a source file with the given size and modification time
+     * and with the same adapter settings.
+     */
+    public boolean isUpToDate(boolean cidr, int settings, long sourceSize, long sourceModified) {
+        return this.cidr == cidr
+                && this.settings == settings
+                && this.sourceSize == sourceSize
+                && this.sourceModified == sourceModified;
+    }
+
+    public long entryCount() {
+        return entryCount;
+    }
+
+    /**
+     * Returns the value for the given key or {@code null} if the key does not exist.
+     */
+    @Nullable
+    public String get(String key) {
+        return get(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns the value of the longest CIDR range which contains the given IP address or {@code null} if there is none.
+     *
+     * @throws IllegalArgumentException if the given string is not an IP address
+     */
+    @Nullable
+    public String longestPrefixRangeLookup(String ip) {
+        final byte[] address = InetAddresses.forString(ip).getAddress();
+        final boolean[] prefixLengths = address.length == 4 ? ipv4PrefixLengths : ipv6PrefixLengths;
+        for (int prefixLength = prefixLengths.length - 1; prefixLength >= 0; prefixLength--) {
+            if (prefixLengths[prefixLength]) {
+                final String value = get(cidrKey(address, prefixLength));
+                if (value != null) {
+                    return value;
+                }
+            }
+        }
+        return null;
+    }
+
+    @Nullable
+    private String get(byte[] key) {
+        final int hash = hash(key);
+        for (long slot = hash & tableMask; ; slot = (slot + 1) & tableMask) {
+            final long record = segments.getLong(tableOffset + slot * Long.BYTES);
+            if (record == 0) {
+                return null;
+            }
+            if (segments.getInt(record) == hash && Arrays.equals(key, recordKey(segments, record))) {
+                final byte[] value = new byte[segments.getInt(record + 8)];
+                segments.get(record + RECORD_HEADER_SIZE + key.length, value);
+                return new String(value, StandardCharsets.UTF_8);
+            }
+        }
+    }
+
+    private static byte[] recordKey(Segments segments, long record) {
+        final byte[] key = new byte[segments.getInt(record + 4)];
+        segments.get(record + RECORD_HEADER_SIZE, key);
+        return key;
+    }
+
+    private static int hash(byte[] key) {
+        return HASH_FUNCTION.hashBytes(key).asInt();
+    }
+
+    private static byte[] cidrKey(byte[] address, int prefixLength) {
+        final byte[] key = new byte[address.length + 1];
+        key[0] = (byte) prefixLength;
+        for (int i = 0; i < address.length; i++) {
+            final int bits = Math.min(8, Math.max(0, prefixLength - i * 8));
+            key[i + 1] = (byte) (address[i] & (0xff00 >> bits));
+        }
+        return key;
+    }
+
+    /**
+     * Compiles an index file. Records are streamed to the file while the CSV file is read, the hash table is only
+     * built in {@link #finish(int, long, long)} once the number of entries is known. Neither step keeps the entries
+     * on the heap.
+     */
+    public static class Writer implements Closeable {
+        private final Path path;
+        private final boolean cidr;
+        private final DataOutputStream out;
+        private final byte[] prefixLengths = new byte[IPV4_PREFIX_LENGTHS + IPV6_PREFIX_LENGTHS];
+        private long position = HEADER_SIZE;
+        private long entryCount = 0;
+
+        private Writer(Path path, boolean cidr) throws IOException {
+            this.path = path;
+            this.cidr = cidr;
+            this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16));
+            out.write(new byte[HEADER_SIZE]);
+        }
+
+        /**
+         * Adds a key. Only valid for indices without CIDR lookups.
+         */
+        public void add(String key, String value) throws IOException {
+            if (cidr) {
+                throw new IllegalStateException("CIDR lookup indices only accept CIDR ranges");
+            }
+            write(key.getBytes(StandardCharsets.UTF_8), value);
+        }
+
+        /**
+         * Adds a CIDR range. Only valid for indices with CIDR lookups.
+         *
+         * @param cidr a CIDR range in the {@code address/prefix-length} notation
+         * @throws IllegalArgumentException if the range cannot be parsed
+         */
+        public void addCIDR(String cidr, String value) throws IOException {
+            if (!this.cidr) {
+                throw new IllegalStateException("Only CIDR lookup indices accept CIDR ranges");
+            }
+            final int separator = cidr.indexOf('/');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Unable to parse invalid CIDR range: " + cidr);
+            }
+            final byte[] address = InetAddresses.forString(cidr.substring(0, separator)).getAddress();
+            final int prefixLength;
+            try {
+                prefixLength = Integer.parseInt(cidr.substring(separator + 1));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Unable to parse invalid CIDR range: " + cidr, e);
+            }
+            if (prefixLength < 0 || prefixLength > address.length * 8) {
+                throw new IllegalArgumentException("Unable to parse invalid CIDR range: " + cidr);
+            }
+            prefixLengths[(address.length == 4 ? 0 : IPV4_PREFIX_LENGTHS) + prefixLength] = 1;
+            write(cidrKey(address, prefixLength), value);
+        }
+
+        private void write(byte[] key, String value) throws IOException {
+            final byte[] valueBytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(hash(key));
+            out.writeInt(key.length);
+            out.writeInt(valueBytes.length);
+            out.write(key);
+            out.write(valueBytes);
+            final int length = RECORD_HEADER_SIZE + key.length + valueBytes.length;
+            final int padding = -length & 3;
+            out.write(new byte[padding]);
+            position += length + padding;
+            entryCount++;
+        }
+
+        /**
+         * Builds the hash table and writes the header. The index file can be opened afterwards.
+         *
+         * @throws IllegalStateException if the index contains duplicate keys. For CIDR lookups, the last range wins.
+         */
+        public void finish(int settings, long sourceSize, long sourceModified) throws IOException {
+            final long dataPadding = -position & 7;
+            out.write(new byte[(int) dataPadding]);
+            out.close();
+
+            final long tableOffset = position + dataPadding;
+            final long tableCapacity = Long.highestOneBit(Math.max(16L, (long) (entryCount / MAX_LOAD_FACTOR)) - 1) << 1;
+            final long tableMask = tableCapacity - 1;
+            try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                // Mapping beyond the end of the file grows it, the table starts out zeroed
+                final Segments segments = new Segments(channel, FileChannel.MapMode.READ_WRITE, tableOffset + tableCapacity * Long.BYTES);
+                for (long record = HEADER_SIZE; record < position; ) {
+                    final int hash = segments.getInt(record);
+                    final int keyLength = segments.getInt(record + 4);
+                    final int valueLength = segments.getInt(record + 8);
+                    insert(segments, tableOffset, tableMask, record, hash);
+                    final int length = RECORD_HEADER_SIZE + keyLength + valueLength;
+                    record += length + (-length & 3);
+                }
+
+                final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(HEADER_MAGIC, MAGIC)
+                        .putInt(HEADER_VERSION, VERSION)
+                        .putInt(HEADER_FLAGS, cidr ? FLAG_CIDR : 0)
+                        .putInt(HEADER_SETTINGS, settings)
+                        .putLong(HEADER_SOURCE_SIZE, sourceSize)
+                        .putLong(HEADER_SOURCE_MODIFIED, sourceModified)
+                        .putLong(HEADER_ENTRY_COUNT, entryCount)
+                        .putLong(HEADER_TABLE_OFFSET, tableOffset)
+                        .putLong(HEADER_TABLE_CAPACITY, tableCapacity)
+                        .put(HEADER_PREFIX_LENGTHS, prefixLengths);
+                segments.putHeader(header.array());
+                segments.force();
+            }
+        }
+
+        private void insert(Segments segments, long tableOffset, long tableMask, long record, int hash) {
+            byte[] key = null;
+            for (long slot = hash & tableMask; ; slot = (slot + 1) & tableMask) {
+                final long slotOffset = tableOffset + slot * Long.BYTES;
+                final long existing = segments.getLong(slotOffset);
+                if (existing == 0) {
+                    segments.putLong(slotOffset, record);
+                    return;
+                }
+                if (segments.getInt(existing) == hash) {
+                    if (key == null) {
+                        key = recordKey(segments, record);
+                    }
+                    if (Arrays.equals(key, recordKey(segments, existing))) {
+                        if (!cidr) {
+                            throw new IllegalStateException(f("Duplicate key <%s> in CSV file",
+                                    new String(key, StandardCharsets.UTF_8)));
+                        }
+                        segments.putLong(slotOffset, record);
+                        return;
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    /**
+     * A file mapped in segments of {@link #SEGMENT_SIZE} bytes. Since the segment size is a multiple of 8, aligned
+     * ints and longs never cross a segment boundary. Only absolute reads are used, so the segments can be shared
+     * between threads.
+     */
+    private static class Segments {
+        private final MappedByteBuffer[] buffers;
+        private final long size;
+
+        Segments(FileChannel channel, FileChannel.MapMode mode, long size) throws IOException {
+            this.size = size;
+            this.buffers = new MappedByteBuffer[(int) ((size + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT)];
+            for (int i = 0; i < buffers.length; i++) {
+                final long start = (long) i << SEGMENT_SHIFT;
+                buffers[i] = channel.map(mode, start, Math.min(SEGMENT_SIZE, size - start));
+            }
+        }
+
+        long size() {
+            return size;
+        }
+
+        int getInt(long position) {
+            return buffers[(int) (position >>> SEGMENT_SHIFT)].getInt((int) (position & (SEGMENT_SIZE - 1)));
+        }
+
+        long getLong(long position) {
+            return buffers[(int) (position >>> SEGMENT_SHIFT)].getLong((int) (position & (SEGMENT_SIZE - 1)));
+        }
+
+        void putLong(long position, long value) {
+            buffers[(int) (position >>> SEGMENT_SHIFT)].putLong((int) (position & (SEGMENT_SIZE - 1)), value);
+        }
+
+        void putHeader(byte[] header) {
+            buffers[0].put(0, header);
+        }
+
+        void get(long position, byte[] destination) {
+            int copied = 0;
+            while (copied < destination.length) {
+                final long current = position + copied;
+                final MappedByteBuffer buffer = buffers[(int) (current >>> SEGMENT_SHIFT)];
+                final int offset = (int) (current & (SEGMENT_SIZE - 1));
+                final int length = Math.min(destination.length - copied, buffer.capacity() - offset);
+                buffer.get(offset, destination, copied, length);
+                copied += length;
+            }
+        }
+
+        void force() {
+            for (MappedByteBuffer buffer : buffers) {
+                buffer.force();
+            }
+        }
+    }
+}
@@ -40,6 +40,9 @@ import jakarta.inject.Inject;
 import jakarta.validation.constraints.NotEmpty;
 import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MediaType;
+import jakarta.annotation.Nonnull;
+import okhttp3.Call;
+import okhttp3.Callback;
 import okhttp3.Headers;
 import okhttp3.HttpUrl;
 import okhttp3.OkHttpClient;
@@ -69,6 +72,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 import static com.google.common.base.Strings.isNullOrEmpty;
@@ -156,6 +160,55 @@ public class HTTPJSONPathDataAdapter extends LookupDataAdapter {
 
     @Override
     protected LookupResult doGet(Object key) {
+        final Request request = buildRequest(key);
+        if (request == null) {
+            return getErrorResult();
+        }
+
+        final Timer.Context time = httpRequestTimer.time();
+        try (final Response response = httpClient.newCall(request).execute()) {
+            return handleResponse(key, response);
+        } catch (IOException e) {
+            return handleRequestError(key, request, e);
+        } finally {
+            time.stop();
+        }
+    }
+
+    @Override
+    protected CompletableFuture<LookupResult> doGetAsync(Object key) {
+        final Request request = buildRequest(key);
+        if (request == null) {
+            return CompletableFuture.completedFuture(getErrorResult());
+        }
+
+        final CompletableFuture<LookupResult> future = new CompletableFuture<>();
+        final Timer.Context time = httpRequestTimer.time();
+        httpClient.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onFailure(@Nonnull Call call, @Nonnull IOException e) {
+                time.stop();
+                future.complete(handleRequestError(key, request, e));
+            }
+
+            @Override
+            public void onResponse(@Nonnull Call call, @Nonnull Response response) {
+                try (response) {
+                    future.complete(handleResponse(key, response));
+                } catch (IOException e) {
+                    future.complete(handleRequestError(key, request, e));
+                } catch (Exception e) {
+                    future.completeExceptionally(e);
+                } finally {
+                    time.stop();
+                }
+            }
+        });
+        return future;
+    }
+
+    @Nullable
+    private Request buildRequest(Object key) {
         String encodedKey;
         try {
             encodedKey = URLEncoder.encode(String.valueOf(key), "UTF-8").replaceAll("\\+", "%20");
@@ -169,7 +222,7 @@ public class HTTPJSONPathDataAdapter extends LookupDataAdapter {
             LOG.error("Data adapter <{}>: URL <{}> is not whitelisted. Aborting lookup request.", name(), urlString);
             publishSystemNotificationForWhitelistFailure();
             setError(UrlNotWhitelistedException.forUrl(urlString));
-            return getErrorResult();
+            return null;
         } else {
             // we use this kind of error reporting mechanism only for whitelist errors, so we can safely clear the
             // error here
@@ -181,43 +234,42 @@ public class HTTPJSONPathDataAdapter extends LookupDataAdapter {
         if (url == null) {
             LOG.error("Data adapter <{}>: Couldn't parse URL <{}> - returning empty result", name(), urlString);
             httpURLErrors.mark();
-            return getErrorResult();
+            return null;
         }
 
-        final Request request = new Request.Builder()
+        return new Request.Builder()
                 .get()
                 .url(url)
                 .headers(headers)
                 .build();
+    }
 
-        final Timer.Context time = httpRequestTimer.time();
-        try (final Response response = httpClient.newCall(request).execute()) {
-            if (!response.isSuccessful()) {
-                LOG.warn("HTTP request for key <{}> failed: {}", key, response);
-                httpRequestErrors.mark();
-                return getErrorResult();
-            }
-
-            final LookupResult result = parseBody(singleJsonPath, multiJsonPath, response.body().byteStream());
-            if (result == null) {
-                return getErrorResult();
-            }
-            return result;
-        } catch (IOException e) {
-            LOG.error("Data adapter <{}>: HTTP request error for key <{}> from URL <{}>", name(), key, urlString, e);
+    private LookupResult handleResponse(Object key, Response response) throws IOException {
+        if (!response.isSuccessful()) {
+            LOG.warn("HTTP request for key <{}> failed: {}", key, response);
             httpRequestErrors.mark();
+            return getErrorResult();
+        }
 
-            Notification systemNotification = notificationService.buildNow()
-                    .addType(Notification.Type.GENERIC)
-                    .addSeverity(Notification.Severity.NORMAL)
-                    .addDetail("title", "HTTP data adapter lookup failure")
-                    .addDetail("description", f("Data adapter <%s>: HTTP request error from URL <%s>: %s", name(), urlString, e.getMessage()));
-            notificationService.publishIfFirst(systemNotification);
-
+        final LookupResult result = parseBody(singleJsonPath, multiJsonPath, response.body().byteStream());
+        if (result == null) {
             return getErrorResult();
-        } finally {
-            time.stop();
         }
+        return result;
+    }
+
+    private LookupResult handleRequestError(Object key, Request request, IOException e) {
+        LOG.error("Data adapter <{}>: HTTP request error for key <{}> from URL <{}>", name(), key, request.url(), e);
+        httpRequestErrors.mark();
+
+        Notification systemNotification = notificationService.buildNow()
+                .addType(Notification.Type.GENERIC)
+                .addSeverity(Notification.Severity.NORMAL)
+                .addDetail("title", "HTTP data adapter lookup failure")
+                .addDetail("description", f("Data adapter <%s>: HTTP request error from URL <%s>: %s", name(), request.url(), e.getMessage()));
+        notificationService.publishIfFirst(systemNotification);
+
+        return getErrorResult();
     }
 
     @VisibleForTesting
@@ -16,6 +16,7 @@
  */
 package org.graylog2.lookup.caches;
 
+import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
 import com.fasterxml.jackson.annotation.JsonAutoDetect;
@@ -30,6 +31,7 @@ import com.github.benmanes.caffeine.cache.Ticker;
 import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import com.github.benmanes.caffeine.cache.stats.StatsCounter;
 import com.google.auto.value.AutoValue;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.assistedinject.Assisted;
 import jakarta.annotation.Nonnull;
 import jakarta.annotation.Nullable;
@@ -43,10 +45,24 @@ import org.graylog2.plugin.lookup.LookupResult;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 public class CaffeineLookupCache extends LookupCache {
@@ -62,21 +78,39 @@ public class CaffeineLookupCache extends LookupCache {
     public static final String IGNORE_NULL = "ignore_null";
     public static final String TTL_EMPTY = "ttl_empty";
     public static final String TTL_EMPTY_UNIT = "ttl_empty_unit";
-    private final Cache<LookupCacheKey, LookupResult> cache;
+    public static final String REFRESH_AFTER_WRITE = "refresh_after_write";
+    public static final String REFRESH_AFTER_WRITE_UNIT = "refresh_after_write_unit";
+    public static final String MAX_STALENESS = "max_staleness";
+    public static final String MAX_STALENESS_UNIT = "max_staleness_unit";
+
+    private static final int REFRESH_THREADS = 2;
+    private static final int REFRESH_QUEUE_SIZE = 1000;
+    // Upper bound for waiting on an in-flight asynchronous load, so a data adapter future which never completes
+    // cannot block lookups of its key forever.
+    private static final long DEFAULT_IN_FLIGHT_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    private final Cache<LookupCacheKey, Entry> cache;
     private final Config config;
+    private final Ticker ticker;
+    // Asynchronous loads which have not completed yet. Concurrent misses for the same key wait for the same load.
+    private final ConcurrentMap<LookupCacheKey, CompletableFuture<LookupResult>> inFlight = new ConcurrentHashMap<>();
+    private final long inFlightTimeoutMillis;
+
+    private final long refreshAfterWriteNanos;
+    private final long maxAgeNanos;
+    @Nullable
+    private final ThreadPoolExecutor refreshExecutor;
+    private final Set<LookupCacheKey> refreshing = ConcurrentHashMap.newKeySet();
+    private final Meter refreshes;
+    private final Meter refreshFailures;
+    private final Meter staleServes;
 
     @Inject
     public CaffeineLookupCache(@Assisted("id") String id,
                                @Assisted("name") String name,
                                @Assisted LookupCacheConfiguration c,
                                MetricRegistry metricRegistry) {
-        super(id, name, c, metricRegistry);
-        config = (Config) c;
-        cache = Caffeine.newBuilder()
-                .recordStats(() -> new MetricStatsCounter(this))
-                .maximumSize(config.maxSize())
-                .expireAfter(buildExpiry(config))
-                .build();
+        this(id, name, c, metricRegistry, Ticker.systemTicker());
     }
 
     // Constructor with external ticker for testing
@@ -84,39 +118,74 @@ public class CaffeineLookupCache extends LookupCache {
                                String name,
                                LookupCacheConfiguration c,
                                MetricRegistry metricRegistry,
-                               Ticker fakeTicker) {
+                               Ticker ticker) {
+        this(id, name, c, metricRegistry, ticker, DEFAULT_IN_FLIGHT_TIMEOUT_MILLIS);
+    }
+
+    // Constructor with external ticker and in-flight load timeout for testing
+    public CaffeineLookupCache(String id,
+                               String name,
+                               LookupCacheConfiguration c,
+                               MetricRegistry metricRegistry,
+                               Ticker ticker,
+                               long inFlightTimeoutMillis) {
         super(id, name, c, metricRegistry);
         config = (Config) c;
+        this.ticker = ticker;
+        this.inFlightTimeoutMillis = inFlightTimeoutMillis;
+        refreshAfterWriteNanos = toNanos(config.refreshAfterWrite(), config.refreshAfterWriteUnit());
+        final long maxStalenessNanos = toNanos(config.maxStaleness(), config.maxStalenessUnit());
+        maxAgeNanos = refreshAfterWriteNanos > 0 && maxStalenessNanos > 0 ? refreshAfterWriteNanos + maxStalenessNanos : 0;
+
+        refreshes = metricRegistry.meter(MetricRegistry.name("org.graylog2.lookup.caches", id, "refreshes"));
+        refreshFailures = metricRegistry.meter(MetricRegistry.name("org.graylog2.lookup.caches", id, "refreshFailures"));
+        staleServes = metricRegistry.meter(MetricRegistry.name("org.graylog2.lookup.caches", id, "staleServes"));
+        if (refreshAfterWriteNanos > 0) {
+            refreshExecutor = new ThreadPoolExecutor(REFRESH_THREADS, REFRESH_THREADS, 60L, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(REFRESH_QUEUE_SIZE),
+                    new ThreadFactoryBuilder().setDaemon(true).setNameFormat("lookup-cache-refresh-" + name + "-%d").build());
+            refreshExecutor.allowCoreThreadTimeOut(true);
+        } else {
+            refreshExecutor = null;
+        }
+
         cache = Caffeine.newBuilder()
                 .recordStats(() -> new MetricStatsCounter(this))
                 .maximumSize(config.maxSize())
                 .expireAfter(buildExpiry(config))
-                .ticker(fakeTicker)
+                .ticker(ticker)
                 .build();
     }
 
-    private Expiry<LookupCacheKey, LookupResult> buildExpiry(Config config) {
+    private static long toNanos(@Nullable Long duration, @Nullable TimeUnit unit) {
+        return duration != null && duration > 0 && unit != null ? unit.toNanos(duration) : 0L;
+    }
+
+    private Expiry<LookupCacheKey, Entry> buildExpiry(Config config) {
         return new Expiry<>() {
             @Override
-            public long expireAfterCreate(@Nonnull LookupCacheKey lookupCacheKey, @Nonnull LookupResult lookupResult, long currentTime) {
+            public long expireAfterCreate(@Nonnull LookupCacheKey lookupCacheKey, @Nonnull Entry entry, long currentTime) {
+                final LookupResult lookupResult = entry.result();
                 if (lookupResult.hasTTL()) {
-                    return TimeUnit.MILLISECONDS.toNanos(lookupResult.cacheTTL());
+                    return capToMaxAge(entry, currentTime, TimeUnit.MILLISECONDS.toNanos(lookupResult.cacheTTL()));
                 } else {
                     if (config.expireAfterWrite() > 0 && config.expireAfterWriteUnit() != null) {
                         //noinspection ConstantConditions
-                        return config.expireAfterWriteUnit().toNanos(config.expireAfterWrite());
+                        return capToMaxAge(entry, currentTime, config.expireAfterWriteUnit().toNanos(config.expireAfterWrite()));
                     }
-                    return Long.MAX_VALUE;
+                    return capToMaxAge(entry, currentTime, Long.MAX_VALUE);
                 }
             }
 
             @Override
-            public long expireAfterUpdate(@Nonnull LookupCacheKey lookupCacheKey, @Nonnull LookupResult lookupResult, long currentTime, long currentDuration) {
-                return currentDuration;
+            public long expireAfterUpdate(@Nonnull LookupCacheKey lookupCacheKey, @Nonnull Entry entry, long currentTime, long currentDuration) {
+                // Updates replace the value with a freshly loaded one
+                return expireAfterCreate(lookupCacheKey, entry, currentTime);
             }
 
             @Override
-            public long expireAfterRead(@Nonnull LookupCacheKey lookupCacheKey, @Nonnull LookupResult lookupResult, long currentTime, long currentDuration) {
+            public long expireAfterRead(@Nonnull LookupCacheKey lookupCacheKey, @Nonnull Entry entry, long currentTime, long currentDuration) {
+                final LookupResult lookupResult = entry.result();
                 if (config.ttlEmpty() != null
                         && !Boolean.TRUE.equals(config.ignoreNull())
                         && lookupResult.isEmpty()) {
@@ -126,7 +195,7 @@ public class CaffeineLookupCache extends LookupCache {
                 if (config.expireAfterAccess() > 0 && config.expireAfterAccessUnit() != null) {
                     //noinspection ConstantConditions
                     LOG.trace("afterRead: config: {}", config.expireAfterAccessUnit().toNanos(config.expireAfterAccess()));
-                    return config.expireAfterAccessUnit().toNanos(config.expireAfterAccess());
+                    return capToMaxAge(entry, currentTime, config.expireAfterAccessUnit().toNanos(config.expireAfterAccess()));
                 }
                 LOG.trace("afterRead: {}", currentDuration);
                 return currentDuration;
@@ -134,6 +203,15 @@ public class CaffeineLookupCache extends LookupCache {
         };
     }
 
+    // With refresh-after-write and a max staleness, entries are never kept longer than both combined, even if
+    // they are accessed all the time and refreshing them keeps failing.
+    private long capToMaxAge(Entry entry, long currentTime, long duration) {
+        if (maxAgeNanos <= 0) {
+            return duration;
+        }
+        return Math.min(duration, Math.max(0L, entry.writeTime() + maxAgeNanos - currentTime));
+    }
+
     @Override
     public long entryCount() {
         if (cache != null) {
@@ -150,42 +228,186 @@ public class CaffeineLookupCache extends LookupCache {
 
     @Override
     protected void doStop() throws Exception {
-        // no action required
+        if (refreshExecutor != null) {
+            refreshExecutor.shutdownNow();
+        }
     }
 
     @Override
     public LookupResult get(LookupCacheKey key, Callable<LookupResult> loader) {
-        final Function<LookupCacheKey, LookupResult> mapFunction = unused -> {
+        final CompletableFuture<LookupResult> pending = inFlight.get(key);
+        if (pending != null) {
             try {
-                final LookupResult result = loader.call();
-                if (result.hasError()) {
-                    // Bubble up errors unaltered
-                    return result;
-                }
-                if (isResultEmpty(result)) {
-                    if (Boolean.TRUE.equals(config.ignoreNull())) {
-                        LOG.trace("Ignoring empty lookup for key {}", key);
-                        return LookupResult.builder()
-                                .cacheTTL(0L)
-                                .build();
-                    } else {
-                        LOG.trace("Empty lookup for key {} with TTL {}", key, ttlEmptyMillis());
-                        return LookupResult.builder()
-                                .cacheTTL(ttlEmptyMillis())
-                                .build();
-                    }
+                return pending.get(inFlightTimeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return loadFailed(key, e);
+            } catch (ExecutionException | TimeoutException e) {
+                // The asynchronous load is stuck, load the value directly instead.
+                LOG.debug("Waiting for in-flight load of key {} failed, loading it directly", key, e);
+            }
+        }
+
+        final Function<LookupCacheKey, Entry> mapFunction = unused -> {
+            try {
+                return newEntry(toCacheEntry(key, loader.call()));
+            } catch (Exception e) {
+                return newEntry(loadFailed(key, e));
+            }
+        };
+
+        final Entry entry;
+        try (final Timer.Context ignored = lookupTimer()) {
+            entry = cache.get(key, mapFunction);
+        }
+        return serve(key, entry, () -> {
+            try {
+                return CompletableFuture.completedFuture(loader.call());
+            } catch (Exception e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<LookupResult> getAsync(LookupCacheKey key, Supplier<CompletableFuture<LookupResult>> loader) {
+        final Entry cached = cache.getIfPresent(key);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(serve(key, cached, loader));
+        }
+
+        final CompletableFuture<LookupResult> promise = new CompletableFuture<>();
+        final CompletableFuture<LookupResult> pending = inFlight.putIfAbsent(key, promise);
+        if (pending != null) {
+            return pending;
+        }
+
+        final Timer.Context time = lookupTimer();
+        CompletableFuture<LookupResult> load;
+        try {
+            // Don't time out the data adapter's own future, it might be shared.
+            load = loader.get().copy().orTimeout(inFlightTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            load = CompletableFuture.failedFuture(e);
+        }
+        load.whenComplete((result, throwable) -> {
+            final LookupResult entry = throwable == null ? toCacheEntry(key, result) : loadFailed(key, throwable);
+            cache.put(key, newEntry(entry));
+            inFlight.remove(key, promise);
+            time.stop();
+            promise.complete(entry);
+        });
+        return promise;
+    }
+
+    @Override
+    public Map<LookupCacheKey, LookupResult> getAll(Collection<LookupCacheKey> keys,
+                                                    Function<Collection<LookupCacheKey>, Map<LookupCacheKey, LookupResult>> loader) {
+        final Function<Set<? extends LookupCacheKey>, Map<LookupCacheKey, Entry>> mappingFunction = missingKeys -> {
+            final Map<LookupCacheKey, Entry> entries = new HashMap<>(missingKeys.size());
+            try {
+                final Map<LookupCacheKey, LookupResult> loaded = loader.apply(Set.copyOf(missingKeys));
+                for (LookupCacheKey key : missingKeys) {
+                    entries.put(key, newEntry(toCacheEntry(key, loaded.get(key))));
                 }
-                return result;
             } catch (Exception e) {
-                LOG.warn("Loading value from data adapter failed for key {}, returning empty result", key, e);
-                return LookupResult.withError(
-                        String.format(Locale.ENGLISH, "Loading value from data adapter failed for key <%s>: %s", key.toString(), e.getMessage()));
+                for (LookupCacheKey key : missingKeys) {
+                    entries.put(key, newEntry(loadFailed(key, e)));
+                }
             }
+            return entries;
         };
 
+        final Map<LookupCacheKey, Entry> entries;
         try (final Timer.Context ignored = lookupTimer()) {
-            return cache.get(key, mapFunction);
+            entries = cache.getAll(keys, mappingFunction);
+        }
+        final Map<LookupCacheKey, LookupResult> results = new HashMap<>(entries.size());
+        entries.forEach((key, entry) -> results.put(key, serve(key, entry, () -> {
+            try {
+                return CompletableFuture.completedFuture(loader.apply(List.of(key)).get(key));
+            } catch (Exception e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        })));
+        return results;
+    }
+
+    private Entry newEntry(LookupResult result) {
+        return new Entry(result, ticker.read());
+    }
+
+    /**
+     * Returns the cached result. If refresh-after-write is enabled and the entry is due, the stale value is returned
+     * and a reload is started in the background.
+     */
+    private LookupResult serve(LookupCacheKey key, Entry entry, Supplier<CompletableFuture<LookupResult>> loader) {
+        if (refreshExecutor == null || entry.result().hasError()
+                || ticker.read() - entry.writeTime() < refreshAfterWriteNanos) {
+            return entry.result();
+        }
+
+        staleServes.mark();
+        if (refreshing.add(key)) {
+            try {
+                refreshExecutor.execute(() -> refresh(key, entry, loader));
+            } catch (RejectedExecutionException e) {
+                // Too many refreshes queued, the next lookup of the key will try again
+                refreshing.remove(key);
+            }
+        }
+        return entry.result();
+    }
+
+    private void refresh(LookupCacheKey key, Entry staleEntry, Supplier<CompletableFuture<LookupResult>> loader) {
+        CompletableFuture<LookupResult> load;
+        try {
+            // Don't time out the data adapter's own future, it might be shared.
+            load = loader.get().copy().orTimeout(inFlightTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            load = CompletableFuture.failedFuture(e);
+        }
+        load.whenComplete((result, throwable) -> {
+            try {
+                if (throwable != null || result == null || result.hasError()) {
+                    LOG.debug("Refreshing cache entry for key {} failed, keeping the stale value", key, throwable);
+                    refreshFailures.mark();
+                    return;
+                }
+                // Only replace the stale entry. Entries which have been purged in the meantime must not come back.
+                cache.asMap().replace(key, staleEntry, newEntry(toCacheEntry(key, result)));
+                refreshes.mark();
+            } finally {
+                refreshing.remove(key);
+            }
+        });
+    }
+
+    private LookupResult toCacheEntry(LookupCacheKey key, LookupResult result) {
+        if (result != null && result.hasError()) {
+            // Bubble up errors unaltered
+            return result;
         }
+        if (isResultEmpty(result)) {
+            if (Boolean.TRUE.equals(config.ignoreNull())) {
+                LOG.trace("Ignoring empty lookup for key {}", key);
+                return LookupResult.builder()
+                        .cacheTTL(0L)
+                        .build();
+            } else {
+                LOG.trace("Empty lookup for key {} with TTL {}", key, ttlEmptyMillis());
+                return LookupResult.builder()
+                        .cacheTTL(ttlEmptyMillis())
+                        .build();
+            }
+        }
+        return result;
+    }
+
+    private LookupResult loadFailed(LookupCacheKey key, Throwable e) {
+        LOG.warn("Loading value from data adapter failed for key {}, returning empty result", key, e);
+        return LookupResult.withError(
+                String.format(Locale.ENGLISH, "Loading value from data adapter failed for key <%s>: %s", key.toString(), e.getMessage()));
     }
 
     private boolean isResultEmpty(LookupResult result) {
@@ -202,11 +424,11 @@ public class CaffeineLookupCache extends LookupCache {
 
     @Override
     public LookupResult getIfPresent(LookupCacheKey key) {
-        final LookupResult cacheEntry = cache.getIfPresent(key);
+        final Entry cacheEntry = cache.getIfPresent(key);
         if (cacheEntry == null) {
             return LookupResult.empty();
         }
-        return cacheEntry;
+        return cacheEntry.result();
     }
 
     @Override
@@ -294,6 +516,24 @@ public class CaffeineLookupCache extends LookupCache {
         @JsonProperty(TTL_EMPTY_UNIT)
         public abstract TimeUnit ttlEmptyUnit();
 
+        @Min(0)
+        @Nullable
+        @JsonProperty(REFRESH_AFTER_WRITE)
+        public abstract Long refreshAfterWrite();
+
+        @Nullable
+        @JsonProperty(REFRESH_AFTER_WRITE_UNIT)
+        public abstract TimeUnit refreshAfterWriteUnit();
+
+        @Min(0)
+        @Nullable
+        @JsonProperty(MAX_STALENESS)
+        public abstract Long maxStaleness();
+
+        @Nullable
+        @JsonProperty(MAX_STALENESS_UNIT)
+        public abstract TimeUnit maxStalenessUnit();
+
         public static Builder builder() {
             return new AutoValue_CaffeineLookupCache_Config.Builder();
         }
@@ -327,10 +567,25 @@ public class CaffeineLookupCache extends LookupCache {
             @JsonProperty(TTL_EMPTY_UNIT)
             public abstract Builder ttlEmptyUnit(@Nullable TimeUnit ttlEmptyUnit);
 
+            @JsonProperty(REFRESH_AFTER_WRITE)
+            public abstract Builder refreshAfterWrite(@Nullable Long refreshAfterWrite);
+
+            @JsonProperty(REFRESH_AFTER_WRITE_UNIT)
+            public abstract Builder refreshAfterWriteUnit(@Nullable TimeUnit refreshAfterWriteUnit);
+
+            @JsonProperty(MAX_STALENESS)
+            public abstract Builder maxStaleness(@Nullable Long maxStaleness);
+
+            @JsonProperty(MAX_STALENESS_UNIT)
+            public abstract Builder maxStalenessUnit(@Nullable TimeUnit maxStalenessUnit);
+
             public abstract Config build();
         }
     }
 
+    private record Entry(LookupResult result, long writeTime) {
+    }
+
     private static class MetricStatsCounter implements StatsCounter {
         private final LookupCache cache;
 
@@ -33,7 +33,12 @@ import org.slf4j.LoggerFactory;
 
 import jakarta.inject.Inject;
 
+import java.util.Collection;
+import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * The cache that doesn't. Used in place when no cache is wanted, having a null implementation saves us ugly null checks.
@@ -71,6 +76,30 @@ public class NullCache extends LookupCache {
         }
     }
 
+    @Override
+    public CompletableFuture<LookupResult> getAsync(LookupCacheKey key, Supplier<CompletableFuture<LookupResult>> loader) {
+        try {
+            return loader.get().exceptionally(e -> {
+                LOG.warn("Loading value from data adapter failed for key {}, returning empty result", key, e);
+                return LookupResult.empty();
+            });
+        } catch (Exception e) {
+            LOG.warn("Loading value from data adapter failed for key {}, returning empty result", key, e);
+            return CompletableFuture.completedFuture(LookupResult.empty());
+        }
+    }
+
+    @Override
+    public Map<LookupCacheKey, LookupResult> getAll(Collection<LookupCacheKey> keys,
+                                                    Function<Collection<LookupCacheKey>, Map<LookupCacheKey, LookupResult>> loader) {
+        try {
+            return loader.apply(keys);
+        } catch (Exception e) {
+            LOG.warn("Loading values from data adapter failed for keys {}, returning empty results", keys, e);
+            return Map.of();
+        }
+    }
+
     @Override
     public LookupResult getIfPresent(LookupCacheKey key) {
         return LookupResult.empty();
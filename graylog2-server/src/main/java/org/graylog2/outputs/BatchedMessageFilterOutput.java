@@ -16,6 +16,7 @@
  */
 package org.graylog2.outputs;
 
+import com.codahale.metrics.Gauge;
 import com.codahale.metrics.Histogram;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
@@ -38,22 +39,33 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 import static com.codahale.metrics.MetricRegistry.name;
 
 /**
  * A message output that filters incoming messages and writes batches of filtered messages to all
  * registered {@link FilteredMessageOutput} outputs.
+ * <p>
+ * By default, a batch is written to one output after the other on the flushing thread. With
+ * {@code output_concurrent_bulk_requests} set, batches are written to all outputs in parallel and the flushing thread
+ * only waits if the configured number of requests is already in flight for an output. Batches are acknowledged in
+ * the order in which they were flushed, once they have been written to all outputs.
  */
 @Singleton
 public class BatchedMessageFilterOutput implements MessageOutput, GracefulShutdownHook {
@@ -76,6 +88,9 @@ public class BatchedMessageFilterOutput implements MessageOutput, GracefulShutdo
     private final Timer processTime;
     private final GracefulShutdownService gracefulShutdownService;
     private final IndexSetAwareMessageOutputBuffer buffer;
+    private final ExecutorService writeExecutor;
+    private final Map<String, Semaphore> inFlightRequests;
+    private final OrderedAcknowledgements acknowledgements;
     private ScheduledFuture<?> flushTask;
 
     @Inject
@@ -87,6 +102,7 @@ public class BatchedMessageFilterOutput implements MessageOutput, GracefulShutdo
                                       IndexSetAwareMessageOutputBuffer indexSetAwareMessageOutputBuffer,
                                       GracefulShutdownService gracefulShutdownService,
                                       @Named("output_flush_interval") int outputFlushInterval,
+                                      @Named("output_concurrent_bulk_requests") int concurrentBulkRequests,
                                       @Named("shutdown_timeout") int shutdownTimeoutMs,
                                       @Named("daemonScheduler") ScheduledExecutorService daemonScheduler) {
         if (outputs.isEmpty()) {
@@ -110,6 +126,19 @@ public class BatchedMessageFilterOutput implements MessageOutput, GracefulShutdo
         this.processTime = metricRegistry.timer(name(this.getClass(), "processTime"));
         this.outputWriteFailures = metricRegistry.meter(name(this.getClass(), "outputWriteFailures"));
         this.gracefulShutdownService = gracefulShutdownService;
+
+        if (concurrentBulkRequests > 0) {
+            this.writeExecutor = Executors.newFixedThreadPool(outputs.size() * concurrentBulkRequests,
+                    new ThreadFactoryBuilder().setNameFormat("batched-message-filter-output-%d").setDaemon(true).build());
+            this.inFlightRequests = outputs.keySet().stream()
+                    .collect(Collectors.toMap(name -> name, name -> new Semaphore(concurrentBulkRequests)));
+            this.acknowledgements = new OrderedAcknowledgements();
+            metricRegistry.gauge(name(this.getClass(), "pendingAcknowledgements"), () -> (Gauge<Integer>) acknowledgements::pending);
+        } else {
+            this.writeExecutor = null;
+            this.inFlightRequests = Map.of();
+            this.acknowledgements = null;
+        }
     }
 
     @Override
@@ -144,6 +173,11 @@ public class BatchedMessageFilterOutput implements MessageOutput, GracefulShutdo
 
         batchSize.update(filteredMessages.size());
 
+        if (writeExecutor != null) {
+            flushConcurrently(filteredMessages);
+            return;
+        }
+
         activeFlushThreads.incrementAndGet();
         if (LOG.isTraceEnabled()) {
             LOG.trace("Starting flushing {} messages, flush threads active {}",
@@ -153,15 +187,7 @@ public class BatchedMessageFilterOutput implements MessageOutput, GracefulShutdo
 
         try (var ignored = processTime.time()) {
             for (final var output : outputs.values()) {
-                try {
-                    if (LOG.isTraceEnabled()) {
-                        LOG.trace("Writing {} message(s) to output <{}>", filteredMessages.size(), output);
-                    }
-                    output.writeFiltered(filteredMessages);
-                } catch (Exception e) {
-                    LOG.error("Couldn't write {} message(s) to output <{}>", filteredMessages.size(), output.getClass(), e);
-                    outputWriteFailures.mark();
-                }
+                writeToOutput(output, filteredMessages);
             }
 
             bufferFlushes.mark();
@@ -178,6 +204,55 @@ public class BatchedMessageFilterOutput implements MessageOutput, GracefulShutdo
         }
     }
 
+    private void flushConcurrently(List<FilteredMessage> filteredMessages) {
+        final Timer.Context processTimeContext = processTime.time();
+        final long sequence = acknowledgements.register();
+        if (LOG.isTraceEnabled()) {
+            LOG.trace("Starting flushing {} messages as batch {}", filteredMessages.size(), sequence);
+        }
+
+        final List<CompletableFuture<Void>> writes = new ArrayList<>(outputs.size());
+        for (final var entry : outputs.entrySet()) {
+            writes.add(writeToOutputAsync(entry.getValue(), inFlightRequests.get(entry.getKey()), filteredMessages));
+        }
+
+        CompletableFuture.allOf(writes.toArray(CompletableFuture[]::new)).whenComplete((ignored, e) -> {
+            processTimeContext.stop();
+            bufferFlushes.mark();
+            // We only acknowledge messages once all outputs are done writing messages, and all earlier batches are, too.
+            acknowledgements.complete(sequence, filteredMessages);
+        });
+    }
+
+    private CompletableFuture<Void> writeToOutputAsync(FilteredMessageOutput output, Semaphore permits, List<FilteredMessage> filteredMessages) {
+        // Every batch has to complete eventually, otherwise none of the later batches could be acknowledged.
+        permits.acquireUninterruptibly();
+        try {
+            return CompletableFuture.runAsync(() -> writeToOutput(output, filteredMessages), writeExecutor)
+                    .whenComplete((ignored, e) -> permits.release());
+        } catch (RejectedExecutionException e) {
+            // We are shutting down, write on the flushing thread instead.
+            try {
+                writeToOutput(output, filteredMessages);
+            } finally {
+                permits.release();
+            }
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    private void writeToOutput(FilteredMessageOutput output, List<FilteredMessage> filteredMessages) {
+        try {
+            if (LOG.isTraceEnabled()) {
+                LOG.trace("Writing {} message(s) to output <{}>", filteredMessages.size(), output);
+            }
+            output.writeFiltered(filteredMessages);
+        } catch (Exception e) {
+            LOG.error("Couldn't write {} message(s) to output <{}>", filteredMessages.size(), output.getClass(), e);
+            outputWriteFailures.mark();
+        }
+    }
+
     @Override
     public boolean isRunning() {
         return true;
@@ -246,5 +321,51 @@ public class BatchedMessageFilterOutput implements MessageOutput, GracefulShutdo
                 executorService.shutdownNow();
             }
         }
+
+        if (writeExecutor != null) {
+            writeExecutor.shutdown();
+            try {
+                if (!writeExecutor.awaitTermination(shutdownTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                    LOG.warn("Timed out waiting for in-flight batches to be written to outputs while stopping.");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Acknowledges batches in the order in which they were flushed. A completed batch is held back until all batches
+     * flushed before it have completed as well.
+     */
+    private class OrderedAcknowledgements {
+        private final TreeMap<Long, List<FilteredMessage>> completed = new TreeMap<>();
+        private long nextSequence = 0;
+        private long nextToAcknowledge = 0;
+
+        synchronized long register() {
+            return nextSequence++;
+        }
+
+        synchronized void complete(long sequence, List<FilteredMessage> filteredMessages) {
+            completed.put(sequence, filteredMessages);
+            while (!completed.isEmpty() && completed.firstKey() == nextToAcknowledge) {
+                final List<FilteredMessage> batch = completed.pollFirstEntry().getValue();
+                nextToAcknowledge++;
+                try {
+                    acknowledger.acknowledge(batch.stream().map(FilteredMessage::message).toList());
+                } catch (Exception e) {
+                    LOG.error("Error while acknowledging messages", e);
+                    bufferFlushFailures.mark();
+                }
+            }
+        }
+
+        /**
+         * Returns the number of completed batches which wait for an earlier batch before they can be acknowledged.
+         */
+        synchronized int pending() {
+            return completed.size();
+        }
     }
 }
@@ -31,7 +31,7 @@ import org.graylog2.plugin.ThrottleState;
 import org.graylog2.plugin.periodical.Periodical;
 import org.graylog2.shared.buffers.ProcessBuffer;
 import org.graylog2.shared.journal.Journal;
-import org.graylog2.shared.journal.LocalKafkaJournal;
+import org.graylog2.shared.journal.SegmentedJournal;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -52,7 +52,7 @@ import static org.graylog2.shared.metrics.MetricUtils.safelyRegister;
  */
 public class ThrottleStateUpdaterThread extends Periodical {
     private static final Logger log = LoggerFactory.getLogger(ThrottleStateUpdaterThread.class);
-    private final LocalKafkaJournal journal;
+    private final SegmentedJournal journal;
     private final ProcessBuffer processBuffer;
     private final EventBus eventBus;
     private final Size retentionSize;
@@ -79,8 +79,8 @@ public class ThrottleStateUpdaterThread extends Periodical {
         this.notificationService = notificationService;
         this.serverStatus = serverStatus;
         // leave this.journal null, we'll say "don't start" in that case, see startOnThisNode() below.
-        if (journal instanceof LocalKafkaJournal) {
-            this.journal = (LocalKafkaJournal) journal;
+        if (journal instanceof SegmentedJournal segmentedJournal) {
+            this.journal = segmentedJournal;
         } else {
             this.journal = null;
         }
@@ -220,7 +220,7 @@ public class ThrottleStateUpdaterThread extends Periodical {
 
         throttleState.processBufferCapacity = processBuffer.getRemainingCapacity();
 
-        if (committedOffset == LocalKafkaJournal.DEFAULT_COMMITTED_OFFSET) {
+        if (committedOffset == SegmentedJournal.DEFAULT_COMMITTED_OFFSET) {
             // nothing committed at all, the entire log is uncommitted, or completely empty.
             throttleState.uncommittedJournalEntries = journal.size() == 0 ? 0 : logEndOffset - logStartOffset;
         } else {
@@ -237,7 +237,7 @@ public class ThrottleStateUpdaterThread extends Periodical {
         // Abusing the current thread to send notifications from KafkaJournal in the graylog2-shared module
         final double journalUtilizationPercentage = journal.getJournalUtilization().orElse(0.0);
 
-        if (journalUtilizationPercentage > LocalKafkaJournal.NOTIFY_ON_UTILIZATION_PERCENTAGE) {
+        if (journalUtilizationPercentage > SegmentedJournal.NOTIFY_ON_UTILIZATION_PERCENTAGE) {
             Notification notification = notificationService.buildNow()
                     .addNode(serverStatus.getNodeId().toString())
                     .addType(Notification.Type.JOURNAL_UTILIZATION_TOO_HIGH)
@@ -40,6 +40,8 @@ import org.slf4j.LoggerFactory;
 import java.net.URI;
 
 import static org.graylog2.shared.messageq.MessageQueueModule.DISK_JOURNAL_MODE;
+import static org.graylog2.shared.messageq.MessageQueueModule.KAFKA_JOURNAL_TYPE;
+import static org.graylog2.shared.messageq.MessageQueueModule.MAPPED_JOURNAL_TYPE;
 import static org.graylog2.shared.messageq.MessageQueueModule.NOOP_JOURNAL_MODE;
 
 @SuppressWarnings("FieldMayBeFinal")
@@ -76,6 +78,9 @@ public abstract class BaseConfiguration extends PathConfiguration implements Com
     @Parameter(value = "message_journal_mode")
     private String messageJournalMode = MessageQueueModule.DISK_JOURNAL_MODE;
 
+    @Parameter(value = "message_journal_type")
+    private String messageJournalType = MessageQueueModule.KAFKA_JOURNAL_TYPE;
+
     @Parameter("inputbuffer_processors")
     private int inputbufferProcessors = 2;
 
@@ -217,6 +222,13 @@ public abstract class BaseConfiguration extends PathConfiguration implements Com
         return messageJournalEnabled ? messageJournalMode : NOOP_JOURNAL_MODE;
     }
 
+    /**
+     * The implementation of the disk journal, only used if the journal mode is "disk".
+     */
+    public String getMessageJournalType() {
+        return messageJournalType;
+    }
+
     @ValidatorMethod
     public void validateJournalMode() throws ValidationException {
         if (!messageJournalEnabled) {
@@ -234,6 +246,11 @@ public abstract class BaseConfiguration extends PathConfiguration implements Com
             throw new ValidationException("Journal mode (e.g. <" + DISK_JOURNAL_MODE + ">) needs to be " +
                     "provided when the journal is enabled.");
         }
+
+        if (!KAFKA_JOURNAL_TYPE.equals(messageJournalType) && !MAPPED_JOURNAL_TYPE.equals(messageJournalType)) {
+            throw new ValidationException("Unknown journal type <" + messageJournalType + ">. Valid types are <" +
+                    KAFKA_JOURNAL_TYPE + "> and <" + MAPPED_JOURNAL_TYPE + ">.");
+        }
     }
 
     /**
@@ -20,6 +20,8 @@ import com.github.joschi.jadconfig.Parameter;
 import com.github.joschi.jadconfig.util.Size;
 import org.graylog2.bindings.NamedBindingOverride;
 import org.graylog2.configuration.PathConfiguration;
+import org.graylog2.shared.journal.JournalCompression;
+import org.graylog2.shared.journal.JournalFsyncPolicy;
 import org.joda.time.Duration;
 
 import java.nio.file.Path;
@@ -53,6 +55,12 @@ public class KafkaJournalConfiguration extends PathConfiguration {
     @Parameter("message_journal_flush_age")
     private Duration messageJournalFlushAge = Duration.standardMinutes(1L);
 
+    @Parameter(value = "message_journal_fsync_policy", converter = JournalFsyncPolicy.Converter.class)
+    private JournalFsyncPolicy messageJournalFsyncPolicy = JournalFsyncPolicy.INTERVAL;
+
+    @Parameter(value = "message_journal_compression", converter = JournalCompression.Converter.class)
+    private JournalCompression messageJournalCompression = JournalCompression.NONE;
+
     @NamedBindingOverride(value = MESSAGE_JOURNAL_DIR)
     public Path getMessageJournalDir() {
         return Optional.ofNullable(messageJournalDir).orElse(getDataDir().resolve("journal"));
@@ -81,4 +89,12 @@ public class KafkaJournalConfiguration extends PathConfiguration {
     public Duration getMessageJournalFlushAge() {
         return messageJournalFlushAge;
     }
+
+    public JournalFsyncPolicy getMessageJournalFsyncPolicy() {
+        return messageJournalFsyncPolicy;
+    }
+
+    public JournalCompression getMessageJournalCompression() {
+        return messageJournalCompression;
+    }
 }
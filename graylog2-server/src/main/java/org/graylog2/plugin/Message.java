@@ -18,6 +18,10 @@ package org.graylog2.plugin;
 
 import com.codahale.metrics.Meter;
 import com.eaio.uuid.UUID;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.BufferRecycler;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.CharMatcher;
@@ -40,6 +44,7 @@ import org.graylog.failure.FailureCause;
 import org.graylog.failure.ProcessingFailureCause;
 import org.graylog2.indexer.IndexSet;
 import org.graylog2.indexer.messages.Indexable;
+import org.graylog2.indexer.messages.SerializationContext;
 import org.graylog2.plugin.streams.Stream;
 import org.graylog2.plugin.utilities.date.DateTimeConverter;
 import org.graylog2.plugin.utilities.ratelimitedlog.RateLimitedLogFactory;
@@ -52,6 +57,7 @@ import org.slf4j.LoggerFactory;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.NotThreadSafe;
+import java.io.IOException;
 import java.net.InetAddress;
 import java.time.Duration;
 import java.time.ZonedDateTime;
@@ -310,12 +316,24 @@ public class Message implements Messages, Indexable, Acknowledgeable {
             FIELD_MESSAGE, FIELD_ID
     );
 
+    /**
+     * Canonical instances of well-known field names. {@link MessageFields} stores these instead of the (equal) key
+     * that was passed in, so lookups with the {@code FIELD_*} constants mostly succeed by reference comparison and
+     * decoded messages don't retain their own copies of the same field names.
+     */
+    static final ImmutableMap<String, String> CANONICAL_FIELD_NAMES = Sets.union(
+                    ImmutableSet.of(FIELD_FULL_MESSAGE, FIELD_LEVEL, FIELD_FAILED_MESSAGE_STREAMS, FIELD_GL2_ORIGINAL_TIMESTAMP, FIELD_GL2_FORWARDER_INPUT),
+                    Sets.union(FILTERED_FIELDS, Sets.union(RESERVED_FIELDS, ILLUMINATE_FIELDS)))
+            .stream()
+            .collect(ImmutableMap.toImmutableMap(name -> name, name -> name));
+
     @Deprecated
     public static final Function<Message, String> ID_FUNCTION = new MessageIdFunction();
 
-    private final Map<String, Object> fields = Maps.newHashMap();
-    private Set<Stream> streams = Sets.newHashSet();
-    private Set<IndexSet> indexSets = Sets.newHashSet();
+    private final Map<String, Object> fields = new MessageFields();
+    // Lazily created, messages which are dropped before stream routing never need them
+    private Set<Stream> streams;
+    private Set<IndexSet> indexSets;
     private String sourceInputId;
 
     // Used for drools to filter out messages.
@@ -339,7 +357,7 @@ public class Message implements Messages, Indexable, Acknowledgeable {
      */
     private Map<String, Object> metadata;
 
-    private com.codahale.metrics.Counter sizeCounter = new com.codahale.metrics.Counter();
+    private long size = 0;
 
     private List<ProcessingError> processingErrors;
 
@@ -486,6 +504,119 @@ public class Message implements Messages, Indexable, Acknowledgeable {
         return obj;
     }
 
+    /**
+     * Streams the same document {@link #toElasticSearchObject(ObjectMapper, Meter)} builds directly into a
+     * {@link JsonGenerator} backed by Jackson's recycled buffers, without materializing the intermediate map.
+     */
+    @Override
+    public byte[] serialize(SerializationContext context) throws IOException {
+        final ObjectMapper objectMapper = context.objectMapper();
+        final BufferRecycler bufferRecycler = objectMapper.getFactory()._getBufferRecycler();
+        try (ByteArrayBuilder buffer = new ByteArrayBuilder(bufferRecycler)) {
+            try (JsonGenerator generator = objectMapper.createGenerator(buffer, JsonEncoding.UTF8)) {
+                writeElasticSearchObject(generator, context.invalidTimestampMeter());
+            }
+            final byte[] bytes = buffer.toByteArray();
+            buffer.release();
+            return bytes;
+        } finally {
+            bufferRecycler.releaseToPool();
+        }
+    }
+
+    /**
+     * Writes the indexer document of this message as a JSON object. The document has the same fields and values as
+     * the one returned by {@link #toElasticSearchObject(ObjectMapper, Meter)}, including the resolution of keys
+     * containing "." characters.
+     */
+    public void writeElasticSearchObject(JsonGenerator generator, @Nonnull final Meter invalidTimestampMeter) throws IOException {
+        // Resolving the timestamp might add a processing error, so it has to happen before deciding about those.
+        final Object timestampValue = getField(FIELD_TIMESTAMP);
+        final DateTime dateTime = timestampValue == null ? fallbackForNullTimestamp() : convertToDateTime(timestampValue);
+        final boolean hasProcessingErrors = processingErrors != null && !processingErrors.isEmpty();
+
+        generator.writeStartObject();
+
+        Map<String, Object> replacedKeys = null;
+        for (Map.Entry<String, Object> entry : fields.entrySet()) {
+            final String key = entry.getKey();
+            if (key.equals(FIELD_ID) || isWrittenSeparately(key, hasProcessingErrors)) {
+                continue;
+            }
+
+            final Object value = entry.getValue();
+            if (key.indexOf('.') >= 0) {
+                final String newKey = key.replace('.', KEY_REPLACEMENT_CHAR);
+                if (isWrittenSeparately(newKey, hasProcessingErrors)) {
+                    continue;
+                }
+                final boolean conflictsWithReplacedKey = replacedKeys != null && replacedKeys.containsKey(newKey);
+                if (conflictsWithReplacedKey || fields.containsKey(newKey)) {
+                    LOG.warn("Keys must not contain a \".\" character! Ignoring field \"{}\"=\"{}\" in message [{}] - Unable to replace \".\" with a \"{}\" because of key conflict: \"{}\"=\"{}\"",
+                            key, value, getId(), KEY_REPLACEMENT_CHAR, newKey,
+                            conflictsWithReplacedKey ? replacedKeys.get(newKey) : fields.get(newKey));
+                    LOG.debug("Full message with \".\" in message key: {}", this);
+                    continue;
+                }
+                if (replacedKeys == null) {
+                    replacedKeys = new HashMap<>();
+                }
+                replacedKeys.put(newKey, value);
+                generator.writeFieldName(newKey);
+            } else {
+                generator.writeFieldName(key);
+            }
+            writeFieldValue(generator, value);
+        }
+
+        generator.writeStringField(FIELD_MESSAGE, getMessage());
+        generator.writeStringField(FIELD_SOURCE, getSource());
+        generator.writeArrayFieldStart(FIELD_STREAMS);
+        for (String streamId : getStreamIds()) {
+            generator.writeString(streamId);
+        }
+        generator.writeEndArray();
+        generator.writeNumberField(FIELD_GL2_ACCOUNTED_MESSAGE_SIZE, getSize());
+        generator.writeStringField(FIELD_TIMESTAMP, buildElasticSearchTimeFormat(dateTime.withZone(UTC)));
+
+        if (hasProcessingErrors) {
+            if (processingErrors.stream().anyMatch(processingError -> processingError.getCause().equals(ProcessingFailureCause.InvalidTimestampException))) {
+                invalidTimestampMeter.mark();
+            }
+            generator.writeStringField(FIELD_GL2_PROCESSING_ERROR,
+                    processingErrors.stream()
+                            .map(pe -> pe.getMessage() + " - " + pe.getDetails())
+                            .collect(Collectors.joining(", ")));
+        }
+
+        generator.writeEndObject();
+    }
+
+    private static boolean isWrittenSeparately(String key, boolean hasProcessingErrors) {
+        return switch (key) {
+            case FIELD_MESSAGE, FIELD_SOURCE, FIELD_STREAMS, FIELD_GL2_ACCOUNTED_MESSAGE_SIZE, FIELD_TIMESTAMP -> true;
+            case FIELD_GL2_PROCESSING_ERROR -> hasProcessingErrors;
+            default -> false;
+        };
+    }
+
+    private static void writeFieldValue(JsonGenerator generator, Object value) throws IOException {
+        // Shortcuts for the most common value types, everything else goes through the object mapper's serializers.
+        if (value instanceof String string) {
+            generator.writeString(string);
+        } else if (value instanceof Long longValue) {
+            generator.writeNumber(longValue);
+        } else if (value instanceof Integer intValue) {
+            generator.writeNumber(intValue);
+        } else if (value instanceof Double doubleValue) {
+            generator.writeNumber(doubleValue);
+        } else if (value instanceof Boolean booleanValue) {
+            generator.writeBoolean(booleanValue);
+        } else {
+            generator.writeObject(value);
+        }
+    }
+
     public void ensureValidTimestamp() {
         final Object timestampValue = getField(FIELD_TIMESTAMP);
         if (timestampValue instanceof DateTime) {
@@ -653,24 +784,24 @@ public class Message implements Messages, Indexable, Acknowledgeable {
         }
         long newValueSize = 0;
         long oldValueSize = 0;
-        final long oldSize = sizeCounter.getCount();
+        final long oldSize = size;
         final int keyLength = fieldName.length();
         // if the field is being removed, also subtract the name's length
         if (newValue == null) {
-            sizeCounter.dec(keyLength);
+            size -= keyLength;
         } else {
             newValueSize = sizeForValue(newValue);
-            sizeCounter.inc(newValueSize);
+            size += newValueSize;
         }
         // if the field is new, also count its name's length
         if (previousValue == null) {
-            sizeCounter.inc(keyLength);
+            size += keyLength;
         } else {
             oldValueSize = sizeForValue(previousValue);
-            sizeCounter.dec(oldValueSize);
+            size -= oldValueSize;
         }
         if (LOG.isTraceEnabled()) {
-            final long newSize = sizeCounter.getCount();
+            final long newSize = size;
             LOG.trace("[Message size update][{}] key {}/{}, new/old/change: {}/{}/{} total: {}",
                     getId(), fieldName, keyLength, newValueSize, oldValueSize, newSize - oldSize, newSize);
         }
@@ -689,7 +820,7 @@ public class Message implements Messages, Indexable, Acknowledgeable {
 
     @Override
     public long getSize() {
-        return sizeCounter.getCount();
+        return size;
     }
 
     public static boolean validKey(final String key) {
@@ -756,7 +887,7 @@ public class Message implements Messages, Indexable, Acknowledgeable {
      * @return an immutable copy of the current set of assigned streams, empty if no streams have been assigned
      */
     public Set<Stream> getStreams() {
-        return ImmutableSet.copyOf(this.streams);
+        return streams == null ? ImmutableSet.of() : ImmutableSet.copyOf(this.streams);
     }
 
     /**
@@ -765,11 +896,17 @@ public class Message implements Messages, Indexable, Acknowledgeable {
      * @param stream the stream to route this message into
      */
     public void addStream(Stream stream) {
+        if (streams == null) {
+            streams = new HashSet<>();
+        }
+        if (indexSets == null) {
+            indexSets = new HashSet<>();
+        }
         indexSets.add(stream.getIndexSet());
         if (streams.add(stream)) {
-            sizeCounter.inc(8);
+            size += 8;
             if (LOG.isTraceEnabled()) {
-                LOG.trace("[Message size update][{}] stream added: {}", getId(), sizeCounter.getCount());
+                LOG.trace("[Message size update][{}] stream added: {}", getId(), size);
             }
         }
     }
@@ -792,16 +929,16 @@ public class Message implements Messages, Indexable, Acknowledgeable {
      * @return <tt>true</tt> if this message was assigned to the stream
      */
     public boolean removeStream(Stream stream) {
-        final boolean removed = streams.remove(stream);
+        final boolean removed = streams != null && streams.remove(stream);
 
         if (removed) {
-            indexSets.clear();
+            indexSets = new HashSet<>();
             for (Stream s : streams) {
                 indexSets.add(s.getIndexSet());
             }
-            sizeCounter.dec(8);
+            size -= 8;
             if (LOG.isTraceEnabled()) {
-                LOG.trace("[Message size update][{}] stream removed: {}", getId(), sizeCounter.getCount());
+                LOG.trace("[Message size update][{}] stream removed: {}", getId(), size);
             }
         }
 
@@ -814,7 +951,7 @@ public class Message implements Messages, Indexable, Acknowledgeable {
      * @return index sets
      */
     public Set<IndexSet> getIndexSets() {
-        return ImmutableSet.copyOf(this.indexSets);
+        return indexSets == null ? ImmutableSet.of() : ImmutableSet.copyOf(this.indexSets);
     }
 
     @SuppressWarnings("unchecked")
@@ -827,9 +964,12 @@ public class Message implements Messages, Indexable, Acknowledgeable {
             streamField = Collections.emptySet();
         }
 
-        final Set<String> streamIds = streamField == null ? new HashSet<>(streams.size()) : new HashSet<>(streamField);
-        for (Stream stream : streams) {
-            streamIds.add(stream.getId());
+        final int streamCount = streams == null ? 0 : streams.size();
+        final Set<String> streamIds = streamField == null ? new HashSet<>(streamCount) : new HashSet<>(streamField);
+        if (streams != null) {
+            for (Stream stream : streams) {
+                streamIds.add(stream.getId());
+            }
         }
 
         return streamIds;
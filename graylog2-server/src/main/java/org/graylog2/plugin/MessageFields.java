@@ -0,0 +1,298 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.plugin;
+
+import javax.annotation.Nullable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * The field storage of a {@link Message}.
+ * <p>
+ * Uses open addressing with linear probing in two parallel arrays instead of a {@link java.util.HashMap}, which
+ * avoids allocating an entry object per field. Well-known field names (see {@link Message#CANONICAL_FIELD_NAMES})
+ * are stored as their canonical instance, so looking up a field by one of the {@code FIELD_*} constants usually
+ * succeeds with a reference comparison.
+ * <p>
+ * Keys must not be {@code null}, values may be {@code null}. Not thread-safe, like the rest of {@link Message}.
+ */
+class MessageFields extends AbstractMap<String, Object> {
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private String[] keys;
+    private Object[] values;
+    private int size;
+    private int modCount;
+    private Set<Entry<String, Object>> entrySet;
+
+    MessageFields() {
+        this.keys = new String[DEFAULT_CAPACITY];
+        this.values = new Object[DEFAULT_CAPACITY];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof String && indexOf((String) key) >= 0;
+    }
+
+    @Override
+    public Object get(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        final int index = indexOf((String) key);
+        return index < 0 ? null : values[index];
+    }
+
+    @Override
+    public Object put(String key, @Nullable Object value) {
+        if (key == null) {
+            throw new NullPointerException("Field name must not be null");
+        }
+        final int mask = keys.length - 1;
+        final int hash = key.hashCode();
+        int index = spread(hash) & mask;
+        String existing;
+        while ((existing = keys[index]) != null) {
+            if (existing == key || (existing.hashCode() == hash && existing.equals(key))) {
+                final Object previousValue = values[index];
+                values[index] = value;
+                return previousValue;
+            }
+            index = (index + 1) & mask;
+        }
+
+        keys[index] = Message.CANONICAL_FIELD_NAMES.getOrDefault(key, key);
+        values[index] = value;
+        size++;
+        modCount++;
+        // Keep the load factor at or below 0.75
+        if (size * 4 > keys.length * 3) {
+            resize(keys.length * 2);
+        }
+        return null;
+    }
+
+    @Override
+    public Object remove(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        final int index = indexOf((String) key);
+        if (index < 0) {
+            return null;
+        }
+        final Object previousValue = values[index];
+        removeAt(index);
+        return previousValue;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(keys, null);
+        Arrays.fill(values, null);
+        size = 0;
+        modCount++;
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new EntrySet();
+        }
+        return entrySet;
+    }
+
+    private int indexOf(String key) {
+        final String[] keys = this.keys;
+        final int mask = keys.length - 1;
+        final int hash = key.hashCode();
+        int index = spread(hash) & mask;
+        String existing;
+        while ((existing = keys[index]) != null) {
+            if (existing == key || (existing.hashCode() == hash && existing.equals(key))) {
+                return index;
+            }
+            index = (index + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void removeAt(int index) {
+        final int mask = keys.length - 1;
+        // Backward shift deletion: move following entries of the same probe sequence into the gap, so lookups never
+        // stop early at the removed slot and no tombstones are needed.
+        int gap = index;
+        int next = (gap + 1) & mask;
+        String key;
+        while ((key = keys[next]) != null) {
+            final int home = spread(key.hashCode()) & mask;
+            // Move the entry if its home slot is not within (gap, next], i.e. it was probed past the gap
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = key;
+                values[gap] = values[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[gap] = null;
+        values[gap] = null;
+        size--;
+        modCount++;
+    }
+
+    private void resize(int capacity) {
+        final String[] oldKeys = keys;
+        final Object[] oldValues = values;
+        keys = new String[capacity];
+        values = new Object[capacity];
+        final int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            final String key = oldKeys[i];
+            if (key != null) {
+                int index = spread(key.hashCode()) & mask;
+                while (keys[index] != null) {
+                    index = (index + 1) & mask;
+                }
+                keys[index] = key;
+                values[index] = oldValues[i];
+            }
+        }
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private class EntrySet extends AbstractSet<Entry<String, Object>> {
+        @Override
+        public Iterator<Entry<String, Object>> iterator() {
+            return new EntryIterator();
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry<?, ?> entry) || !(entry.getKey() instanceof String key)) {
+                return false;
+            }
+            final int index = indexOf(key);
+            return index >= 0 && Objects.equals(values[index], entry.getValue());
+        }
+    }
+
+    private class EntryIterator implements Iterator<Entry<String, Object>> {
+        private final String[] iteratedKeys = keys;
+        private final int expectedModCount = modCount;
+        private int next = advance(0);
+
+        private int advance(int from) {
+            int index = from;
+            while (index < iteratedKeys.length && iteratedKeys[index] == null) {
+                index++;
+            }
+            return index;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < iteratedKeys.length;
+        }
+
+        @Override
+        public Entry<String, Object> next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final int index = next;
+            next = advance(index + 1);
+            return new FieldEntry(index);
+        }
+    }
+
+    private class FieldEntry implements Entry<String, Object> {
+        private final String key;
+        private final int index;
+
+        private FieldEntry(int index) {
+            this.key = keys[index];
+            this.index = index;
+        }
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public Object getValue() {
+            // The entry might have moved if the map was modified after it was returned
+            return keys[index] == key ? values[index] : get(key);
+        }
+
+        @Override
+        public Object setValue(Object value) {
+            if (keys[index] == key) {
+                final Object previousValue = values[index];
+                values[index] = value;
+                return previousValue;
+            }
+            return put(key, value);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Map.Entry<?, ?> entry
+                    && key.equals(entry.getKey())
+                    && Objects.equals(getValue(), entry.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return key.hashCode() ^ Objects.hashCode(getValue());
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + getValue();
+        }
+    }
+}
@@ -47,6 +47,7 @@ import java.net.SocketException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.UnknownHostException;
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.time.ZoneId;
@@ -215,10 +216,22 @@ public final class Tools {
      * @return A string containing the decompressed data
      */
     public static String decompressZlib(byte[] compressedData, long maxBytes) throws IOException {
+        return decompressZlib(compressedData, maxBytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Decompress ZLIB (RFC 1950) compressed data
+     *
+     * @param compressedData A byte array containing the ZLIB-compressed data.
+     * @param maxBytes       The maximum number of uncompressed bytes to read.
+     * @param charset        The charset of the uncompressed data.
+     * @return A string containing the decompressed data
+     */
+    public static String decompressZlib(byte[] compressedData, long maxBytes, Charset charset) throws IOException {
         try (final ByteArrayInputStream dataStream = new ByteArrayInputStream(compressedData);
              final InflaterInputStream in = new InflaterInputStream(dataStream);
              final InputStream limited = ByteStreams.limit(in, maxBytes)) {
-            return new String(ByteStreams.toByteArray(limited), StandardCharsets.UTF_8);
+            return new String(ByteStreams.toByteArray(limited), charset);
         }
     }
 
@@ -240,10 +253,22 @@ public final class Tools {
      * @return A string containing the decompressed data
      */
     public static String decompressGzip(byte[] compressedData, long maxBytes) throws IOException {
+        return decompressGzip(compressedData, maxBytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Decompress GZIP (RFC 1952) compressed data
+     *
+     * @param compressedData A byte array containing the GZIP-compressed data.
+     * @param maxBytes       The maximum number of uncompressed bytes to read.
+     * @param charset        The charset of the uncompressed data.
+     * @return A string containing the decompressed data
+     */
+    public static String decompressGzip(byte[] compressedData, long maxBytes, Charset charset) throws IOException {
         try (final ByteArrayInputStream dataStream = new ByteArrayInputStream(compressedData);
              final GZIPInputStream in = new GZIPInputStream(dataStream);
              final InputStream limited = ByteStreams.limit(in, maxBytes)) {
-            return new String(ByteStreams.toByteArray(limited), StandardCharsets.UTF_8);
+            return new String(ByteStreams.toByteArray(limited), charset);
         }
     }
 
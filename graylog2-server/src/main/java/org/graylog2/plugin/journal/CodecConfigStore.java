@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.plugin.journal;
+
+import org.graylog2.plugin.configuration.Configuration;
+
+import javax.annotation.Nullable;
+
+/**
+ * Stores codec configurations outside of the journal, so journal entries only need to reference the configuration
+ * of their codec by its content hash instead of embedding it.
+ */
+public interface CodecConfigStore {
+    /**
+     * Stores the given configuration if it isn't known yet.
+     *
+     * @param configuration the codec configuration
+     * @return the content hash of the configuration, or {@code null} if the configuration is empty or couldn't be
+     * stored and needs to be embedded into the journal entry
+     */
+    @Nullable
+    String put(Configuration configuration);
+
+    /**
+     * Returns the configuration for the given content hash.
+     *
+     * @param hash the content hash returned by {@link #put(Configuration)}
+     * @return the configuration, or {@code null} if the hash is unknown
+     */
+    @Nullable
+    Configuration get(String hash);
+
+    /**
+     * Returns the configuration for a JSON serialized configuration, which has been embedded in a journal entry.
+     *
+     * @param json the serialized configuration
+     * @return the deserialized configuration
+     */
+    Configuration fromJson(@Nullable String json);
+}
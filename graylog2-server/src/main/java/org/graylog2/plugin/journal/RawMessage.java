@@ -85,15 +85,35 @@ public class RawMessage implements Serializable {
         this(Long.MIN_VALUE, new UUID(), Tools.nowUTC(), remoteAddress, payload);
     }
 
+    /**
+     * Creates a raw message by copying the remaining bytes of the given buffer straight into the journal entry, without
+     * an intermediate byte array. The position of the buffer is not changed.
+     *
+     * @param payload       the message payload
+     * @param remoteAddress the address of the sender
+     */
+    public RawMessage(@Nonnull ByteBuffer payload, @Nullable InetSocketAddress remoteAddress) {
+        this(Long.MIN_VALUE, new UUID(), Tools.nowUTC(), ResolvableInetSocketAddress.wrap(remoteAddress),
+                ByteString.copyFrom(checkNotNull(payload, "The message payload must not be null!").duplicate()));
+    }
+
     public RawMessage(long journalOffset,
                       @Nonnull UUID id,
                       DateTime timestamp,
                       @Nullable ResolvableInetSocketAddress remoteAddress,
                       @Nonnull byte[] payload) {
+        this(journalOffset, id, timestamp, remoteAddress,
+                ByteString.copyFrom(checkNotNull(payload, "The message payload must not be null!")));
+    }
+
+    private RawMessage(long journalOffset,
+                       @Nonnull UUID id,
+                       DateTime timestamp,
+                       @Nullable ResolvableInetSocketAddress remoteAddress,
+                       @Nonnull ByteString payload) {
         checkNotNull(id, "The message id must not be null!");
-        checkNotNull(payload, "The message payload must not be null!");
         sequenceNr = 0;
-        if (payload.length == 0 && log.isTraceEnabled()) {
+        if (payload.isEmpty() && log.isTraceEnabled()) {
             log.trace("The message payload should not be empty, message {} from {} will be discarded.",
                     id,
                     remoteAddress == null ? "unknown" : remoteAddress,
@@ -114,7 +134,7 @@ public class RawMessage implements Serializable {
             setRemoteAddress(remoteAddress);
         }
 
-        msgBuilder.setPayload(ByteString.copyFrom(payload));
+        msgBuilder.setPayload(payload);
     }
 
     public void addSourceNode(String sourceInputId, NodeId nodeId) {
@@ -125,11 +145,30 @@ public class RawMessage implements Serializable {
     }
 
     public RawMessage(JournalMessage journalMessage, Object messageQueueId) {
+        this(journalMessage, messageQueueId, null);
+    }
+
+    public RawMessage(JournalMessage journalMessage, Object messageQueueId, @Nullable CodecConfigStore codecConfigStore) {
         this.messageQueueId = messageQueueId;
         sequenceNr = journalMessage.getSequenceNr();
         id = new UUID(journalMessage.getUuidTime(), journalMessage.getUuidClockseq());
         msgBuilder = JournalMessage.newBuilder(journalMessage);
-        codecConfig = Configuration.deserializeFromJson(journalMessage.getCodec().getConfig());
+        codecConfig = decodeCodecConfig(journalMessage.getCodec(), codecConfigStore);
+    }
+
+    private Configuration decodeCodecConfig(JournalMessages.CodecInfo codec, @Nullable CodecConfigStore codecConfigStore) {
+        if (codec.hasConfigHash()) {
+            final Configuration configuration = codecConfigStore == null ? null : codecConfigStore.get(codec.getConfigHash());
+            if (configuration == null) {
+                log.error("Unknown codec configuration <{}> for message {}, using empty configuration.", codec.getConfigHash(), id);
+                return Configuration.EMPTY_CONFIGURATION;
+            }
+            return configuration;
+        }
+        if (codecConfigStore != null) {
+            return codecConfigStore.fromJson(codec.getConfig());
+        }
+        return Configuration.deserializeFromJson(codec.getConfig());
     }
 
     @Nullable
@@ -152,12 +191,45 @@ public class RawMessage implements Serializable {
 
     @Nullable
     public static RawMessage decode(final byte[] buffer, final long journalOffset) {
+        return decode(buffer, journalOffset, null);
+    }
+
+    /**
+     * Decodes a journal entry, resolving codec configurations which are referenced by their content hash from the
+     * given store.
+     *
+     * @param buffer           the encoded journal entry
+     * @param journalOffset    the offset of the entry in the journal
+     * @param codecConfigStore the store for the codec configurations
+     * @return the decoded message, or {@code null} if the entry couldn't be decoded
+     */
+    @Nullable
+    public static RawMessage decode(final byte[] buffer, final long journalOffset, @Nullable CodecConfigStore codecConfigStore) {
         try {
             final JournalMessage journalMessage = JournalMessage.parseFrom(buffer);
 
             // TODO validate message based on field contents and version number
 
-            return new RawMessage(journalMessage, journalOffset);
+            return new RawMessage(journalMessage, journalOffset, codecConfigStore);
+        } catch (IOException e) {
+            log.error("Cannot read raw message from journal, ignoring this message.", e);
+            return null;
+        }
+    }
+
+    /**
+     * Decodes a journal entry from the given buffer without copying it into an array first.
+     *
+     * @see #decode(byte[], long, CodecConfigStore)
+     */
+    @Nullable
+    public static RawMessage decode(final ByteBuffer buffer, final long journalOffset, @Nullable CodecConfigStore codecConfigStore) {
+        try {
+            final JournalMessage journalMessage = JournalMessage.parseFrom(buffer);
+
+            // TODO validate message based on field contents and version number
+
+            return new RawMessage(journalMessage, journalOffset, codecConfigStore);
         } catch (IOException e) {
             log.error("Cannot read raw message from journal, ignoring this message.", e);
             return null;
@@ -165,13 +237,29 @@ public class RawMessage implements Serializable {
     }
 
     public byte[] encode() {
+        return encode(null);
+    }
+
+    /**
+     * Encodes the message for the journal. If a codec config store is given, the codec configuration is stored there
+     * and only its content hash is written into the journal entry.
+     *
+     * @param codecConfigStore the store for the codec configuration
+     * @return the encoded message, or {@code null} if required fields are missing
+     */
+    public byte[] encode(@Nullable CodecConfigStore codecConfigStore) {
         try {
             final JournalMessages.CodecInfo codec = msgBuilder.getCodec();
             final JournalMessages.CodecInfo.Builder builder = JournalMessages.CodecInfo.newBuilder(codec);
 
-            final String codecConfigJson = codecConfig.serializeToJson();
-            if (codecConfigJson != null) {
-                builder.setConfig(codecConfigJson);
+            final String codecConfigHash = codecConfigStore == null ? null : codecConfigStore.put(codecConfig);
+            if (codecConfigHash != null) {
+                builder.setConfigHash(codecConfigHash);
+            } else {
+                final String codecConfigJson = codecConfig.serializeToJson();
+                if (codecConfigJson != null) {
+                    builder.setConfig(codecConfigJson);
+                }
             }
             msgBuilder.setCodec(builder.build());
 
@@ -28,9 +28,16 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import static org.graylog2.utilities.ObjectUtils.objectId;
 
@@ -148,6 +155,28 @@ public abstract class LookupCache extends AbstractIdleService {
 
     public abstract LookupResult get(LookupCacheKey key, Callable<LookupResult> loader);
 
+    /**
+     * Asynchronous variant of {@link #get(LookupCacheKey, Callable)}. The default implementation waits for the loader
+     * on the calling thread, caches should override this if they can load without blocking.
+     */
+    public CompletableFuture<LookupResult> getAsync(LookupCacheKey key, Supplier<CompletableFuture<LookupResult>> loader) {
+        return CompletableFuture.completedFuture(get(key, () -> loader.get().join()));
+    }
+
+    /**
+     * Bulk variant of {@link #get(LookupCacheKey, Callable)}. The loader is called with the keys which are not
+     * cached. The default implementation calls the loader for every key separately, caches should override this
+     * to load all missing keys at once.
+     */
+    public Map<LookupCacheKey, LookupResult> getAll(Collection<LookupCacheKey> keys,
+                                                    Function<Collection<LookupCacheKey>, Map<LookupCacheKey, LookupResult>> loader) {
+        final Map<LookupCacheKey, LookupResult> results = new HashMap<>(keys.size());
+        for (LookupCacheKey key : keys) {
+            results.put(key, get(key, () -> loader.apply(List.of(key)).get(key)));
+        }
+        return results;
+    }
+
     public abstract LookupResult getIfPresent(LookupCacheKey key);
 
     public abstract void purge();
@@ -26,8 +26,12 @@ import org.joda.time.Duration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicReference;
 
 import static com.google.common.base.Preconditions.checkState;
@@ -97,6 +101,13 @@ public abstract class LookupDataAdapter extends AbstractIdleService {
 
     protected abstract void doStop() throws Exception;
 
+    /**
+     * Called after the data adapter has been stopped because it was deleted. Data adapters which keep data outside of
+     * the database, e. g. files in the data directory, should remove it here. Does nothing by default.
+     */
+    public void delete() {
+    }
+
     /**
      * Returns the refresh interval for this data adapter. Use {@link Duration#ZERO} if refresh should be disabled.
      * @return the refresh interval
@@ -145,6 +156,66 @@ public abstract class LookupDataAdapter extends AbstractIdleService {
     }
     protected abstract LookupResult doGet(Object key);
 
+    /**
+     * Look up the given key without blocking the calling thread, if the data adapter supports it.
+     *
+     * @param key The key to look up.
+     * @return A future which completes with the lookup result
+     * @see #doGetAsync(Object)
+     */
+    public CompletableFuture<LookupResult> getAsync(Object key) {
+        if (state() == State.FAILED) {
+            return CompletableFuture.completedFuture(getErrorResult());
+        }
+        checkState(isRunning(), "Data adapter needs to be started before it can be used");
+        final Timer.Context time = requestTimer.time();
+        try {
+            return doGetAsync(key).whenComplete((result, throwable) -> time.stop());
+        } catch (Exception e) {
+            time.stop();
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Data adapters which do network I/O should override this and complete the returned future from their I/O
+     * threads. The default implementation runs {@link #doGet(Object)} on the calling thread.
+     */
+    protected CompletableFuture<LookupResult> doGetAsync(Object key) {
+        return CompletableFuture.completedFuture(doGet(key));
+    }
+
+    /**
+     * Look up all given keys at once.
+     *
+     * @param keys The keys to look up.
+     * @return The lookup results by key. Keys without a result are treated as empty results.
+     * @see #doGetAll(Collection)
+     */
+    public Map<Object, LookupResult> getAll(Collection<?> keys) {
+        if (state() == State.FAILED) {
+            final Map<Object, LookupResult> results = new HashMap<>(keys.size());
+            keys.forEach(key -> results.put(key, getErrorResult()));
+            return results;
+        }
+        checkState(isRunning(), "Data adapter needs to be started before it can be used");
+        try (final Timer.Context ignored = requestTimer.time()) {
+            return doGetAll(keys);
+        }
+    }
+
+    /**
+     * Data adapters which can resolve many keys in a single round trip should override this. The default
+     * implementation calls {@link #doGet(Object)} for every key.
+     */
+    protected Map<Object, LookupResult> doGetAll(Collection<?> keys) {
+        final Map<Object, LookupResult> results = new HashMap<>(keys.size());
+        for (Object key : keys) {
+            results.put(key, doGet(key));
+        }
+        return results;
+    }
+
     @Deprecated
     public abstract void set(Object key, Object value);
 
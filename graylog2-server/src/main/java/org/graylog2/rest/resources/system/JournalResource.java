@@ -22,14 +22,13 @@ import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import org.apache.shiro.authz.annotation.RequiresAuthentication;
 import org.apache.shiro.authz.annotation.RequiresPermissions;
-import org.graylog.shaded.kafka09.log.LogSegment;
 import org.graylog2.Configuration;
 import org.graylog2.plugin.KafkaJournalConfiguration;
 import org.graylog2.plugin.ThrottleState;
 import org.graylog2.rest.resources.system.responses.JournalSummaryResponse;
 import org.graylog2.rest.resources.system.responses.KafkaJournalConfigurationSummary;
 import org.graylog2.shared.journal.Journal;
-import org.graylog2.shared.journal.LocalKafkaJournal;
+import org.graylog2.shared.journal.SegmentedJournal;
 import org.graylog2.shared.rest.resources.RestResource;
 import org.graylog2.shared.security.RestPermissions;
 import org.joda.time.DateTime;
@@ -70,21 +69,16 @@ public class JournalResource extends RestResource {
             return JournalSummaryResponse.createDisabled();
         }
 
-        if (journal instanceof LocalKafkaJournal) {
-            final LocalKafkaJournal kafkaJournal = (LocalKafkaJournal) journal;
-            final ThrottleState throttleState = kafkaJournal.getThrottleState();
-
-            long oldestSegment = Long.MAX_VALUE;
-            for (final LogSegment segment : kafkaJournal.getSegments()) {
-                oldestSegment = Math.min(oldestSegment, segment.created());
-            }
+        if (journal instanceof SegmentedJournal segmentedJournal) {
+            final ThrottleState throttleState = segmentedJournal.getThrottleState();
+            final long oldestSegment = segmentedJournal.getOldestSegmentCreationTime();
 
             return JournalSummaryResponse.createEnabled(throttleState.appendEventsPerSec,
                     throttleState.readEventsPerSec,
                     throttleState.uncommittedJournalEntries,
                     Size.bytes(throttleState.journalSize),
                     Size.bytes(throttleState.journalSizeLimit),
-                    kafkaJournal.numberOfSegments(),
+                    segmentedJournal.numberOfSegments(),
                     new DateTime(oldestSegment, DateTimeZone.UTC),
                     KafkaJournalConfigurationSummary.of(kafkaJournalConfiguration)
             );
@@ -0,0 +1,33 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.shared.buffers;
+
+import java.util.List;
+
+/**
+ * A {@link WorkHandler} which can also process several consecutive events at once.
+ *
+ * @see PartitioningBatchWorkHandler
+ */
+public interface BatchWorkHandler<T> extends WorkHandler<T> {
+    /**
+     * Processes a batch of events. The events are only valid until this method returns.
+     *
+     * @param events the events of the batch, never empty
+     */
+    void onEvents(List<T> events) throws Exception;
+}
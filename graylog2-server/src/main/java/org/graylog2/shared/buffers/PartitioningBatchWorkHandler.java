@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.shared.buffers;
+
+import com.lmax.disruptor.EventHandler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An event handler which will only process a partition of events and which will delegate them in batches to a
+ * {@link BatchWorkHandler}.
+ * <p>
+ * A batch is handed over when it reached the maximum batch size or at the end of a batch of the disruptor, whichever
+ * comes first. Events are never held back to wait for more events, and all events of a batch are still valid ring
+ * buffer entries while the delegate processes them.
+ *
+ * @see PartitioningWorkHandler
+ */
+public class PartitioningBatchWorkHandler<S extends BatchWorkHandler<T>, T> implements EventHandler<T> {
+    private final S delegate;
+    private final long ordinal;
+    private final long numberOfConsumers;
+    private final int maxBatchSize;
+    private final List<T> batch;
+
+    /**
+     * Create an event handler which will only handle a partition of events and passes them on in batches.
+     *
+     * @param delegate          The handler processing the batches.
+     * @param ordinal           The ordinal number of this consumer in the range [0, numberOfConsumers). Each event
+     *                          handlers need to have a distinct ordinal number.
+     * @param numberOfConsumers The total number of consumers.
+     * @param maxBatchSize      The maximum number of events passed to the delegate at once.
+     */
+    public PartitioningBatchWorkHandler(S delegate, long ordinal, long numberOfConsumers, int maxBatchSize) {
+        this.delegate = delegate;
+        this.ordinal = ordinal;
+        this.numberOfConsumers = numberOfConsumers;
+        this.maxBatchSize = maxBatchSize;
+        this.batch = new ArrayList<>(maxBatchSize);
+    }
+
+    @Override
+    public final void onEvent(T event, long sequence, boolean endOfBatch) throws Exception {
+        if ((sequence % numberOfConsumers) == ordinal) {
+            batch.add(event);
+        }
+        // The end of the batch might be an event of another partition, so this has to be checked for every event.
+        if (!batch.isEmpty() && (endOfBatch || batch.size() >= maxBatchSize)) {
+            try {
+                delegate.onEvents(batch);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    @Override
+    public void onStart() {
+        delegate.onStart();
+    }
+
+    @Override
+    public void onShutdown() {
+        delegate.onShutdown();
+    }
+
+    public S getDelegate() {
+        return delegate;
+    }
+}
@@ -18,26 +18,31 @@ package org.graylog2.shared.buffers;
 
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
+import org.graylog2.plugin.journal.CodecConfigStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import jakarta.inject.Inject;
 
+import java.util.Optional;
+
 import static com.codahale.metrics.MetricRegistry.name;
 
 public class RawMessageEncoderHandler implements WorkHandler<RawMessageEvent> {
     private static final Logger log = LoggerFactory.getLogger(RawMessageEncoderHandler.class);
     private final Meter incomingMessages;
+    private final CodecConfigStore codecConfigStore;
 
     @Inject
-    public RawMessageEncoderHandler(MetricRegistry metricRegistry) {
+    public RawMessageEncoderHandler(MetricRegistry metricRegistry, Optional<CodecConfigStore> codecConfigStore) {
         incomingMessages = metricRegistry.meter(name(RawMessageEncoderHandler.class, "incomingMessages"));
+        this.codecConfigStore = codecConfigStore.orElse(null);
     }
 
     @Override
     public void onEvent(RawMessageEvent event) throws Exception {
         incomingMessages.mark();
-        event.setEncodedRawMessage(event.getRawMessage().encode());
+        event.setEncodedRawMessage(event.getRawMessage().encode(codecConfigStore));
         event.setMessageIdBytes(event.getRawMessage().getIdBytes());
 
         if (log.isTraceEnabled()) {
@@ -16,6 +16,9 @@
  */
 package org.graylog2.shared.journal;
 
+import org.graylog2.shared.utilities.ByteBufferUtils;
+
+import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.Optional;
 
@@ -72,11 +75,22 @@ public interface Journal {
 
     class JournalReadEntry {
 
-        private final byte[] payload;
+        private final ByteBuffer payloadBuffer;
         private final long offset;
+        private byte[] payload;
 
         public JournalReadEntry(byte[] payload, long offset) {
             this.payload = payload;
+            this.payloadBuffer = null;
+            this.offset = offset;
+        }
+
+        /**
+         * Creates an entry whose payload is backed by the given buffer, e.g. a view of a memory-mapped journal file.
+         * The payload is only copied if {@link #getPayload()} is called.
+         */
+        public JournalReadEntry(ByteBuffer payloadBuffer, long offset) {
+            this.payloadBuffer = payloadBuffer;
             this.offset = offset;
         }
 
@@ -85,7 +99,24 @@ public interface Journal {
         }
 
         public byte[] getPayload() {
+            if (payload == null) {
+                payload = ByteBufferUtils.readBytes(payloadBuffer.duplicate());
+            }
             return payload;
         }
+
+        /**
+         * @return a read-only view of the payload which doesn't copy it
+         */
+        public ByteBuffer getPayloadBuffer() {
+            if (payloadBuffer == null) {
+                return ByteBuffer.wrap(payload).asReadOnlyBuffer();
+            }
+            return payloadBuffer.duplicate();
+        }
+
+        public int getPayloadSize() {
+            return payloadBuffer == null ? payload.length : payloadBuffer.remaining();
+        }
     }
 }
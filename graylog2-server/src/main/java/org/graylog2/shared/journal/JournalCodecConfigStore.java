@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.shared.journal;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.common.hash.Hashing;
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+import jakarta.inject.Singleton;
+import org.graylog2.plugin.configuration.Configuration;
+import org.graylog2.plugin.journal.CodecConfigStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+import static com.google.common.base.Strings.isNullOrEmpty;
+
+/**
+ * Stores codec configurations as files in the journal directory, one file per distinct configuration named after
+ * its SHA-256 content hash.
+ * <p>
+ * The files are kept directly in the journal directory because the Kafka log manager refuses to start if the
+ * directory contains a subdirectory which isn't named like a topic partition.
+ * <p>
+ * The number of distinct codec configurations is bounded by the number of inputs, so the files are never cleaned
+ * up. Configurations are written before the first journal entry referencing them, so every entry can be decoded
+ * after a restart.
+ */
+@Singleton
+public class JournalCodecConfigStore implements CodecConfigStore {
+    private static final Logger LOG = LoggerFactory.getLogger(JournalCodecConfigStore.class);
+
+    static final String FILE_PREFIX = "codec-config-";
+    private static final String FILE_SUFFIX = ".json";
+    private static final Pattern HASH_PATTERN = Pattern.compile("[0-9a-f]{64}");
+    private static final long MAX_CACHED_JSON_CONFIGS = 1000;
+
+    private final Path directory;
+    // Weak keys use identity comparison, every input passes the same configuration instance for all its messages.
+    private final Cache<Configuration, String> hashesByConfig = Caffeine.newBuilder().weakKeys().build();
+    private final ConcurrentMap<String, Configuration> configsByHash = new ConcurrentHashMap<>();
+    private final Cache<String, Configuration> configsByJson = Caffeine.newBuilder()
+            .maximumSize(MAX_CACHED_JSON_CONFIGS)
+            .build();
+
+    @Inject
+    public JournalCodecConfigStore(@Named("message_journal_dir") Path journalDirectory) {
+        this.directory = journalDirectory;
+    }
+
+    @Nullable
+    @Override
+    public String put(Configuration configuration) {
+        if (configuration == null) {
+            return null;
+        }
+        return hashesByConfig.get(configuration, this::store);
+    }
+
+    @Nullable
+    private String store(Configuration configuration) {
+        final String json = configuration.serializeToJson();
+        if (json == null) {
+            return null;
+        }
+        final String hash = Hashing.sha256().hashString(json, StandardCharsets.UTF_8).toString();
+        try {
+            configsByHash.computeIfAbsent(hash, h -> {
+                write(h, json);
+                return Configuration.deserializeFromJson(json);
+            });
+            return hash;
+        } catch (UncheckedIOException e) {
+            LOG.error("Couldn't store codec configuration <{}> in {}, embedding it into journal entries.", hash, directory, e.getCause());
+            return null;
+        }
+    }
+
+    private void write(String hash, String json) {
+        final Path file = directory.resolve(FILE_PREFIX + hash + FILE_SUFFIX);
+        if (Files.exists(file)) {
+            return;
+        }
+        try {
+            Files.createDirectories(directory);
+            final Path tmpFile = directory.resolve(FILE_PREFIX + hash + FILE_SUFFIX + ".tmp");
+            Files.write(tmpFile, json.getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE,
+                    StandardOpenOption.SYNC);
+            Files.move(tmpFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Nullable
+    @Override
+    public Configuration get(String hash) {
+        if (hash == null || !HASH_PATTERN.matcher(hash).matches()) {
+            return null;
+        }
+        return configsByHash.computeIfAbsent(hash, this::read);
+    }
+
+    @Nullable
+    private Configuration read(String hash) {
+        final Path file = directory.resolve(FILE_PREFIX + hash + FILE_SUFFIX);
+        try {
+            return Configuration.deserializeFromJson(Files.readString(file, StandardCharsets.UTF_8));
+        } catch (NoSuchFileException e) {
+            LOG.warn("Codec configuration <{}> doesn't exist in {}", hash, directory);
+            return null;
+        } catch (IOException e) {
+            LOG.error("Couldn't read codec configuration <{}> from {}", hash, directory, e);
+            return null;
+        }
+    }
+
+    @Override
+    public Configuration fromJson(@Nullable String json) {
+        if (isNullOrEmpty(json)) {
+            return Configuration.EMPTY_CONFIGURATION;
+        }
+        return configsByJson.get(json, Configuration::deserializeFromJson);
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.shared.journal;
+
+import com.github.joschi.jadconfig.ParameterException;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+/**
+ * Compression applied by the {@link LocalKafkaJournal} to each batch of written entries.
+ * <p>
+ * Kafka's LZ4 codec is not offered because its framing needs an older lz4-java than the one we ship.
+ */
+public enum JournalCompression {
+    NONE,
+    GZIP,
+    SNAPPY;
+
+    @Override
+    public String toString() {
+        return super.toString().toLowerCase(Locale.ROOT);
+    }
+
+    public static class Converter implements com.github.joschi.jadconfig.Converter<JournalCompression> {
+        @Override
+        public JournalCompression convertFrom(String value) {
+            try {
+                return JournalCompression.valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new ParameterException("Unable to parse journal compression <" + value + ">. Valid values are: " +
+                        Arrays.stream(JournalCompression.values()).map(JournalCompression::toString)
+                                .collect(Collectors.toList()) + ".");
+            }
+        }
+
+        @Override
+        public String convertTo(JournalCompression value) {
+            return value.toString();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.shared.journal;
+
+import com.github.joschi.jadconfig.ParameterException;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+/**
+ * Decides when the {@link MappedSegmentJournal} forces written entries to disk.
+ */
+public enum JournalFsyncPolicy {
+    /**
+     * Never force explicitly, leave writing back dirty pages to the operating system. Segments are still forced when
+     * they are rolled and on shutdown.
+     */
+    NONE,
+    /**
+     * Force after {@code message_journal_flush_interval} entries or once unflushed entries are older than
+     * {@code message_journal_flush_age}, whichever happens first.
+     */
+    INTERVAL,
+    /**
+     * Force before a write returns. Concurrent writers share a single fsync (group commit).
+     */
+    ALWAYS;
+
+    @Override
+    public String toString() {
+        return super.toString().toLowerCase(Locale.ROOT);
+    }
+
+    public static class Converter implements com.github.joschi.jadconfig.Converter<JournalFsyncPolicy> {
+        @Override
+        public JournalFsyncPolicy convertFrom(String value) {
+            try {
+                return JournalFsyncPolicy.valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new ParameterException("Unable to parse journal fsync policy <" + value + ">. Valid policies are: " +
+                        Arrays.stream(JournalFsyncPolicy.values()).map(JournalFsyncPolicy::toString)
+                                .collect(Collectors.toList()) + ".");
+            }
+        }
+
+        @Override
+        public String convertTo(JournalFsyncPolicy value) {
+            return value.toString();
+        }
+    }
+}
@@ -22,6 +22,7 @@ import com.codahale.metrics.MetricFilter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
 import com.github.joschi.jadconfig.util.Size;
+import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Sets;
@@ -43,9 +44,12 @@ import org.graylog.shaded.kafka09.log.LogConfig;
 import org.graylog.shaded.kafka09.log.LogManager;
 import org.graylog.shaded.kafka09.log.LogSegment;
 import org.graylog.shaded.kafka09.message.ByteBufferMessageSet;
+import org.graylog.shaded.kafka09.message.CompressionCodec;
+import org.graylog.shaded.kafka09.message.CompressionCodec$;
 import org.graylog.shaded.kafka09.message.Message;
 import org.graylog.shaded.kafka09.message.MessageAndOffset;
 import org.graylog.shaded.kafka09.message.MessageSet;
+import org.graylog.shaded.kafka09.message.NoCompressionCodec$;
 import org.graylog.shaded.kafka09.scala.Option;
 import org.graylog.shaded.kafka09.scala.collection.Iterator;
 import org.graylog.shaded.kafka09.scala.collection.JavaConversions;
@@ -91,6 +95,7 @@ import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 
 import static com.codahale.metrics.MetricRegistry.name;
 import static java.util.concurrent.TimeUnit.DAYS;
@@ -101,22 +106,15 @@ import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.graylog2.plugin.Tools.bytesToHex;
 
 @Singleton
-public class LocalKafkaJournal extends AbstractIdleService implements Journal {
+public class LocalKafkaJournal extends AbstractIdleService implements SegmentedJournal {
     private static final Logger LOG = LoggerFactory.getLogger(LocalKafkaJournal.class);
 
     private static final String LEGACY_CLASS_NAME = "org.graylog2.shared.journal.KafkaJournal";
 
     private static final int NUM_IO_THREADS = 1;
 
-    public static final long DEFAULT_COMMITTED_OFFSET = Long.MIN_VALUE;
-    public static final int NOTIFY_ON_UTILIZATION_PERCENTAGE = 95;
-    public static final int THRESHOLD_THROTTLING_DISABLED = -1;
-
     // Metric names, which should be used twice (once in metric startup and once in metric teardown).
-    public static final String METER_WRITTEN_MESSAGES = "writtenMessages";
-    public static final String METER_READ_MESSAGES = "readMessages";
     private static final String METER_WRITE_DISCARDED_MESSAGES = "writeDiscardedMessages";
-    public static final String GAUGE_UNCOMMITTED_MESSAGES = "uncommittedMessages";
     private static final String TIMER_WRITE_TIME = "writeTime";
     private static final String TIMER_READ_TIME = "readTime";
     private static final String METRIC_NAME_SIZE = "size";
@@ -125,6 +123,12 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
     private static final String METRIC_NAME_UNFLUSHED_MESSAGES = "unflushedMessages";
     private static final String METRIC_NAME_RECOVERY_POINT = "recoveryPoint";
     private static final String METRIC_NAME_LAST_FLUSH_TIME = "lastFlushTime";
+    private static final String TIMER_COMPRESSION_TIME = "compressionTime";
+    private static final String GAUGE_COMPRESSION_RATIO = "compressionRatio";
+
+    // A compressed batch is stored as a single Kafka message which has to be decompressed as a whole, even if a reader
+    // only needs a few entries of it. The common codecs don't compress better with larger inputs anyway.
+    private static final long MAX_COMPRESSED_BATCH_SIZE = Size.kilobytes(256L).toBytes();
 
     // This exists so we can use JodaTime's millis provider in tests.
     // Kafka really only cares about the milliseconds() method in here.
@@ -155,6 +159,7 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
     private final Timer writeTime;
 
     private final Timer readTime;
+    private final Timer compressionTime;
     private final KafkaScheduler kafkaScheduler;
     private final Meter writtenMessages;
     private final Meter readMessages;
@@ -165,9 +170,13 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
     private final RecoveryCheckpointFlusher recoveryCheckpointFlusher;
     private final LogRetentionCleaner logRetentionCleaner;
     private final long maxSegmentSize;
+    private final long maxBatchSize;
     private final int maxMessageSize;
     private final long maxRetentionSize;
     private final String metricPrefix;
+    private final CompressionCodec compressionCodec;
+    private final LongAdder uncompressedBytes = new LongAdder();
+    private final LongAdder compressedBytes = new LongAdder();
 
     private long nextReadOffset = 0L;
     private ScheduledFuture<?> checkpointFlusherFuture;
@@ -190,16 +199,34 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
                              @Named("message_journal_flush_interval") long flushInterval,
                              @Named("message_journal_flush_age") Duration flushAge,
                              @Named("lb_throttle_threshold_percentage") int throttleThresholdPercentage,
+                             @Named("message_journal_compression") JournalCompression compression,
                              MetricRegistry metricRegistry,
                              ServerStatus serverStatus) {
 
         this(journalDirectory, scheduler, segmentSize, segmentAge, retentionSize, retentionAge, flushInterval, flushAge,
-                throttleThresholdPercentage, metricRegistry, serverStatus, LocalKafkaJournal.class.getName());
+                throttleThresholdPercentage, compression, metricRegistry, serverStatus, LocalKafkaJournal.class.getName());
+    }
+
+    public LocalKafkaJournal(Path journalDirectory,
+                             ScheduledExecutorService scheduler,
+                             Size segmentSize,
+                             Duration segmentAge,
+                             Size retentionSize,
+                             Duration retentionAge,
+                             long flushInterval,
+                             Duration flushAge,
+                             int throttleThresholdPercentage,
+                             MetricRegistry metricRegistry,
+                             ServerStatus serverStatus,
+                             String metricPrefix) {
+        this(journalDirectory, scheduler, segmentSize, segmentAge, retentionSize, retentionAge, flushInterval, flushAge,
+                throttleThresholdPercentage, JournalCompression.NONE, metricRegistry, serverStatus, metricPrefix);
     }
 
     /**
      * @param throttleThresholdPercentage The journal utilization percent at which throttling will be triggered.
      *                                    Expressed as an integer between 1 and 100. The value -1 disables throttling.
+     * @param compression                 The codec used to compress each batch of written entries.
      */
     public LocalKafkaJournal(Path journalDirectory,
                              ScheduledExecutorService scheduler,
@@ -210,6 +237,7 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
                              long flushInterval,
                              Duration flushAge,
                              int throttleThresholdPercentage,
+                             JournalCompression compression,
                              MetricRegistry metricRegistry,
                              ServerStatus serverStatus,
                              String metricPrefix) {
@@ -227,6 +255,8 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
         // Max message size should not be bigger than max segment size.
         this.maxMessageSize = Ints.saturatedCast(maxSegmentSize);
         this.maxRetentionSize = retentionSize.toBytes();
+        this.compressionCodec = CompressionCodec$.MODULE$.getCompressionCodec(compression.toString());
+        this.maxBatchSize = isCompressing() ? Math.min(maxSegmentSize, MAX_COMPRESSED_BATCH_SIZE) : maxSegmentSize;
         this.metricPrefix = metricPrefix;
         this.metricRegistry = metricRegistry;
 
@@ -237,6 +267,8 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
         registerUncommittedGauge(metricRegistry, name(this.metricPrefix, GAUGE_UNCOMMITTED_MESSAGES));
         this.writeTime = registerHdrTimer(metricRegistry, name(this.metricPrefix, TIMER_WRITE_TIME)); // the registerHdrTimer helper doesn't throw on existing metrics
         this.readTime = registerHdrTimer(metricRegistry, name(this.metricPrefix, TIMER_READ_TIME)); // the registerHdrTimer helper doesn't throw on existing metrics
+        this.compressionTime = registerHdrTimer(metricRegistry, name(this.metricPrefix, TIMER_COMPRESSION_TIME)); // the registerHdrTimer helper doesn't throw on existing metrics
+        registerCompressionRatioGauge(metricRegistry, name(this.metricPrefix, GAUGE_COMPRESSION_RATIO));
 
         final Map<String, Object> config = ImmutableMap.<String, Object>builder()
                 // segmentSize: The soft maximum for the size of a segment file in the log
@@ -354,12 +386,7 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
             this.metricRegistry.register(getOldestSegmentMetricName(), (Gauge<Date>) new Gauge<Date>() {
                 @Override
                 public Date getValue() {
-                    long oldestSegment = Long.MAX_VALUE;
-                    for (final LogSegment segment : LocalKafkaJournal.this.getSegments()) {
-                        oldestSegment = Math.min(oldestSegment, segment.created());
-                    }
-
-                    return new Date(oldestSegment);
+                    return new Date(getOldestSegmentCreationTime());
                 }
             });
 
@@ -444,6 +471,26 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
         }
     }
 
+    /**
+     * The ratio is the size of the written entries divided by the size they take up in the journal.
+     */
+    private void registerCompressionRatioGauge(MetricRegistry metricRegistry, String name) {
+        try {
+            metricRegistry.register(name,
+                    (Gauge<Double>) () -> {
+                        final long compressed = compressedBytes.sum();
+                        return compressed == 0 ? 1.0d : (double) uncompressedBytes.sum() / compressed;
+                    });
+        } catch (IllegalArgumentException ignored) {
+            // already registered, we'll ignore that.
+        }
+    }
+
+    private boolean isCompressing() {
+        return compressionCodec != NoCompressionCodec$.MODULE$;
+    }
+
+    @Override
     public int getPurgedSegmentsInLastRetention() {
         return purgedSegmentsInLastRetention.get();
     }
@@ -461,6 +508,8 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
         this.metricRegistry.remove(name(metricPrefix, GAUGE_UNCOMMITTED_MESSAGES));
         this.metricRegistry.remove(name(metricPrefix, TIMER_WRITE_TIME));
         this.metricRegistry.remove(name(metricPrefix, TIMER_READ_TIME));
+        this.metricRegistry.remove(name(metricPrefix, TIMER_COMPRESSION_TIME));
+        this.metricRegistry.remove(name(metricPrefix, GAUGE_COMPRESSION_RATIO));
         this.metricRegistry.remove(name(metricPrefix, METRIC_NAME_SIZE));
         this.metricRegistry.remove(name(metricPrefix, METRIC_NAME_LOG_END_OFFSET));
         this.metricRegistry.remove(name(metricPrefix, METRIC_NAME_NUMBER_OF_SEGMENTS));
@@ -533,13 +582,13 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
                 }
 
                 // If adding the new message to the message set would overflow the max segment size, flush the current
-                // list of message to avoid a MessageSetSizeTooLargeException.
-                if ((messageSetSize + newMessageSize) > maxSegmentSize) {
+                // list of message to avoid a MessageSetSizeTooLargeException. Compressed batches are kept smaller.
+                if ((messageSetSize + newMessageSize) > maxBatchSize) {
                     if (LOG.isDebugEnabled()) {
-                        LOG.debug("Flushing {} bytes message set with {} messages to avoid overflowing segment with max size of {} bytes",
-                                messageSetSize, messages.size(), maxSegmentSize);
+                        LOG.debug("Flushing {} bytes message set with {} messages to avoid overflowing max batch size of {} bytes",
+                                messageSetSize, messages.size(), maxBatchSize);
                     }
-                    lastWriteOffset = flushMessages(messages, payloadSize);
+                    lastWriteOffset = flushMessages(messages, payloadSize, messageSetSize);
                     // Reset the messages list and size counters to start a new batch.
                     messages.clear();
                     messageSetSize = 0;
@@ -555,19 +604,31 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
 
             // Flush the rest of the messages.
             if (messages.size() > 0) {
-                lastWriteOffset = flushMessages(messages, payloadSize);
+                lastWriteOffset = flushMessages(messages, payloadSize, messageSetSize);
             }
 
             return lastWriteOffset;
         }
     }
 
-    private long flushMessages(List<Message> messages, long payloadSize) {
+    private long flushMessages(List<Message> messages, long payloadSize, long messageSetSize) {
         if (messages.isEmpty()) {
             LOG.debug("No messages to flush, not trying to write an empty message set.");
             return -1L;
         }
 
+        final long lastWriteOffset = isCompressing() ? appendCompressed(messages, messageSetSize) : append(messages);
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Wrote {} messages to journal: {} bytes (payload {} bytes), log position {} to {}",
+                    messages.size(), messageSetSize, payloadSize, lastWriteOffset - messages.size() + 1, lastWriteOffset);
+        }
+        writtenMessages.mark(messages.size());
+
+        return lastWriteOffset;
+    }
+
+    private long append(List<Message> messages) {
         final ByteBufferMessageSet messageSet = new ByteBufferMessageSet(JavaConversions.asScalaBuffer(messages).toSeq());
 
         if (LOG.isDebugEnabled()) {
@@ -575,15 +636,31 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
         }
 
         final LogAppendInfo appendInfo = kafkaLog.append(messageSet, true);
-        long lastWriteOffset = appendInfo.lastOffset();
+        return appendInfo.lastOffset();
+    }
+
+    /**
+     * Writes the messages as a single compressed message. Kafka would decompress and compress the message set again
+     * to assign the offsets, so we assign them ourselves while compressing. This requires that nobody else appends to
+     * the log in between.
+     */
+    private synchronized long appendCompressed(List<Message> messages, long messageSetSize) {
+        final AtomicLong offsetCounter = new AtomicLong(kafkaLog.logEndOffset());
+        final ByteBufferMessageSet messageSet;
+        try (Timer.Context ignored = compressionTime.time()) {
+            messageSet = new ByteBufferMessageSet(compressionCodec, offsetCounter, JavaConversions.asScalaBuffer(messages).toSeq());
+        }
+
+        uncompressedBytes.add(messageSetSize);
+        compressedBytes.add(messageSet.sizeInBytes());
 
         if (LOG.isDebugEnabled()) {
-            LOG.debug("Wrote {} messages to journal: {} bytes (payload {} bytes), log position {} to {}",
-                    messages.size(), messageSet.sizeInBytes(), payloadSize, appendInfo.firstOffset(), lastWriteOffset);
+            LOG.debug("Trying to write {} compressed ByteBufferMessageSet with size of {} bytes to journal",
+                    compressionCodec.name(), messageSet.sizeInBytes());
         }
-        writtenMessages.mark(messages.size());
 
-        return lastWriteOffset;
+        final LogAppendInfo appendInfo = kafkaLog.append(messageSet, false);
+        return appendInfo.lastOffset();
     }
 
     /**
@@ -679,16 +756,25 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
                     maximumCount, readOffset, maxOffset);
 
             // TODO benchmark and make read-ahead strategy configurable for performance tuning
+            // Don't let Kafka stop at maxOffset, it only knows the last offset of compressed messages and would
+            // return nothing if readOffset and maxOffset fall into the same one. We stop at maxOffset ourselves.
             final MessageSet messageSet = kafkaLog.read(readOffset,
                     5 * 1024 * 1024,
-                    Option.<Object>apply(maxOffset)).messageSet();
+                    Option.<Object>empty()).messageSet();
 
-            final Iterator<MessageAndOffset> iterator = messageSet.iterator();
+            final java.util.Iterator<MessageAndOffset> iterator = new DecompressingIterator(messageSet.iterator());
             long firstOffset = Long.MIN_VALUE;
             long lastOffset = Long.MIN_VALUE;
             long totalBytes = 0;
             while (iterator.hasNext()) {
                 final MessageAndOffset messageAndOffset = iterator.next();
+                // A compressed message is always read as a whole, skip the entries before the requested offset.
+                if (messageAndOffset.offset() < readOffset) {
+                    continue;
+                }
+                if (messageAndOffset.offset() >= maxOffset) {
+                    break;
+                }
 
                 if (firstOffset == Long.MIN_VALUE) {
                     firstOffset = messageAndOffset.offset();
@@ -915,6 +1001,15 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
         return kafkaLog.numberOfSegments();
     }
 
+    @Override
+    public long getOldestSegmentCreationTime() {
+        long oldestSegment = Long.MAX_VALUE;
+        for (final LogSegment segment : getSegments()) {
+            oldestSegment = Math.min(oldestSegment, segment.created());
+        }
+        return oldestSegment;
+    }
+
     /**
      * Returns the highest journal offset that has been writting to persistent storage by Graylog.
      * <p>
@@ -1173,4 +1268,33 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
             }
         }
     }
+
+    /**
+     * Iterates over the entries of a message set read from the log and transparently decompresses compressed messages.
+     */
+    private static class DecompressingIterator extends AbstractIterator<MessageAndOffset> {
+        private final Iterator<MessageAndOffset> shallowIterator;
+        private Iterator<MessageAndOffset> decompressedIterator = null;
+
+        DecompressingIterator(Iterator<MessageAndOffset> shallowIterator) {
+            this.shallowIterator = shallowIterator;
+        }
+
+        @Override
+        protected MessageAndOffset computeNext() {
+            while (true) {
+                if (decompressedIterator != null && decompressedIterator.hasNext()) {
+                    return decompressedIterator.next();
+                }
+                if (!shallowIterator.hasNext()) {
+                    return endOfData();
+                }
+                final MessageAndOffset messageAndOffset = shallowIterator.next();
+                if (messageAndOffset.message().compressionCodec() == NoCompressionCodec$.MODULE$) {
+                    return messageAndOffset;
+                }
+                decompressedIterator = ByteBufferMessageSet.deepIterator(messageAndOffset.message());
+            }
+        }
+    }
 }
@@ -17,11 +17,15 @@
 package org.graylog2.shared.journal;
 
 import com.google.inject.Scopes;
+import com.google.inject.multibindings.OptionalBinder;
 import org.graylog2.plugin.PluginModule;
+import org.graylog2.plugin.journal.CodecConfigStore;
 
 public class LocalKafkaJournalModule extends PluginModule {
     @Override
     protected void configure() {
         bind(Journal.class).to(LocalKafkaJournal.class).in(Scopes.SINGLETON);
+        OptionalBinder.newOptionalBinder(binder(), CodecConfigStore.class)
+                .setBinding().to(JournalCodecConfigStore.class).in(Scopes.SINGLETON);
     }
 }
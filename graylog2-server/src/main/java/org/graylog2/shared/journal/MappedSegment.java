@@ -0,0 +1,472 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.shared.journal;
+
+import org.apache.kafka.common.utils.ByteBufferUnmapper;
+import org.joda.time.DateTimeUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32C;
+
+/**
+ * A single segment file of the {@link MappedSegmentJournal}.
+ * <p>
+ * The file is mapped into memory and entries are appended as {@code [int size][int crc32c][payload]} records. Offsets
+ * are not stored, the offset of a record is the base offset of the segment plus the number of records in front of it.
+ * A sparse index maps every few kilobytes of records to their file position, so reads don't have to scan the whole
+ * segment. The active segment is preallocated to its full capacity and truncated to its size once it is sealed.
+ * <p>
+ * Only a single thread may append to a segment, but any number of threads may read from it concurrently. Records are
+ * published to readers by updating the volatile entry count after they have been written.
+ * <p>
+ * The mapping is reference counted. The journal holds one reference until the segment is deleted, readers
+ * {@link #retain() retain} the segment as long as they use payloads read from it. The memory is unmapped once the last
+ * reference has been {@link #release() released}, so deleted segments don't keep the disk space and address space
+ * allocated until the buffer happens to be garbage collected.
+ */
+final class MappedSegment {
+    private static final Logger LOG = LoggerFactory.getLogger(MappedSegment.class);
+
+    static final String SEGMENT_FILE_SUFFIX = ".segment";
+    static final String INDEX_FILE_SUFFIX = ".index";
+    static final int RECORD_HEADER_SIZE = 8;
+    static final int INDEX_INTERVAL_BYTES = 4096;
+
+    // entry count, size and number of index entries
+    private static final int INDEX_FILE_HEADER_SIZE = 12;
+
+    private final Path segmentFile;
+    private final Path indexFile;
+    private final long baseOffset;
+    private final long created;
+    private final MappedByteBuffer buffer;
+    private final CRC32C crc = new CRC32C();
+    // Starts with the reference of the journal, which is released when the segment is deleted.
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    private FileChannel channel;
+    private int bytesSinceLastIndexEntry;
+    private volatile int size;
+    private volatile int entryCount;
+    private volatile long lastModified;
+    private volatile boolean sealed;
+    private boolean deleted;
+    // Each entry holds the relative offset in the upper and the file position in the lower 32 bits.
+    private volatile long[] index = new long[64];
+    private volatile int indexCount;
+
+    private MappedSegment(Path segmentFile, long baseOffset, long created, FileChannel channel, MappedByteBuffer buffer) {
+        this.segmentFile = segmentFile;
+        this.indexFile = indexFileFor(segmentFile);
+        this.baseOffset = baseOffset;
+        this.created = created;
+        this.channel = channel;
+        this.buffer = buffer;
+    }
+
+    static String fileName(long baseOffset) {
+        return String.format(Locale.ROOT, "%020d", baseOffset) + SEGMENT_FILE_SUFFIX;
+    }
+
+    static long baseOffsetOf(Path segmentFile) {
+        final String fileName = segmentFile.getFileName().toString();
+        return Long.parseLong(fileName.substring(0, fileName.length() - SEGMENT_FILE_SUFFIX.length()));
+    }
+
+    private static Path indexFileFor(Path segmentFile) {
+        final String fileName = segmentFile.getFileName().toString();
+        return segmentFile.resolveSibling(
+                fileName.substring(0, fileName.length() - SEGMENT_FILE_SUFFIX.length()) + INDEX_FILE_SUFFIX);
+    }
+
+    /**
+     * Creates a new, empty segment which can hold up to {@code capacity} bytes.
+     */
+    static MappedSegment create(Path directory, long baseOffset, int capacity) throws IOException {
+        final Path segmentFile = directory.resolve(fileName(baseOffset));
+        final FileChannel channel = FileChannel.open(segmentFile,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            final MappedSegment segment = new MappedSegment(segmentFile, baseOffset, DateTimeUtils.currentTimeMillis(), channel, buffer);
+            segment.lastModified = segment.created;
+            return segment;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens an existing segment. Sealed segments with a valid index file are mapped read-only. All other segments are
+     * recovered by scanning their records and cutting off everything after the last valid record. The active segment
+     * stays writable, all others are sealed after recovery.
+     */
+    static MappedSegment open(Path segmentFile, int capacity, boolean active) throws IOException {
+        final long baseOffset = baseOffsetOf(segmentFile);
+        final BasicFileAttributes attributes = Files.readAttributes(segmentFile, BasicFileAttributes.class);
+        final long created = attributes.creationTime().toMillis();
+
+        if (!active) {
+            final MappedSegment segment = openSealed(segmentFile, baseOffset, created, attributes.size());
+            if (segment != null) {
+                segment.lastModified = attributes.lastModifiedTime().toMillis();
+                return segment;
+            }
+        }
+
+        Files.deleteIfExists(indexFileFor(segmentFile));
+        final FileChannel channel = FileChannel.open(segmentFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            final int mappedSize = active ? Math.max(capacity, (int) attributes.size()) : (int) attributes.size();
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, mappedSize);
+            final MappedSegment segment = new MappedSegment(segmentFile, baseOffset, created, channel, buffer);
+            segment.lastModified = attributes.lastModifiedTime().toMillis();
+            segment.recover((int) attributes.size());
+            if (!active) {
+                segment.seal();
+            }
+            return segment;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static MappedSegment openSealed(Path segmentFile, long baseOffset, long created, long fileSize) throws IOException {
+        final ByteBuffer indexBytes;
+        try {
+            indexBytes = ByteBuffer.wrap(Files.readAllBytes(indexFileFor(segmentFile)));
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        if (indexBytes.remaining() < INDEX_FILE_HEADER_SIZE) {
+            return null;
+        }
+        final int entryCount = indexBytes.getInt();
+        final int size = indexBytes.getInt();
+        final int indexCount = indexBytes.getInt();
+        if (size != fileSize || indexCount < 0 || indexBytes.remaining() != indexCount * Long.BYTES) {
+            LOG.warn("Index of journal segment {} doesn't match the segment, recovering it.", segmentFile);
+            return null;
+        }
+        final long[] index = new long[Math.max(indexCount, 1)];
+        indexBytes.asLongBuffer().get(index, 0, indexCount);
+
+        final MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(segmentFile, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        final MappedSegment segment = new MappedSegment(segmentFile, baseOffset, created, null, buffer);
+        segment.index = index;
+        segment.indexCount = indexCount;
+        segment.size = size;
+        segment.entryCount = entryCount;
+        segment.sealed = true;
+        return segment;
+    }
+
+    private void recover(int fileSize) {
+        int position = 0;
+        int count = 0;
+        while (position + RECORD_HEADER_SIZE <= fileSize) {
+            final int payloadSize = buffer.getInt(position);
+            if (payloadSize <= 0 || payloadSize > fileSize - position - RECORD_HEADER_SIZE) {
+                break;
+            }
+            crc.reset();
+            crc.update(buffer.slice(position + RECORD_HEADER_SIZE, payloadSize));
+            if ((int) crc.getValue() != buffer.getInt(position + Integer.BYTES)) {
+                break;
+            }
+            maybeAddIndexEntry(count, position);
+            position += RECORD_HEADER_SIZE + payloadSize;
+            bytesSinceLastIndexEntry += RECORD_HEADER_SIZE + payloadSize;
+            count++;
+        }
+        if (position + Integer.BYTES <= fileSize && buffer.getInt(position) != 0) {
+            LOG.warn("Journal segment {} contains an invalid record at position {}, discarding the remaining {} bytes.",
+                    segmentFile, position, fileSize - position);
+        }
+        LOG.debug("Recovered {} entries ({} bytes) from journal segment {}", count, position, segmentFile);
+        this.size = position;
+        this.entryCount = count;
+    }
+
+    /**
+     * Appends the payload to the segment.
+     *
+     * @return {@code false} if the segment doesn't have enough capacity left for the payload
+     */
+    boolean append(byte[] payload) {
+        final int position = size;
+        final int recordSize = RECORD_HEADER_SIZE + payload.length;
+        if (sealed || recordSize > buffer.capacity() - position) {
+            return false;
+        }
+        crc.reset();
+        crc.update(payload);
+        buffer.put(position + RECORD_HEADER_SIZE, payload);
+        buffer.putInt(position + Integer.BYTES, (int) crc.getValue());
+        // The size is written last, a record without a size marks the end of the segment during recovery.
+        buffer.putInt(position, payload.length);
+
+        final int count = entryCount;
+        maybeAddIndexEntry(count, position);
+        bytesSinceLastIndexEntry += recordSize;
+        lastModified = DateTimeUtils.currentTimeMillis();
+        size = position + recordSize;
+        entryCount = count + 1;
+        return true;
+    }
+
+    private void maybeAddIndexEntry(int relativeOffset, int position) {
+        if (bytesSinceLastIndexEntry < INDEX_INTERVAL_BYTES) {
+            return;
+        }
+        long[] currentIndex = index;
+        final int count = indexCount;
+        if (count == currentIndex.length) {
+            currentIndex = Arrays.copyOf(currentIndex, count * 2);
+        }
+        currentIndex[count] = ((long) relativeOffset << 32) | (position & 0xFFFFFFFFL);
+        // Publish the array before the count, readers read the count first.
+        index = currentIndex;
+        indexCount = count + 1;
+        bytesSinceLastIndexEntry = 0;
+    }
+
+    /**
+     * Reads entries starting at the given offset without copying them. The payloads of the returned entries are
+     * read-only views of the mapped file, the caller has to {@link #retain() retain} the segment while it uses them.
+     *
+     * @return the number of payload bytes read
+     */
+    long read(long offset, long maximumCount, long maximumBytes, List<Journal.JournalReadEntry> entries) {
+        final int count = entryCount;
+        long relativeOffset = offset - baseOffset;
+        if (relativeOffset < 0 || relativeOffset >= count) {
+            return 0;
+        }
+        int position = positionOf((int) relativeOffset);
+        long read = 0;
+        long bytes = 0;
+        while (relativeOffset < count && read < maximumCount && (read == 0 || bytes < maximumBytes)) {
+            final int payloadSize = buffer.getInt(position);
+            final ByteBuffer payload = buffer.slice(position + RECORD_HEADER_SIZE, payloadSize).asReadOnlyBuffer();
+            entries.add(new Journal.JournalReadEntry(payload, baseOffset + relativeOffset));
+            position += RECORD_HEADER_SIZE + payloadSize;
+            bytes += payloadSize;
+            relativeOffset++;
+            read++;
+        }
+        return bytes;
+    }
+
+    private int positionOf(int relativeOffset) {
+        final int count = indexCount;
+        final long[] currentIndex = index;
+
+        int low = 0;
+        int high = count - 1;
+        int entry = 0;
+        int position = 0;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final int indexedOffset = (int) (currentIndex[mid] >>> 32);
+            if (indexedOffset <= relativeOffset) {
+                entry = indexedOffset;
+                position = (int) currentIndex[mid];
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        while (entry < relativeOffset) {
+            position += RECORD_HEADER_SIZE + buffer.getInt(position);
+            entry++;
+        }
+        return position;
+    }
+
+    /**
+     * Forces all appended records to disk.
+     */
+    void force() {
+        if (!sealed && retain()) {
+            try {
+                buffer.force();
+            } finally {
+                release();
+            }
+        }
+    }
+
+    /**
+     * Forces the segment to disk, cuts off the preallocated space and writes the index file. No more records can be
+     * appended afterwards.
+     */
+    synchronized void seal() throws IOException {
+        if (sealed) {
+            return;
+        }
+        sealed = true;
+        buffer.force();
+        channel.truncate(size);
+        channel.force(true);
+        channel.close();
+        channel = null;
+        Files.setLastModifiedTime(segmentFile, FileTime.fromMillis(lastModified));
+
+        final int count = indexCount;
+        final ByteBuffer indexBytes = ByteBuffer.allocate(INDEX_FILE_HEADER_SIZE + count * Long.BYTES);
+        indexBytes.putInt(entryCount).putInt(size).putInt(count);
+        indexBytes.asLongBuffer().put(index, 0, count);
+        Files.write(indexFile, indexBytes.array(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE, StandardOpenOption.SYNC);
+    }
+
+    /**
+     * Forces the segment to disk and releases the file handle. The preallocated space of an active segment is kept,
+     * it is recovered when the journal is opened again.
+     */
+    synchronized void close() throws IOException {
+        if (channel != null) {
+            buffer.force();
+            channel.close();
+            channel = null;
+        }
+    }
+
+    /**
+     * Deletes the segment files and releases the reference of the journal. Entries which have already been read stay
+     * accessible until their readers have released the segment, the memory is unmapped afterwards.
+     */
+    synchronized void delete() throws IOException {
+        if (deleted) {
+            return;
+        }
+        deleted = true;
+        sealed = true;
+        try {
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+            Files.deleteIfExists(indexFile);
+            Files.deleteIfExists(segmentFile);
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Acquires a reference to the mapped memory.
+     *
+     * @return {@code false} if the segment has already been deleted and unmapped
+     */
+    boolean retain() {
+        int current;
+        do {
+            current = references.get();
+            if (current <= 0) {
+                return false;
+            }
+        } while (!references.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    /**
+     * Releases a reference acquired by {@link #retain()}. The memory is unmapped when the last reference is released,
+     * the segment must not be accessed afterwards.
+     */
+    void release() {
+        if (references.decrementAndGet() == 0) {
+            try {
+                ByteBufferUnmapper.unmap(segmentFile.toString(), buffer);
+            } catch (IOException e) {
+                LOG.warn("Unable to unmap journal segment {}, it will be released by the garbage collector.", segmentFile, e);
+            }
+        }
+    }
+
+    /**
+     * @return {@code true} once the memory of the segment has been unmapped
+     */
+    boolean isReleased() {
+        return references.get() <= 0;
+    }
+
+    long getBaseOffset() {
+        return baseOffset;
+    }
+
+    /**
+     * @return the offset the next record appended to this segment would get
+     */
+    long getEndOffset() {
+        return baseOffset + entryCount;
+    }
+
+    int getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * @return the number of bytes used by records
+     */
+    int getSize() {
+        return size;
+    }
+
+    long getCreated() {
+        return created;
+    }
+
+    long getLastModified() {
+        return lastModified;
+    }
+
+    boolean isSealed() {
+        return sealed;
+    }
+
+    Path getFile() {
+        return segmentFile;
+    }
+
+    @Override
+    public String toString() {
+        return "MappedSegment{file=" + segmentFile.getFileName() + ", baseOffset=" + baseOffset +
+                ", entryCount=" + entryCount + ", size=" + size + ", sealed=" + sealed + "}";
+    }
+}
@@ -0,0 +1,940 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.shared.journal;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.github.joschi.jadconfig.util.Size;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Iterables;
+import com.google.common.primitives.Ints;
+import com.google.common.util.concurrent.AbstractIdleService;
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+import jakarta.inject.Singleton;
+import org.graylog2.plugin.GlobalMetricNames;
+import org.graylog2.plugin.ServerStatus;
+import org.graylog2.plugin.ThrottleState;
+import org.graylog2.plugin.lifecycles.LoadBalancerStatus;
+import org.graylog2.shared.metrics.HdrTimer;
+import org.joda.time.DateTimeUtils;
+import org.joda.time.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.SortedMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+import static com.codahale.metrics.MetricRegistry.name;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * A journal which appends entries to memory-mapped segment files, see {@link MappedSegment} for the file format.
+ * <p>
+ * Compared to the {@link LocalKafkaJournal} it doesn't wrap entries into message sets and reads return views of the
+ * mapped files instead of copies. Retention, the committed offset and the throttle state behave the same way.
+ * <p>
+ * The segment files are stored directly in the journal directory, next to the files of the Kafka journal, so both
+ * journals can be opened at the same time to migrate entries and they share the {@link JournalCodecConfigStore}.
+ */
+@Singleton
+public class MappedSegmentJournal extends AbstractIdleService implements SegmentedJournal {
+    private static final Logger LOG = LoggerFactory.getLogger(MappedSegmentJournal.class);
+
+    static final String LOCK_FILE_NAME = "mapped-journal.lock";
+    static final String COMMITTED_OFFSET_FILE_NAME = "mapped-journal-committed-read-offset";
+
+    private static final long MAX_READ_BYTES = 5 * 1024 * 1024;
+    private static final long RETENTION_CHECK_INTERVAL_MS = SECONDS.toMillis(60L);
+
+    // Metric names, which should be used twice (once in metric startup and once in metric teardown).
+    private static final String METER_WRITE_DISCARDED_MESSAGES = "writeDiscardedMessages";
+    private static final String TIMER_WRITE_TIME = "writeTime";
+    private static final String TIMER_READ_TIME = "readTime";
+    private static final String METRIC_NAME_SIZE = "size";
+    private static final String METRIC_NAME_LOG_END_OFFSET = "logEndOffset";
+    private static final String METRIC_NAME_NUMBER_OF_SEGMENTS = "numberOfSegments";
+    private static final String METRIC_NAME_UNFLUSHED_MESSAGES = "unflushedMessages";
+    private static final String METRIC_NAME_RECOVERY_POINT = "recoveryPoint";
+    private static final String METRIC_NAME_LAST_FLUSH_TIME = "lastFlushTime";
+
+    private final Path journalDirectory;
+    private final Path committedReadOffsetFile;
+    private final ScheduledExecutorService scheduler;
+    private final ServerStatus serverStatus;
+    private final MetricRegistry metricRegistry;
+    private final String metricPrefix;
+    private final int segmentCapacity;
+    private final int maxMessageSize;
+    private final long segmentAgeMillis;
+    private final long maxRetentionSize;
+    private final long retentionAgeMillis;
+    private final long flushInterval;
+    private final long flushAgeMillis;
+    private final JournalFsyncPolicy fsyncPolicy;
+    private final int throttleThresholdPercentage;
+
+    private final Meter writtenMessages;
+    private final Meter readMessages;
+    private final Meter writeDiscardedMessages;
+    private final Timer writeTime;
+    private final Timer readTime;
+
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+    private final ConcurrentNavigableMap<Long, MappedSegment> segments = new ConcurrentSkipListMap<>();
+    // Guards appending to and rolling the active segment as well as deleting segments.
+    private final ReentrantLock writeLock = new ReentrantLock();
+    // Serializes fsyncs, writers waiting for it can piggyback on the fsync of another writer.
+    private final Object syncLock = new Object();
+    private final AtomicLong committedOffset = new AtomicLong(DEFAULT_COMMITTED_OFFSET);
+    private final AtomicReference<ThrottleState> throttleState = new AtomicReference<>();
+    private final AtomicInteger purgedSegmentsInLastRetention = new AtomicInteger();
+    private final LogRetentionCleaner logRetentionCleaner = new LogRetentionCleaner();
+    // The segments the entries of the last read of each thread point into. They are released on the next read.
+    private final ThreadLocal<List<MappedSegment>> readSegments = ThreadLocal.withInitial(ArrayList::new);
+
+    private volatile MappedSegment activeSegment;
+    private volatile long logEndOffset;
+    // Every entry before this offset has been forced to disk.
+    private volatile long flushedOffset;
+    private volatile long lastFlushTime;
+    private volatile long nextReadOffset = 0L;
+    private volatile boolean shuttingDown;
+
+    private ScheduledFuture<?> dirtyLogFlushFuture;
+    private ScheduledFuture<?> logRetentionFuture;
+    private ScheduledFuture<?> offsetFlusherFuture;
+
+    @Inject
+    public MappedSegmentJournal(@Named("message_journal_dir") Path journalDirectory,
+                                @Named("scheduler") ScheduledExecutorService scheduler,
+                                @Named("message_journal_segment_size") Size segmentSize,
+                                @Named("message_journal_segment_age") Duration segmentAge,
+                                @Named("message_journal_max_size") Size retentionSize,
+                                @Named("message_journal_max_age") Duration retentionAge,
+                                @Named("message_journal_flush_interval") long flushInterval,
+                                @Named("message_journal_flush_age") Duration flushAge,
+                                @Named("message_journal_fsync_policy") JournalFsyncPolicy fsyncPolicy,
+                                @Named("lb_throttle_threshold_percentage") int throttleThresholdPercentage,
+                                MetricRegistry metricRegistry,
+                                ServerStatus serverStatus) {
+        this(journalDirectory, scheduler, segmentSize, segmentAge, retentionSize, retentionAge, flushInterval, flushAge,
+                fsyncPolicy, throttleThresholdPercentage, metricRegistry, serverStatus, MappedSegmentJournal.class.getName());
+    }
+
+    /**
+     * @param throttleThresholdPercentage The journal utilization percent at which throttling will be triggered.
+     *                                    Expressed as an integer between 1 and 100. The value -1 disables throttling.
+     */
+    public MappedSegmentJournal(Path journalDirectory,
+                                ScheduledExecutorService scheduler,
+                                Size segmentSize,
+                                Duration segmentAge,
+                                Size retentionSize,
+                                Duration retentionAge,
+                                long flushInterval,
+                                Duration flushAge,
+                                JournalFsyncPolicy fsyncPolicy,
+                                int throttleThresholdPercentage,
+                                MetricRegistry metricRegistry,
+                                ServerStatus serverStatus,
+                                String metricPrefix) {
+        if (throttleThresholdPercentage == THRESHOLD_THROTTLING_DISABLED) {
+            this.throttleThresholdPercentage = throttleThresholdPercentage;
+        } else {
+            this.throttleThresholdPercentage = Integer.min(Integer.max(0, throttleThresholdPercentage), 100);
+        }
+        this.journalDirectory = journalDirectory;
+        this.committedReadOffsetFile = journalDirectory.resolve(COMMITTED_OFFSET_FILE_NAME);
+        this.scheduler = scheduler;
+        this.serverStatus = serverStatus;
+        this.metricRegistry = metricRegistry;
+        this.metricPrefix = metricPrefix;
+        this.segmentCapacity = Ints.saturatedCast(segmentSize.toBytes());
+        // Max message size should not be bigger than max segment size.
+        this.maxMessageSize = segmentCapacity - MappedSegment.RECORD_HEADER_SIZE;
+        this.segmentAgeMillis = segmentAge.getMillis();
+        this.maxRetentionSize = retentionSize.toBytes();
+        this.retentionAgeMillis = retentionAge.getMillis();
+        this.flushInterval = flushInterval;
+        this.flushAgeMillis = flushAge.getMillis();
+        this.fsyncPolicy = fsyncPolicy;
+
+        this.writtenMessages = metricRegistry.meter(name(metricPrefix, METER_WRITTEN_MESSAGES));
+        this.readMessages = metricRegistry.meter(name(metricPrefix, METER_READ_MESSAGES));
+        this.writeDiscardedMessages = metricRegistry.meter(name(metricPrefix, METER_WRITE_DISCARDED_MESSAGES));
+        this.writeTime = registerHdrTimer(metricRegistry, name(metricPrefix, TIMER_WRITE_TIME));
+        this.readTime = registerHdrTimer(metricRegistry, name(metricPrefix, TIMER_READ_TIME));
+
+        try {
+            Files.createDirectories(journalDirectory);
+        } catch (IOException e) {
+            LOG.error("Cannot create journal directory at {}, please check the permissions", journalDirectory.toAbsolutePath());
+            throw new UncheckedIOException(e);
+        }
+
+        this.lockChannel = openLockFile(journalDirectory);
+        this.lock = tryLock(lockChannel);
+        if (lock == null) {
+            closeQuietly(lockChannel);
+            throw new IllegalStateException("Journal directory " + journalDirectory + " is already in use by another journal instance.");
+        }
+
+        try {
+            readCommittedOffset();
+            loadSegments();
+        } catch (IOException e) {
+            releaseLock();
+            throw new UncheckedIOException("Unable to open journal at " + journalDirectory, e);
+        } catch (RuntimeException e) {
+            releaseLock();
+            throw e;
+        }
+        this.flushedOffset = logEndOffset;
+        this.lastFlushTime = DateTimeUtils.currentTimeMillis();
+
+        registerMetrics();
+        LOG.info("Initialized memory-mapped journal at {} with {} segment(s), offsets [{}, {})",
+                journalDirectory, segments.size(), getLogStartOffset(), logEndOffset);
+    }
+
+    private static FileChannel openLockFile(Path journalDirectory) {
+        try {
+            return FileChannel.open(journalDirectory.resolve(LOCK_FILE_NAME), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to lock journal directory " + journalDirectory, e);
+        }
+    }
+
+    @Nullable
+    private static FileLock tryLock(FileChannel lockChannel) {
+        try {
+            return lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            // locked by another journal instance in this JVM
+            return null;
+        } catch (IOException e) {
+            closeQuietly(lockChannel);
+            throw new UncheckedIOException("Unable to lock journal directory", e);
+        }
+    }
+
+    private void readCommittedOffset() throws IOException {
+        if (!Files.exists(committedReadOffsetFile)) {
+            return;
+        }
+        final String line = Files.readString(committedReadOffsetFile, StandardCharsets.UTF_8).trim();
+        // the file contains the last offset graylog2 has successfully processed.
+        // thus the nextReadOffset is one beyond that number
+        if (!line.isEmpty()) {
+            committedOffset.set(Long.parseLong(line));
+            nextReadOffset = committedOffset.get() + 1;
+        }
+    }
+
+    private void loadSegments() throws IOException {
+        final List<Path> segmentFiles = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(journalDirectory, "*" + MappedSegment.SEGMENT_FILE_SUFFIX)) {
+            stream.forEach(segmentFiles::add);
+        }
+        segmentFiles.sort((a, b) -> Long.compare(MappedSegment.baseOffsetOf(a), MappedSegment.baseOffsetOf(b)));
+
+        for (int i = 0; i < segmentFiles.size(); i++) {
+            final boolean active = i == segmentFiles.size() - 1;
+            final MappedSegment segment = MappedSegment.open(segmentFiles.get(i), segmentCapacity, active);
+            segments.put(segment.getBaseOffset(), segment);
+            if (active) {
+                activeSegment = segment;
+            }
+        }
+
+        if (activeSegment == null) {
+            // Continue after the committed offset, so offsets don't go backwards if all segment files are gone.
+            final long baseOffset = Math.max(0L, committedOffset.get() + 1);
+            activeSegment = MappedSegment.create(journalDirectory, baseOffset, segmentCapacity);
+            segments.put(baseOffset, activeSegment);
+        }
+        logEndOffset = activeSegment.getEndOffset();
+    }
+
+    private void registerMetrics() {
+        registerGauge(METRIC_NAME_SIZE, (Gauge<Long>) this::size);
+        registerGauge(METRIC_NAME_LOG_END_OFFSET, (Gauge<Long>) this::getLogEndOffset);
+        registerGauge(METRIC_NAME_NUMBER_OF_SEGMENTS, (Gauge<Integer>) this::numberOfSegments);
+        registerGauge(METRIC_NAME_UNFLUSHED_MESSAGES, (Gauge<Long>) () -> logEndOffset - flushedOffset);
+        registerGauge(METRIC_NAME_RECOVERY_POINT, (Gauge<Long>) () -> flushedOffset);
+        registerGauge(METRIC_NAME_LAST_FLUSH_TIME, (Gauge<Long>) () -> lastFlushTime);
+        registerGauge(GAUGE_UNCOMMITTED_MESSAGES, (Gauge<Long>) this::uncommittedMessages);
+        // must not be a lambda, because the serialization cannot determine the proper Metric type :(
+        safelyRegister(getOldestSegmentMetricName(), new Gauge<Date>() {
+            @Override
+            public Date getValue() {
+                return new Date(getOldestSegmentCreationTime());
+            }
+        });
+    }
+
+    private void registerGauge(String metricName, Gauge<?> gauge) {
+        safelyRegister(name(metricPrefix, metricName), gauge);
+    }
+
+    private void safelyRegister(String metricName, Gauge<?> gauge) {
+        try {
+            metricRegistry.register(metricName, gauge);
+        } catch (IllegalArgumentException ignored) {
+            // already registered, we'll ignore that.
+        }
+    }
+
+    private Timer registerHdrTimer(MetricRegistry metricRegistry, final String metricName) {
+        Timer timer;
+        try {
+            timer = metricRegistry.register(metricName, new HdrTimer(1, MINUTES, 1));
+        } catch (IllegalArgumentException e) {
+            final SortedMap<String, Timer> timers = metricRegistry.getTimers((name, metric) -> metricName.equals(name));
+            timer = Iterables.getOnlyElement(timers.values());
+        }
+        return timer;
+    }
+
+    /**
+     * Call this at journal shutdown time. This removes all metrics, so they can be re-registered when startup occurs
+     * again in the future.
+     */
+    private void teardownMetrics() {
+        for (String metricName : List.of(METER_WRITTEN_MESSAGES, METER_READ_MESSAGES, METER_WRITE_DISCARDED_MESSAGES,
+                TIMER_WRITE_TIME, TIMER_READ_TIME, METRIC_NAME_SIZE, METRIC_NAME_LOG_END_OFFSET,
+                METRIC_NAME_NUMBER_OF_SEGMENTS, METRIC_NAME_UNFLUSHED_MESSAGES, METRIC_NAME_RECOVERY_POINT,
+                METRIC_NAME_LAST_FLUSH_TIME, GAUGE_UNCOMMITTED_MESSAGES)) {
+            metricRegistry.remove(name(metricPrefix, metricName));
+        }
+        metricRegistry.remove(getOldestSegmentMetricName());
+    }
+
+    private String getOldestSegmentMetricName() {
+        // Like the Kafka journal, the journal of the node uses the global metric name which is shown on the journal page.
+        if (MappedSegmentJournal.class.getName().equals(metricPrefix)) {
+            return GlobalMetricNames.JOURNAL_OLDEST_SEGMENT;
+        }
+        return name(metricPrefix, GlobalMetricNames.OLDEST_SEGMENT_SUFFIX);
+    }
+
+    private long uncommittedMessages() {
+        if (size() == 0) {
+            return 0L;
+        }
+        if (committedOffset.get() == DEFAULT_COMMITTED_OFFSET) {
+            return getLogEndOffset() - getLogStartOffset();
+        }
+        return Math.max(0, getLogEndOffset() - 1 - committedOffset.get());
+    }
+
+    @Override
+    public Entry createEntry(byte[] idBytes, byte[] messageBytes) {
+        return new Entry(idBytes, messageBytes);
+    }
+
+    /**
+     * Writes the list of entries to the journal. The keys of the entries are not stored.
+     *
+     * @param entries journal entries to be written
+     * @return the last position written to in the journal, or -1 if no entry has been written
+     */
+    @Override
+    public long write(List<Entry> entries) {
+        try (Timer.Context ignored = writeTime.time()) {
+            long lastWriteOffset = -1L;
+            int written = 0;
+            writeLock.lock();
+            try {
+                for (final Entry entry : entries) {
+                    final byte[] messageBytes = entry.getMessageBytes();
+                    if (messageBytes.length == 0 || messageBytes.length > maxMessageSize) {
+                        writeDiscardedMessages.mark();
+                        LOG.warn("Message with ID <{}> can't be stored in journal, skipping! (size: {} bytes / max: {} bytes)",
+                                new String(entry.getIdBytes(), StandardCharsets.UTF_8), messageBytes.length, maxMessageSize);
+                        continue;
+                    }
+                    append(messageBytes);
+                    lastWriteOffset = logEndOffset;
+                    logEndOffset = lastWriteOffset + 1;
+                    written++;
+                }
+            } finally {
+                writeLock.unlock();
+            }
+
+            if (written > 0) {
+                writtenMessages.mark(written);
+                LOG.debug("Wrote {} messages to journal, last offset {}", written, lastWriteOffset);
+                afterWrite(lastWriteOffset);
+            }
+            return lastWriteOffset;
+        }
+    }
+
+    private void append(byte[] messageBytes) {
+        MappedSegment segment = activeSegment;
+        if (segment.getEntryCount() > 0 && DateTimeUtils.currentTimeMillis() - segment.getCreated() > segmentAgeMillis) {
+            segment = roll();
+        }
+        if (!segment.append(messageBytes)) {
+            segment = roll();
+            if (!segment.append(messageBytes)) {
+                throw new IllegalStateException("Couldn't append " + messageBytes.length + " bytes to empty journal segment " + segment);
+            }
+        }
+    }
+
+    /**
+     * Seals the active segment and starts a new one. Must be called while holding the write lock.
+     */
+    private MappedSegment roll() {
+        final MappedSegment current = activeSegment;
+        if (current.getEntryCount() == 0) {
+            return current;
+        }
+        try {
+            current.seal();
+            final MappedSegment segment = MappedSegment.create(journalDirectory, current.getEndOffset(), segmentCapacity);
+            segments.put(segment.getBaseOffset(), segment);
+            activeSegment = segment;
+            LOG.debug("Rolled journal segment {}, new segment starts at offset {}", current, segment.getBaseOffset());
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to roll journal segment " + current, e);
+        }
+    }
+
+    private void afterWrite(long lastWriteOffset) {
+        switch (fsyncPolicy) {
+            case ALWAYS -> syncTo(lastWriteOffset);
+            case INTERVAL -> {
+                if (lastWriteOffset + 1 - flushedOffset >= flushInterval) {
+                    syncTo(lastWriteOffset);
+                }
+            }
+            case NONE -> {
+                // the operating system writes the pages back
+            }
+        }
+    }
+
+    /**
+     * Forces all entries up to the given offset to disk. A caller whose entries have been forced by a concurrent fsync
+     * returns without forcing again.
+     */
+    private void syncTo(long offset) {
+        if (offset < flushedOffset) {
+            return;
+        }
+        synchronized (syncLock) {
+            if (offset < flushedOffset) {
+                return;
+            }
+            final long endOffset = logEndOffset;
+            // Rolled segments have been forced when they were sealed.
+            activeSegment.force();
+            flushedOffset = endOffset;
+            lastFlushTime = DateTimeUtils.currentTimeMillis();
+        }
+    }
+
+    @Override
+    public long write(byte[] idBytes, byte[] messageBytes) {
+        return write(Collections.singletonList(createEntry(idBytes, messageBytes)));
+    }
+
+    @Override
+    public List<JournalReadEntry> read(long requestedMaximumCount) {
+        return read(nextReadOffset, requestedMaximumCount);
+    }
+
+    /**
+     * Reads from the journal, starting at the given offset. Offsets which are missing in the journal, e.g. because a
+     * segment had to be truncated during recovery, are skipped.
+     * <p>
+     * The payloads of the returned entries are views of the mapped segment files. They stay readable, even if the
+     * segment is deleted by the retention in the meantime, until the same thread reads from the journal again. Callers
+     * which keep entries for longer have to {@link JournalReadEntry#getPayload() copy} their payloads.
+     *
+     * @param readOffset            Offset to start reading at
+     * @param requestedMaximumCount Maximum number of entries to return.
+     * @return A list of entries
+     */
+    public List<JournalReadEntry> read(long readOffset, long requestedMaximumCount) {
+        // Always read at least one!
+        final long maximumCount = Math.max(1, requestedMaximumCount);
+
+        releaseReadSegments();
+        if (shuttingDown) {
+            return Collections.emptyList();
+        }
+        final List<JournalReadEntry> messages = new ArrayList<>(Ints.saturatedCast(Math.min(maximumCount, 1024)));
+        try (Timer.Context ignored = readTime.time()) {
+            final long logStartOffset = getLogStartOffset();
+            if (readOffset < logStartOffset) {
+                LOG.info("Read offset {} before start of log at {}, starting to read from the beginning of the journal.",
+                        readOffset, logStartOffset);
+                readOffset = logStartOffset;
+            }
+            final long endOffset = logEndOffset;
+
+            long offset = readOffset;
+            long bytes = 0;
+            while (messages.size() < maximumCount && offset < endOffset && bytes < MAX_READ_BYTES) {
+                final Map.Entry<Long, MappedSegment> entry = segments.floorEntry(offset);
+                final MappedSegment segment = entry == null ? null : entry.getValue();
+                // Segments which have been deleted by the retention since the lookup can't be retained anymore.
+                if (segment == null || offset >= segment.getEndOffset() || !segment.retain()) {
+                    // Skip the gap to the next segment.
+                    final Long nextBaseOffset = segments.higherKey(offset);
+                    if (nextBaseOffset == null) {
+                        break;
+                    }
+                    offset = nextBaseOffset;
+                    continue;
+                }
+                readSegments.get().add(segment);
+                final int before = messages.size();
+                bytes += segment.read(offset, maximumCount - before, MAX_READ_BYTES - bytes, messages);
+                if (messages.size() == before) {
+                    break;
+                }
+                offset = messages.get(messages.size() - 1).getOffset() + 1;
+            }
+
+            if (messages.isEmpty()) {
+                LOG.debug("No messages available to read from offset {}.", readOffset);
+            } else {
+                nextReadOffset = offset;
+                LOG.debug("Read {} messages, total payload size {}, from journal, offset interval [{}, {}], requested read at {}",
+                        messages.size(), bytes, messages.get(0).getOffset(), offset - 1, readOffset);
+            }
+        }
+        readMessages.mark(messages.size());
+        return messages;
+    }
+
+    private void releaseReadSegments() {
+        final List<MappedSegment> held = readSegments.get();
+        for (final MappedSegment segment : held) {
+            segment.release();
+        }
+        held.clear();
+    }
+
+    /**
+     * Upon fully processing, and persistently storing, a batch of messages, the system should mark the message with the
+     * highest offset as committed. A background job will write the last position to disk periodically.
+     *
+     * @param offset the offset of the latest committed message
+     */
+    @Override
+    public void markJournalOffsetCommitted(long offset) {
+        // the caller will not care about offsets going backwards, so we need to make sure we don't backtrack
+        committedOffset.accumulateAndGet(offset, Math::max);
+    }
+
+    @Override
+    public void flush() {
+        flushCommittedOffset();
+    }
+
+    private void flushCommittedOffset() {
+        // Do not write the file if committedOffset has never been updated.
+        final long offset = committedOffset.get();
+        if (offset == DEFAULT_COMMITTED_OFFSET) {
+            return;
+        }
+        final Path tmpFile = committedReadOffsetFile.resolveSibling(COMMITTED_OFFSET_FILE_NAME + ".tmp");
+        try {
+            Files.write(tmpFile, String.valueOf(offset).getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE,
+                    StandardOpenOption.SYNC);
+            Files.move(tmpFile, committedReadOffsetFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            LOG.error("Cannot write " + committedReadOffsetFile + " to disk.", e);
+        }
+    }
+
+    private void flushDirtySegments() {
+        if (flushedOffset < logEndOffset && DateTimeUtils.currentTimeMillis() - lastFlushTime >= flushAgeMillis) {
+            syncTo(logEndOffset - 1);
+        }
+    }
+
+    @Override
+    public long getCommittedOffset() {
+        return committedOffset.get();
+    }
+
+    @Override
+    public long getNextReadOffset() {
+        return nextReadOffset;
+    }
+
+    @Override
+    public long getLogStartOffset() {
+        final Map.Entry<Long, MappedSegment> first = segments.firstEntry();
+        return first == null ? 0 : first.getKey();
+    }
+
+    @Override
+    public long getLogEndOffset() {
+        return logEndOffset;
+    }
+
+    /**
+     * Returns the journal size in bytes, excluding index files.
+     *
+     * @return journal size in bytes
+     */
+    @Override
+    public long size() {
+        long size = 0;
+        for (final MappedSegment segment : segments.values()) {
+            size += segment.getSize();
+        }
+        return size;
+    }
+
+    @Override
+    public int numberOfSegments() {
+        return segments.size();
+    }
+
+    @Override
+    public long getOldestSegmentCreationTime() {
+        long oldestSegment = Long.MAX_VALUE;
+        for (final MappedSegment segment : segments.values()) {
+            oldestSegment = Math.min(oldestSegment, segment.getCreated());
+        }
+        return oldestSegment;
+    }
+
+    @VisibleForTesting
+    Iterable<MappedSegment> getSegments() {
+        return Collections.unmodifiableCollection(segments.values());
+    }
+
+    @Override
+    public Optional<Double> getJournalUtilization() {
+        return Optional.of(calculateUtilization(maxRetentionSize, size()));
+    }
+
+    private double calculateUtilization(long maxRetentionSize, long size) {
+        return maxRetentionSize > 0 ? (double) (size * 100) / maxRetentionSize : 0.0;
+    }
+
+    @Override
+    public int getPurgedSegmentsInLastRetention() {
+        return purgedSegmentsInLastRetention.get();
+    }
+
+    @Override
+    public ThrottleState getThrottleState() {
+        return throttleState.get();
+    }
+
+    @Override
+    public void setThrottleState(ThrottleState state) {
+        throttleState.set(state);
+    }
+
+    @Override
+    public int runRetention() {
+        try {
+            return logRetentionCleaner.call();
+        } catch (Exception e) {
+            LOG.error("Unable to delete expired segments.", e);
+            return 0;
+        }
+    }
+
+    @Override
+    protected void startUp() throws Exception {
+        if (fsyncPolicy == JournalFsyncPolicy.INTERVAL) {
+            dirtyLogFlushFuture = scheduler.scheduleAtFixedRate(this::runFlushDirtySegments, 1, 1, SECONDS);
+        }
+        logRetentionFuture = scheduler.scheduleAtFixedRate(logRetentionCleaner,
+                SECONDS.toMillis(30), RETENTION_CHECK_INTERVAL_MS, MILLISECONDS);
+        // regularly write the currently committed read offset to disk
+        offsetFlusherFuture = scheduler.scheduleAtFixedRate(this::flushCommittedOffset, 1, 1, SECONDS);
+    }
+
+    private void runFlushDirtySegments() {
+        try {
+            flushDirtySegments();
+        } catch (Exception e) {
+            LOG.error("Unable to flush journal segments. Will try again.", e);
+        }
+    }
+
+    @Override
+    protected void shutDown() throws Exception {
+        LOG.debug("Shutting down journal!");
+        shuttingDown = true;
+
+        cancel(offsetFlusherFuture);
+        cancel(logRetentionFuture);
+        cancel(dirtyLogFlushFuture);
+
+        close();
+    }
+
+    /**
+     * Forces and closes all segments and releases the journal directory. Used directly by tools which open the
+     * journal without starting it.
+     */
+    public void close() throws IOException {
+        shuttingDown = true;
+        writeLock.lock();
+        try {
+            for (final MappedSegment segment : segments.values()) {
+                segment.close();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        // final flush
+        flushCommittedOffset();
+        // Teardown metrics to prevent errors when restarting instances.
+        teardownMetrics();
+        releaseLock();
+    }
+
+    private static void cancel(ScheduledFuture<?> future) {
+        if (future != null) {
+            future.cancel(false);
+        }
+    }
+
+    private void releaseLock() {
+        try {
+            lock.release();
+        } catch (IOException e) {
+            LOG.warn("Unable to release journal lock", e);
+        }
+        closeQuietly(lockChannel);
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOG.warn("Unable to close journal lock file", e);
+        }
+    }
+
+    /**
+     * Deletes the oldest segments as long as they match the predicate. The active segment is rolled first if it has to
+     * be deleted, so there is always at least one segment.
+     */
+    private int deleteOldSegments(Predicate<MappedSegment> predicate) {
+        writeLock.lock();
+        try {
+            final List<MappedSegment> deletable = new ArrayList<>();
+            for (final MappedSegment segment : segments.values()) {
+                if (!predicate.test(segment) || (segment == activeSegment && segment.getEntryCount() == 0)) {
+                    break;
+                }
+                deletable.add(segment);
+            }
+            if (deletable.isEmpty()) {
+                return 0;
+            }
+            if (deletable.get(deletable.size() - 1) == activeSegment) {
+                roll();
+            }
+            for (final MappedSegment segment : deletable) {
+                segments.remove(segment.getBaseOffset());
+                try {
+                    segment.delete();
+                } catch (IOException e) {
+                    LOG.error("Unable to delete journal segment {}", segment.getFile(), e);
+                }
+            }
+            return deletable.size();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Removes segments which are older than the retention age, exceed the retention size or only contain committed
+     * entries, following the same rules as the retention of the {@link LocalKafkaJournal}.
+     */
+    public class LogRetentionCleaner implements Runnable, Callable<Integer> {
+
+        private final Logger loggerForCleaner = LoggerFactory.getLogger(LogRetentionCleaner.class);
+
+        @Override
+        public void run() {
+            try {
+                call();
+            } catch (Exception e) {
+                loggerForCleaner.error("Unable to delete expired segments. Will try again.", e);
+            }
+        }
+
+        @Override
+        public synchronized Integer call() throws Exception {
+            loggerForCleaner.debug("Beginning log cleanup");
+            final Timer.Context ctx = new Timer().time();
+            final int total = cleanupExpiredSegments() + cleanupSegmentsToMaintainSize() + cleanupSegmentsToRemoveCommitted();
+            loggerForCleaner.debug("Log cleanup completed. {} files deleted in {} seconds",
+                    total,
+                    NANOSECONDS.toSeconds(ctx.stop()));
+            return total;
+        }
+
+        private int cleanupExpiredSegments() {
+            final long now = DateTimeUtils.currentTimeMillis();
+            final int deletedSegments = deleteOldSegments(segment -> {
+                final long segmentAge = now - segment.getLastModified();
+                final boolean shouldDelete = segmentAge > retentionAgeMillis;
+                if (shouldDelete) {
+                    loggerForCleaner.debug(
+                            "[cleanup-time] Removing segment with age {}s, older than then maximum retention age {}s",
+                            MILLISECONDS.toSeconds(segmentAge),
+                            MILLISECONDS.toSeconds(retentionAgeMillis));
+                }
+                return shouldDelete;
+            });
+            purgedSegmentsInLastRetention.set(deletedSegments);
+            return deletedSegments;
+        }
+
+        /**
+         * Change the load balancer status from ALIVE to THROTTLE, or vice versa depending on the
+         * journal utilization percentage. As the utilization ratio is reliable only after cleanup,
+         * that's where this is called from.
+         */
+        private void updateLoadBalancerStatus(double utilizationPercentage) {
+            final LoadBalancerStatus currentStatus = serverStatus.getLifecycle().getLoadbalancerStatus();
+
+            // Flip the status. The next lifecycle events may change status. This should be good enough, because
+            // throttling does not offer hard guarantees.
+            if (currentStatus == LoadBalancerStatus.THROTTLED && utilizationPercentage < throttleThresholdPercentage) {
+                serverStatus.running();
+                LOG.info(String.format(Locale.ENGLISH,
+                        "Journal usage is %.2f%% (threshold %d%%), changing load balancer status from THROTTLED to ALIVE",
+                        utilizationPercentage, throttleThresholdPercentage));
+            } else if (currentStatus == LoadBalancerStatus.ALIVE && utilizationPercentage >= throttleThresholdPercentage) {
+                serverStatus.throttle();
+                LOG.info(String.format(Locale.ENGLISH,
+                        "Journal usage is %.2f%% (threshold %d%%), changing load balancer status from ALIVE to THROTTLED",
+                        utilizationPercentage, throttleThresholdPercentage));
+            }
+        }
+
+        private int cleanupSegmentsToMaintainSize() {
+            final long currentSize = size();
+            final double utilizationPercentage = calculateUtilization(maxRetentionSize, currentSize);
+            if (utilizationPercentage > NOTIFY_ON_UTILIZATION_PERCENTAGE) {
+                LOG.warn("Journal utilization ({}%) has gone over {}%.", utilizationPercentage,
+                        NOTIFY_ON_UTILIZATION_PERCENTAGE);
+            }
+
+            // Don't update the load balancer state if throttling is disabled.
+            if (throttleThresholdPercentage != THRESHOLD_THROTTLING_DISABLED) {
+                updateLoadBalancerStatus(utilizationPercentage);
+            }
+
+            if (maxRetentionSize < 0 || currentSize < maxRetentionSize) {
+                purgedSegmentsInLastRetention.set(0);
+                return 0;
+            }
+            final long[] diff = {currentSize - maxRetentionSize};
+            final int deletedSegments = deleteOldSegments(segment -> {
+                if (diff[0] - segment.getSize() >= 0) {
+                    diff[0] -= segment.getSize();
+                    loggerForCleaner.debug(
+                            "[cleanup-size] Removing segment starting at offset {}, size {} bytes, to shrink log to new size {}, target size {}",
+                            segment.getBaseOffset(),
+                            segment.getSize(),
+                            diff[0],
+                            maxRetentionSize);
+                    return true;
+                }
+                return false;
+            });
+            purgedSegmentsInLastRetention.set(deletedSegments);
+            return deletedSegments;
+        }
+
+        private int cleanupSegmentsToRemoveCommitted() {
+            if (numberOfSegments() <= 1) {
+                loggerForCleaner.debug(
+                        "[cleanup-committed] The journal is already minimal at {} segment(s), not trying to remove more segments.",
+                        numberOfSegments());
+                return 0;
+            }
+            // Keep the segment containing the committed offset and all segments after it.
+            final long committed = committedOffset.get();
+            final Long keepFrom = segments.floorKey(committed);
+            if (keepFrom == null) {
+                return 0;
+            }
+            return deleteOldSegments(segment -> {
+                final boolean shouldDelete = segment.getBaseOffset() < keepFrom;
+                if (shouldDelete) {
+                    loggerForCleaner.debug(
+                            "[cleanup-committed] Should delete segment {} because it is prior to committed offset {}",
+                            segment,
+                            committed);
+                }
+                return shouldDelete;
+            });
+        }
+    }
+}
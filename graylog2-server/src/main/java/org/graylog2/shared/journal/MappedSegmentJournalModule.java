@@ -0,0 +1,31 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.shared.journal;
+
+import com.google.inject.Scopes;
+import com.google.inject.multibindings.OptionalBinder;
+import org.graylog2.plugin.PluginModule;
+import org.graylog2.plugin.journal.CodecConfigStore;
+
+public class MappedSegmentJournalModule extends PluginModule {
+    @Override
+    protected void configure() {
+        bind(Journal.class).to(MappedSegmentJournal.class).in(Scopes.SINGLETON);
+        OptionalBinder.newOptionalBinder(binder(), CodecConfigStore.class)
+                .setBinding().to(JournalCodecConfigStore.class).in(Scopes.SINGLETON);
+    }
+}
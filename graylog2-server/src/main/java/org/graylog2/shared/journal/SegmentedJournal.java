@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.shared.journal;
+
+import org.graylog2.plugin.ThrottleState;
+
+/**
+ * A {@link Journal} which keeps its entries in segment files on the local disk and tracks the committed read offset
+ * itself. Throttling, the journal REST resource and the journal metrics work with every implementation of it.
+ */
+public interface SegmentedJournal extends Journal {
+    long DEFAULT_COMMITTED_OFFSET = Long.MIN_VALUE;
+    int NOTIFY_ON_UTILIZATION_PERCENTAGE = 95;
+    int THRESHOLD_THROTTLING_DISABLED = -1;
+
+    // Metric names, registered by every implementation with its class name as prefix.
+    String METER_WRITTEN_MESSAGES = "writtenMessages";
+    String METER_READ_MESSAGES = "readMessages";
+    String GAUGE_UNCOMMITTED_MESSAGES = "uncommittedMessages";
+
+    /**
+     * @return the offset of the last message which has been successfully processed
+     */
+    long getCommittedOffset();
+
+    /**
+     * @return the offset the next {@link #read(long)} starts at
+     */
+    long getNextReadOffset();
+
+    /**
+     * @return the first valid offset in the entire journal
+     */
+    long getLogStartOffset();
+
+    /**
+     * @return the offset assigned to the next entry written to the journal (last valid offset is this number - 1)
+     */
+    long getLogEndOffset();
+
+    /**
+     * @return the journal size in bytes, excluding index files
+     */
+    long size();
+
+    int numberOfSegments();
+
+    /**
+     * @return the creation time of the oldest segment in milliseconds since the epoch, or {@link Long#MAX_VALUE} if
+     * there are no segments
+     */
+    long getOldestSegmentCreationTime();
+
+    int getPurgedSegmentsInLastRetention();
+
+    ThrottleState getThrottleState();
+
+    void setThrottleState(ThrottleState state);
+}
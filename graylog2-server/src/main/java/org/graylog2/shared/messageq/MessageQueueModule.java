@@ -17,11 +17,15 @@
 package org.graylog2.shared.messageq;
 
 import com.google.inject.Scopes;
+import com.google.inject.multibindings.OptionalBinder;
 import org.graylog2.Configuration;
 import org.graylog2.plugin.PluginModule;
+import org.graylog2.plugin.journal.CodecConfigStore;
 import org.graylog2.shared.journal.Journal;
 import org.graylog2.shared.journal.LocalKafkaJournal;
 import org.graylog2.shared.journal.LocalKafkaJournalModule;
+import org.graylog2.shared.journal.MappedSegmentJournal;
+import org.graylog2.shared.journal.MappedSegmentJournalModule;
 import org.graylog2.shared.journal.NoopJournal;
 import org.graylog2.shared.messageq.localkafka.LocalKafkaMessageQueueAcknowledger;
 import org.graylog2.shared.messageq.localkafka.LocalKafkaMessageQueueReader;
@@ -33,6 +37,8 @@ import org.graylog2.shared.messageq.noop.NoopMessageQueueWriter;
 public class MessageQueueModule extends PluginModule {
     public static final String DISK_JOURNAL_MODE = "disk";
     public static final String NOOP_JOURNAL_MODE = "noop";
+    public static final String KAFKA_JOURNAL_TYPE = "kafka";
+    public static final String MAPPED_JOURNAL_TYPE = "mapped";
 
     private final Configuration configuration;
 
@@ -56,9 +62,17 @@ public class MessageQueueModule extends PluginModule {
                 break;
         }
 
+        // Only journals which keep codec configurations next to their entries bind a store.
+        OptionalBinder.newOptionalBinder(binder(), CodecConfigStore.class);
+
         if (configuration.getMessageJournalMode().equals(DISK_JOURNAL_MODE)) {
-            install(new LocalKafkaJournalModule());
-            serviceBinder().addBinding().to(LocalKafkaJournal.class).in(Scopes.SINGLETON);
+            if (MAPPED_JOURNAL_TYPE.equals(configuration.getMessageJournalType())) {
+                install(new MappedSegmentJournalModule());
+                serviceBinder().addBinding().to(MappedSegmentJournal.class).in(Scopes.SINGLETON);
+            } else {
+                install(new LocalKafkaJournalModule());
+                serviceBinder().addBinding().to(LocalKafkaJournal.class).in(Scopes.SINGLETON);
+            }
         } else {
             binder().bind(Journal.class).to(NoopJournal.class).in(Scopes.SINGLETON);
             serviceBinder().addBinding().to(NoopJournal.class).in(Scopes.SINGLETON);
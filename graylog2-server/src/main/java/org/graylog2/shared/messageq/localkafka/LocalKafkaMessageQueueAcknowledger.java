@@ -18,7 +18,7 @@ package org.graylog2.shared.messageq.localkafka;
 
 import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
-import org.graylog2.shared.journal.LocalKafkaJournal;
+import org.graylog2.shared.journal.Journal;
 import org.graylog2.shared.messageq.AbstractMessageQueueAcknowledger;
 import org.graylog2.shared.messageq.Acknowledgeable;
 import org.graylog2.shared.messageq.MessageQueueAcknowledger;
@@ -28,13 +28,13 @@ import java.util.Optional;
 
 @Singleton
 public class LocalKafkaMessageQueueAcknowledger extends AbstractMessageQueueAcknowledger<Long> {
-    private final LocalKafkaJournal kafkaJournal;
+    private final Journal journal;
 
     @Inject
-    public LocalKafkaMessageQueueAcknowledger(LocalKafkaJournal kafkaJournal,
+    public LocalKafkaMessageQueueAcknowledger(Journal journal,
                                               MessageQueueAcknowledger.Metrics metrics) {
         super(Long.class, metrics);
-        this.kafkaJournal = kafkaJournal;
+        this.journal = journal;
     }
 
     @Override
@@ -52,6 +52,6 @@ public class LocalKafkaMessageQueueAcknowledger extends AbstractMessageQueueAckn
 
     @Override
     protected void doAcknowledge(Long queueId) {
-        kafkaJournal.markJournalOffsetCommitted(queueId);
+        journal.markJournalOffsetCommitted(queueId);
     }
 }
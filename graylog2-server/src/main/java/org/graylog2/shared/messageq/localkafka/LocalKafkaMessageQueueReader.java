@@ -22,6 +22,7 @@ import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.google.common.eventbus.EventBus;
 import com.google.common.util.concurrent.Uninterruptibles;
+import org.graylog2.plugin.journal.CodecConfigStore;
 import org.graylog2.plugin.journal.RawMessage;
 import org.graylog2.shared.buffers.ProcessBuffer;
 import org.graylog2.shared.journal.Journal;
@@ -50,6 +51,7 @@ public class LocalKafkaMessageQueueReader extends AbstractMessageQueueReader {
     private final MetricRegistry metricRegistry;
     private final Meter readMessages;
     private final Metrics readerMetrics;
+    private final CodecConfigStore codecConfigStore;
     private Histogram requestedReadCount;
     private final Counter readBlocked;
     private Thread executionThread;
@@ -60,7 +62,8 @@ public class LocalKafkaMessageQueueReader extends AbstractMessageQueueReader {
                                         @Named("JournalSignal") Semaphore journalFilled,
                                         MetricRegistry metricRegistry,
                                         EventBus eventBus,
-                                        MessageQueueReader.Metrics readerMetrics) {
+                                        MessageQueueReader.Metrics readerMetrics,
+                                        CodecConfigStore codecConfigStore) {
 
         super(eventBus);
 
@@ -71,6 +74,7 @@ public class LocalKafkaMessageQueueReader extends AbstractMessageQueueReader {
         readBlocked = metricRegistry.counter(name(this.getClass(), "readBlocked"));
         readMessages = metricRegistry.meter(name(this.getClass(), "readMessages"));
         this.readerMetrics = readerMetrics;
+        this.codecConfigStore = codecConfigStore;
     }
 
     @Override
@@ -127,9 +131,9 @@ public class LocalKafkaMessageQueueReader extends AbstractMessageQueueReader {
                 readerMetrics.readMessages().mark(encodedRawMessages.size());
                 log.debug("Processing {} messages from journal.", encodedRawMessages.size());
                 for (final Journal.JournalReadEntry encodedRawMessage : encodedRawMessages) {
-                    final RawMessage rawMessage = RawMessage.decode(encodedRawMessage.getPayload(),
-                            encodedRawMessage.getOffset());
-                    readerMetrics.readBytes().mark(encodedRawMessage.getPayload().length);
+                    final RawMessage rawMessage = RawMessage.decode(encodedRawMessage.getPayloadBuffer(),
+                            encodedRawMessage.getOffset(), codecConfigStore);
+                    readerMetrics.readBytes().mark(encodedRawMessage.getPayloadSize());
                     if (rawMessage == null) {
                         // never insert null objects into the ringbuffer, as that is useless
                         log.error("Found null raw message!");
@@ -24,7 +24,6 @@ import jakarta.inject.Named;
 import jakarta.inject.Singleton;
 import org.graylog2.shared.buffers.RawMessageEvent;
 import org.graylog2.shared.journal.Journal;
-import org.graylog2.shared.journal.LocalKafkaJournal;
 import org.graylog2.shared.messageq.MessageQueueException;
 import org.graylog2.shared.messageq.MessageQueueWriter;
 import org.slf4j.Logger;
@@ -42,16 +41,16 @@ import java.util.stream.Collectors;
 public class LocalKafkaMessageQueueWriter extends AbstractIdleService implements MessageQueueWriter {
     private static final Logger LOG = LoggerFactory.getLogger(LocalKafkaMessageQueueWriter.class);
 
-    private LocalKafkaJournal kafkaJournal;
+    private Journal journal;
     private Semaphore journalFilled;
     private final Metrics metrics;
     private final Retryer<Void> writeRetryer;
 
     @Inject
-    public LocalKafkaMessageQueueWriter(LocalKafkaJournal kafkaJournal,
+    public LocalKafkaMessageQueueWriter(Journal journal,
                                         @Named("JournalSignal") Semaphore journalFilled,
                                         MessageQueueWriter.Metrics metrics) {
-        this.kafkaJournal = kafkaJournal;
+        this.journal = journal;
         this.journalFilled = journalFilled;
         this.metrics = metrics;
         this.writeRetryer = JournalRetryerFactory.create(retryerExceptionPredicate());
@@ -89,7 +88,7 @@ public class LocalKafkaMessageQueueWriter extends AbstractIdleService implements
     }
 
     private void writeToJournal(List<Journal.Entry> entries) {
-        final long lastOffset = kafkaJournal.write(entries);
+        final long lastOffset = journal.write(entries);
 
         LOG.debug("Processed batch, last journal offset: {}, signalling reader.",
                 lastOffset);
@@ -0,0 +1,412 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.streams;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.collect.ImmutableList;
+import com.google.inject.assistedinject.Assisted;
+import jakarta.inject.Inject;
+import jakarta.inject.Provider;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.streams.DefaultStream;
+import org.graylog2.plugin.streams.Stream;
+import org.graylog2.plugin.streams.StreamRule;
+import org.graylog2.utilities.AhoCorasickAutomaton;
+import org.graylog2.utilities.TimeLimitedCharSequence;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Stream routing engine which pre-indexes {@link org.graylog2.plugin.streams.StreamRuleType#EXACT EXACT},
+ * {@link org.graylog2.plugin.streams.StreamRuleType#PRESENCE PRESENCE} and
+ * {@link org.graylog2.plugin.streams.StreamRuleType#ALWAYS_MATCH ALWAYS_MATCH} rules by field name and value.
+ * <p>
+ * Indexed rules are resolved with one field lookup per distinct field instead of running every rule matcher, and
+ * the matching state of all streams is kept in reusable per-thread bitsets. All other rules are evaluated exactly
+ * like in {@link StreamRouterEngine}, in the same order and only for streams which are not decided yet.
+ * <p>
+ * All {@link org.graylog2.plugin.streams.StreamRuleType#CONTAINS CONTAINS} rules on the same field are matched with
+ * a single {@link AhoCorasickAutomaton} pass. {@link org.graylog2.plugin.streams.StreamRuleType#REGEX REGEX} rules
+ * run on the calling thread instead of on the executor. They are still limited by the stream processing timeout, which
+ * is checked while the pattern inspects the field value. Exceeding it is reported to the {@link StreamFaultManager}.
+ * <p>
+ * The matching results are identical to {@link StreamRouterEngine#match(Message)}. Indexed and contains rules do not
+ * update the per-rule execution timers of {@link StreamMetrics}, though.
+ */
+public class IndexedStreamRouterEngine extends StreamRouterEngine {
+    private final Stream[] indexedStreams;
+    private final boolean[] andMatching;
+    private final IndexedRule[] constantRules;
+    private final Map<String, IndexedRule[]> presenceRules;
+    private final Map<String, ExactRuleGroup> exactRules;
+    private final Rule[] remainingRules;
+    private final int[] remainingRuleStreams;
+    private final Map<String, ContainsRuleGroup> containsRules;
+    private final RegexRule[] regexRules;
+    private final StreamFaultManager streamFaultManager;
+    private final StreamMetrics streamMetrics;
+    private final long regexTimeoutNanos;
+    private final ThreadLocal<MatchState> matchState;
+
+    @Inject
+    public IndexedStreamRouterEngine(@Assisted List<Stream> streams,
+                                     @Assisted ExecutorService executorService,
+                                     StreamFaultManager streamFaultManager,
+                                     StreamMetrics streamMetrics,
+                                     @DefaultStream Provider<Stream> defaultStreamProvider,
+                                     MetricRegistry metricRegistry) {
+        super(streams, executorService, streamFaultManager, streamMetrics, defaultStreamProvider, metricRegistry);
+        this.streamFaultManager = streamFaultManager;
+        this.streamMetrics = streamMetrics;
+        this.regexTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(streamFaultManager.getStreamProcessingTimeout());
+
+        final Map<String, Integer> streamIndex = new HashMap<>();
+        final List<Stream> streamList = new ArrayList<>();
+        final List<IndexedRule> constants = new ArrayList<>();
+        final Map<String, List<IndexedRule>> presence = new LinkedHashMap<>();
+        final Map<String, List<IndexedRule>> exact = new LinkedHashMap<>();
+        final List<Rule> remaining = new ArrayList<>();
+        final List<Integer> remainingStreams = new ArrayList<>();
+        final Map<String, List<IndexedRule>> contains = new LinkedHashMap<>();
+        final List<RegexRule> regex = new ArrayList<>();
+
+        int ruleCount = 0;
+        for (final Rule rule : getRules()) {
+            final Integer index = streamIndex.computeIfAbsent(rule.getStreamId(), id -> {
+                streamList.add(rule.getStream());
+                return streamList.size() - 1;
+            });
+            final StreamRule streamRule = rule.getStreamRule();
+            final Boolean inverted = streamRule.getInverted();
+
+            switch (streamRule.getType()) {
+                case ALWAYS_MATCH:
+                    constants.add(new IndexedRule(ruleCount++, index, inverted != null && inverted));
+                    continue;
+                case PRESENCE:
+                    // A missing inverted flag makes the matcher fail, let the regular engine handle that.
+                    if (inverted != null) {
+                        presence.computeIfAbsent(streamRule.getField(), field -> new ArrayList<>())
+                                .add(new IndexedRule(ruleCount++, index, inverted));
+                        continue;
+                    }
+                    break;
+                case EXACT:
+                    if (inverted != null) {
+                        exact.computeIfAbsent(streamRule.getField(), field -> new ArrayList<>())
+                                .add(new IndexedRule(ruleCount++, index, inverted, streamRule.getValue()));
+                        continue;
+                    }
+                    break;
+                case CONTAINS:
+                    if (inverted != null && streamRule.getValue() != null) {
+                        contains.computeIfAbsent(streamRule.getField(), field -> new ArrayList<>())
+                                .add(new IndexedRule(ruleCount++, index, inverted, streamRule.getValue()));
+                        continue;
+                    }
+                    break;
+                case REGEX:
+                    regex.add(new RegexRule(rule, index, compile(streamRule)));
+                    continue;
+                default:
+                    break;
+            }
+            remaining.add(rule);
+            remainingStreams.add(index);
+        }
+
+        final boolean[] andMatching = new boolean[streamList.size()];
+        for (int i = 0; i < andMatching.length; i++) {
+            andMatching[i] = streamList.get(i).getMatchingType() == Stream.MatchingType.AND;
+        }
+
+        this.indexedStreams = streamList.toArray(new Stream[0]);
+        this.andMatching = andMatching;
+        this.constantRules = constants.toArray(new IndexedRule[0]);
+        this.presenceRules = new HashMap<>();
+        presence.forEach((field, rules) -> presenceRules.put(field, rules.toArray(new IndexedRule[0])));
+        this.exactRules = new HashMap<>();
+        exact.forEach((field, rules) -> exactRules.put(field, new ExactRuleGroup(rules, andMatching)));
+        this.remainingRules = remaining.toArray(new Rule[0]);
+        this.remainingRuleStreams = remainingStreams.stream().mapToInt(Integer::intValue).toArray();
+        this.containsRules = new HashMap<>();
+        contains.forEach((field, rules) -> containsRules.put(field, new ContainsRuleGroup(rules)));
+        this.regexRules = regex.toArray(new RegexRule[0]);
+
+        final int streamCount = indexedStreams.length;
+        final int indexedRuleCount = ruleCount;
+        this.matchState = ThreadLocal.withInitial(() -> new MatchState(streamCount, indexedRuleCount));
+    }
+
+    @Override
+    public List<Stream> match(Message message) {
+        final MatchState state = matchState.get();
+        state.clear();
+
+        for (final IndexedRule rule : constantRules) {
+            state.record(rule.stream, !rule.inverted, andMatching);
+        }
+
+        for (final Map.Entry<String, IndexedRule[]> entry : presenceRules.entrySet()) {
+            final boolean present = isPresent(message.getField(entry.getKey()));
+            for (final IndexedRule rule : entry.getValue()) {
+                state.record(rule.stream, rule.inverted ^ present, andMatching);
+            }
+        }
+
+        for (final Map.Entry<String, ExactRuleGroup> entry : exactRules.entrySet()) {
+            final Object value = message.getField(entry.getKey());
+            entry.getValue().evaluate(value == null ? null : value.toString().trim(), state, andMatching);
+        }
+
+        for (int i = 0; i < remainingRules.length; i++) {
+            final int stream = remainingRuleStreams[i];
+            if (state.isDecided(stream, andMatching)) {
+                continue;
+            }
+            state.record(stream, evaluate(remainingRules[i], message) != null, andMatching);
+        }
+
+        for (final Map.Entry<String, ContainsRuleGroup> entry : containsRules.entrySet()) {
+            entry.getValue().evaluate(message.getField(entry.getKey()), state, andMatching);
+        }
+
+        for (final RegexRule rule : regexRules) {
+            if (state.isDecided(rule.stream, andMatching)) {
+                continue;
+            }
+            state.record(rule.stream, matchRegex(rule, message), andMatching);
+        }
+
+        final List<Stream> result = state.matchedStreams(indexedStreams);
+        removeMatchesFromDefaultStream(message, result);
+
+        return result;
+    }
+
+    private boolean matchRegex(RegexRule regexRule, Message message) {
+        if (regexRule.pattern == null) {
+            // The pattern could not be compiled, let the regular engine record the processing error.
+            return evaluate(regexRule.rule, message) != null;
+        }
+        final StreamRule streamRule = regexRule.rule.getStreamRule();
+        final Object value = message.getField(streamRule.getField());
+        if (value == null) {
+            return streamRule.getInverted();
+        }
+
+        try (final Timer.Context ignored = streamMetrics.getExecutionTimer(regexRule.rule.getStreamId(), streamRule.getId()).time()) {
+            final CharSequence charSequence = new TimeLimitedCharSequence(value.toString(), regexTimeoutNanos);
+            return streamRule.getInverted() ^ regexRule.pattern.matcher(charSequence).find();
+        } catch (TimeLimitedCharSequence.TimeLimitExceededException e) {
+            streamFaultManager.registerFailure(regexRule.rule.getStream());
+            return false;
+        }
+    }
+
+    private static Pattern compile(StreamRule streamRule) {
+        if (streamRule.getValue() == null || streamRule.getInverted() == null) {
+            return null;
+        }
+        try {
+            return Pattern.compile(streamRule.getValue(), Pattern.DOTALL);
+        } catch (PatternSyntaxException e) {
+            return null;
+        }
+    }
+
+    private static boolean isPresent(Object value) {
+        if (value == null) {
+            return false;
+        }
+        if (value instanceof String) {
+            return !((String) value).trim().isEmpty();
+        }
+        return true;
+    }
+
+    private static class IndexedRule {
+        private final int id;
+        private final int stream;
+        private final boolean inverted;
+        private final String value;
+
+        IndexedRule(int id, int stream, boolean inverted) {
+            this(id, stream, inverted, null);
+        }
+
+        IndexedRule(int id, int stream, boolean inverted, String value) {
+            this.id = id;
+            this.stream = stream;
+            this.inverted = inverted;
+            this.value = value;
+        }
+    }
+
+    /**
+     * All EXACT rules on one field. Rules are grouped by their value, so a message only needs a single hash lookup
+     * to find the rules whose value is equal to the field value. Rules which don't change the state of their stream
+     * when the value doesn't match (non-inverted rules of OR streams) are only visited on a hit.
+     */
+    private static class ExactRuleGroup {
+        private final Map<String, IndexedRule[]> rulesByValue;
+        private final IndexedRule[] rulesWithMissOutcome;
+
+        ExactRuleGroup(List<IndexedRule> rules, boolean[] andMatching) {
+            final Map<String, List<IndexedRule>> byValue = new HashMap<>();
+            final List<IndexedRule> withMissOutcome = new ArrayList<>();
+            for (final IndexedRule rule : rules) {
+                if (rule.value != null) {
+                    byValue.computeIfAbsent(rule.value, value -> new ArrayList<>()).add(rule);
+                }
+                if (rule.inverted || andMatching[rule.stream]) {
+                    withMissOutcome.add(rule);
+                }
+            }
+            this.rulesByValue = new HashMap<>();
+            byValue.forEach((value, valueRules) -> rulesByValue.put(value, valueRules.toArray(new IndexedRule[0])));
+            this.rulesWithMissOutcome = withMissOutcome.toArray(new IndexedRule[0]);
+        }
+
+        void evaluate(String value, MatchState state, boolean[] andMatching) {
+            final IndexedRule[] hits = value == null ? null : rulesByValue.get(value);
+            if (hits != null) {
+                for (final IndexedRule rule : hits) {
+                    state.hits.set(rule.id);
+                    state.record(rule.stream, !rule.inverted, andMatching);
+                }
+            }
+            for (final IndexedRule rule : rulesWithMissOutcome) {
+                if (hits == null || !state.hits.get(rule.id)) {
+                    state.record(rule.stream, rule.inverted, andMatching);
+                }
+            }
+            if (hits != null) {
+                for (final IndexedRule rule : hits) {
+                    state.hits.clear(rule.id);
+                }
+            }
+        }
+    }
+
+    /**
+     * All CONTAINS rules on one field, matched with a single pass of an {@link AhoCorasickAutomaton} over the field
+     * value.
+     */
+    private static class ContainsRuleGroup {
+        private final IndexedRule[] rules;
+        private final int[] patternIds;
+        private final AhoCorasickAutomaton automaton;
+
+        ContainsRuleGroup(List<IndexedRule> rules) {
+            final Map<String, Integer> patterns = new LinkedHashMap<>();
+            this.rules = rules.toArray(new IndexedRule[0]);
+            this.patternIds = new int[this.rules.length];
+            for (int i = 0; i < this.rules.length; i++) {
+                patternIds[i] = patterns.computeIfAbsent(this.rules[i].value, value -> patterns.size());
+            }
+            this.automaton = new AhoCorasickAutomaton(new ArrayList<>(patterns.keySet()));
+        }
+
+        void evaluate(Object value, MatchState state, boolean[] andMatching) {
+            if (value == null) {
+                for (final IndexedRule rule : rules) {
+                    state.record(rule.stream, rule.inverted, andMatching);
+                }
+                return;
+            }
+
+            state.found.clear();
+            automaton.search(value.toString(), state.found);
+            for (int i = 0; i < rules.length; i++) {
+                final IndexedRule rule = rules[i];
+                state.record(rule.stream, rule.inverted ^ state.found.get(patternIds[i]), andMatching);
+            }
+        }
+    }
+
+    private static class RegexRule {
+        private final Rule rule;
+        private final int stream;
+        private final Pattern pattern;
+
+        RegexRule(Rule rule, int stream, Pattern pattern) {
+            this.rule = rule;
+            this.stream = stream;
+            this.pattern = pattern;
+        }
+    }
+
+    /**
+     * Per-thread scratch state for a single {@link #match(Message)} call.
+     */
+    private static class MatchState {
+        private final BitSet matched;
+        private final BitSet failed;
+        private final BitSet hits;
+        private final BitSet found = new BitSet();
+
+        MatchState(int streamCount, int ruleCount) {
+            this.matched = new BitSet(streamCount);
+            this.failed = new BitSet(streamCount);
+            this.hits = new BitSet(ruleCount);
+        }
+
+        void clear() {
+            matched.clear();
+            failed.clear();
+        }
+
+        void record(int stream, boolean ruleMatched, boolean[] andMatching) {
+            if (ruleMatched) {
+                matched.set(stream);
+            } else if (andMatching[stream]) {
+                failed.set(stream);
+            }
+        }
+
+        /**
+         * A stream is decided once an AND stream had a non-matching rule or an OR stream had a matching rule.
+         */
+        boolean isDecided(int stream, boolean[] andMatching) {
+            return andMatching[stream] ? failed.get(stream) : matched.get(stream);
+        }
+
+        List<Stream> matchedStreams(Stream[] streams) {
+            if (matched.isEmpty()) {
+                return ImmutableList.of();
+            }
+            final ImmutableList.Builder<Stream> result = ImmutableList.builder();
+            for (int i = matched.nextSetBit(0); i >= 0; i = matched.nextSetBit(i + 1)) {
+                if (!failed.get(i)) {
+                    result.add(streams[i]);
+                }
+            }
+            return result.build();
+        }
+    }
+}
@@ -68,7 +68,7 @@ public class StreamFaultManager {
                 streamService.pause(stream);
                 faultCount.set(0);
                 streamMetrics.markStreamFaultsExceeded(stream.getId());
-                LOG.error("Processing of stream <{}> failed to return within {}ms for more than {} times. Disabling stream.",
+                LOG.error("Matching a rule of stream <{}> exceeded the stream processing timeout of {}ms for more than {} times. Disabling stream.",
                         stream.getId(), streamProcessingTimeout, maxFaultCount);
 
                 triggerNotification(stream, streamFaultCount);
@@ -76,7 +76,7 @@ public class StreamFaultManager {
                 LOG.error("Unable to pause stream: {}", ex);
             }
         } else {
-            LOG.warn("Processing of stream <{}> failed to return within {}ms.", stream.getId(), streamProcessingTimeout);
+            LOG.warn("Matching a rule of stream <{}> exceeded the stream processing timeout of {}ms.", stream.getId(), streamProcessingTimeout);
         }
     }
 
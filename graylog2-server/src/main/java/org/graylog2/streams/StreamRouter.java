@@ -16,9 +16,13 @@
  */
 package org.graylog2.streams;
 
+import com.github.joschi.jadconfig.util.Duration;
 import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+import jakarta.inject.Singleton;
 import org.graylog2.indexer.indexset.events.IndexSetCreatedEvent;
 import org.graylog2.indexer.indexset.events.IndexSetDeletedEvent;
 import org.graylog2.plugin.Message;
@@ -28,19 +32,28 @@ import org.graylog2.streams.events.StreamsChangedEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import jakarta.inject.Inject;
-import jakarta.inject.Named;
-
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Routes a {@link org.graylog2.plugin.Message} to its streams.
+ * <p>
+ * The router engine is updated incrementally for the streams named in a {@link StreamsChangedEvent}. All enabled
+ * streams are only loaded on startup, when index sets change and in the configured full reload interval, unless that
+ * interval is zero.
  */
+@Singleton
 public class StreamRouter {
     private static final Logger LOG = LoggerFactory.getLogger(StreamRouter.class);
 
@@ -55,13 +68,21 @@ public class StreamRouter {
                         ServerStatus serverStatus,
                         StreamRouterEngine.Factory routerEngineFactory,
                         EventBus serverEventBus,
-                        @Named("daemonScheduler") ScheduledExecutorService scheduler) {
+                        @Named("daemonScheduler") ScheduledExecutorService scheduler,
+                        @Named("stream_router_full_reload_interval") Duration fullReloadInterval) {
         this.serverStatus = serverStatus;
         this.scheduler = scheduler;
 
         this.engineUpdater = new StreamRouterEngineUpdater(routerEngine, routerEngineFactory, streamService, executorService());
         this.routerEngine.set(engineUpdater.getNewEngine());
 
+        final long interval = fullReloadInterval.toMilliseconds();
+        if (interval > 0) {
+            scheduler.scheduleWithFixedDelay(engineUpdater::reloadAll, interval, interval, TimeUnit.MILLISECONDS);
+        } else {
+            LOG.info("Periodic full reload of the stream router is disabled.");
+        }
+
         // TODO: This class needs lifecycle management to avoid leaking objects in the EventBus
         serverEventBus.register(this);
     }
@@ -73,21 +94,22 @@ public class StreamRouter {
     @Subscribe
     @SuppressWarnings("unused")
     public void handleStreamsUpdate(StreamsChangedEvent event) {
-        scheduler.submit(engineUpdater);
+        if (engineUpdater.addChangedStreams(event.streamIds())) {
+            scheduler.submit(engineUpdater::applyChangedStreams);
+        }
     }
 
     @Subscribe
     @SuppressWarnings("unused")
     public void handleIndexSetCreation(IndexSetCreatedEvent event) {
-        scheduler.submit(engineUpdater);
+        scheduler.submit(engineUpdater::reloadAll);
     }
 
     @Subscribe
     @SuppressWarnings("unused")
     public void handleIndexSetDeletion(IndexSetDeletedEvent event) {
-        scheduler.submit(engineUpdater);
+        scheduler.submit(engineUpdater::reloadAll);
     }
-
     private ExecutorService executorService() {
         final ThreadFactory threadFactory = new ThreadFactoryBuilder()
                 .setNameFormat("stream-router-%d")
@@ -104,12 +126,17 @@ public class StreamRouter {
         return engine.match(msg);
     }
 
-    private static class StreamRouterEngineUpdater implements Runnable {
+    private static class StreamRouterEngineUpdater {
         private final AtomicReference<StreamRouterEngine> routerEngine;
         private final StreamRouterEngine.Factory engineFactory;
         private final StreamService streamService;
         private final ExecutorService executorService;
 
+        // Stream IDs from change events which have not been applied yet. Events which arrive while an update is
+        // scheduled are applied together with it.
+        private final Set<String> changedStreamIds = ConcurrentHashMap.newKeySet();
+        private final AtomicBoolean updateScheduled = new AtomicBoolean(false);
+
         public StreamRouterEngineUpdater(AtomicReference<StreamRouterEngine> routerEngine,
                                          StreamRouterEngine.Factory engineFactory,
                                          StreamService streamService,
@@ -120,23 +147,68 @@ public class StreamRouter {
             this.executorService = executorService;
         }
 
-        @Override
-        public void run() {
+        /**
+         * Records changed streams.
+         *
+         * @return {@code true} if the caller has to schedule {@link #applyChangedStreams()}
+         */
+        boolean addChangedStreams(Collection<String> streamIds) {
+            changedStreamIds.addAll(streamIds);
+            return updateScheduled.compareAndSet(false, true);
+        }
+
+        synchronized void applyChangedStreams() {
+            updateScheduled.set(false);
+            final Set<String> streamIds = new HashSet<>();
+            for (String streamId : changedStreamIds) {
+                if (changedStreamIds.remove(streamId)) {
+                    streamIds.add(streamId);
+                }
+            }
+            if (streamIds.isEmpty()) {
+                return;
+            }
+
             try {
-                final StreamRouterEngine engine = getNewEngine();
-
-                if (engine.getFingerprint().equals(routerEngine.get().getFingerprint())) {
-                    LOG.debug("Not updating router engine, streams did not change (fingerprint={})", engine.getFingerprint());
-                } else {
-                    LOG.debug("Updating to new stream router engine. (old-fingerprint={} new-fingerprint={}",
-                            routerEngine.get().getFingerprint(), engine.getFingerprint());
-                    routerEngine.set(engine);
+                final List<Stream> streams = new ArrayList<>(routerEngine.get().getStreams().size() + streamIds.size());
+                for (Stream stream : routerEngine.get().getStreams()) {
+                    if (!streamIds.contains(stream.getId())) {
+                        streams.add(stream);
+                    }
+                }
+                // Deleted streams are not found and disabled ones are dropped, both are removed from the engine.
+                for (Stream stream : streamService.loadByIds(streamIds)) {
+                    if (!Boolean.TRUE.equals(stream.getDisabled())) {
+                        streams.add(stream);
+                    }
                 }
+
+                LOG.debug("Applying changes of streams {} to stream router engine", streamIds);
+                updateEngine(engineFactory.create(streams, executorService));
+            } catch (Exception e) {
+                LOG.error("Updating stream router engine for changed streams {} failed, reloading all streams.", streamIds, e);
+                reloadAll();
+            }
+        }
+
+        synchronized void reloadAll() {
+            try {
+                updateEngine(getNewEngine());
             } catch (Exception e) {
                 LOG.error("Stream router engine update failed!", e);
             }
         }
 
+        private void updateEngine(StreamRouterEngine engine) {
+            if (engine.getFingerprint().equals(routerEngine.get().getFingerprint())) {
+                LOG.debug("Not updating router engine, streams did not change (fingerprint={})", engine.getFingerprint());
+            } else {
+                LOG.debug("Updating to new stream router engine. (old-fingerprint={} new-fingerprint={}",
+                        routerEngine.get().getFingerprint(), engine.getFingerprint());
+                routerEngine.set(engine);
+            }
+        }
+
         private StreamRouterEngine getNewEngine() {
             return engineFactory.create(streamService.loadAllEnabled(), executorService);
         }
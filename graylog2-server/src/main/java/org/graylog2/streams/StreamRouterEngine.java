@@ -41,6 +41,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
+import java.util.Collection;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
@@ -185,26 +186,8 @@ public class StreamRouterEngine {
                 continue;
             }
 
-            final StreamRule streamRule = rule.getStreamRule();
-            final StreamRuleType streamRuleType = streamRule.getType();
             final Stream.MatchingType matchingType = rule.getMatchingType();
-            if (!ruleTypesNotNeedingFieldPresence.contains(streamRuleType)
-                    && !message.hasField(streamRule.getField())) {
-                if (matchingType == Stream.MatchingType.AND) {
-                    result.remove(rule.getStream());
-                    // blacklist stream because it can't match anymore
-                    blackList.add(rule.getStreamId());
-                }
-
-                continue;
-            }
-
-            final Stream stream;
-            if (streamRuleType != StreamRuleType.REGEX) {
-                stream = rule.match(message);
-            } else {
-                stream = rule.matchWithTimeOut(message, streamProcessingTimeout, TimeUnit.MILLISECONDS);
-            }
+            final Stream stream = evaluate(rule, message);
 
             if (stream == null) {
                 if (matchingType == Stream.MatchingType.AND) {
@@ -221,9 +204,54 @@ public class StreamRouterEngine {
             }
         }
 
+        removeMatchesFromDefaultStream(message, result);
+
+        return ImmutableList.copyOf(result);
+    }
+
+    /**
+     * Returns all rules of the engine in evaluation order.
+     *
+     * @return the list of rules
+     */
+    protected List<Rule> getRules() {
+        return rulesList;
+    }
+
+    /**
+     * Evaluates a single rule against the given message. Rules which need the field to be present do not match if
+     * the message doesn't contain the field. Regex rules are run with the configured stream processing timeout.
+     *
+     * @param rule    the rule to evaluate
+     * @param message the message
+     * @return the stream of the rule if it matched, {@code null} otherwise
+     */
+    @Nullable
+    protected Stream evaluate(Rule rule, Message message) {
+        final StreamRule streamRule = rule.getStreamRule();
+        final StreamRuleType streamRuleType = streamRule.getType();
+        if (!ruleTypesNotNeedingFieldPresence.contains(streamRuleType)
+                && !message.hasField(streamRule.getField())) {
+            return null;
+        }
+
+        if (streamRuleType != StreamRuleType.REGEX) {
+            return rule.match(message);
+        } else {
+            return rule.matchWithTimeOut(message, streamProcessingTimeout, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Removes the default stream from the message if one of the matched streams is configured to do so.
+     *
+     * @param message        the message
+     * @param matchedStreams the streams the message matched
+     */
+    protected void removeMatchesFromDefaultStream(Message message, Collection<Stream> matchedStreams) {
         final Stream defaultStream = defaultStreamProvider.get();
         boolean alreadyRemovedDefaultStream = false;
-        for (Stream stream : result) {
+        for (Stream stream : matchedStreams) {
             if (stream.getRemoveMatchesFromDefaultStream()) {
                 if (alreadyRemovedDefaultStream || message.removeStream(defaultStream)) {
                     alreadyRemovedDefaultStream = true;
@@ -242,8 +270,6 @@ public class StreamRouterEngine {
                 }
             }
         }
-
-        return ImmutableList.copyOf(result);
     }
 
     /**
@@ -275,7 +301,7 @@ public class StreamRouterEngine {
         return matches;
     }
 
-    private class Rule {
+    protected class Rule {
         private final Stream stream;
         private final StreamRule rule;
         private final String streamId;
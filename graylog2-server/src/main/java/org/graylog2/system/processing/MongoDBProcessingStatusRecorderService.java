@@ -26,6 +26,8 @@ import com.google.common.util.concurrent.AbstractIdleService;
 import org.graylog2.plugin.ServerStatus;
 import org.graylog2.plugin.lifecycles.Lifecycle;
 import org.graylog2.shared.journal.LocalKafkaJournal;
+import org.graylog2.shared.journal.MappedSegmentJournal;
+import org.graylog2.shared.journal.SegmentedJournal;
 import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,6 +36,8 @@ import jakarta.inject.Inject;
 import jakarta.inject.Named;
 import jakarta.inject.Singleton;
 
+import java.util.Set;
+import java.util.SortedMap;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
@@ -49,12 +53,10 @@ public class MongoDBProcessingStatusRecorderService extends AbstractIdleService
     private static final Logger LOG = LoggerFactory.getLogger(MongoDBProcessingStatusRecorderService.class);
 
     private static final DateTime DEFAULT_RECEIVE_TIME = new DateTime(0L, UTC);
-    private static final String READ_MESSAGES_METRIC = name(LocalKafkaJournal.class.getName(),
-            LocalKafkaJournal.METER_READ_MESSAGES);
-    private static final String WRITTEN_MESSAGES_METRIC = name(LocalKafkaJournal.class.getName(),
-            LocalKafkaJournal.METER_WRITTEN_MESSAGES);
-    private static final String UNCOMMITTED_MESSAGES_METRIC = name(LocalKafkaJournal.class.getName(),
-            LocalKafkaJournal.GAUGE_UNCOMMITTED_MESSAGES);
+    // Only one of the journal implementations is in use, so at most one of the metrics exists.
+    private static final Set<String> READ_MESSAGES_METRICS = journalMetricNames(SegmentedJournal.METER_READ_MESSAGES);
+    private static final Set<String> WRITTEN_MESSAGES_METRICS = journalMetricNames(SegmentedJournal.METER_WRITTEN_MESSAGES);
+    private static final Set<String> UNCOMMITTED_MESSAGES_METRICS = journalMetricNames(SegmentedJournal.GAUGE_UNCOMMITTED_MESSAGES);
 
     private final AtomicReference<DateTime> ingestReceiveTime = new AtomicReference<>(DEFAULT_RECEIVE_TIME);
     private final AtomicReference<DateTime> postProcessingReceiveTime = new AtomicReference<>(DEFAULT_RECEIVE_TIME);
@@ -162,29 +164,28 @@ public class MongoDBProcessingStatusRecorderService extends AbstractIdleService
     @Override
     public long getJournalInfoUncommittedEntries() {
         //noinspection unchecked
-        final Gauge<Long> gauge = (Gauge<Long>) metricRegistry
-                .getGauges((name, metric) -> UNCOMMITTED_MESSAGES_METRIC.equals(name))
-                .get(UNCOMMITTED_MESSAGES_METRIC);
-        if (gauge != null) {
-            return gauge.getValue();
+        final SortedMap<String, Gauge> gauges = metricRegistry
+                .getGauges((name, metric) -> UNCOMMITTED_MESSAGES_METRICS.contains(name));
+        if (!gauges.isEmpty()) {
+            return ((Gauge<Long>) gauges.get(gauges.firstKey())).getValue();
         }
         return 0;
     }
 
     @Override
     public double getJournalInfoReadMessages1mRate() {
-        return getJournalInfoMeter1mRate(READ_MESSAGES_METRIC);
+        return getJournalInfoMeter1mRate(READ_MESSAGES_METRICS);
     }
 
     @Override
     public double getJournalInfoWrittenMessages1mRate() {
-        return getJournalInfoMeter1mRate(WRITTEN_MESSAGES_METRIC);
+        return getJournalInfoMeter1mRate(WRITTEN_MESSAGES_METRICS);
     }
 
-    private double getJournalInfoMeter1mRate(String metricName) {
-        final Meter meter = metricRegistry.getMeters((name, metric) -> metricName.equals(name)).get(metricName);
-        if (meter != null) {
-            return meter.getOneMinuteRate();
+    private double getJournalInfoMeter1mRate(Set<String> metricNames) {
+        final SortedMap<String, Meter> meters = metricRegistry.getMeters((name, metric) -> metricNames.contains(name));
+        if (!meters.isEmpty()) {
+            return meters.get(meters.firstKey()).getOneMinuteRate();
         }
         return 0;
     }
@@ -225,4 +226,9 @@ public class MongoDBProcessingStatusRecorderService extends AbstractIdleService
     private DateTime latestTimestamp(DateTime timestamp, DateTime newTimestamp) {
         return newTimestamp.isAfter(timestamp) ? newTimestamp : timestamp;
     }
+
+    private static Set<String> journalMetricNames(String metricName) {
+        return Set.of(name(LocalKafkaJournal.class.getName(), metricName),
+                name(MappedSegmentJournal.class.getName(), metricName));
+    }
 }
@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.utilities;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+
+/**
+ * Aho-Corasick automaton to find all occurrences of a set of strings in a text in a single pass.
+ * <p>
+ * Instances are immutable and thread-safe.
+ */
+public class AhoCorasickAutomaton {
+    private final char[][] transitionChars;
+    private final int[][] transitionTargets;
+    private final int[] failure;
+    private final int[][] outputs;
+    private final int patternCount;
+
+    /**
+     * Builds an automaton for the given patterns. The index of a pattern in the list is used as its id in
+     * {@link #search(CharSequence, BitSet)}. Empty patterns are contained in every text.
+     *
+     * @param patterns the patterns to search for
+     */
+    public AhoCorasickAutomaton(List<String> patterns) {
+        final List<TreeMap<Character, Integer>> transitions = new ArrayList<>();
+        final List<List<Integer>> nodeOutputs = new ArrayList<>();
+        transitions.add(new TreeMap<>());
+        nodeOutputs.add(new ArrayList<>());
+
+        for (int id = 0; id < patterns.size(); id++) {
+            final String pattern = patterns.get(id);
+            int node = 0;
+            for (int i = 0; i < pattern.length(); i++) {
+                final Integer next = transitions.get(node).get(pattern.charAt(i));
+                if (next == null) {
+                    transitions.add(new TreeMap<>());
+                    nodeOutputs.add(new ArrayList<>());
+                    transitions.get(node).put(pattern.charAt(i), transitions.size() - 1);
+                    node = transitions.size() - 1;
+                } else {
+                    node = next;
+                }
+            }
+            nodeOutputs.get(node).add(id);
+        }
+
+        final int nodeCount = transitions.size();
+        this.transitionChars = new char[nodeCount][];
+        this.transitionTargets = new int[nodeCount][];
+        this.failure = new int[nodeCount];
+        this.outputs = new int[nodeCount][];
+        this.patternCount = patterns.size();
+
+        for (int node = 0; node < nodeCount; node++) {
+            final TreeMap<Character, Integer> nodeTransitions = transitions.get(node);
+            transitionChars[node] = new char[nodeTransitions.size()];
+            transitionTargets[node] = new int[nodeTransitions.size()];
+            int i = 0;
+            for (Map.Entry<Character, Integer> entry : nodeTransitions.entrySet()) {
+                transitionChars[node][i] = entry.getKey();
+                transitionTargets[node][i] = entry.getValue();
+                i++;
+            }
+        }
+
+        // Breadth-first traversal, so the failure link of a node's parent is always computed before the node itself.
+        outputs[0] = toArray(nodeOutputs.get(0));
+        final Queue<Integer> queue = new ArrayDeque<>();
+        for (int child : transitionTargets[0]) {
+            failure[child] = 0;
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            final int node = queue.remove();
+            final int[] own = toArray(nodeOutputs.get(node));
+            final int[] inherited = outputs[failure[node]];
+            outputs[node] = concat(own, inherited);
+
+            for (int i = 0; i < transitionChars[node].length; i++) {
+                final char c = transitionChars[node][i];
+                final int child = transitionTargets[node][i];
+                int state = failure[node];
+                int next = transition(state, c);
+                while (next < 0 && state != 0) {
+                    state = failure[state];
+                    next = transition(state, c);
+                }
+                failure[child] = next < 0 ? 0 : next;
+                queue.add(child);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of patterns in this automaton.
+     *
+     * @return the number of patterns
+     */
+    public int getPatternCount() {
+        return patternCount;
+    }
+
+    /**
+     * Searches the given text and sets the ids of all patterns which are contained in the text in {@code found}.
+     *
+     * @param text  the text to search
+     * @param found the bit set to add the ids of the found patterns to
+     */
+    public void search(CharSequence text, BitSet found) {
+        for (int id : outputs[0]) {
+            found.set(id);
+        }
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+            int next = transition(state, c);
+            while (next < 0 && state != 0) {
+                state = failure[state];
+                next = transition(state, c);
+            }
+            state = next < 0 ? 0 : next;
+            for (int id : outputs[state]) {
+                found.set(id);
+            }
+        }
+    }
+
+    private int transition(int node, char c) {
+        final int i = Arrays.binarySearch(transitionChars[node], c);
+        return i < 0 ? -1 : transitionTargets[node][i];
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        return list.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static int[] concat(int[] a, int[] b) {
+        if (b.length == 0) {
+            return a;
+        }
+        final int[] result = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+}
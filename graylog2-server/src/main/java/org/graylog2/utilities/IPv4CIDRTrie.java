@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.utilities;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable binary trie for longest-prefix lookups of IPv4 addresses in a set of CIDR ranges.
+ * <p>
+ * Unlike {@link CIDRPatriciaTrie} the addresses are handled as {@code int} values, so a lookup walks at most 32 nodes
+ * and does not allocate. Instances are thread-safe. To update the ranges, build a new trie and atomically replace
+ * the one in use.
+ *
+ * @param <V> the type of the values associated with the ranges
+ */
+public final class IPv4CIDRTrie<V> {
+    private static final int NO_NODE = 0;
+    private static final int NO_VALUE = -1;
+
+    // Children of node n are at children[2 * n] (bit 0) and children[2 * n + 1] (bit 1), node 0 is the root
+    private final int[] children;
+    private final int[] valueIndexes;
+    private final Object[] values;
+
+    private IPv4CIDRTrie(int[] children, int[] valueIndexes, Object[] values) {
+        this.children = children;
+        this.valueIndexes = valueIndexes;
+        this.values = values;
+    }
+
+    public static <V> Builder<V> builder() {
+        return new Builder<>();
+    }
+
+    public int size() {
+        return values.length;
+    }
+
+    public boolean isEmpty() {
+        return values.length == 0;
+    }
+
+    /**
+     * Returns the value of the most specific range containing the given IPv4 address.
+     *
+     * @param ip IPv4 address in dotted-decimal notation
+     * @return the value of the longest matching range, or {@code null} if no range contains the address
+     * @throws IllegalArgumentException if the given string is not a valid IPv4 address
+     */
+    @Nullable
+    public V longestPrefixMatch(String ip) {
+        final long address = parseAddress(ip);
+        if (address < 0) {
+            throw new IllegalArgumentException("Invalid IPv4 address: " + ip);
+        }
+        return longestPrefixMatch((int) address);
+    }
+
+    /**
+     * Returns the value of the most specific range containing the given IPv4 address.
+     *
+     * @param address IPv4 address as an {@code int}, the first octet being the most significant byte
+     * @return the value of the longest matching range, or {@code null} if no range contains the address
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public V longestPrefixMatch(int address) {
+        int node = 0;
+        int match = valueIndexes[0];
+        for (int bit = 31; bit >= 0; bit--) {
+            node = children[2 * node + ((address >>> bit) & 1)];
+            if (node == NO_NODE) {
+                break;
+            }
+            if (valueIndexes[node] != NO_VALUE) {
+                match = valueIndexes[node];
+            }
+        }
+        return match == NO_VALUE ? null : (V) values[match];
+    }
+
+    /**
+     * Parses an IPv4 address in dotted-decimal notation without allocating.
+     *
+     * @param ip the address
+     * @return the address as an unsigned value, or {@code -1} if the string is not a valid IPv4 address
+     */
+    public static long parseAddress(@Nullable String ip) {
+        if (ip == null) {
+            return -1;
+        }
+        final int length = ip.length();
+        long address = 0;
+        int octets = 0;
+        int i = 0;
+        while (i < length && octets < 4) {
+            int octet = 0;
+            int digits = 0;
+            char c;
+            while (i < length && (c = ip.charAt(i)) >= '0' && c <= '9') {
+                octet = octet * 10 + (c - '0');
+                digits++;
+                i++;
+                if (digits > 3) {
+                    return -1;
+                }
+            }
+            if (digits == 0 || octet > 255) {
+                return -1;
+            }
+            address = (address << 8) | octet;
+            octets++;
+            if (octets < 4) {
+                if (i >= length || ip.charAt(i) != '.') {
+                    return -1;
+                }
+                i++;
+            }
+        }
+        return octets == 4 && i == length ? address : -1;
+    }
+
+    public static final class Builder<V> {
+        private int[] children = new int[64];
+        private int[] valueIndexes = new int[32];
+        private int nodeCount = 1;
+        private final List<V> values = new ArrayList<>();
+
+        private Builder() {
+            Arrays.fill(valueIndexes, NO_VALUE);
+        }
+
+        /**
+         * Adds a CIDR range. If the same range has been added before, the earlier value is kept.
+         *
+         * @param cidr  range in {@code a.b.c.d/prefix} notation, host bits are ignored
+         * @param value the value to associate with the range
+         * @throws IllegalArgumentException if the range is not a valid IPv4 CIDR range
+         */
+        public Builder<V> add(String cidr, V value) {
+            final int slash = cidr.indexOf('/');
+            final long address = slash < 0 ? -1 : parseAddress(cidr.substring(0, slash));
+            final int prefixLength;
+            try {
+                prefixLength = slash < 0 ? -1 : Integer.parseInt(cidr.substring(slash + 1));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid IPv4 CIDR range: " + cidr, e);
+            }
+            if (address < 0 || prefixLength < 0 || prefixLength > 32) {
+                throw new IllegalArgumentException("Invalid IPv4 CIDR range: " + cidr);
+            }
+            return add((int) address, prefixLength, value);
+        }
+
+        /**
+         * Adds a CIDR range. If the same range has been added before, the earlier value is kept.
+         *
+         * @param address      address of the range, host bits are ignored
+         * @param prefixLength number of network bits, between 0 and 32
+         * @param value        the value to associate with the range
+         */
+        public Builder<V> add(int address, int prefixLength, V value) {
+            if (prefixLength < 0 || prefixLength > 32) {
+                throw new IllegalArgumentException("Invalid IPv4 prefix length: " + prefixLength);
+            }
+            int node = 0;
+            for (int i = 0; i < prefixLength; i++) {
+                final int slot = 2 * node + ((address >>> (31 - i)) & 1);
+                if (children[slot] == NO_NODE) {
+                    // newNode() might replace the children array, don't inline
+                    final int child = newNode();
+                    children[slot] = child;
+                }
+                node = children[slot];
+            }
+            if (valueIndexes[node] == NO_VALUE) {
+                valueIndexes[node] = values.size();
+                values.add(value);
+            }
+            return this;
+        }
+
+        private int newNode() {
+            if (nodeCount == valueIndexes.length) {
+                children = Arrays.copyOf(children, children.length * 2);
+                final int oldLength = valueIndexes.length;
+                valueIndexes = Arrays.copyOf(valueIndexes, oldLength * 2);
+                Arrays.fill(valueIndexes, oldLength, valueIndexes.length, NO_VALUE);
+            }
+            return nodeCount++;
+        }
+
+        public IPv4CIDRTrie<V> build() {
+            return new IPv4CIDRTrie<>(Arrays.copyOf(children, 2 * nodeCount),
+                    Arrays.copyOf(valueIndexes, nodeCount),
+                    values.toArray());
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.utilities;
+
+/**
+ * A {@link CharSequence} which stops working after a deadline. This can be used to bound the time a regular
+ * expression can spend on the calling thread, e. g. to stop catastrophic backtracking without having to run the
+ * match on another thread.
+ * <p>
+ * The clock is only read every {@value #CHECK_INTERVAL} character accesses, so the deadline can be overshot by the
+ * time it takes to inspect that many characters.
+ */
+public class TimeLimitedCharSequence implements CharSequence {
+    static final int CHECK_INTERVAL = 1024;
+
+    private final CharSequence inner;
+    private final long timeoutNanos;
+    private final long deadline;
+    private int accesses;
+
+    public TimeLimitedCharSequence(CharSequence inner, long timeoutNanos) {
+        this.inner = inner;
+        this.timeoutNanos = timeoutNanos;
+        this.deadline = System.nanoTime() + timeoutNanos;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (++accesses == CHECK_INTERVAL) {
+            accesses = 0;
+            if (System.nanoTime() - deadline > 0) {
+                throw new TimeLimitExceededException(timeoutNanos);
+            }
+        }
+        return inner.charAt(index);
+    }
+
+    @Override
+    public int length() {
+        return inner.length();
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return inner.subSequence(start, end);
+    }
+
+    @Override
+    public String toString() {
+        return inner.toString();
+    }
+
+    public static class TimeLimitExceededException extends RuntimeException {
+        public TimeLimitExceededException(long timeoutNanos) {
+            super("Exceeded time limit of " + timeoutNanos + "ns", null, false, false);
+        }
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.events.processor.aggregation;
+
+import com.codahale.metrics.MetricRegistry;
+import com.github.joschi.jadconfig.util.Duration;
+import org.graylog.events.EventsConfigurationTestProvider;
+import org.graylog.plugins.views.search.ParameterProvider;
+import org.graylog.plugins.views.search.Query;
+import org.graylog.plugins.views.search.QueryResult;
+import org.graylog.plugins.views.search.Search;
+import org.graylog.plugins.views.search.SearchJob;
+import org.graylog.plugins.views.search.SearchType;
+import org.graylog.plugins.views.search.db.SearchJobService;
+import org.graylog.plugins.views.search.engine.QueryEngine;
+import org.graylog.plugins.views.search.engine.normalization.SearchNormalization;
+import org.graylog.plugins.views.search.errors.SearchTypeError;
+import org.graylog.plugins.views.search.searchtypes.pivot.Pivot;
+import org.graylog.plugins.views.search.searchtypes.pivot.buckets.Values;
+import org.graylog.plugins.views.search.searchtypes.pivot.series.Count;
+import org.graylog2.plugin.indexer.searches.timeranges.AbsoluteRange;
+import org.graylog2.shared.SuppressForbidden;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anySet;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isA;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class AggregationSearchBatcherTest {
+    private static final String TEST_USER = "test";
+    private static final AbsoluteRange TIMERANGE = AbsoluteRange.create(
+            DateTime.parse("2024-01-01T00:00:00Z"), DateTime.parse("2024-01-01T00:01:00Z"));
+    private static final AggregationSearchBatcher.BatchKey KEY =
+            new AggregationSearchBatcher.BatchKey(TIMERANGE, TEST_USER, DateTimeZone.UTC);
+
+    @Mock
+    private SearchJobService searchJobService;
+    @Mock
+    private QueryEngine queryEngine;
+    @Mock
+    private SearchNormalization searchNormalization;
+
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+
+    @BeforeEach
+    void setUp() {
+        when(searchNormalization.postValidation(isA(Query.class), isA(ParameterProvider.class)))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+        // Every search type of the executed search gets a result, "failing" search types get an error instead
+        when(searchJobService.create(any(Search.class), eq(TEST_USER), eq(0))).thenAnswer(invocation -> {
+            final Search search = invocation.getArgument(0);
+            final Query query = search.queries().iterator().next();
+            final Map<String, SearchType.Result> results = new HashMap<>();
+            final Set<SearchTypeError> errors = new HashSet<>();
+            for (SearchType searchType : query.searchTypes()) {
+                if (searchType.id().startsWith("failing")) {
+                    errors.add(new SearchTypeError(query, searchType.id(), "failed"));
+                } else {
+                    final SearchType.Result result = mock(SearchType.Result.class);
+                    when(result.id()).thenReturn(searchType.id());
+                    results.put(searchType.id(), result);
+                }
+            }
+            final SearchJob job = new SearchJob("job", search, TEST_USER, "test-node-id");
+            job.addQueryResultFuture(query.id(), CompletableFuture.completedFuture(QueryResult.builder()
+                    .query(query)
+                    .searchTypes(results)
+                    .errors(Set.copyOf(errors))
+                    .build()));
+            job.seal();
+            return job;
+        });
+        when(queryEngine.execute(any(SearchJob.class), anySet(), any())).thenAnswer(invocation -> invocation.getArgument(0));
+    }
+
+    @Test
+    void searchWithoutPartnerIsNotBatched() throws Exception {
+        final AggregationSearchBatcher batcher = batcher(Duration.milliseconds(10), 10);
+
+        final Optional<QueryResult> result = batcher.search(KEY, Set.of(pivot("pivot-1")), Set.of("stream-1"));
+
+        assertThat(result).isEmpty();
+        verify(queryEngine, never()).execute(any(), anySet(), any());
+    }
+
+    @Test
+    void concurrentSearchesShareOneQuery() throws Exception {
+        // The window is long enough that the batch is executed because it is full
+        final AggregationSearchBatcher batcher = batcher(Duration.minutes(1), 2);
+
+        final CompletableFuture<Optional<QueryResult>> first = CompletableFuture.supplyAsync(
+                () -> search(batcher, Set.of(pivot("pivot-1"), pivot("streams-pivot-1")), Set.of("stream-1")));
+        final Optional<QueryResult> second = batcher.search(KEY, Set.of(pivot("pivot-2"), pivot("failing-2")), Set.of("stream-2"));
+
+        assertThat(first.join()).hasValueSatisfying(result -> {
+            assertThat(result.searchTypes()).containsOnlyKeys("pivot-1", "streams-pivot-1");
+            assertThat(result.errors()).isEmpty();
+        });
+        assertThat(second).hasValueSatisfying(result -> {
+            assertThat(result.searchTypes()).containsOnlyKeys("pivot-2");
+            assertThat(result.errors()).singleElement()
+                    .satisfies(error -> assertThat(((SearchTypeError) error).searchTypeId()).isEqualTo("failing-2"));
+            assertThat(result.query().usedStreamIds()).containsExactlyInAnyOrder("stream-1", "stream-2");
+        });
+
+        verify(queryEngine, times(1)).execute(any(), anySet(), eq(DateTimeZone.UTC));
+        assertThat(metricRegistry.meter(MetricRegistry.name(AggregationSearchBatcher.class, "searches")).getCount()).isEqualTo(1);
+        assertThat(metricRegistry.meter(MetricRegistry.name(AggregationSearchBatcher.class, "definitions")).getCount()).isEqualTo(2);
+        assertThat(metricRegistry.meter(MetricRegistry.name(AggregationSearchBatcher.class, "saved-queries")).getCount()).isEqualTo(3);
+    }
+
+    @Test
+    void searchesForDifferentTimerangesAreNotCombined() throws Exception {
+        final AggregationSearchBatcher batcher = batcher(Duration.milliseconds(100), 2);
+        final AggregationSearchBatcher.BatchKey otherKey = new AggregationSearchBatcher.BatchKey(
+                AbsoluteRange.create(TIMERANGE.getFrom().plusMinutes(1), TIMERANGE.getTo().plusMinutes(1)), TEST_USER, DateTimeZone.UTC);
+
+        final CompletableFuture<Optional<QueryResult>> first = CompletableFuture.supplyAsync(
+                () -> search(batcher, Set.of(pivot("pivot-1")), Set.of("stream-1")));
+        final Optional<QueryResult> second = batcher.search(otherKey, Set.of(pivot("pivot-2")), Set.of("stream-1"));
+
+        assertThat(first.join()).isEmpty();
+        assertThat(second).isEmpty();
+        verify(queryEngine, never()).execute(any(), anySet(), any());
+    }
+
+    @Test
+    @SuppressForbidden("Executors#newFixedThreadPool() is okay for tests")
+    void batchesRunConcurrently() throws Exception {
+        final int batches = 8;
+        final AggregationSearchBatcher batcher = batcher(Duration.minutes(1), 2);
+        // Every search waits until all batches are running, so they only finish if none of them is queued
+        final CountDownLatch allRunning = new CountDownLatch(batches);
+        when(queryEngine.execute(any(SearchJob.class), anySet(), any())).thenAnswer(invocation -> {
+            allRunning.countDown();
+            assertThat(allRunning.await(10, TimeUnit.SECONDS)).isTrue();
+            return invocation.getArgument(0);
+        });
+
+        final ExecutorService callers = Executors.newFixedThreadPool(batches * 2);
+        try {
+            final List<CompletableFuture<Optional<QueryResult>>> results = new ArrayList<>();
+            for (int i = 0; i < batches * 2; i++) {
+                final AggregationSearchBatcher.BatchKey key = new AggregationSearchBatcher.BatchKey(
+                        AbsoluteRange.create(TIMERANGE.getFrom().plusMinutes(i / 2), TIMERANGE.getTo().plusMinutes(i / 2)),
+                        TEST_USER, DateTimeZone.UTC);
+                final Set<SearchType> searchTypes = Set.of(pivot("pivot-" + i));
+                results.add(CompletableFuture.supplyAsync(() -> search(batcher, key, searchTypes, Set.of("stream-1")), callers));
+            }
+
+            results.forEach(result -> assertThat(result.join()).isPresent());
+        } finally {
+            callers.shutdownNow();
+        }
+        verify(queryEngine, times(batches)).execute(any(), anySet(), any());
+    }
+
+    private Optional<QueryResult> search(AggregationSearchBatcher batcher, Set<SearchType> searchTypes, Set<String> streams) {
+        return search(batcher, KEY, searchTypes, streams);
+    }
+
+    private Optional<QueryResult> search(AggregationSearchBatcher batcher, AggregationSearchBatcher.BatchKey key,
+                                         Set<SearchType> searchTypes, Set<String> streams) {
+        try {
+            return batcher.search(key, searchTypes, streams);
+        } catch (Exception e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private AggregationSearchBatcher batcher(Duration window, int maxBatchSize) {
+        return new AggregationSearchBatcher(window, maxBatchSize, searchJobService, queryEngine,
+                EventsConfigurationTestProvider.create(), searchNormalization, metricRegistry);
+    }
+
+    private static SearchType pivot(String id) {
+        return Pivot.builder()
+                .id(id)
+                .rowGroups(Values.builder().limit(10).field("source").build())
+                .rollup(true)
+                .series(Count.builder().build())
+                .build();
+    }
+}
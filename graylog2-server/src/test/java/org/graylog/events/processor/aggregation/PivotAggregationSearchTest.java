@@ -61,7 +61,9 @@ import org.mockito.junit.MockitoJUnit;
 import org.mockito.junit.MockitoRule;
 
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
@@ -98,6 +100,8 @@ public class PivotAggregationSearchTest {
     private StreamService streamService;
     @Mock
     private SearchNormalization searchNormalization;
+    @Mock
+    private AggregationSearchBatcher searchBatcher;
 
     private final PermittedStreams permittedStreams = new PermittedStreams(Stream::of, (categories) -> Stream.of());
 
@@ -531,6 +535,54 @@ public class PivotAggregationSearchTest {
         Mockito.verify(queryEngine, times(1)).execute(isA(SearchJob.class), argThat(Set::isEmpty), eq(DateTimeZone.UTC));
     }
 
+    @Test
+    public void testBatchedSearch() throws Exception {
+        final AbsoluteRange timerange = AbsoluteRange.create(DateTime.now(DateTimeZone.UTC).minusSeconds(3600), DateTime.now(DateTimeZone.UTC));
+        final AggregationEventProcessorConfig config = AggregationEventProcessorConfig.builder()
+                .query(QUERY)
+                .queryParameters(ImmutableSet.of())
+                .streams(Set.of("stream-1"))
+                .groupBy(Collections.emptyList())
+                .series(ImmutableList.of(Count.builder().build()))
+                .conditions(null)
+                .searchWithinMs(WINDOW_LENGTH)
+                .executeEveryMs(WINDOW_LENGTH)
+                .build();
+        final org.graylog2.plugin.streams.Stream stream = mock(org.graylog2.plugin.streams.Stream.class);
+        when(stream.getId()).thenReturn("stream-1");
+        when(streamService.loadByIds(Set.of("stream-1"))).thenReturn(Set.of(stream));
+        when(searchBatcher.isEnabled()).thenReturn(true);
+        when(searchBatcher.search(any(), anySet(), eq(Set.of("stream-1")))).thenAnswer(invocation -> {
+            final Set<SearchType> searchTypes = invocation.getArgument(1);
+            final Map<String, SearchType.Result> results = new HashMap<>();
+            for (SearchType searchType : searchTypes) {
+                assertThat(searchType.streams()).containsExactly("stream-1");
+                assertThat(searchType.query()).hasValueSatisfying(query -> assertThat(query.queryString()).isEqualTo(QUERY));
+                final boolean streamsPivot = searchType.id().startsWith("streams-pivot-");
+                results.put(searchType.id(), PivotResult.builder()
+                        .id(searchType.id())
+                        .effectiveTimerange(timerange)
+                        .total(42)
+                        .addRow(PivotResult.Row.builder()
+                                .key(ImmutableList.of(streamsPivot ? "stream-1" : timerange.getTo().toString()))
+                                .addValue(PivotResult.Value.create(ImmutableList.of("metric/count()"), 42, true, "row-leaf"))
+                                .source("leaf")
+                                .build())
+                        .build());
+            }
+            return Optional.of(QueryResult.builder().query(mock(Query.class)).searchTypes(results).build());
+        });
+
+        final AggregationResult result = createPivotAggregationSearch(config, buildParameters(timerange)).doSearch();
+
+        assertThat(result.totalAggregatedMessages()).isEqualTo(42);
+        assertThat(result.sourceStreams()).containsExactly("stream-1");
+        assertThat(result.keyResults()).singleElement()
+                .satisfies(keyResult -> assertThat(keyResult.seriesValues()).singleElement()
+                        .satisfies(value -> assertThat(value.value()).isEqualTo(42.0)));
+        Mockito.verify(queryEngine, Mockito.never()).execute(any(), anySet(), any());
+    }
+
     private static AggregationEventProcessorParameters buildParameters(AbsoluteRange timerange) {
         return AggregationEventProcessorParameters.builder()
                 .streams(Collections.emptySet())
@@ -584,6 +636,7 @@ public class PivotAggregationSearchTest {
                 queryStringDecorators,
                 streamService,
                 searchNormalization,
+                searchBatcher,
                 false
         );
     }
@@ -16,6 +16,7 @@
  */
 package org.graylog.plugins.map.geoip;
 
+import com.codahale.metrics.Gauge;
 import com.codahale.metrics.MetricFilter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
@@ -36,6 +37,7 @@ import org.junit.jupiter.api.Assertions;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import java.lang.reflect.Field;
 import java.net.InetAddress;
 import java.util.HashMap;
 import java.util.List;
@@ -43,11 +45,15 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
 
+import static com.codahale.metrics.MetricRegistry.name;
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class GeoIpResolverEngineTest {
@@ -98,6 +104,8 @@ public class GeoIpResolverEngineTest {
         when(maxMindAsnResolver.getGeoIpData(publicIp))
                 .thenReturn(Optional.of(maxMindAsnInfo));
         when(maxMindCityResolver.isEnabled()).thenReturn(true);
+        when(maxMindCityResolver.lookup(any(InetAddress.class))).thenCallRealMethod();
+        when(maxMindAsnResolver.lookup(any(InetAddress.class))).thenCallRealMethod();
 
         when(geoIpVendorResolverService.createCityResolver(any(GeoIpResolverConfig.class), any(Timer.class)))
                 .thenReturn(maxMindCityResolver);
@@ -296,6 +304,19 @@ public class GeoIpResolverEngineTest {
         Assertions.assertEquals(ipInfoAsnInfo.asn(), message.getField("source_as_number"));
     }
 
+    @Test
+    public void cacheHitRatioGaugeDoesNotReferenceEngine() {
+        new GeoIpResolverEngine(geoIpVendorResolverService, config, s3GeoIpFileService, metricRegistry, 100);
+        new GeoIpResolverEngine(geoIpVendorResolverService, config, s3GeoIpFileService, metricRegistry, 100);
+
+        // The registry keeps the gauge of the first engine, it must not keep that engine alive.
+        final Gauge<?> gauge = metricRegistry.getGauges().get(name(GeoIpResolverEngine.class, "cacheHitRatio"));
+        assertNotNull(gauge);
+        assertThat(gauge.getClass().getDeclaredFields())
+                .extracting(Field::getType)
+                .doesNotContain(GeoIpResolverEngine.class);
+    }
+
     @Test
     public void testFilterWithReservedIpAddress() {
 
@@ -357,4 +378,60 @@ public class GeoIpResolverEngineTest {
         assertFalse("Message should not be filtered out", filtered);
         assertEquals("Filter should not add new message fields", messageFields.size(), message.getFields().size());
     }
+
+    @Test
+    public void cachesResultsPerAddress() {
+        final GeoIpResolverEngine engine = new GeoIpResolverEngine(geoIpVendorResolverService, config, s3GeoIpFileService, metricRegistry, 100);
+
+        for (int i = 0; i < 3; i++) {
+            final Message message = messageFactory.createMessage(Map.of("_id", java.util.UUID.randomUUID().toString(),
+                    "source_ip", "96.110.152.253"));
+            engine.filter(message);
+
+            assertEquals("Houston", message.getField("source_geo_city"));
+            assertEquals("1000", message.getField("source_as_number"));
+        }
+
+        verify(maxMindCityResolver, times(1)).getGeoIpData(publicIp);
+        verify(maxMindAsnResolver, times(1)).getGeoIpData(publicIp);
+        assertEquals(4, metricRegistry.meter(MetricRegistry.name(GeoIpResolverEngine.class, "cacheHits")).getCount());
+        assertEquals(2, metricRegistry.meter(MetricRegistry.name(GeoIpResolverEngine.class, "cacheMisses")).getCount());
+    }
+
+    @Test
+    public void cachesAddressesNotFound() throws Exception {
+        final InetAddress unknownIp = InetAddress.getByName("2001:4860:4860::8888");
+        when(maxMindCityResolver.getGeoIpData(unknownIp)).thenReturn(Optional.empty());
+
+        final GeoIpResolverEngine engine = new GeoIpResolverEngine(geoIpVendorResolverService, config, s3GeoIpFileService, metricRegistry, 100);
+        for (int i = 0; i < 2; i++) {
+            engine.filter(messageFactory.createMessage(Map.of("_id", java.util.UUID.randomUUID().toString(), "source_ip", unknownIp)));
+        }
+
+        verify(maxMindCityResolver, times(1)).getGeoIpData(unknownIp);
+    }
+
+    @Test
+    public void retriesFailedLookups() throws Exception {
+        final InetAddress failingIp = InetAddress.getByName("8.8.8.8");
+        when(maxMindCityResolver.getGeoIpData(failingIp)).thenReturn(Optional.empty());
+        when(maxMindCityResolver.getLastError()).thenReturn(Optional.of("lookup failed"));
+
+        final GeoIpResolverEngine engine = new GeoIpResolverEngine(geoIpVendorResolverService, config, s3GeoIpFileService, metricRegistry, 100);
+        for (int i = 0; i < 2; i++) {
+            engine.filter(messageFactory.createMessage(Map.of("_id", java.util.UUID.randomUUID().toString(), "source_ip", failingIp)));
+        }
+
+        verify(maxMindCityResolver, times(2)).getGeoIpData(failingIp);
+    }
+
+    @Test
+    public void addressKeyMapsIpv4ToIpv6() {
+        assertEquals(GeoIpResolverEngine.AddressKey.of(InetAddresses.forString("1.2.3.4")),
+                GeoIpResolverEngine.AddressKey.of(InetAddresses.forString("1.2.3.4")));
+        assertEquals(new GeoIpResolverEngine.AddressKey(0L, 0xffff_0102_0304L),
+                GeoIpResolverEngine.AddressKey.of(InetAddresses.forString("1.2.3.4")));
+        Assertions.assertNotEquals(GeoIpResolverEngine.AddressKey.of(InetAddresses.forString("1.2.3.4")),
+                GeoIpResolverEngine.AddressKey.of(InetAddresses.forString("::102:304")));
+    }
 }
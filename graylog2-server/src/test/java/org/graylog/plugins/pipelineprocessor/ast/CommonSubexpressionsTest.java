@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.plugins.pipelineprocessor.ast;
+
+import com.google.common.collect.ImmutableMap;
+import org.graylog.plugins.pipelineprocessor.ast.expressions.AndExpression;
+import org.graylog.plugins.pipelineprocessor.ast.expressions.BooleanValuedFunctionWrapper;
+import org.graylog.plugins.pipelineprocessor.ast.expressions.EqualityExpression;
+import org.graylog.plugins.pipelineprocessor.ast.expressions.Expression;
+import org.graylog.plugins.pipelineprocessor.functions.conversion.StringConversion;
+import org.graylog.plugins.pipelineprocessor.functions.messages.HasField;
+import org.graylog.plugins.pipelineprocessor.functions.strings.Lowercase;
+import org.graylog.plugins.pipelineprocessor.parser.FunctionRegistry;
+import org.graylog.plugins.pipelineprocessor.parser.PipelineRuleParser;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CommonSubexpressionsTest {
+    private final PipelineRuleParser parser = new PipelineRuleParser(new FunctionRegistry(ImmutableMap.of(
+            HasField.NAME, new HasField(),
+            StringConversion.NAME, new StringConversion(),
+            Lowercase.NAME, new Lowercase())));
+
+    @Test
+    public void sharesIdenticalPureExpressionsAcrossRules() {
+        final Rule rule1 = rule("when has_field(\"foo\") && to_string($message.bar) == \"x\"");
+        final Rule rule2 = rule("when has_field(\"foo\") && to_string($message.bar) == \"y\"");
+
+        final CommonSubexpressions subexpressions = CommonSubexpressions.of(List.of(rule1, rule2));
+
+        // has_field("foo"), to_string($message.bar) and $message.bar
+        assertThat(subexpressions.size()).isEqualTo(3);
+
+        final Expression hasField1 = ((BooleanValuedFunctionWrapper) ((AndExpression) rule1.when()).left()).expression();
+        final Expression hasField2 = ((BooleanValuedFunctionWrapper) ((AndExpression) rule2.when()).left()).expression();
+        assertThat(subexpressions.slot(hasField1)).isNotNegative().isEqualTo(subexpressions.slot(hasField2));
+
+        final Expression toString1 = ((EqualityExpression) ((AndExpression) rule1.when()).right()).left();
+        final Expression toString2 = ((EqualityExpression) ((AndExpression) rule2.when()).right()).left();
+        assertThat(subexpressions.slot(toString1)).isNotNegative()
+                .isEqualTo(subexpressions.slot(toString2))
+                .isNotEqualTo(subexpressions.slot(hasField1));
+
+        // The compared constants are not cached
+        assertThat(subexpressions.slot(((EqualityExpression) ((AndExpression) rule1.when()).right()).right())).isEqualTo(-1);
+    }
+
+    @Test
+    public void ignoresExpressionsThatOccurOnce() {
+        final CommonSubexpressions subexpressions = CommonSubexpressions.of(List.of(
+                rule("when has_field(\"foo\")"),
+                rule("when has_field(\"bar\")")));
+
+        assertThat(subexpressions).isSameAs(CommonSubexpressions.NONE);
+        assertThat(subexpressions.isEmpty()).isTrue();
+    }
+
+    @Test
+    public void ignoresFunctionsWhichAreNotPure() {
+        final CommonSubexpressions subexpressions = CommonSubexpressions.of(List.of(
+                rule("when lowercase(\"A\") == \"a\""),
+                rule("when lowercase(\"A\") == \"b\"")));
+
+        assertThat(subexpressions.isEmpty()).isTrue();
+    }
+
+    @Test
+    public void keysDistinguishArgumentTypes() {
+        assertThat(CommonSubexpressions.key(((EqualityExpression) rule("when to_string(1) == \"\"").when()).left()))
+                .isNotEqualTo(CommonSubexpressions.key(((EqualityExpression) rule("when to_string(\"1\") == \"\"").when()).left()));
+    }
+
+    private Rule rule(String condition) {
+        return parser.parseRule("rule \"test\"\n" + condition + "\nthen\nend", false);
+    }
+}
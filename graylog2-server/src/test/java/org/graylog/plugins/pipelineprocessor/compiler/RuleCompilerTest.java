@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.plugins.pipelineprocessor.compiler;
+
+import com.google.common.collect.ImmutableMap;
+import org.graylog.plugins.pipelineprocessor.EvaluationContext;
+import org.graylog.plugins.pipelineprocessor.ast.expressions.LogicalExpression;
+import org.graylog.plugins.pipelineprocessor.functions.conversion.DoubleConversion;
+import org.graylog.plugins.pipelineprocessor.functions.conversion.LongConversion;
+import org.graylog.plugins.pipelineprocessor.functions.conversion.StringConversion;
+import org.graylog.plugins.pipelineprocessor.functions.messages.HasField;
+import org.graylog.plugins.pipelineprocessor.parser.FunctionRegistry;
+import org.graylog.plugins.pipelineprocessor.parser.PipelineRuleParser;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.TestMessageFactory;
+import org.graylog2.plugin.Tools;
+import org.junit.Test;
+
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RuleCompilerTest {
+    private final PipelineRuleParser parser = new PipelineRuleParser(new FunctionRegistry(ImmutableMap.of(
+            HasField.NAME, new HasField(),
+            StringConversion.NAME, new StringConversion(),
+            LongConversion.NAME, new LongConversion(),
+            DoubleConversion.NAME, new DoubleConversion())));
+
+    private final Message message = new TestMessageFactory().createMessage("test", "source", Tools.nowUTC());
+
+    {
+        message.addField("str", "foo");
+        message.addField("num", 42L);
+        message.addField("dbl", 1.5d);
+    }
+
+    @Test
+    public void compiledComparisonsMatchInterpreter() {
+        assertSameResult("to_long($message.num) > 40");
+        assertSameResult("to_long($message.num) <= 41");
+        assertSameResult("to_long($message.num) >= 42");
+        assertSameResult("to_double($message.dbl) < 2.0");
+        assertSameResult("to_double($message.num) > 41.5");
+        assertSameResult("to_long($message.num) < to_long($message.num) + 1");
+    }
+
+    @Test
+    public void compiledEqualityChecksMatchInterpreter() {
+        assertSameResult("$message.str == \"foo\"");
+        assertSameResult("$message.str != \"foo\"");
+        assertSameResult("to_string($message.num) == \"42\"");
+        assertSameResult("$message.num == 42");
+        assertSameResult("$message.num == \"42\"");
+        assertSameResult("$message.str == $message.str");
+        // A null left side never matches, not even for inequality
+        assertSameResult("$message.missing == \"foo\"");
+        assertSameResult("$message.missing != \"foo\"");
+    }
+
+    @Test
+    public void compiledLogicalOperatorsMatchInterpreter() {
+        assertSameResult("has_field(\"str\") && to_long($message.num) > 40");
+        assertSameResult("has_field(\"missing\") || $message.str == \"foo\"");
+        assertSameResult("!has_field(\"str\") || to_long($message.num) > 100");
+        assertSameResult("not has_field(\"missing\") and to_long($message.num) > 10 * 4");
+        assertSameResult("true && false");
+    }
+
+    @Test
+    public void foldsConstantConditions() {
+        // Folded conditions don't need a context
+        assertThat(compile("1 + 1 == 2 && \"a\" != \"b\"").evaluate(null)).isTrue();
+        assertThat(compile("2 * 3 < 5 || false").evaluate(null)).isFalse();
+    }
+
+    private void assertSameResult(String condition) {
+        final LogicalExpression when = when(condition);
+        final CompiledCondition compiled = RuleCompiler.compileCondition(when);
+
+        final Object interpreted = evaluate(() -> when.evaluateBool(new EvaluationContext(message)));
+        assertThat(evaluate(() -> compiled.evaluate(new EvaluationContext(message))))
+                .as(condition)
+                .isEqualTo(interpreted);
+    }
+
+    private static Object evaluate(BooleanSupplier condition) {
+        try {
+            return condition.getAsBoolean();
+        } catch (Exception e) {
+            return e.getClass();
+        }
+    }
+
+    private CompiledCondition compile(String condition) {
+        return RuleCompiler.compileCondition(when(condition));
+    }
+
+    private LogicalExpression when(String condition) {
+        return parser.parseRule("rule \"test\"\nwhen " + condition + "\nthen\nend", false).when();
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.plugins.pipelineprocessor.functions;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.jayway.jsonpath.InvalidPathException;
+import org.junit.Test;
+
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class FunctionPatternCacheTest {
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+    private final FunctionPatternCache cache = new FunctionPatternCache(metricRegistry);
+
+    @Test
+    public void reusesCompiledRegexForSamePatternAndFlags() {
+        final Pattern pattern = cache.regex("^foo.*$");
+
+        assertThat(cache.regex("^foo.*$")).isSameAs(pattern);
+        assertThat(cache.regex("^foo.*$", Pattern.CASE_INSENSITIVE))
+                .isNotSameAs(pattern)
+                .satisfies(p -> assertThat(p.flags()).isEqualTo(Pattern.CASE_INSENSITIVE));
+        assertThat(metricRegistry.getGauges()).containsKey(MetricRegistry.name(FunctionPatternCache.class, "regex", "hits"));
+        assertThat(((Gauge<?>) metricRegistry.getGauges().get(MetricRegistry.name(FunctionPatternCache.class, "regex", "hits"))).getValue())
+                .isEqualTo(1L);
+    }
+
+    @Test
+    public void reusesCompiledJsonPath() {
+        assertThat(cache.jsonPath("$.store.book[0].title")).isSameAs(cache.jsonPath("$.store.book[0].title"));
+    }
+
+    @Test
+    public void throwsOriginalCompilationErrors() {
+        assertThatThrownBy(() -> cache.regex("(unclosed")).isInstanceOf(PatternSyntaxException.class);
+        assertThatThrownBy(() -> cache.jsonPath("$.[")).isInstanceOf(InvalidPathException.class);
+    }
+
+    @Test
+    public void isBoundedInSize() {
+        for (int i = 0; i < FunctionPatternCache.MAXIMUM_SIZE * 2; i++) {
+            cache.regex("pattern-" + i);
+        }
+
+        assertThat(cache.size()).isLessThanOrEqualTo(FunctionPatternCache.MAXIMUM_SIZE);
+    }
+}
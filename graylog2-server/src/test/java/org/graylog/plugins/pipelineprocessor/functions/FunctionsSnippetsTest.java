@@ -30,6 +30,7 @@ import org.graylog.plugins.pipelineprocessor.BaseParserTest;
 import org.graylog.plugins.pipelineprocessor.EvaluationContext;
 import org.graylog.plugins.pipelineprocessor.ast.Rule;
 import org.graylog.plugins.pipelineprocessor.ast.functions.Function;
+import org.graylog.plugins.pipelineprocessor.functions.FunctionPatternCache;
 import org.graylog.plugins.pipelineprocessor.functions.arrays.ArrayContains;
 import org.graylog.plugins.pipelineprocessor.functions.arrays.ArrayRemove;
 import org.graylog.plugins.pipelineprocessor.functions.arrays.StringArrayAdd;
@@ -184,6 +185,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -191,6 +193,7 @@ import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -199,6 +202,7 @@ import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
@@ -227,6 +231,7 @@ public class FunctionsSnippetsTest extends BaseParserTest {
     @SuppressForbidden("Allow using default thread factory")
     public static void registerFunctions() {
         final Map<String, Function<?>> functions = commonFunctions();
+        final FunctionPatternCache patternCache = new FunctionPatternCache(metricRegistry);
 
         functions.put(BooleanConversion.NAME, new BooleanConversion());
         functions.put(DoubleConversion.NAME, new DoubleConversion());
@@ -239,9 +244,9 @@ public class FunctionsSnippetsTest extends BaseParserTest {
         functions.put(SetField.NAME, new SetField());
         functions.put(SetFields.NAME, new SetFields());
         functions.put(RenameField.NAME, new RenameField());
-        functions.put(RemoveField.NAME, new RemoveField());
+        functions.put(RemoveField.NAME, new RemoveField(patternCache));
         functions.put(RemoveSingleField.NAME, new RemoveSingleField());
-        functions.put(RemoveMultipleFields.NAME, new RemoveMultipleFields());
+        functions.put(RemoveMultipleFields.NAME, new RemoveMultipleFields(patternCache));
         functions.put(NormalizeFields.NAME, new NormalizeFields());
 
         functions.put(DropMessage.NAME, new DropMessage());
@@ -277,8 +282,8 @@ public class FunctionsSnippetsTest extends BaseParserTest {
         //functions.put(FromInput.NAME, new FromInput());
 
         // generic functions
-        functions.put(RegexMatch.NAME, new RegexMatch());
-        functions.put(RegexReplace.NAME, new RegexReplace());
+        functions.put(RegexMatch.NAME, new RegexMatch(patternCache));
+        functions.put(RegexReplace.NAME, new RegexReplace(patternCache));
 
         // string functions
         functions.put(Abbreviate.NAME, new Abbreviate());
@@ -293,7 +298,7 @@ public class FunctionsSnippetsTest extends BaseParserTest {
         functions.put(Uppercase.NAME, new Uppercase());
         functions.put(KeyValue.NAME, new KeyValue());
         functions.put(Join.NAME, new Join());
-        functions.put(Split.NAME, new Split());
+        functions.put(Split.NAME, new Split(patternCache));
         functions.put(StartsWith.NAME, new StartsWith());
         functions.put(Replace.NAME, new Replace());
         functions.put(Length.NAME, new Length());
@@ -303,7 +308,7 @@ public class FunctionsSnippetsTest extends BaseParserTest {
         final ObjectMapper objectMapper = new ObjectMapperProvider().get();
         functions.put(JsonParse.NAME, new JsonParse(objectMapper));
         functions.put(JsonFlatten.NAME, new JsonFlatten(objectMapper));
-        functions.put(SelectJsonPath.NAME, new SelectJsonPath(objectMapper));
+        functions.put(SelectJsonPath.NAME, new SelectJsonPath(objectMapper, patternCache));
 
         functions.put(DateConversion.NAME, new DateConversion());
         functions.put(Now.NAME, new Now());
@@ -1455,9 +1460,13 @@ public class FunctionsSnippetsTest extends BaseParserTest {
 
     @Test
     void lookupAll() throws IOException {
-        doReturn(LookupResult.single("val1")).when(lookupTable).lookup("one");
-        doReturn(LookupResult.single("val2")).when(lookupTable).lookup("two");
-        doReturn(LookupResult.single("val3")).when(lookupTable).lookup("three");
+        final Map<String, LookupResult> values = Map.of(
+                "one", LookupResult.single("val1"),
+                "two", LookupResult.single("val2"),
+                "three", LookupResult.single("val3"));
+        doAnswer(invocation -> invocation.<Collection<?>>getArgument(0).stream()
+                .collect(Collectors.toMap(key -> key, values::get)))
+                .when(lookupTable).lookupAll(any());
 
         final Rule rule = parser.parseRule(ruleForTest(), false);
         final Message message = messageFactory.createMessage("message", "source", DateTime.now(DateTimeZone.UTC));
@@ -1469,9 +1478,8 @@ public class FunctionsSnippetsTest extends BaseParserTest {
             assertThat(actionsTriggered.get()).isTrue();
         }
 
-        verify(lookupTable, times(3)).lookup("one");
-        verify(lookupTable, times(2)).lookup("two");
-        verify(lookupTable, times(2)).lookup("three");
+        verify(lookupTable, times(2)).lookupAll(List.of("one", "two", "three"));
+        verify(lookupTable).lookupAll(List.of("one"));
 
         verifyNoMoreInteractions(lookupTable);
 
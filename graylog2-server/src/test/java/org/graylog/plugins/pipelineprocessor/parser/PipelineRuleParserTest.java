@@ -16,6 +16,7 @@
  */
 package org.graylog.plugins.pipelineprocessor.parser;
 
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
@@ -30,6 +31,7 @@ import org.graylog.plugins.pipelineprocessor.ast.functions.Function;
 import org.graylog.plugins.pipelineprocessor.ast.functions.FunctionArgs;
 import org.graylog.plugins.pipelineprocessor.ast.functions.FunctionDescriptor;
 import org.graylog.plugins.pipelineprocessor.ast.functions.ParameterDescriptor;
+import org.graylog.plugins.pipelineprocessor.functions.FunctionPatternCache;
 import org.graylog.plugins.pipelineprocessor.functions.conversion.LongConversion;
 import org.graylog.plugins.pipelineprocessor.functions.conversion.StringConversion;
 import org.graylog.plugins.pipelineprocessor.functions.dates.Now;
@@ -105,7 +107,7 @@ class PipelineRuleParserTest extends BaseParserTest {
         functions.put(StringConversion.NAME, new StringConversion());
         functions.put(SetField.NAME, new SetField());
         functions.put(HasField.NAME, new HasField());
-        functions.put(RegexMatch.NAME, new RegexMatch());
+        functions.put(RegexMatch.NAME, new RegexMatch(new FunctionPatternCache(new MetricRegistry())));
         functions.put("now_in_tz", new NowInTimezoneFunction());
 
         functions.put(Now.NAME, new Now());
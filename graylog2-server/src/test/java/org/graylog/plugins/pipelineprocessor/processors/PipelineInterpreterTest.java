@@ -396,6 +396,58 @@ public class PipelineInterpreterTest {
         assertThat(actualMessage.getField("2-b")).isNull();
     }
 
+    @Test
+    public void identicalConditionExpressionsAreEvaluatedOncePerStage() {
+        final RuleService ruleService = mock(MongoDbRuleService.class);
+        when(ruleService.loadAll()).thenReturn(ImmutableList.of(
+                RuleDao.create("has-foo-1", "has-foo-1", "has-foo-1",
+                        "rule \"has-foo-1\"\n" +
+                                "when has_field(\"foo\")\n" +
+                                "then\n" +
+                                "  set_field(\"matched-1\", \"value\");\n" +
+                                "end", null, null, null, null),
+                RuleDao.create("has-foo-2", "has-foo-2", "has-foo-2",
+                        "rule \"has-foo-2\"\n" +
+                                "when has_field(\"foo\") && to_string($message.message) != \"\"\n" +
+                                "then\n" +
+                                "  set_field(\"matched-2\", \"value\");\n" +
+                                "end", null, null, null, null),
+                RULE_SET_FIELD.apply("foo")
+        ));
+
+        final PipelineService pipelineService = mock(MongoDbPipelineService.class);
+        when(pipelineService.loadAll()).thenReturn(Collections.singleton(
+                PipelineDao.create("p1", null, "title", "description",
+                        "pipeline \"pipeline\"\n" +
+                                "stage 0 match pass\n" +
+                                "    rule \"has-foo-1\";\n" +
+                                "    rule \"has-foo-2\";\n" +
+                                "    rule \"foo\";\n" +
+                                "stage 1 match pass\n" +
+                                "    rule \"has-foo-1\";\n" +
+                                "    rule \"has-foo-2\";\n" +
+                                "end\n",
+                        Tools.nowUTC(),
+                        null)
+        ));
+
+        final HasField hasField = Mockito.spy(new HasField());
+        final Map<String, Function<?>> functions = ImmutableMap.of(
+                SetField.NAME, new SetField(),
+                HasField.NAME, hasField,
+                StringConversion.NAME, new StringConversion());
+        final PipelineInterpreter interpreter = createPipelineInterpreter(ruleService, pipelineService, functions);
+
+        final Messages processed = interpreter.process(messageInDefaultStream("message", "test"));
+
+        final Message message = Iterables.getOnlyElement(processed);
+        // The field set by the first stage is visible to the conditions of the second stage
+        assertThat(message.getField("matched-1")).isEqualTo("value");
+        assertThat(message.getField("matched-2")).isEqualTo("value");
+        // has_field("foo") is shared by the conditions of both rules, so it's called once per stage
+        Mockito.verify(hasField, Mockito.times(2)).evaluate(Mockito.any(), Mockito.any());
+    }
+
     @SuppressForbidden("Allow using default thread factory")
     private PipelineInterpreter createPipelineInterpreter(RuleService ruleService, PipelineService pipelineService, Map<String, Function<?>> functions) {
         final RuleMetricsConfigService ruleMetricsConfigService = mock(RuleMetricsConfigService.class);
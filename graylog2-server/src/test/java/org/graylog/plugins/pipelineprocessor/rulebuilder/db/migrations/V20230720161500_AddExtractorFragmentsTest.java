@@ -16,8 +16,10 @@
  */
 package org.graylog.plugins.pipelineprocessor.rulebuilder.db.migrations;
 
+import com.codahale.metrics.MetricRegistry;
 import org.graylog.plugins.pipelineprocessor.ast.Rule;
 import org.graylog.plugins.pipelineprocessor.ast.functions.Function;
+import org.graylog.plugins.pipelineprocessor.functions.FunctionPatternCache;
 import org.graylog.plugins.pipelineprocessor.functions.conversion.StringConversion;
 import org.graylog.plugins.pipelineprocessor.functions.lookup.LookupValue;
 import org.graylog.plugins.pipelineprocessor.functions.messages.GetField;
@@ -57,12 +59,13 @@ class V20230720161500_AddExtractorFragmentsTest extends BaseFragmentTest {
     @BeforeAll
     public static void initialize() {
         final Map<String, Function<?>> functions = commonFunctions();
+        final FunctionPatternCache patternCache = new FunctionPatternCache(new MetricRegistry());
         functions.put(GetField.NAME, new GetField());
         functions.put(SetField.NAME, new SetField());
         functions.put(StringConversion.NAME, new StringConversion());
-        functions.put(RegexMatch.NAME, new RegexMatch());
-        functions.put(RegexReplace.NAME, new RegexReplace());
-        functions.put(Split.NAME, new Split());
+        functions.put(RegexMatch.NAME, new RegexMatch(patternCache));
+        functions.put(RegexReplace.NAME, new RegexReplace(patternCache));
+        functions.put(Split.NAME, new Split(patternCache));
 
         lookupTable = mock(LookupTable.class);
         when(lookupTable.lookup("ExistingKey")).thenReturn(LookupResult.builder()
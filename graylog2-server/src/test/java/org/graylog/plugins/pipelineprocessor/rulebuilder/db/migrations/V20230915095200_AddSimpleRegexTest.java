@@ -16,7 +16,9 @@
  */
 package org.graylog.plugins.pipelineprocessor.rulebuilder.db.migrations;
 
+import com.codahale.metrics.MetricRegistry;
 import org.graylog.plugins.pipelineprocessor.ast.functions.Function;
+import org.graylog.plugins.pipelineprocessor.functions.FunctionPatternCache;
 import org.graylog.plugins.pipelineprocessor.functions.strings.RegexMatch;
 import org.graylog.plugins.pipelineprocessor.parser.FunctionRegistry;
 import org.graylog.plugins.pipelineprocessor.rulebuilder.db.RuleFragment;
@@ -31,7 +33,8 @@ class V20230915095200_AddSimpleRegexTest extends BaseFragmentTest {
     @BeforeAll
     public static void initialize() {
         final Map<String, Function<?>> functions = commonFunctions();
-        functions.put(RegexMatch.NAME, new RegexMatch());
+        final FunctionPatternCache patternCache = new FunctionPatternCache(new MetricRegistry());
+        functions.put(RegexMatch.NAME, new RegexMatch(patternCache));
         functionRegistry = new FunctionRegistry(functions);
     }
 
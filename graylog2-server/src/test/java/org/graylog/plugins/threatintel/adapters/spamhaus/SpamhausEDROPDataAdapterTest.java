@@ -166,6 +166,23 @@ public class SpamhausEDROPDataAdapterTest {
         assertLookupResultHasMultiValue(edropLookupResult2, entry("sbl_id", "SBL2342"), entry("subnet", "10.1.0.0/16"));
     }
 
+    @Test
+    public void lookupReturnsMostSpecificSubnetAndPrefersEarlierLists() throws Exception {
+        when(httpFileRetriever.fetchFileIfNotModified("https://www.spamhaus.org/drop/drop.txt"))
+                .thenReturn(Optional.of("10.0.0.0/8 ; SBL1\n10.1.0.0/16 ; SBL2\n"));
+        when(httpFileRetriever.fetchFileIfNotModified("https://www.spamhaus.org/drop/edrop.txt"))
+                .thenReturn(Optional.of("10.1.2.0/24 ; SBL3\n172.16.0.0/12 ; SBL4\n"));
+
+        adapter.doStart();
+
+        assertLookupResultHasMultiValue(adapter.doGet("10.2.0.1"), entry("sbl_id", "SBL1"), entry("subnet", "10.0.0.0/8"));
+        assertLookupResultHasMultiValue(adapter.doGet("10.1.0.0"), entry("sbl_id", "SBL2"), entry("subnet", "10.1.0.0/16"));
+        assertLookupResultHasMultiValue(adapter.doGet("10.1.2.3"), entry("sbl_id", "SBL2"), entry("subnet", "10.1.0.0/16"));
+        assertLookupResultHasMultiValue(adapter.doGet("172.31.255.255"), entry("sbl_id", "SBL4"), entry("subnet", "172.16.0.0/12"));
+        assertNegativeLookupResult(adapter.doGet("192.168.0.1"));
+        assertThat(adapter.doGet("2001:db8::1").isEmpty()).isTrue();
+    }
+
     @Test
     public void verifyEmptyResultWithNullKey() throws Exception {
         when(httpFileRetriever.fetchFileIfNotModified("https://www.spamhaus.org/drop/drop.txt")).thenReturn(Optional.of(dropSnapshot));
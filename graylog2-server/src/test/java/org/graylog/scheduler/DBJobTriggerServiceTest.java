@@ -550,6 +550,73 @@ public class DBJobTriggerServiceTest {
         assertThat(dbJobTriggerService.nextRunnableTrigger()).isEmpty();
     }
 
+    @Test
+    public void nextRunnableTriggers() {
+        // No triggers yet
+        assertThat(dbJobTriggerService.nextRunnableTriggers(10)).isEmpty();
+
+        final JobTriggerDto trigger1 = createIntervalTrigger(clock.nowUTC().plusSeconds(11));
+        final JobTriggerDto trigger2 = createIntervalTrigger(clock.nowUTC().plusSeconds(10));
+        final JobTriggerDto trigger3 = createIntervalTrigger(clock.nowUTC().plusSeconds(12));
+        final JobTriggerDto trigger4 = createIntervalTrigger(clock.nowUTC().plusSeconds(30));
+
+        // Nothing is runnable yet because the next times are in the future
+        assertThat(dbJobTriggerService.nextRunnableTriggers(10)).isEmpty();
+
+        clock.plus(20, TimeUnit.SECONDS);
+
+        // Triggers are locked oldest next time first, up to the limit
+        final List<JobTriggerDto> firstBatch = dbJobTriggerService.nextRunnableTriggers(2);
+        assertThat(firstBatch).hasSize(2);
+        assertNextTrigger(Optional.of(firstBatch.get(0)), trigger2);
+        assertNextTrigger(Optional.of(firstBatch.get(1)), trigger1);
+
+        // Locked triggers are not returned again
+        final List<JobTriggerDto> secondBatch = dbJobTriggerService.nextRunnableTriggers(10);
+        assertThat(secondBatch).hasSize(1);
+        assertNextTrigger(Optional.of(secondBatch.get(0)), trigger3);
+
+        assertThat(dbJobTriggerService.nextRunnableTriggers(10)).isEmpty();
+        assertThat(dbJobTriggerService.nextRunnableTrigger()).isEmpty();
+
+        clock.plus(20, TimeUnit.SECONDS);
+
+        assertThat(dbJobTriggerService.nextRunnableTriggers(0)).isEmpty();
+        assertThat(dbJobTriggerService.nextRunnableTriggers(10))
+                .singleElement()
+                .satisfies(trigger -> assertNextTrigger(Optional.of(trigger), trigger4));
+    }
+
+    @Test
+    public void nextRunnableTriggersDoesNotLockTriggersOfOtherNodes() {
+        final JobTriggerDto trigger1 = createIntervalTrigger(clock.nowUTC().plusSeconds(10));
+        final JobTriggerDto trigger2 = createIntervalTrigger(clock.nowUTC().plusSeconds(11));
+
+        clock.plus(20, TimeUnit.SECONDS);
+
+        // Another node locks the first trigger
+        final DBJobTriggerService otherNodeService = new DBJobTriggerService(mongoCollections, new SimpleNodeId("other-node"),
+                clock, schedulerCapabilitiesService, EXPIRATION_DURATION);
+        assertThat(otherNodeService.nextRunnableTrigger()).get()
+                .satisfies(trigger -> assertThat(trigger.id()).isEqualTo(trigger1.id()));
+
+        assertThat(dbJobTriggerService.nextRunnableTriggers(10))
+                .singleElement()
+                .satisfies(trigger -> assertNextTrigger(Optional.of(trigger), trigger2));
+    }
+
+    private JobTriggerDto createIntervalTrigger(DateTime nextTime) {
+        return dbJobTriggerService.create(JobTriggerDto.Builder.create(clock)
+                .jobDefinitionId("abc-123")
+                .jobDefinitionType("event-processor-execution-v1")
+                .nextTime(nextTime)
+                .schedule(IntervalJobSchedule.builder()
+                        .interval(1)
+                        .unit(TimeUnit.SECONDS)
+                        .build())
+                .build());
+    }
+
     @Test
     @MongoDBFixtures("job-triggers.json")
     public void nextRunnableTriggerWithEndTime() {
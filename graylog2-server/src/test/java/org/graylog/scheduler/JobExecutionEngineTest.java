@@ -26,9 +26,15 @@ import org.mockito.Mock;
 import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.util.List;
 import java.util.Map;
 
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
@@ -67,4 +73,35 @@ class JobExecutionEngineTest {
 
         verify(jobTriggerService, times(1)).updateLockedJobTriggers();
     }
+
+    @Test
+    void executeLocksTriggersForAllFreeSlots() {
+        JobExecutionEngine underTest = new JobExecutionEngine(jobTriggerService, jobDefinitionService, eventBus, scheduleStrategies, jobTriggerUpdatesFactory,
+                refreshingLockServiceFactory, jobFactory, workerPool, jobSchedulerConfig, metricRegistry);
+        final JobTriggerDto trigger1 = mock(JobTriggerDto.class);
+        final JobTriggerDto trigger2 = mock(JobTriggerDto.class);
+        given(workerPool.freeSlots()).willReturn(3);
+        given(jobTriggerService.nextRunnableTriggers(3)).willReturn(List.of(trigger1, trigger2));
+        // The second trigger doesn't get a slot anymore
+        given(workerPool.execute(any())).willReturn(true, false);
+
+        assertThat(underTest.execute()).isTrue();
+
+        verify(workerPool, times(2)).execute(any());
+        verify(jobTriggerService, never()).releaseTrigger(trigger1, JobTriggerUpdate.withNextTime(trigger1.nextTime()));
+        verify(jobTriggerService, times(1)).releaseTrigger(trigger2, JobTriggerUpdate.withNextTime(trigger2.nextTime()));
+        assertThat(metricRegistry.histogram(MetricRegistry.name(JobExecutionEngine.class, "triggers", "claim", "batch-size"))
+                .getSnapshot().getValues()).containsExactly(2);
+    }
+
+    @Test
+    void executeDoesNotLockTriggersWithoutFreeSlots() {
+        JobExecutionEngine underTest = new JobExecutionEngine(jobTriggerService, jobDefinitionService, eventBus, scheduleStrategies, jobTriggerUpdatesFactory,
+                refreshingLockServiceFactory, jobFactory, workerPool, jobSchedulerConfig, metricRegistry);
+        given(workerPool.freeSlots()).willReturn(0);
+
+        assertThat(underTest.execute()).isFalse();
+
+        verify(jobTriggerService, never()).nextRunnableTriggers(anyInt());
+    }
 }
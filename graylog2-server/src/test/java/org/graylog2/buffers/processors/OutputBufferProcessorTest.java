@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.buffers.processors;
+
+import com.codahale.metrics.MetricRegistry;
+import org.graylog2.Configuration;
+import org.graylog2.outputs.OutputRouter;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.MessageFactory;
+import org.graylog2.plugin.ServerStatus;
+import org.graylog2.plugin.TestMessageFactory;
+import org.graylog2.plugin.Tools;
+import org.graylog2.plugin.buffers.MessageEvent;
+import org.graylog2.plugin.outputs.MessageOutput;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+public class OutputBufferProcessorTest {
+    @Rule
+    public final MockitoRule mockitoRule = MockitoJUnit.rule();
+
+    @Mock
+    private ServerStatus serverStatus;
+    @Mock
+    private OutputRouter outputRouter;
+    @Mock
+    private MessageOutput defaultOutput;
+    @Mock
+    private MessageOutput streamOutput1;
+    @Mock
+    private MessageOutput streamOutput2;
+
+    private final MessageFactory messageFactory = new TestMessageFactory();
+    private OutputBufferProcessor processor;
+
+    @Before
+    public void setUp() {
+        final Configuration configuration = new Configuration() {
+            @Override
+            public long getOutputModuleTimeout() {
+                return 200L;
+            }
+        };
+        when(serverStatus.getDetailedMessageRecordingStrategy()).thenReturn(ServerStatus.MessageDetailRecordingStrategy.NEVER);
+        when(defaultOutput.isRunning()).thenReturn(true);
+        when(streamOutput1.isRunning()).thenReturn(true);
+        when(streamOutput2.isRunning()).thenReturn(true);
+        processor = new OutputBufferProcessor(configuration, new MetricRegistry(), serverStatus, outputRouter, defaultOutput, 0);
+    }
+
+    @Test
+    public void onEventsWritesEachOutputOnce() throws Exception {
+        final Message message1 = message("message1");
+        final Message message2 = message("message2");
+        final Message message3 = message("message3");
+        when(outputRouter.getStreamOutputsForMessage(message1)).thenReturn(Set.of(streamOutput1));
+        when(outputRouter.getStreamOutputsForMessage(message2)).thenReturn(Set.of(streamOutput1, streamOutput2));
+        when(outputRouter.getStreamOutputsForMessage(message3)).thenReturn(Set.of());
+        final List<MessageEvent> events = List.of(event(message1), event(message2), event(null), event(message3));
+
+        processor.onEvents(events);
+
+        verify(defaultOutput).write(List.of(message1, message2, message3));
+        verify(streamOutput1).write(List.of(message1, message2));
+        verify(streamOutput2).write(List.of(message2));
+        verify(defaultOutput, never()).write(any(Message.class));
+        verify(streamOutput1, never()).write(any(Message.class));
+        verify(streamOutput2, never()).write(any(Message.class));
+        assertThat(events).allSatisfy(event -> assertThat(event.getMessage()).isNull());
+    }
+
+    @Test
+    public void onEventsSkipsStoppedOutputs() throws Exception {
+        final Message message = message("message");
+        when(streamOutput1.isRunning()).thenReturn(false);
+        when(outputRouter.getStreamOutputsForMessage(message)).thenReturn(Set.of(streamOutput1));
+
+        processor.onEvents(List.of(event(message)));
+
+        verify(defaultOutput).write(List.of(message));
+        verify(streamOutput1, never()).write(anyList());
+    }
+
+    @Test
+    public void onEventsDoesNotWaitForSlowStreamOutputs() throws Exception {
+        final Message message = message("message");
+        final CountDownLatch release = new CountDownLatch(1);
+        when(outputRouter.getStreamOutputsForMessage(message)).thenReturn(Set.of(streamOutput1));
+        doAnswer(invocation -> release.await(10, TimeUnit.SECONDS)).when(streamOutput1).write(anyList());
+
+        final long start = System.nanoTime();
+        processor.onEvents(List.of(event(message)));
+        final long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        release.countDown();
+
+        verify(defaultOutput).write(List.of(message));
+        assertThat(elapsedMillis).isLessThan(5_000L);
+    }
+
+    @Test
+    public void onEventsIgnoresBatchesWithoutMessages() throws Exception {
+        processor.onEvents(List.of(event(null)));
+
+        verifyNoInteractions(defaultOutput);
+    }
+
+    private Message message(String text) {
+        return messageFactory.createMessage(text, "source", Tools.nowUTC());
+    }
+
+    private static MessageEvent event(Message message) {
+        final MessageEvent event = new MessageEvent();
+        event.setMessage(message);
+        return event;
+    }
+}
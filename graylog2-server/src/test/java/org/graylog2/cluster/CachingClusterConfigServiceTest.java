@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.cluster;
+
+import com.codahale.metrics.MetricRegistry;
+import com.github.joschi.jadconfig.util.Duration;
+import com.google.common.eventbus.EventBus;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CachingClusterConfigServiceTest {
+    @Rule
+    public final MockitoRule mockitoRule = MockitoJUnit.rule();
+
+    @Mock
+    private ClusterConfigServiceImpl delegate;
+
+    private final EventBus serverEventBus = new EventBus();
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+    private CachingClusterConfigService clusterConfigService;
+
+    @Before
+    public void setUp() {
+        clusterConfigService = new CachingClusterConfigService(delegate, serverEventBus, metricRegistry, Duration.minutes(5));
+    }
+
+    @Test
+    public void getCachesResults() {
+        final CustomConfig config = new CustomConfig();
+        when(delegate.get(CustomConfig.class.getCanonicalName(), CustomConfig.class)).thenReturn(config);
+
+        assertThat(clusterConfigService.get(CustomConfig.class)).isSameAs(config);
+        assertThat(clusterConfigService.get(CustomConfig.class)).isSameAs(config);
+
+        verify(delegate, times(1)).get(CustomConfig.class.getCanonicalName(), CustomConfig.class);
+        assertThat(metricRegistry.meter("org.graylog2.plugin.cluster.ClusterConfigService.cache.hits").getCount()).isEqualTo(1);
+        assertThat(metricRegistry.meter("org.graylog2.plugin.cluster.ClusterConfigService.cache.misses").getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void getCachesMissingConfig() {
+        assertThat(clusterConfigService.get(CustomConfig.class)).isNull();
+        assertThat(clusterConfigService.get(CustomConfig.class)).isNull();
+
+        verify(delegate, times(1)).get(CustomConfig.class.getCanonicalName(), CustomConfig.class);
+    }
+
+    @Test
+    public void writeInvalidatesCache() {
+        final CustomConfig config = new CustomConfig();
+        clusterConfigService.get(CustomConfig.class);
+        clusterConfigService.write(config);
+        clusterConfigService.get(CustomConfig.class);
+
+        verify(delegate).write(CustomConfig.class.getCanonicalName(), config);
+        verify(delegate, times(2)).get(CustomConfig.class.getCanonicalName(), CustomConfig.class);
+    }
+
+    @Test
+    public void removeInvalidatesCache() {
+        clusterConfigService.get(CustomConfig.class);
+        clusterConfigService.remove(CustomConfig.class);
+        clusterConfigService.get(CustomConfig.class);
+
+        verify(delegate, times(2)).get(CustomConfig.class.getCanonicalName(), CustomConfig.class);
+    }
+
+    @Test
+    public void writeDuringLoadInvalidatesLoadedConfig() throws Exception {
+        final CustomConfig staleConfig = new CustomConfig();
+        final CustomConfig newConfig = new CustomConfig();
+        final CountDownLatch loading = new CountDownLatch(1);
+        final CountDownLatch written = new CountDownLatch(1);
+        when(delegate.get(CustomConfig.class.getCanonicalName(), CustomConfig.class))
+                .thenAnswer(invocation -> {
+                    loading.countDown();
+                    assertThat(written.await(5, TimeUnit.SECONDS)).isTrue();
+                    return staleConfig;
+                })
+                .thenReturn(newConfig);
+        doAnswer(invocation -> {
+            written.countDown();
+            return null;
+        }).when(delegate).write(CustomConfig.class.getCanonicalName(), newConfig);
+
+        final CompletableFuture<CustomConfig> load = CompletableFuture.supplyAsync(() -> clusterConfigService.get(CustomConfig.class));
+        assertThat(loading.await(5, TimeUnit.SECONDS)).isTrue();
+        clusterConfigService.write(newConfig);
+
+        assertThat(load.get(5, TimeUnit.SECONDS)).isSameAs(staleConfig);
+        assertThat(clusterConfigService.get(CustomConfig.class)).isSameAs(newConfig);
+    }
+
+    @Test
+    public void changedEventInvalidatesOnlyAffectedConfig() {
+        clusterConfigService.get(CustomConfig.class);
+        clusterConfigService.get(AnotherCustomConfig.class);
+
+        serverEventBus.post(ClusterConfigChangedEvent.create(DateTime.now(DateTimeZone.UTC), "other-node",
+                CustomConfig.class.getCanonicalName()));
+
+        clusterConfigService.get(CustomConfig.class);
+        clusterConfigService.get(AnotherCustomConfig.class);
+
+        verify(delegate, times(2)).get(CustomConfig.class.getCanonicalName(), CustomConfig.class);
+        verify(delegate, times(1)).get(AnotherCustomConfig.class.getCanonicalName(), AnotherCustomConfig.class);
+    }
+}
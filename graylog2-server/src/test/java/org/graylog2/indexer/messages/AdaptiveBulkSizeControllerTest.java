@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.indexer.messages;
+
+import com.codahale.metrics.MetricRegistry;
+import com.github.joschi.jadconfig.util.Duration;
+import com.github.joschi.jadconfig.util.Size;
+import org.graylog2.indexer.IndexSet;
+import org.graylog2.plugin.MessageFactory;
+import org.graylog2.plugin.TestMessageFactory;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static com.codahale.metrics.MetricRegistry.name;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdaptiveBulkSizeControllerTest {
+    private static final IndexSet indexSet = new MessagesTestIndexSet();
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long SLOW = TimeUnit.SECONDS.toNanos(3);
+
+    private final MessageFactory messageFactory = new TestMessageFactory();
+    private MetricRegistry metricRegistry;
+    private AdaptiveBulkSizeController controller;
+    private List<IndexingRequest> requests;
+    private long messageSize;
+
+    @BeforeEach
+    void setUp() {
+        metricRegistry = new MetricRegistry();
+        controller = new AdaptiveBulkSizeController(true, Size.kilobytes(10L), Size.kilobytes(80L), Duration.seconds(2L), metricRegistry);
+        requests = IntStream.range(0, 1000)
+                .mapToObj(i -> IndexingRequest.create(indexSet, messageFactory.createMessage("A".repeat(1000), "source", DateTime.now(DateTimeZone.UTC))))
+                .toList();
+        messageSize = requests.get(0).message().getSize();
+    }
+
+    @Test
+    void disabledControllerDoesNotLimitRequests() {
+        final AdaptiveBulkSizeController disabled = AdaptiveBulkSizeController.disabled();
+
+        disabled.onRejected(requests);
+
+        assertThat(disabled.fittingRequests(requests, 500)).isEqualTo(500);
+        assertThat(disabled.fittingRequests(requests, 5000)).isEqualTo(1000);
+    }
+
+    @Test
+    void startsAtMaximumSize() {
+        assertThat(controller.fittingRequests(requests, 1000)).isEqualTo(expectedCount(80L));
+        assertThat(controller.fittingRequests(requests, 10)).isEqualTo(10);
+        assertThat(limit()).isEqualTo(Size.kilobytes(80L).toBytes());
+    }
+
+    @Test
+    void alwaysFitsOneRequest() {
+        final AdaptiveBulkSizeController tiny = new AdaptiveBulkSizeController(true, Size.bytes(1L), Size.bytes(1L), Duration.seconds(2L), metricRegistry);
+
+        assertThat(tiny.fittingRequests(requests, 1000)).isEqualTo(1);
+    }
+
+    @Test
+    void halvesSizeWhenRequestsAreRejected() {
+        controller.onRejected(requests.subList(0, 10));
+        assertThat(limit()).isEqualTo(Size.kilobytes(40L).toBytes());
+        assertThat(controller.fittingRequests(requests, 1000)).isEqualTo(expectedCount(40L));
+
+        controller.onResponse(requests.subList(0, 10), FAST, 1);
+        assertThat(limit()).isEqualTo(Size.kilobytes(20L).toBytes());
+
+        controller.onRejected(requests.subList(0, 10));
+        controller.onRejected(requests.subList(0, 10));
+        assertThat(limit()).isEqualTo(Size.kilobytes(10L).toBytes());
+        assertThat(metricRegistry.meter(metricName("decreases")).getCount()).isEqualTo(3);
+    }
+
+    @Test
+    void lowersSizeWhenRequestsAreSlow() {
+        controller.onResponse(requests.subList(0, 10), SLOW, 0);
+
+        assertThat(limit()).isEqualTo(Size.kilobytes(60L).toBytes());
+    }
+
+    @Test
+    void raisesSizeAdditivelyWhenFullRequestsAreFast() {
+        controller.onRejected(requests);
+        controller.onRejected(requests);
+        assertThat(limit()).isEqualTo(Size.kilobytes(20L).toBytes());
+
+        // Small requests don't tell whether the cluster could cope with larger ones
+        controller.onResponse(requests.subList(0, 1), FAST, 0);
+        assertThat(limit()).isEqualTo(Size.kilobytes(20L).toBytes());
+
+        for (int i = 0; i < 10; i++) {
+            controller.onResponse(requests.subList(0, controller.fittingRequests(requests, 1000)), FAST, 0);
+        }
+        assertThat(limit()).isEqualTo(Size.kilobytes(80L).toBytes());
+        assertThat(metricRegistry.meter(metricName("increases")).getCount()).isEqualTo(6);
+    }
+
+    private int expectedCount(long limitKilobytes) {
+        return (int) (Size.kilobytes(limitKilobytes).toBytes() / messageSize);
+    }
+
+    @SuppressWarnings("unchecked")
+    private long limit() {
+        return (Long) metricRegistry.getGauges().get(metricName("limit")).getValue();
+    }
+
+    private String metricName(String suffix) {
+        return name(AdaptiveBulkSizeController.class, indexSet.getConfig().indexPrefix(), suffix);
+    }
+}
@@ -16,6 +16,9 @@
  */
 package org.graylog2.indexer.messages;
 
+import com.codahale.metrics.MetricRegistry;
+import com.github.joschi.jadconfig.util.Duration;
+import com.github.joschi.jadconfig.util.Size;
 import com.google.common.base.Strings;
 import org.graylog2.indexer.ElasticsearchException;
 import org.graylog2.indexer.IndexSet;
@@ -84,6 +87,53 @@ class ChunkedBulkIndexerTest {
                 .hasMessageContaining("Bulk index cannot split output batch any further.");
     }
 
+    @Test
+    void limitsChunksToAdaptiveBulkSize() throws IOException {
+        final var controller = new AdaptiveBulkSizeController(true, Size.kilobytes(64L), Size.kilobytes(128L),
+                Duration.seconds(10L), new MetricRegistry());
+        final var adaptiveIndexer = new ChunkedBulkIndexer(controller);
+        final List<Integer> chunkSizes = new ArrayList<>();
+        final ChunkedBulkIndexer.BulkIndex bulkIndex = (indexed, previous, chunk) -> {
+            chunkSizes.add(chunk.size());
+            return success(chunk);
+        };
+
+        final var result = adaptiveIndexer.index(indexingRequests, bulkIndex);
+
+        assertThat(result.successes()).hasSize(indexingRequests.size());
+        assertThat(chunkSizes).hasSizeGreaterThan(1);
+        final long messageSize = indexingRequests.get(0).message().getSize();
+        assertThat(chunkSizes).allSatisfy(size -> assertThat(size * messageSize).isLessThanOrEqualTo(Size.kilobytes(128L).toBytes()));
+    }
+
+    @Test
+    void shrinksAdaptiveBulkSizeWhenRejected() throws IOException {
+        final var metricRegistry = new MetricRegistry();
+        final var controller = new AdaptiveBulkSizeController(true, Size.kilobytes(16L), Size.kilobytes(128L),
+                Duration.seconds(10L), metricRegistry);
+        final var adaptiveIndexer = new ChunkedBulkIndexer(controller);
+        final ChunkedBulkIndexer.BulkIndex bulkIndex = (indexed, previous, chunk) -> {
+            if (chunk.stream().mapToLong(request -> request.message().getSize()).sum() > Size.kilobytes(32L).toBytes()) {
+                throw new ChunkedBulkIndexer.TooManyRequestsException(indexed, previous);
+            }
+            return success(chunk);
+        };
+
+        adaptiveIndexer.index(indexingRequests, bulkIndex);
+        final var limit = metricRegistry.getGauges().get(MetricRegistry.name(AdaptiveBulkSizeController.class, indexSet.getConfig().indexPrefix(), "limit"));
+        final long lowered = (Long) limit.getValue();
+        assertThat(lowered).isLessThan(Size.kilobytes(128L).toBytes());
+        assertThat(metricRegistry.meter(MetricRegistry.name(AdaptiveBulkSizeController.class, indexSet.getConfig().indexPrefix(), "decreases")).getCount()).isPositive();
+
+        // The next batch starts with the lowered limit right away
+        final List<Integer> chunkSizes = new ArrayList<>();
+        adaptiveIndexer.index(indexingRequests, (indexed, previous, chunk) -> {
+            chunkSizes.add(chunk.size());
+            return bulkIndex.apply(indexed, previous, chunk);
+        });
+        assertThat(chunkSizes.get(0) * indexingRequests.get(0).message().getSize()).isLessThanOrEqualTo(lowered);
+    }
+
     private ChunkedBulkIndexer.BulkIndexResult success(List<IndexingRequest> requests) {
         final var results = requests.stream()
                 .map(request -> IndexingSuccess.create(request.message(), request.indexSet().getNewestIndex()))
@@ -33,7 +33,7 @@ import java.nio.charset.StandardCharsets;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -52,19 +52,19 @@ class SerializationMemoizingMessageTest {
 
         final ObjectMapper objectMapper = new ObjectMapperProvider().get();
 
-        verify(wrappedMsg, times(0)).toElasticSearchObject(eq(objectMapper), any(Meter.class));
+        verify(wrappedMsg, times(0)).serialize(any(SerializationContext.class));
 
         final Meter tsMeter = new Meter();
         final byte[] serializedBytes = msg.serialize(new DefaultSerializationContext(objectMapper, tsMeter));
 
-        verify(wrappedMsg, times(1)).toElasticSearchObject(eq(objectMapper), any(Meter.class));
+        verify(wrappedMsg, times(1)).serialize(any(SerializationContext.class));
         assertThat(new String(serializedBytes, StandardCharsets.UTF_8)).contains("\"message\":\"test message\"");
         assertThat(tsMeter.getCount()).isEqualTo(1);
 
         final Meter tsMeter2 = new Meter();
         final byte[] serializedBytes2 = msg.serialize(new DefaultSerializationContext(objectMapper, tsMeter2));
 
-        verify(wrappedMsg, times(1)).toElasticSearchObject(eq(objectMapper), any(Meter.class));
+        verify(wrappedMsg, times(1)).serialize(any(SerializationContext.class));
         assertThat(serializedBytes2).isEqualTo(serializedBytes);
         assertThat(tsMeter2.getCount()).isEqualTo(1);
     }
@@ -81,7 +81,7 @@ class SerializationMemoizingMessageTest {
         msg.serialize(context1);
         msg.serialize(context2);
 
-        verify(wrappedMsg).toElasticSearchObject(eq(context1.objectMapper()), any(Meter.class));
-        verify(wrappedMsg).toElasticSearchObject(eq(context2.objectMapper()), any(Meter.class));
+        verify(wrappedMsg).serialize(argThat(context -> context.objectMapper() == context1.objectMapper()));
+        verify(wrappedMsg).serialize(argThat(context -> context.objectMapper() == context2.objectMapper()));
     }
 }
@@ -428,4 +428,116 @@ public class GelfDecoderTest {
                 .isInstanceOf(InputProcessingException.class)
                 .hasMessageContaining("JSON is null/could not be parsed (invalid JSON)");
     }
+
+    @Test
+    public void decodeKeepsLastValueOfDuplicateFields() {
+        final String json = "{"
+                + "\"host\": \"example.org\","
+                + "\"short_message\": \"A short message\","
+                + "\"_foo\": \"first\","
+                + "\"_bar\": 1,"
+                + "\"_foo\": \"second\""
+                + "}";
+
+        final Message message = decoder.decode(new RawMessage(json.getBytes(StandardCharsets.UTF_8))).get();
+
+        assertThat(message.getField("foo")).isEqualTo("second");
+        assertThat(message.getField("bar")).isEqualTo(1L);
+    }
+
+    @Test
+    public void decodeConvertsValueTypes() {
+        final String json = "{"
+                + "\"host\": \"example.org\","
+                + "\"short_message\": \"A short message\","
+                + "\"level\": \"3\","
+                + "\"line\": 42.7,"
+                + "\"_object\": {\"a\": [1, 2, {\"b\": null}]},"
+                + "\"_array\": [\"x\", 1.5],"
+                + "\"_double\": 1.5,"
+                + "\"_big\": 9223372036854775808,"
+                + "\"_null\": null,"
+                + "\"_boolean\": true"
+                + "}";
+
+        final Message message = decoder.decode(new RawMessage(json.getBytes(StandardCharsets.UTF_8))).get();
+
+        assertThat(message.getField("level")).isEqualTo(3);
+        assertThat(message.getField("line")).isEqualTo(42L);
+        assertThat(message.getField("object")).isEqualTo("{\"a\":[1,2,{\"b\":null}]}");
+        assertThat(message.getField("array")).isEqualTo("[\"x\",1.5]");
+        assertThat(message.getField("double")).isEqualTo(1.5d);
+        assertThat(message.getField("big")).isEqualTo(Long.MIN_VALUE);
+        assertThat(message.hasField("null")).isFalse();
+        assertThat(message.hasField("boolean")).isFalse();
+    }
+
+    @Test
+    public void decodeGzipCompressedMessage() throws Exception {
+        final String json = "{"
+                + "\"host\": \"example.org\","
+                + "\"short_message\": \"A short message\","
+                + "\"_foo\": \"bar\""
+                + "}";
+
+        final Message message = decoder.decode(new RawMessage(TestHelper.gzipCompress(json))).get();
+
+        assertThat(message.getField("source")).isEqualTo("example.org");
+        assertThat(message.getField("message")).isEqualTo("A short message");
+        assertThat(message.getField("foo")).isEqualTo("bar");
+    }
+
+    @Test
+    public void decodeCompressedMessageLargerThanInflateBuffer() throws Exception {
+        final String value = "x".repeat(100_000);
+        final String json = "{"
+                + "\"host\": \"example.org\","
+                + "\"short_message\": \"A short message\","
+                + "\"_foo\": \"" + value + "\""
+                + "}";
+
+        final Message message = decoder.decode(new RawMessage(TestHelper.zlibCompress(json))).get();
+
+        assertThat(message.getField("foo")).isEqualTo(value);
+    }
+
+    @Test
+    public void decodeCompressedMessagesWithConfiguredCharset() throws Exception {
+        final GelfDecoder windows1252Decoder = new GelfDecoder(messageFactory, DEFAULT_DECOMPRESS_SIZE_LIMIT,
+                Charset.forName("windows-1252"), gelfBulkDroppedMsgService);
+        // "é" is encoded as the bytes C3 A9, which are valid UTF-8 but read as "Ã©" in windows-1252.
+        final String json = "{\"host\": \"example.org\", \"short_message\": \"caf\u00e9\"}";
+
+        assertThat(windows1252Decoder.decode(new RawMessage(TestHelper.gzipCompress(json))).get().getField("message"))
+                .isEqualTo("caf\u00c3\u00a9");
+        assertThat(windows1252Decoder.decode(new RawMessage(TestHelper.zlibCompress(json))).get().getField("message"))
+                .isEqualTo("caf\u00c3\u00a9");
+        assertThat(windows1252Decoder.decode(new RawMessage(json.getBytes(StandardCharsets.UTF_8))).get().getField("message"))
+                .isEqualTo("caf\u00c3\u00a9");
+    }
+
+    @Test
+    public void decodeReplacesMalformedUtf8() {
+        final byte[] prefix = "{\"host\": \"example.org\", \"short_message\": \"broken ".getBytes(StandardCharsets.UTF_8);
+        final byte[] suffix = "\"}".getBytes(StandardCharsets.UTF_8);
+        final byte[] payload = new byte[prefix.length + 1 + suffix.length];
+        System.arraycopy(prefix, 0, payload, 0, prefix.length);
+        payload[prefix.length] = (byte) 0xff;
+        System.arraycopy(suffix, 0, payload, prefix.length + 1, suffix.length);
+
+        final Message message = decoder.decode(new RawMessage(payload)).get();
+
+        assertThat(message.getField("message")).isEqualTo("broken \uFFFD");
+    }
+
+    @Test
+    public void decodeValidationErrorContainsJsonPayload() {
+        final String json = "{\"host\": \"example.org\"}";
+        final RawMessage rawMessage = new RawMessage(json.getBytes(StandardCharsets.UTF_8));
+
+        assertThatThrownBy(() -> decoder.decode(rawMessage))
+                .isInstanceOf(InputProcessingException.class)
+                .hasMessageMatching("GELF message <[0-9a-f-]+> is missing mandatory \"short_message\" or \"message\" field.")
+                .satisfies(e -> assertThat(((InputProcessingException) e).inputMessage()).hasValue(json));
+    }
 }
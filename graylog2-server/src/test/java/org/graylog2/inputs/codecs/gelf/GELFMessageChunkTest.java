@@ -16,6 +16,7 @@
  */
 package org.graylog2.inputs.codecs.gelf;
 
+import io.netty.buffer.ByteBufUtil;
 import org.graylog2.inputs.TestHelper;
 import org.graylog2.plugin.Tools;
 import org.junit.Test;
@@ -56,6 +57,11 @@ public class GELFMessageChunkTest {
         assertArrayEquals(TestHelper.gzipCompress(GELF_JSON), buildChunk().getData());
     }
 
+    @Test
+    public void testGetDataBuffer() throws Exception {
+        assertArrayEquals(TestHelper.gzipCompress(GELF_JSON), ByteBufUtil.getBytes(buildChunk().getDataBuffer()));
+    }
+
     @Test
     public void testGetSequenceCount() throws Exception {
         assertEquals(4, buildChunk().getSequenceCount());
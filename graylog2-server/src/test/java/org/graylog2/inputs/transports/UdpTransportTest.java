@@ -27,11 +27,13 @@ import io.netty.channel.ChannelInboundHandler;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.epoll.Epoll;
 import io.netty.handler.logging.LogLevel;
 import io.netty.handler.logging.LoggingHandler;
 import io.netty.util.ReferenceCountUtil;
 import org.apache.commons.lang3.SystemUtils;
 import org.graylog2.inputs.transports.netty.EventLoopGroupFactory;
+import org.graylog2.inputs.transports.netty.NettyTransportType;
 import org.graylog2.plugin.LocalMetricRegistry;
 import org.graylog2.plugin.configuration.Configuration;
 import org.graylog2.plugin.configuration.ConfigurationRequest;
@@ -179,6 +181,47 @@ public class UdpTransportTest {
         assertThat(udpTransport.getBootstrap(mock(MessageInput.class)).config().options().get(ChannelOption.SO_RCVBUF)).isEqualTo(recvBufferSize);
     }
 
+    @Test
+    public void receiveBufferHoldsRecvmmsgBatchWithEpoll() {
+        final NettyTransportConfiguration batchingConfiguration = new NettyTransportConfiguration("epoll", "jdk", 1, 8);
+        final UdpTransport udpTransport = new UdpTransport(CONFIGURATION, eventLoopGroupFactory, batchingConfiguration, throughputCounter, new LocalMetricRegistry());
+
+        assertThat(udpTransport.getReceiveBufferAllocationSize(NettyTransportType.EPOLL)).isEqualTo(8 * 65535);
+        assertThat(udpTransport.getReceiveBufferAllocationSize(NettyTransportType.NIO)).isEqualTo(65535);
+    }
+
+    @Test
+    public void receiveBufferHoldsSingleDatagramByDefault() {
+        assertThat(udpTransport.getReceiveBufferAllocationSize(NettyTransportType.EPOLL)).isEqualTo(65535);
+    }
+
+    @Test
+    public void transportReceivesDatagramsWithRecvmmsg() throws Exception {
+        assumeTrue("Skipping test intended for systems supporting epoll", Epoll.isAvailable());
+
+        final NettyTransportConfiguration batchingConfiguration = new NettyTransportConfiguration("epoll", "jdk", 1, 4);
+        final EventLoopGroupFactory epollEventLoopGroupFactory = new EventLoopGroupFactory(batchingConfiguration);
+        final CountingChannelUpstreamHandler handler = new CountingChannelUpstreamHandler();
+        final UdpTransport transport = launchTransportForBootStrapTest(handler, epollEventLoopGroupFactory, batchingConfiguration);
+        try {
+            await().atMost(5, TimeUnit.SECONDS).until(() -> transport.getLocalAddress() != null);
+            final InetSocketAddress localAddress = (InetSocketAddress) transport.getLocalAddress();
+
+            // The receive buffer of the socket is tiny, so wait for every datagram before sending the next one.
+            final int maxUDPSize = 65507;
+            final int[] sizes = {100, maxUDPSize, 1, 2048};
+            for (int i = 0; i < sizes.length; i++) {
+                final int received = i + 1;
+                sendUdpDatagram(BIND_ADDRESS, localAddress.getPort(), sizes[i]);
+                await().atMost(5, TimeUnit.SECONDS).until(() -> handler.getBytesWritten().size() == received);
+            }
+        } finally {
+            transport.stop();
+        }
+
+        assertThat(handler.getBytesWritten()).containsExactly(100, 65507, 1, 2048);
+    }
+
     @Test
     public void getMetricSetReturnsLocalMetricRegistry() {
         assertThat(udpTransport.getMetricSet()).isSameAs(localMetricRegistry);
@@ -217,6 +260,12 @@ public class UdpTransportTest {
     }
 
     private UdpTransport launchTransportForBootStrapTest(final ChannelInboundHandler channelHandler) throws MisfireException {
+        return launchTransportForBootStrapTest(channelHandler, eventLoopGroupFactory, nettyTransportConfiguration);
+    }
+
+    private UdpTransport launchTransportForBootStrapTest(final ChannelInboundHandler channelHandler,
+                                                         final EventLoopGroupFactory eventLoopGroupFactory,
+                                                         final NettyTransportConfiguration nettyTransportConfiguration) throws MisfireException {
         final UdpTransport transport = new UdpTransport(CONFIGURATION, eventLoopGroupFactory, nettyTransportConfiguration, throughputCounter, new LocalMetricRegistry()) {
             @Override
             protected LinkedHashMap<String, Callable<? extends ChannelHandler>> getChannelHandlers(MessageInput input) {
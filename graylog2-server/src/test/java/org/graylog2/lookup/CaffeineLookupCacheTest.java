@@ -33,12 +33,23 @@ import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnit;
 import org.mockito.junit.MockitoRule;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import static org.awaitility.Awaitility.await;
 import static org.graylog2.plugin.lookup.LookupResult.DEFAULT_ERROR_LOOKUP_RESULT;
 import static org.graylog2.plugin.lookup.LookupResult.EMPTY_LOOKUP_RESULT;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class CaffeineLookupCacheTest {
@@ -52,6 +63,8 @@ public class CaffeineLookupCacheTest {
     @Mock
     Meter meter;
     @Mock
+    Timer.Context timerContext;
+    @Mock
     Callable<LookupResult> loader;
 
     @Test
@@ -138,6 +151,151 @@ public class CaffeineLookupCacheTest {
         Assertions.assertThat(value3.cacheTTL()).isEqualTo(999);
     }
 
+    @Test
+    public void concurrentAsyncLookupsShareOneLoad() throws Exception {
+        LookupCache cache = buildCache(false);
+        when(lookupTimer.time()).thenReturn(timerContext);
+        final LookupCacheKey key = LookupCacheKey.createFromJSON("x", "y");
+        final CompletableFuture<LookupResult> load = new CompletableFuture<>();
+        final AtomicInteger loads = new AtomicInteger();
+
+        final CompletableFuture<LookupResult> value1 = cache.getAsync(key, () -> {
+            loads.incrementAndGet();
+            return load;
+        });
+        final CompletableFuture<LookupResult> value2 = cache.getAsync(key, () -> {
+            loads.incrementAndGet();
+            return load;
+        });
+        Assertions.assertThat(value1).isNotDone();
+        Assertions.assertThat(value2).isSameAs(value1);
+
+        load.complete(LookupResult.single("x"));
+        Assertions.assertThat(value1.get().singleValue()).isEqualTo("x");
+
+        when(loader.call()).thenReturn(LookupResult.single("other"));
+        Assertions.assertThat(cache.get(key, loader).singleValue()).isEqualTo("x");
+        Assertions.assertThat(cache.getAsync(key, () -> CompletableFuture.completedFuture(LookupResult.single("other"))).get().singleValue())
+                .isEqualTo("x");
+        Assertions.assertThat(loads).hasValue(1);
+    }
+
+    @Test
+    public void failedAsyncLoadReturnsError() throws Exception {
+        LookupCache cache = buildCache(false);
+        when(lookupTimer.time()).thenReturn(timerContext);
+
+        final LookupResult value = cache.getAsync(LookupCacheKey.createFromJSON("x", "y"),
+                () -> CompletableFuture.failedFuture(new IOException("boom"))).get();
+
+        Assertions.assertThat(value.hasError()).isTrue();
+    }
+
+    @Test(timeout = 10_000)
+    public void stuckAsyncLoadTimesOut() throws Exception {
+        when(registry.timer(anyString())).thenReturn(lookupTimer);
+        when(registry.meter(anyString())).thenReturn(meter);
+        when(lookupTimer.time()).thenReturn(timerContext);
+        final LookupCacheConfiguration config = CaffeineLookupCache.Config.builder()
+                .type(CaffeineLookupCache.NAME)
+                .maxSize(1000)
+                .expireAfterAccess(60)
+                .expireAfterAccessUnit(TimeUnit.SECONDS)
+                .expireAfterWrite(60)
+                .ignoreNull(false)
+                .build();
+        final LookupCache cache = new CaffeineLookupCache("id", "name", config, registry, Ticker.systemTicker(), 100);
+        final LookupCacheKey key = LookupCacheKey.createFromJSON("x", "y");
+        when(loader.call()).thenReturn(LookupResult.single("direct"));
+
+        final CompletableFuture<LookupResult> value = cache.getAsync(key, CompletableFuture::new);
+
+        // Synchronous lookups don't wait for the stuck load forever
+        Assertions.assertThat(cache.get(key, loader)).isNotNull();
+        Assertions.assertThat(value.get().hasError()).isTrue();
+    }
+
+    @Test
+    public void getAllLoadsMissingKeysAtOnce() throws Exception {
+        LookupCache cache = buildCache(false);
+        final LookupCacheKey key1 = LookupCacheKey.createFromJSON("x", "1");
+        final LookupCacheKey key2 = LookupCacheKey.createFromJSON("x", "2");
+        final LookupCacheKey key3 = LookupCacheKey.createFromJSON("x", "3");
+        when(loader.call()).thenReturn(LookupResult.single("cached"));
+        cache.get(key1, loader);
+
+        final List<Collection<LookupCacheKey>> loaderCalls = new ArrayList<>();
+        final Map<LookupCacheKey, LookupResult> values = cache.getAll(List.of(key1, key2, key3), keys -> {
+            loaderCalls.add(keys);
+            return Map.of(key2, LookupResult.single("loaded"));
+        });
+
+        Assertions.assertThat(loaderCalls).containsExactly(Set.of(key2, key3));
+        Assertions.assertThat(values.get(key1).singleValue()).isEqualTo("cached");
+        Assertions.assertThat(values.get(key2).singleValue()).isEqualTo("loaded");
+        Assertions.assertThat(values.get(key3).isEmpty()).isTrue();
+    }
+
+    @SuppressWarnings("UnstableApiUsage")
+    @Test
+    public void refreshServesStaleValueAndReloadsInBackground() throws Exception {
+        FakeTicker ticker = new FakeTicker();
+        LookupCache cache = buildRefreshingCache(ticker::read, 10, 60);
+        final LookupCacheKey key = LookupCacheKey.createFromJSON("x", "y");
+        when(loader.call()).thenReturn(LookupResult.single("x1")).thenReturn(LookupResult.single("x2"));
+
+        Assertions.assertThat(cache.get(key, loader).singleValue()).isEqualTo("x1");
+
+        ticker.advance(5, TimeUnit.SECONDS);
+        Assertions.assertThat(cache.get(key, loader).singleValue()).isEqualTo("x1");
+        verify(loader, times(1)).call();
+
+        ticker.advance(10, TimeUnit.SECONDS);
+        Assertions.assertThat(cache.get(key, loader).singleValue()).isEqualTo("x1");
+        await().atMost(5, TimeUnit.SECONDS).until(() -> "x2".equals(cache.getIfPresent(key).singleValue()));
+        verify(loader, times(2)).call();
+    }
+
+    @SuppressWarnings("UnstableApiUsage")
+    @Test
+    public void failedRefreshKeepsStaleValueUntilMaxStaleness() throws Exception {
+        FakeTicker ticker = new FakeTicker();
+        LookupCache cache = buildRefreshingCache(ticker::read, 10, 60);
+        final LookupCacheKey key = LookupCacheKey.createFromJSON("x", "y");
+        when(loader.call()).thenReturn(LookupResult.single("x1")).thenThrow(new IOException("boom"));
+
+        Assertions.assertThat(cache.get(key, loader).singleValue()).isEqualTo("x1");
+
+        ticker.advance(30, TimeUnit.SECONDS);
+        Assertions.assertThat(cache.get(key, loader).singleValue()).isEqualTo("x1");
+        await().atMost(5, TimeUnit.SECONDS).untilAsserted(() -> verify(loader, times(2)).call());
+        Assertions.assertThat(cache.getIfPresent(key).singleValue()).isEqualTo("x1");
+
+        // Refresh interval plus max staleness have passed, the entry is gone even though it was accessed recently
+        ticker.advance(45, TimeUnit.SECONDS);
+        Assertions.assertThat(cache.getIfPresent(key).isEmpty()).isTrue();
+    }
+
+    private LookupCache buildRefreshingCache(Ticker ticker, long refreshAfterWrite, long maxStaleness) {
+        when(registry.timer(anyString())).thenReturn(lookupTimer);
+        when(registry.meter(anyString())).thenReturn(meter);
+
+        CaffeineLookupCache.Config config = CaffeineLookupCache.Config.builder()
+                .type(CaffeineLookupCache.NAME)
+                .maxSize(1000)
+                .expireAfterAccess(60)
+                .expireAfterAccessUnit(TimeUnit.SECONDS)
+                .expireAfterWrite(600)
+                .expireAfterWriteUnit(TimeUnit.SECONDS)
+                .ignoreNull(false)
+                .refreshAfterWrite(refreshAfterWrite)
+                .refreshAfterWriteUnit(TimeUnit.SECONDS)
+                .maxStaleness(maxStaleness)
+                .maxStalenessUnit(TimeUnit.SECONDS)
+                .build();
+        return new CaffeineLookupCache("id", "name", config, registry, ticker);
+    }
+
     private LookupCache buildCache(boolean ignoreNull) {
         when(registry.timer(anyString())).thenReturn(lookupTimer);
         when(registry.meter(anyString())).thenReturn(meter);
@@ -24,11 +24,13 @@ import org.graylog2.plugin.lookup.LookupCachePurge;
 import org.graylog2.plugin.lookup.LookupResult;
 import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnit;
 import org.mockito.junit.MockitoRule;
 
 import java.net.URL;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Optional;
@@ -49,6 +51,9 @@ public class CSVFileDataAdapterTest {
     @Rule
     public MockitoRule rule = MockitoJUnit.rule();
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     private final Path csvFile;
     private final Path cidrLookupFile;
     private CSVFileDataAdapter csvFileDataAdapter;
@@ -75,7 +80,7 @@ public class CSVFileDataAdapterTest {
     @Test
     public void doGet_successfully_returns_values() throws Exception {
         final Config config = baseConfig();
-        csvFileDataAdapter = spy(new CSVFileDataAdapter("id", "name", config, new MetricRegistry(), pathChecker));
+        csvFileDataAdapter = spy(new CSVFileDataAdapter("id", "name", config, new MetricRegistry(), pathChecker, temporaryFolder.getRoot().toPath()));
         when(pathChecker.fileIsInAllowedPath(isA(Path.class))).thenReturn(true);
         csvFileDataAdapter.doStart();
 
@@ -96,7 +101,7 @@ public class CSVFileDataAdapterTest {
                                     .checkInterval(60)
                                     .caseInsensitiveLookup(false)
                                     .build();
-        csvFileDataAdapter = spy(new CSVFileDataAdapter("id", "name", config, new MetricRegistry(), pathChecker));
+        csvFileDataAdapter = spy(new CSVFileDataAdapter("id", "name", config, new MetricRegistry(), pathChecker, temporaryFolder.getRoot().toPath()));
         when(pathChecker.fileIsInAllowedPath((isA(Path.class)))).thenReturn(true);
         csvFileDataAdapter.doStart();
 
@@ -109,7 +114,7 @@ public class CSVFileDataAdapterTest {
     public void doGet_failure_filePathInvalid() throws Exception {
         final Config config = baseConfig();
         when(pathChecker.fileIsInAllowedPath((isA(Path.class)))).thenReturn(false);
-        csvFileDataAdapter = new CSVFileDataAdapter("id", "name", config, new MetricRegistry(), pathChecker);
+        csvFileDataAdapter = new CSVFileDataAdapter("id", "name", config, new MetricRegistry(), pathChecker, temporaryFolder.getRoot().toPath());
         assertThatThrownBy(() -> csvFileDataAdapter.doStart())
                 .isExactlyInstanceOf(IllegalStateException.class)
                 .hasMessageStartingWith(CSVFileDataAdapter.ALLOWED_PATH_ERROR);
@@ -118,7 +123,7 @@ public class CSVFileDataAdapterTest {
     @Test
     public void refresh_success() throws Exception {
         final Config config = baseConfig();
-        csvFileDataAdapter = spy(new CSVFileDataAdapter("id", "name", config, new MetricRegistry(), pathChecker));
+        csvFileDataAdapter = spy(new CSVFileDataAdapter("id", "name", config, new MetricRegistry(), pathChecker, temporaryFolder.getRoot().toPath()));
         when(pathChecker.fileIsInAllowedPath(isA(Path.class))).thenReturn(true).thenReturn(true);
         csvFileDataAdapter.doStart();
         csvFileDataAdapter.doRefresh(cachePurge);
@@ -128,7 +133,7 @@ public class CSVFileDataAdapterTest {
     @Test
     public void refresh_failure_disallowedFileLocation() throws Exception {
         final Config config = baseConfig();
-        csvFileDataAdapter = spy(new CSVFileDataAdapter("id", "name", config, new MetricRegistry(), pathChecker));
+        csvFileDataAdapter = spy(new CSVFileDataAdapter("id", "name", config, new MetricRegistry(), pathChecker, temporaryFolder.getRoot().toPath()));
         when(pathChecker.fileIsInAllowedPath(isA(Path.class))).thenReturn(true).thenReturn(false);
         csvFileDataAdapter.doStart();
         csvFileDataAdapter.doRefresh(cachePurge);
@@ -141,7 +146,7 @@ public class CSVFileDataAdapterTest {
     @Test
     public void refresh_failure_success() throws Exception {
         final Config config = baseConfig();
-        csvFileDataAdapter = spy(new CSVFileDataAdapter("id", "name", config, new MetricRegistry(), pathChecker));
+        csvFileDataAdapter = spy(new CSVFileDataAdapter("id", "name", config, new MetricRegistry(), pathChecker, temporaryFolder.getRoot().toPath()));
         when(pathChecker.fileIsInAllowedPath(isA(Path.class))).thenReturn(true).thenReturn(false);
         csvFileDataAdapter.doStart();
         csvFileDataAdapter.doRefresh(cachePurge);
@@ -211,10 +216,82 @@ public class CSVFileDataAdapterTest {
     @Test
     public void testCIDRLookups() throws Exception {
         final Config config = cidrLookupConfig();
-        csvFileDataAdapter = spy(new CSVFileDataAdapter("id", "name", config, new MetricRegistry(), pathChecker));
+        csvFileDataAdapter = spy(new CSVFileDataAdapter("id", "name", config, new MetricRegistry(), pathChecker, temporaryFolder.getRoot().toPath()));
+        when(pathChecker.fileIsInAllowedPath((isA(Path.class)))).thenReturn(true);
+        csvFileDataAdapter.doStart();
+
+        assertCIDRLookups();
+    }
+
+    @Test
+    public void testMemoryMappedCIDRLookups() throws Exception {
+        final Config config = configBuilder(cidrLookupFile).cidrLookup(true).memoryMapped(true).build();
+        csvFileDataAdapter = new CSVFileDataAdapter("id", "name", config, new MetricRegistry(), pathChecker, temporaryFolder.getRoot().toPath());
         when(pathChecker.fileIsInAllowedPath((isA(Path.class)))).thenReturn(true);
         csvFileDataAdapter.doStart();
 
+        assertThat(temporaryFolder.getRoot().toPath().resolve("lookup-tables/csv-id.idx")).exists();
+        assertCIDRLookups();
+    }
+
+    @Test
+    public void doGet_memoryMapped_returns_values() throws Exception {
+        final Config config = configBuilder(csvFile).caseInsensitiveLookup(true).memoryMapped(true).build();
+        csvFileDataAdapter = new CSVFileDataAdapter("id", "name", config, new MetricRegistry(), pathChecker, temporaryFolder.getRoot().toPath());
+        when(pathChecker.fileIsInAllowedPath(isA(Path.class))).thenReturn(true);
+        csvFileDataAdapter.doStart();
+
+        assertThat(csvFileDataAdapter.doGet("foo")).isEqualTo(LookupResult.single("23"));
+        assertThat(csvFileDataAdapter.doGet("BAR")).isEqualTo(LookupResult.single("42"));
+        assertThat(csvFileDataAdapter.doGet("quux")).isEqualTo(LookupResult.empty());
+    }
+
+    @Test
+    public void refresh_memoryMapped_swaps_index() throws Exception {
+        final Path file = temporaryFolder.newFile("lookup.csv").toPath();
+        Files.writeString(file, "\"key\",\"value\"\n\"foo\",\"23\"\n");
+        final Config config = configBuilder(file).memoryMapped(true).build();
+        csvFileDataAdapter = new CSVFileDataAdapter("id", "name", config, new MetricRegistry(), pathChecker, temporaryFolder.getRoot().toPath());
+        when(pathChecker.fileIsInAllowedPath(isA(Path.class))).thenReturn(true);
+        csvFileDataAdapter.doStart();
+        assertThat(csvFileDataAdapter.doGet("foo")).isEqualTo(LookupResult.single("23"));
+
+        Files.writeString(file, "\"key\",\"value\"\n\"foo\",\"24\"\n\"bar\",\"42\"\n");
+        csvFileDataAdapter.doRefresh(cachePurge);
+
+        assertFalse(csvFileDataAdapter.getError().isPresent());
+        assertThat(csvFileDataAdapter.doGet("foo")).isEqualTo(LookupResult.single("24"));
+        assertThat(csvFileDataAdapter.doGet("bar")).isEqualTo(LookupResult.single("42"));
+    }
+
+    @Test
+    public void index_file_is_removed_with_adapter_or_memory_mapping() throws Exception {
+        final Path indexDir = temporaryFolder.getRoot().toPath().resolve("lookup-tables");
+        when(pathChecker.fileIsInAllowedPath(isA(Path.class))).thenReturn(true);
+        csvFileDataAdapter = new CSVFileDataAdapter("id", "name", configBuilder(csvFile).memoryMapped(true).build(),
+                new MetricRegistry(), pathChecker, temporaryFolder.getRoot().toPath());
+        csvFileDataAdapter.doStart();
+        // Only the index file is left, no temporary files
+        try (final var files = Files.list(indexDir)) {
+            assertThat(files).containsExactly(indexDir.resolve("csv-id.idx"));
+        }
+
+        // An instance of the same adapter which no longer uses memory mapping
+        final CSVFileDataAdapter updatedAdapter = new CSVFileDataAdapter("id", "name", configBuilder(csvFile).build(),
+                new MetricRegistry(), pathChecker, temporaryFolder.getRoot().toPath());
+        updatedAdapter.doStart();
+        assertThat(indexDir.resolve("csv-id.idx")).doesNotExist();
+        assertThat(updatedAdapter.doGet("foo")).isEqualTo(LookupResult.single("23"));
+
+        csvFileDataAdapter = new CSVFileDataAdapter("id", "name", configBuilder(csvFile).memoryMapped(true).build(),
+                new MetricRegistry(), pathChecker, temporaryFolder.getRoot().toPath());
+        csvFileDataAdapter.doStart();
+        assertThat(indexDir.resolve("csv-id.idx")).exists();
+        csvFileDataAdapter.delete();
+        assertThat(indexDir.resolve("csv-id.idx")).doesNotExist();
+    }
+
+    private void assertCIDRLookups() {
         assertThat(csvFileDataAdapter.doGet("10.10.64.128")).isEqualTo(LookupResult.single("Corporate"));
         assertThat(csvFileDataAdapter.doGet("192.168.100.112")).isEqualTo(LookupResult.single("Finance"));
         assertThat(csvFileDataAdapter.doGet("192.168.101.66")).isEqualTo(LookupResult.single("IT"));
@@ -232,29 +309,24 @@ public class CSVFileDataAdapterTest {
     }
 
     private Config baseConfig() {
-        return Config.builder()
-                .type(NAME)
-                .path(csvFile.toString())
-                .separator(",")
-                .quotechar("\"")
-                .keyColumn("key")
-                .valueColumn("value")
-                .checkInterval(60)
-                .caseInsensitiveLookup(false)
-                .build();
+        return configBuilder(csvFile).build();
     }
 
     private Config cidrLookupConfig() {
+        return configBuilder(cidrLookupFile)
+                .cidrLookup(true)
+                .build();
+    }
+
+    private Config.Builder configBuilder(Path path) {
         return Config.builder()
                 .type(NAME)
-                .path(cidrLookupFile.toString())
+                .path(path.toString())
                 .separator(",")
                 .quotechar("\"")
                 .keyColumn("key")
                 .valueColumn("value")
                 .checkInterval(60)
-                .caseInsensitiveLookup(false)
-                .cidrLookup(true)
-                .build();
+                .caseInsensitiveLookup(false);
     }
 }
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.lookup.adapters;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class CSVFileIndexTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void lookupsAfterManyInserts() throws Exception {
+        final Path file = temporaryFolder.getRoot().toPath().resolve("keys.idx");
+        try (final CSVFileIndex.Writer writer = CSVFileIndex.writer(file, false)) {
+            for (int i = 0; i < 10_000; i++) {
+                writer.add("key-" + i, "value-" + i);
+            }
+            writer.add("ünïcödé", "");
+            writer.finish(42, 1024L, 2048L);
+        }
+
+        final CSVFileIndex index = CSVFileIndex.open(file);
+
+        assertThat(index.entryCount()).isEqualTo(10_001);
+        for (int i = 0; i < 10_000; i++) {
+            assertThat(index.get("key-" + i)).isEqualTo("value-" + i);
+        }
+        assertThat(index.get("ünïcödé")).isEmpty();
+        assertThat(index.get("key-10000")).isNull();
+        assertThat(index.isUpToDate(false, 42, 1024L, 2048L)).isTrue();
+        assertThat(index.isUpToDate(false, 42, 1024L, 4096L)).isFalse();
+        assertThat(index.isUpToDate(true, 42, 1024L, 2048L)).isFalse();
+    }
+
+    @Test
+    public void longestPrefixRangeLookup() throws Exception {
+        final Path file = temporaryFolder.getRoot().toPath().resolve("cidr.idx");
+        try (final CSVFileIndex.Writer writer = CSVFileIndex.writer(file, true)) {
+            writer.addCIDR("10.0.0.0/8", "ten");
+            writer.addCIDR("10.1.0.0/16", "ten-one");
+            writer.addCIDR("10.1.2.3/32", "host");
+            writer.addCIDR("0.0.0.0/0", "default");
+            writer.addCIDR("2001:db8::/32", "documentation");
+            writer.addCIDR("10.1.0.0/16", "ten-one-replaced");
+            writer.finish(0, 0L, 0L);
+        }
+
+        final CSVFileIndex index = CSVFileIndex.open(file);
+
+        assertThat(index.longestPrefixRangeLookup("10.1.2.3")).isEqualTo("host");
+        assertThat(index.longestPrefixRangeLookup("10.1.2.4")).isEqualTo("ten-one-replaced");
+        assertThat(index.longestPrefixRangeLookup("10.2.0.1")).isEqualTo("ten");
+        assertThat(index.longestPrefixRangeLookup("192.168.1.1")).isEqualTo("default");
+        assertThat(index.longestPrefixRangeLookup("2001:db8::1")).isEqualTo("documentation");
+        assertThat(index.longestPrefixRangeLookup("2001:db9::1")).isNull();
+        assertThatThrownBy(() -> index.longestPrefixRangeLookup("not.an.ip.address"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void rejectsDuplicateKeys() throws Exception {
+        final Path file = temporaryFolder.getRoot().toPath().resolve("duplicates.idx");
+        try (final CSVFileIndex.Writer writer = CSVFileIndex.writer(file, false)) {
+            writer.add("foo", "1");
+            writer.add("foo", "2");
+
+            assertThatThrownBy(() -> writer.finish(0, 0L, 0L))
+                    .isInstanceOf(IllegalStateException.class)
+                    .hasMessageContaining("foo");
+        }
+    }
+
+    @Test
+    public void rejectsInvalidFiles() throws Exception {
+        final Path file = temporaryFolder.newFile("invalid.idx").toPath();
+
+        assertThatThrownBy(() -> CSVFileIndex.open(file)).isInstanceOf(IOException.class);
+    }
+}
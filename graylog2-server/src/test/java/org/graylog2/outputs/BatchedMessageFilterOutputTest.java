@@ -24,6 +24,7 @@ import org.graylog.testing.messages.MessagesExtension;
 import org.graylog2.indexer.IndexSet;
 import org.graylog2.indexer.cluster.Cluster;
 import org.graylog2.indexer.messages.ImmutableMessage;
+import org.graylog2.indexer.messages.Indexable;
 import org.graylog2.outputs.filter.AllOutputsFilter;
 import org.graylog2.outputs.filter.DefaultFilteredMessage;
 import org.graylog2.outputs.filter.FilteredMessage;
@@ -35,6 +36,7 @@ import org.graylog2.plugin.outputs.MessageOutput;
 import org.graylog2.plugin.streams.Stream;
 import org.graylog2.shared.SuppressForbidden;
 import org.graylog2.shared.bindings.providers.ObjectMapperProvider;
+import org.graylog2.shared.messageq.Acknowledgeable;
 import org.graylog2.shared.messageq.MessageQueueAcknowledger;
 import org.graylog2.system.shutdown.GracefulShutdownService;
 import org.junit.jupiter.api.AfterEach;
@@ -43,21 +45,30 @@ import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.Timeout;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentMatcher;
 import org.mockito.Mock;
+import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.stubbing.Answer;
 
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
@@ -86,6 +97,7 @@ class BatchedMessageFilterOutputTest {
     private BatchedMessageFilterOutput output;
     private final int shutdownTimeoutMs = "true".equals(System.getenv("CI")) ? 500 : 100; // be more graceful when running on ci infrastructure
     private final int outputFlushInterval = 1;
+    private MetricRegistry metricRegistry;
 
     @BeforeEach
     void setUp(MessageFactory messageFactory) {
@@ -122,18 +134,92 @@ class BatchedMessageFilterOutputTest {
         }
     }
 
-    @SuppressForbidden("Using Executors.newSingleThreadExecutor() is okay in tests")
+    @Nested
+    class Concurrent {
+        @Mock
+        private FilteredMessageOutput targetOutput2;
+
+        @Test
+        public void writesToOutputsInParallel() throws Exception {
+            final var bothWriting = new CountDownLatch(2);
+            final Answer<Void> awaitOtherOutput = invocation -> {
+                bothWriting.countDown();
+                assertThat(bothWriting.await(5, TimeUnit.SECONDS)).isTrue();
+                return null;
+            };
+            doAnswer(awaitOtherOutput).when(targetOutput1).writeFiltered(anyList());
+            doAnswer(awaitOtherOutput).when(targetOutput2).writeFiltered(anyList());
+            output = createOutput(BatchSizeConfig.forCount(MESSAGES_PER_BATCH),
+                    Map.of("targetOutput1", targetOutput1, "targetOutput2", targetOutput2), 1);
+
+            final var messageList = sendMessages(output, MESSAGES_PER_BATCH);
+
+            verify(targetOutput1, timeout(5000)).writeFiltered(messagesWithOutput(messageList));
+            verify(targetOutput2, timeout(5000)).writeFiltered(messagesWithOutput(messageList));
+            verify(acknowledger, timeout(5000)).acknowledge(argThat(sameMessages(messageList)));
+        }
+
+        @Test
+        public void acknowledgesBatchesInFlushOrder() throws Exception {
+            final var firstBatchBlocked = new CountDownLatch(1);
+            final var releaseFirstBatch = new CountDownLatch(1);
+            final var firstWrite = new AtomicBoolean(true);
+            doAnswer(invocation -> {
+                if (firstWrite.getAndSet(false)) {
+                    firstBatchBlocked.countDown();
+                    assertThat(releaseFirstBatch.await(5, TimeUnit.SECONDS)).isTrue();
+                }
+                return null;
+            }).when(targetOutput1).writeFiltered(anyList());
+            output = createOutput(BatchSizeConfig.forCount(MESSAGES_PER_BATCH), Map.of("targetOutput1", targetOutput1), 2);
+
+            final var firstBatch = buildMessages(MESSAGES_PER_BATCH);
+            for (Message message : firstBatch) {
+                output.write(message);
+            }
+            assertThat(firstBatchBlocked.await(5, TimeUnit.SECONDS)).isTrue();
+            // The flushing thread doesn't wait for the first batch
+            final var secondBatch = sendMessages(output, MESSAGES_PER_BATCH);
+
+            verify(targetOutput1, timeout(5000).times(2)).writeFiltered(anyList());
+            verify(acknowledger, Mockito.after(100).never()).acknowledge(anyList());
+            // Only the completed second batch waits for its acknowledgement, the first one is still being written
+            assertThat(metricRegistry.getGauges().get(MetricRegistry.name(BatchedMessageFilterOutput.class, "pendingAcknowledgements")).getValue())
+                    .isEqualTo(1);
+
+            releaseFirstBatch.countDown();
+
+            final var inOrder = inOrder(acknowledger);
+            inOrder.verify(acknowledger, timeout(5000)).acknowledge(argThat(sameMessages(firstBatch)));
+            inOrder.verify(acknowledger, timeout(5000)).acknowledge(argThat(sameMessages(secondBatch)));
+        }
+    }
+
+    private ArgumentMatcher<List<? extends Acknowledgeable>> sameMessages(List<Message> messages) {
+        final var ids = messages.stream().map(Message::getId).toList();
+        return acknowledged -> acknowledged.stream().map(message -> ((Indexable) message).getId()).toList().equals(ids);
+    }
+
     private @Nonnull BatchedMessageFilterOutput createOutput(BatchSizeConfig maxBatchSize) {
+        return createOutput(maxBatchSize, Map.of("targetOutput1", targetOutput1), 0);
+    }
+
+    @SuppressForbidden("Using Executors.newSingleThreadExecutor() is okay in tests")
+    private @Nonnull BatchedMessageFilterOutput createOutput(BatchSizeConfig maxBatchSize,
+                                                             Map<String, FilteredMessageOutput> outputs,
+                                                             int concurrentBulkRequests) {
         final var buffer = new IndexSetAwareMessageOutputBuffer(maxBatchSize, objectMapper);
+        metricRegistry = new MetricRegistry();
         return new BatchedMessageFilterOutput(
-                Map.of("targetOutput1", targetOutput1),
+                outputs,
                 new AllOutputsFilter(Map.of(ElasticSearchOutput.FILTER_KEY, mock(FilteredMessageOutput.class))),
-                new MetricRegistry(),
+                metricRegistry,
                 cluster,
                 acknowledger,
                 buffer,
                 gracefulShutdownService,
                 outputFlushInterval,
+                concurrentBulkRequests,
                 shutdownTimeoutMs,
                 Executors.newSingleThreadScheduledExecutor()
         );
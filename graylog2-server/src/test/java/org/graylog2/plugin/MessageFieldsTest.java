@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.plugin;
+
+import org.junit.Test;
+
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class MessageFieldsTest {
+    @Test
+    public void putGetAndRemove() {
+        final MessageFields fields = new MessageFields();
+
+        assertThat(fields.put("foo", "bar")).isNull();
+        assertThat(fields.put("foo", "baz")).isEqualTo("bar");
+        assertThat(fields.get("foo")).isEqualTo("baz");
+        assertThat(fields.containsKey("foo")).isTrue();
+        assertThat(fields.size()).isEqualTo(1);
+
+        assertThat(fields.remove("foo")).isEqualTo("baz");
+        assertThat(fields.remove("foo")).isNull();
+        assertThat(fields.get("foo")).isNull();
+        assertThat(fields).isEmpty();
+    }
+
+    @Test
+    public void supportsNullValues() {
+        final MessageFields fields = new MessageFields();
+
+        fields.put(Message.FIELD_SOURCE, null);
+
+        assertThat(fields.containsKey(Message.FIELD_SOURCE)).isTrue();
+        assertThat(fields.get(Message.FIELD_SOURCE)).isNull();
+        assertThat(fields).containsEntry(Message.FIELD_SOURCE, null);
+    }
+
+    @Test
+    public void rejectsNullKeys() {
+        assertThatThrownBy(() -> new MessageFields().put(null, "value")).isInstanceOf(NullPointerException.class);
+    }
+
+    @Test
+    public void storesCanonicalFieldNames() {
+        final MessageFields fields = new MessageFields();
+        // A distinct instance which is equal to the constant
+        final String key = new String(Message.FIELD_GL2_SOURCE_INPUT.toCharArray());
+
+        fields.put(key, "input-id");
+        fields.put(new String("custom".toCharArray()), "value");
+
+        assertThat(fields.keySet())
+                .anySatisfy(name -> assertThat(name).isSameAs(Message.FIELD_GL2_SOURCE_INPUT))
+                .contains("custom");
+    }
+
+    @Test
+    public void entrySetValuesAreWrittenThrough() {
+        final MessageFields fields = new MessageFields();
+        fields.put("foo", 1);
+        fields.put("bar", 2);
+
+        for (Map.Entry<String, Object> entry : fields.entrySet()) {
+            entry.setValue(((Integer) entry.getValue()) * 10);
+        }
+
+        assertThat(fields).containsOnly(Map.entry("foo", 10), Map.entry("bar", 20));
+    }
+
+    @Test
+    public void iteratorFailsOnConcurrentModification() {
+        final MessageFields fields = new MessageFields();
+        fields.put("foo", 1);
+        fields.put("bar", 2);
+
+        final Iterator<Map.Entry<String, Object>> iterator = fields.entrySet().iterator();
+        iterator.next();
+        fields.put("baz", 3);
+
+        assertThatThrownBy(iterator::next).isInstanceOf(ConcurrentModificationException.class);
+    }
+
+    @Test
+    public void behavesLikeHashMap() {
+        final Random random = new Random(42);
+        final MessageFields fields = new MessageFields();
+        final Map<String, Object> expected = new HashMap<>();
+
+        // Small key space to exercise collisions, growth and backward shift deletion
+        for (int i = 0; i < 100_000; i++) {
+            final String key = "field_" + random.nextInt(200);
+            switch (random.nextInt(3)) {
+                case 0, 1 -> {
+                    final Object value = random.nextInt(10) == 0 ? null : random.nextInt();
+                    assertThat(fields.put(key, value)).isEqualTo(expected.put(key, value));
+                }
+                default -> assertThat(fields.remove(key)).isEqualTo(expected.remove(key));
+            }
+            assertThat(fields.size()).isEqualTo(expected.size());
+        }
+
+        assertThat(fields).isEqualTo(expected);
+        assertThat(expected).isEqualTo(fields);
+        assertThat(fields.hashCode()).isEqualTo(expected.hashCode());
+        for (String key : expected.keySet()) {
+            assertThat(fields.get(key)).isEqualTo(expected.get(key));
+        }
+
+        fields.clear();
+        assertThat(fields).isEmpty();
+        assertThat(fields.get("field_1")).isNull();
+    }
+}
@@ -19,7 +19,9 @@ package org.graylog2.plugin;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.eaio.uuid.UUID;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
@@ -27,6 +29,7 @@ import com.google.common.collect.Sets;
 import org.graylog.failure.FailureCause;
 import org.graylog.failure.ProcessingFailureCause;
 import org.graylog2.indexer.IndexSet;
+import org.graylog2.indexer.messages.SerializationContext;
 import org.graylog2.plugin.streams.Stream;
 import org.graylog2.shared.SuppressForbidden;
 import org.graylog2.shared.bindings.providers.ObjectMapperProvider;
@@ -463,6 +466,58 @@ public class MessageTest {
                 .isEqualTo(43L);
     }
 
+    @Test
+    public void serializeWritesSameDocumentAsToElasticSearchObject() throws Exception {
+        final Stream stream = mock(Stream.class);
+        when(stream.getId()).thenReturn("stream-id");
+        when(stream.getIndexSet()).thenReturn(mock(IndexSet.class));
+        message.addStream(stream);
+        message.addField("string", "wat \"quoted\" \u00e4\u00f6\u00fc");
+        message.addField("long", 42L);
+        message.addField("int", 23);
+        message.addField("double", 1.5d);
+        message.addField("float", 2.25f);
+        message.addField("boolean", true);
+        message.addField("date", new DateTime(2018, 4, 19, 12, 0, DateTimeZone.UTC));
+        message.addField("list", List.of("a", "b"));
+        message.addField("map", Map.of("nested", 1));
+        message.addField("field.with.dots", "dot");
+        message.addProcessingError(new Message.ProcessingError(() -> "Cause", "Failure Message", "Failure Details"));
+
+        final byte[] serialized = message.serialize(SerializationContext.of(objectMapper, new Meter()));
+        final byte[] expected = objectMapper.writeValueAsBytes(message.toElasticSearchObject(objectMapper, new Meter()));
+
+        assertThat(objectMapper.readTree(serialized)).isEqualTo(objectMapper.readTree(expected));
+    }
+
+    @Test
+    public void serializeResolvesKeyConflictsLikeToElasticSearchObject() throws Exception {
+        message.addField("a.b", "dotted");
+        message.addField("a_b", "original");
+        message.addField("c.d_e", "first");
+        message.addField("c_d.e", "second");
+
+        final JsonNode document = objectMapper.readTree(message.serialize(SerializationContext.of(objectMapper, invalidTimestampMeter)));
+        final Map<String, Object> expected = message.toElasticSearchObject(objectMapper, invalidTimestampMeter);
+
+        assertThat(document.get("a_b").asText()).isEqualTo("original");
+        assertThat(document.get("c_d_e").asText()).isIn("first", "second");
+        assertThat(document.has(Message.FIELD_ID)).isFalse();
+        assertThat(ImmutableList.copyOf(document.fieldNames())).containsExactlyInAnyOrderElementsOf(expected.keySet());
+    }
+
+    @Test
+    public void serializeWithoutDateTimeTimestamp() throws Exception {
+        message.addField("timestamp", "time!");
+
+        final Meter errorMeter = metricRegistry.meter("test-meter");
+        final JsonNode document = objectMapper.readTree(message.serialize(SerializationContext.of(objectMapper, errorMeter)));
+
+        assertThat(document.get("timestamp").asText()).isNotEqualTo("time!");
+        assertThat(document.get(Message.FIELD_GL2_PROCESSING_ERROR).asText()).startsWith("Replaced invalid timestamp value");
+        assertEquals(1, errorMeter.getCount());
+    }
+
     @Test
     public void messageSizes() {
         final Message message = new Message("1234567890", "12345", Tools.nowUTC());
@@ -16,17 +16,26 @@
  */
 package org.graylog2.plugin.journal;
 
+import com.google.common.collect.ImmutableMap;
 import org.graylog2.plugin.configuration.Configuration;
 import org.graylog2.plugin.system.SimpleNodeId;
+import org.graylog2.shared.journal.JournalCodecConfigStore;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import java.nio.charset.StandardCharsets;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 public class RawMessageTest {
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     @Test
     public void minimalEncodeDecode() {
         final RawMessage rawMessage = new RawMessage("testmessage".getBytes(StandardCharsets.UTF_8));
@@ -44,4 +53,37 @@ public class RawMessageTest {
         assertEquals("inputid", decodedMsg.getSourceNodes().get(0).inputId);
         assertEquals("5ca1ab1e-0000-4000-a000-000000000000", decodedMsg.getSourceNodes().get(0).nodeId);
     }
+
+    @Test
+    public void encodeDecodeWithCodecConfigStore() throws Exception {
+        final JournalCodecConfigStore codecConfigStore = new JournalCodecConfigStore(temporaryFolder.newFolder().toPath());
+        final Configuration codecConfig = new Configuration(ImmutableMap.of("port", 12201));
+        final RawMessage rawMessage = new RawMessage("testmessage".getBytes(StandardCharsets.UTF_8));
+        rawMessage.setCodecName("gelf");
+        rawMessage.setCodecConfig(codecConfig);
+
+        final byte[] encoded = rawMessage.encode(codecConfigStore);
+        final JournalMessages.JournalMessage journalMessage = JournalMessages.JournalMessage.parseFrom(encoded);
+        assertFalse(journalMessage.getCodec().hasConfig());
+        assertTrue(journalMessage.getCodec().hasConfigHash());
+
+        final RawMessage decodedMsg = RawMessage.decode(encoded, 1, codecConfigStore);
+        assertNotNull(decodedMsg);
+        assertEquals(12201, decodedMsg.getCodecConfig().getInt("port"));
+    }
+
+    @Test
+    public void decodeEmbeddedCodecConfigWithCodecConfigStore() throws Exception {
+        final JournalCodecConfigStore codecConfigStore = new JournalCodecConfigStore(temporaryFolder.newFolder().toPath());
+        final RawMessage rawMessage = new RawMessage("testmessage".getBytes(StandardCharsets.UTF_8));
+        rawMessage.setCodecName("gelf");
+        rawMessage.setCodecConfig(new Configuration(ImmutableMap.of("port", 12201)));
+
+        // Entries written without a store embed the configuration
+        final byte[] encoded = rawMessage.encode();
+        final RawMessage decodedMsg = RawMessage.decode(encoded, 1, codecConfigStore);
+
+        assertNotNull(decodedMsg);
+        assertEquals(12201, decodedMsg.getCodecConfig().getInt("port"));
+    }
 }
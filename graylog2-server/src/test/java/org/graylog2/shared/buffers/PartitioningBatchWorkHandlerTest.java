@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.shared.buffers;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PartitioningBatchWorkHandlerTest {
+    @Test
+    public void passesEventsOfOwnPartitionAtEndOfBatch() throws Exception {
+        final RecordingHandler delegate = new RecordingHandler();
+        final PartitioningBatchWorkHandler<RecordingHandler, String> handler = new PartitioningBatchWorkHandler<>(delegate, 1, 2, 100);
+
+        handler.onEvent("e0", 0, false);
+        handler.onEvent("e1", 1, false);
+        handler.onEvent("e2", 2, false);
+        handler.onEvent("e3", 3, false);
+        assertThat(delegate.batches).isEmpty();
+
+        // The end of the batch belongs to the other partition
+        handler.onEvent("e4", 4, true);
+        assertThat(delegate.batches).containsExactly(List.of("e1", "e3"));
+    }
+
+    @Test
+    public void passesEventsWhenMaxBatchSizeIsReached() throws Exception {
+        final RecordingHandler delegate = new RecordingHandler();
+        final PartitioningBatchWorkHandler<RecordingHandler, String> handler = new PartitioningBatchWorkHandler<>(delegate, 0, 1, 2);
+
+        for (int i = 0; i < 5; i++) {
+            handler.onEvent("e" + i, i, i == 4);
+        }
+
+        assertThat(delegate.batches).containsExactly(List.of("e0", "e1"), List.of("e2", "e3"), List.of("e4"));
+    }
+
+    @Test
+    public void doesNotPassEmptyBatches() throws Exception {
+        final RecordingHandler delegate = new RecordingHandler();
+        final PartitioningBatchWorkHandler<RecordingHandler, String> handler = new PartitioningBatchWorkHandler<>(delegate, 1, 2, 100);
+
+        handler.onEvent("e0", 0, true);
+
+        assertThat(delegate.batches).isEmpty();
+    }
+
+    @Test
+    public void startsNewBatchAfterFailure() throws Exception {
+        final RecordingHandler delegate = new RecordingHandler();
+        delegate.fail = true;
+        final PartitioningBatchWorkHandler<RecordingHandler, String> handler = new PartitioningBatchWorkHandler<>(delegate, 0, 1, 100);
+
+        try {
+            handler.onEvent("e0", 0, true);
+        } catch (IllegalStateException ignored) {
+        }
+        delegate.fail = false;
+        handler.onEvent("e1", 1, true);
+
+        assertThat(delegate.batches).containsExactly(List.of("e0"), List.of("e1"));
+    }
+
+    private static class RecordingHandler implements BatchWorkHandler<String> {
+        private final List<List<String>> batches = new ArrayList<>();
+        private boolean fail = false;
+
+        @Override
+        public void onEvents(List<String> events) {
+            batches.add(List.copyOf(events));
+            if (fail) {
+                throw new IllegalStateException("Failed");
+            }
+        }
+
+        @Override
+        public void onEvent(String event) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
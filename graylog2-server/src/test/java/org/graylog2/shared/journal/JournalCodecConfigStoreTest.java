@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.shared.journal;
+
+import com.google.common.collect.ImmutableMap;
+import org.graylog2.plugin.configuration.Configuration;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class JournalCodecConfigStoreTest {
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Path journalDirectory;
+
+    @Before
+    public void setUp() throws Exception {
+        journalDirectory = temporaryFolder.newFolder("journal").toPath();
+    }
+
+    @Test
+    public void putStoresConfigurationOnce() throws Exception {
+        final JournalCodecConfigStore store = new JournalCodecConfigStore(journalDirectory);
+        final Configuration configuration = new Configuration(ImmutableMap.of("port", 12201, "bind_address", "0.0.0.0"));
+
+        final String hash = store.put(configuration);
+
+        assertThat(hash).matches("[0-9a-f]{64}");
+        assertThat(store.put(new Configuration(ImmutableMap.of("port", 12201, "bind_address", "0.0.0.0")))).isEqualTo(hash);
+        try (var files = Files.list(journalDirectory)) {
+            assertThat(files).singleElement()
+                    .satisfies(file -> assertThat(file.getFileName().toString())
+                            .isEqualTo(JournalCodecConfigStore.FILE_PREFIX + hash + ".json"));
+        }
+        assertThat(store.get(hash)).isSameAs(store.get(hash));
+        assertThat(store.get(hash).getInt("port")).isEqualTo(12201);
+    }
+
+    @Test
+    public void getReadsConfigurationsStoredByPreviousInstance() {
+        final String hash = new JournalCodecConfigStore(journalDirectory)
+                .put(new Configuration(ImmutableMap.of("bind_address", "127.0.0.1")));
+
+        final Configuration configuration = new JournalCodecConfigStore(journalDirectory).get(hash);
+
+        assertThat(configuration).isNotNull();
+        assertThat(configuration.getString("bind_address")).isEqualTo("127.0.0.1");
+    }
+
+    @Test
+    public void emptyConfigurationIsNotStored() throws Exception {
+        final JournalCodecConfigStore store = new JournalCodecConfigStore(journalDirectory);
+
+        assertThat(store.put(Configuration.EMPTY_CONFIGURATION)).isNull();
+        try (var files = Files.list(journalDirectory)) {
+            assertThat(files).isEmpty();
+        }
+    }
+
+    @Test
+    public void getIgnoresUnknownAndInvalidHashes() {
+        final JournalCodecConfigStore store = new JournalCodecConfigStore(journalDirectory);
+
+        assertThat(store.get("0".repeat(64))).isNull();
+        assertThat(store.get("../../etc/passwd")).isNull();
+    }
+
+    @Test
+    public void fromJsonCachesDeserializedConfigurations() {
+        final JournalCodecConfigStore store = new JournalCodecConfigStore(journalDirectory);
+        final String json = new Configuration(ImmutableMap.of("port", 514)).serializeToJson();
+
+        assertThat(store.fromJson(json)).isSameAs(store.fromJson(json));
+        assertThat(store.fromJson(json).getInt("port")).isEqualTo(514);
+        assertThat(store.fromJson(null)).isSameAs(Configuration.EMPTY_CONFIGURATION);
+    }
+}
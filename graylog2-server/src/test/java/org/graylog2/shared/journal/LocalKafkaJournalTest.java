@@ -18,6 +18,7 @@ package org.graylog2.shared.journal;
 
 import com.codahale.metrics.MetricRegistry;
 import com.github.joschi.jadconfig.util.Size;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
 import com.google.common.eventbus.EventBus;
@@ -122,6 +123,7 @@ public class LocalKafkaJournalTest {
                 1_000_000,
                 Duration.standardMinutes(1),
                 100,
+                JournalCompression.NONE,
                 new MetricRegistry(),
                 serverStatus);
 
@@ -136,6 +138,27 @@ public class LocalKafkaJournalTest {
         assertEquals("message", new String(firstMessage.getPayload(), UTF_8));
     }
 
+    @Test
+    public void startsWithStoredCodecConfigurations() {
+        final JournalCodecConfigStore codecConfigStore = new JournalCodecConfigStore(journalDirectory.toPath());
+        assertNotNull(codecConfigStore.put(new org.graylog2.plugin.configuration.Configuration(ImmutableMap.of("port", 5555))));
+
+        final LocalKafkaJournal journal = new LocalKafkaJournal(journalDirectory.toPath(),
+                scheduler,
+                Size.megabytes(100L),
+                Duration.standardHours(1),
+                Size.megabytes(5L),
+                Duration.standardHours(1),
+                1_000_000,
+                Duration.standardMinutes(1),
+                100,
+                JournalCompression.NONE,
+                new MetricRegistry(),
+                serverStatus);
+
+        assertEquals(0L, journal.write("id".getBytes(UTF_8), "message".getBytes(UTF_8)));
+    }
+
     @Test
     public void readAtLeastOne() throws Exception {
         final Journal journal = new LocalKafkaJournal(journalDirectory.toPath(),
@@ -147,6 +170,7 @@ public class LocalKafkaJournalTest {
                 1_000_000,
                 Duration.standardMinutes(1),
                 100,
+                JournalCompression.NONE,
                 new MetricRegistry(),
                 serverStatus);
 
@@ -203,6 +227,7 @@ public class LocalKafkaJournalTest {
                 1_000_000,
                 Duration.standardMinutes(1),
                 100,
+                JournalCompression.NONE,
                 new MetricRegistry(),
                 serverStatus);
 
@@ -235,6 +260,7 @@ public class LocalKafkaJournalTest {
                 1_000_000,
                 Duration.standardMinutes(1),
                 100,
+                JournalCompression.NONE,
                 new MetricRegistry(),
                 serverStatus);
 
@@ -275,6 +301,7 @@ public class LocalKafkaJournalTest {
                 1_000_000,
                 Duration.standardMinutes(1),
                 100,
+                JournalCompression.NONE,
                 new MetricRegistry(),
                 serverStatus);
 
@@ -304,6 +331,7 @@ public class LocalKafkaJournalTest {
                 1_000_000,
                 Duration.standardMinutes(1),
                 100,
+                JournalCompression.NONE,
                 new MetricRegistry(),
                 serverStatus);
         final File messageJournalDir = new File(journalDirectory, "messagejournal-0");
@@ -340,6 +368,7 @@ public class LocalKafkaJournalTest {
                     1_000_000,
                     Duration.standardMinutes(1),
                     100,
+                    JournalCompression.NONE,
                     new MetricRegistry(),
                     serverStatus);
             final File messageJournalDir = new File(journalDirectory, "messagejournal-0");
@@ -394,6 +423,7 @@ public class LocalKafkaJournalTest {
                 1_000_000,
                 Duration.standardMinutes(1),
                 100,
+                JournalCompression.NONE,
                 new MetricRegistry(),
                 serverStatus);
         final File messageJournalDir = new File(journalDirectory, "messagejournal-0");
@@ -445,6 +475,7 @@ public class LocalKafkaJournalTest {
                     1_000_000,
                     Duration.standardMinutes(1),
                     100,
+                    JournalCompression.NONE,
                     new MetricRegistry(),
                     serverStatus);
             fail("Expected exception");
@@ -472,6 +503,7 @@ public class LocalKafkaJournalTest {
                 1_000_000,
                 Duration.standardSeconds(1L),
                 90,
+                JournalCompression.NONE,
                 new MetricRegistry(),
                 serverStatus);
 
@@ -495,6 +527,7 @@ public class LocalKafkaJournalTest {
                 1_000_000,
                 Duration.standardSeconds(1L),
                 90,
+                JournalCompression.NONE,
                 new MetricRegistry(),
                 serverStatus);
 
@@ -515,6 +548,7 @@ public class LocalKafkaJournalTest {
                 1_000_000,
                 Duration.standardMinutes(1),
                 100,
+                JournalCompression.NONE,
                 new MetricRegistry(),
                 serverStatus);
 
@@ -559,6 +593,7 @@ public class LocalKafkaJournalTest {
                 1_000_000,
                 Duration.standardMinutes(1),
                 100,
+                JournalCompression.NONE,
                 new MetricRegistry(),
                 serverStatus);
 
@@ -591,6 +626,7 @@ public class LocalKafkaJournalTest {
                 1_000_000,
                 Duration.standardMinutes(1),
                 LocalKafkaJournal.THRESHOLD_THROTTLING_DISABLED,
+                JournalCompression.NONE,
                 new MetricRegistry(),
                 serverStatus);
 
@@ -608,4 +644,107 @@ public class LocalKafkaJournalTest {
         assertEquals(1, cleanedLogs);
         assertThat(journal.getJournalUtilization().get()).isLessThan(utilizationAfterBulk);
     }
+
+    @Test
+    public void compressedWriteAndRead() throws IOException {
+        final MetricRegistry metricRegistry = new MetricRegistry();
+        final LocalKafkaJournal journal = new LocalKafkaJournal(journalDirectory.toPath(),
+                scheduler,
+                Size.megabytes(100L),
+                Duration.standardHours(1),
+                Size.megabytes(5L),
+                Duration.standardHours(1),
+                1_000_000,
+                Duration.standardMinutes(1),
+                100,
+                JournalCompression.SNAPPY,
+                metricRegistry,
+                serverStatus);
+        final LocalKafkaJournal uncompressedJournal = new LocalKafkaJournal(temporaryFolder.newFolder().toPath(),
+                scheduler,
+                Size.megabytes(100L),
+                Duration.standardHours(1),
+                Size.megabytes(5L),
+                Duration.standardHours(1),
+                1_000_000,
+                Duration.standardMinutes(1),
+                100,
+                JournalCompression.NONE,
+                new MetricRegistry(),
+                serverStatus);
+
+        final List<Journal.Entry> entries = IntStream.range(0, 10_000)
+                .mapToObj(i -> journal.createEntry(("id" + i).getBytes(UTF_8), ("compressible message " + i).getBytes(UTF_8)))
+                .toList();
+        assertThat(journal.write(entries)).isEqualTo(9_999L);
+        assertThat(uncompressedJournal.write(entries)).isEqualTo(9_999L);
+
+        // Size limits and throttling work on the compressed size
+        assertThat(journal.size()).isLessThan(uncompressedJournal.size());
+        assertThat(journal.getJournalUtilization().get()).isLessThan(uncompressedJournal.getJournalUtilization().get());
+        assertThat((Double) metricRegistry.getGauges().get(LocalKafkaJournal.class.getName() + ".compressionRatio").getValue())
+                .isGreaterThan(1.0d);
+        assertThat(metricRegistry.timer(LocalKafkaJournal.class.getName() + ".compressionTime").getCount()).isPositive();
+
+        // Read in chunks which don't line up with the compressed batches
+        long expectedOffset = 0L;
+        List<Journal.JournalReadEntry> messages;
+        while (!(messages = journal.read(7)).isEmpty()) {
+            assertThat(messages).hasSizeLessThanOrEqualTo(7);
+            for (Journal.JournalReadEntry message : messages) {
+                assertThat(message.getOffset()).isEqualTo(expectedOffset);
+                assertThat(new String(message.getPayload(), UTF_8)).isEqualTo("compressible message " + expectedOffset);
+                expectedOffset++;
+            }
+        }
+        assertThat(expectedOffset).isEqualTo(10_000L);
+
+        // Reading from an offset within a compressed batch
+        assertThat(journal.read(4_242L, 3)).extracting(Journal.JournalReadEntry::getOffset)
+                .containsExactly(4_242L, 4_243L, 4_244L);
+    }
+
+    @Test
+    public void readsUncompressedEntriesAfterEnablingCompression() throws Exception {
+        final LocalKafkaJournal uncompressedJournal = new LocalKafkaJournal(journalDirectory.toPath(),
+                scheduler,
+                Size.megabytes(100L),
+                Duration.standardHours(1),
+                Size.megabytes(5L),
+                Duration.standardHours(1),
+                1_000_000,
+                Duration.standardMinutes(1),
+                100,
+                JournalCompression.NONE,
+                new MetricRegistry(),
+                serverStatus);
+        uncompressedJournal.startAsync().awaitRunning();
+        for (int i = 0; i < 10; i++) {
+            uncompressedJournal.write(("id" + i).getBytes(UTF_8), ("message " + i).getBytes(UTF_8));
+        }
+        uncompressedJournal.stopAsync().awaitTerminated();
+
+        final LocalKafkaJournal journal = new LocalKafkaJournal(journalDirectory.toPath(),
+                scheduler,
+                Size.megabytes(100L),
+                Duration.standardHours(1),
+                Size.megabytes(5L),
+                Duration.standardHours(1),
+                1_000_000,
+                Duration.standardMinutes(1),
+                100,
+                JournalCompression.GZIP,
+                new MetricRegistry(),
+                serverStatus);
+        final List<Journal.Entry> entries = IntStream.range(10, 20)
+                .mapToObj(i -> journal.createEntry(("id" + i).getBytes(UTF_8), ("message " + i).getBytes(UTF_8)))
+                .toList();
+        assertThat(journal.write(entries)).isEqualTo(19L);
+
+        final List<Journal.JournalReadEntry> messages = journal.read(100);
+        assertThat(messages).extracting(Journal.JournalReadEntry::getOffset)
+                .containsExactlyElementsOf(IntStream.range(0, 20).mapToObj(Long::valueOf).toList());
+        assertThat(messages).extracting(entry -> new String(entry.getPayload(), UTF_8))
+                .containsExactlyElementsOf(IntStream.range(0, 20).mapToObj(i -> "message " + i).toList());
+    }
 }
@@ -0,0 +1,445 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.shared.journal;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.github.joschi.jadconfig.util.Size;
+import com.google.common.eventbus.EventBus;
+import org.graylog2.Configuration;
+import org.graylog2.audit.NullAuditEventSender;
+import org.graylog2.plugin.InstantMillisProvider;
+import org.graylog2.plugin.ServerStatus;
+import org.graylog2.plugin.lifecycles.Lifecycle;
+import org.graylog2.plugin.system.FilePersistedNodeIdProvider;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeUtils;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Duration;
+import org.joda.time.Period;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class MappedSegmentJournalTest {
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private ServerStatus serverStatus;
+    private ScheduledThreadPoolExecutor scheduler;
+    private Path journalDirectory;
+    private MetricRegistry metricRegistry;
+    private final List<MappedSegmentJournal> journals = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        scheduler = new ScheduledThreadPoolExecutor(1);
+        scheduler.prestartCoreThread();
+        journalDirectory = temporaryFolder.newFolder().toPath();
+        metricRegistry = new MetricRegistry();
+
+        final File nodeId = temporaryFolder.newFile("node-id");
+        Files.write(nodeId.toPath(), UUID.randomUUID().toString().getBytes(StandardCharsets.UTF_8));
+
+        final var nodeIdProvider = new FilePersistedNodeIdProvider(nodeId.getAbsolutePath());
+        final var configuration = new Configuration() {
+            @Override
+            public String getNodeIdFile() {
+                return nodeId.getAbsolutePath();
+            }
+        };
+        serverStatus = new ServerStatus(configuration, EnumSet.of(ServerStatus.Capability.SERVER), new EventBus("MappedSegmentJournalTest"), NullAuditEventSender::new, nodeIdProvider.get());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        for (MappedSegmentJournal journal : journals) {
+            journal.close();
+        }
+        scheduler.shutdown();
+    }
+
+    private MappedSegmentJournal openJournal(Size segmentSize, Size retentionSize, Duration retentionAge,
+                                             JournalFsyncPolicy fsyncPolicy, int throttleThresholdPercentage) {
+        final MappedSegmentJournal journal = new MappedSegmentJournal(journalDirectory,
+                scheduler,
+                segmentSize,
+                Duration.standardHours(1),
+                retentionSize,
+                retentionAge,
+                1_000_000,
+                Duration.standardMinutes(1),
+                fsyncPolicy,
+                throttleThresholdPercentage,
+                metricRegistry,
+                serverStatus);
+        journals.add(journal);
+        return journal;
+    }
+
+    private MappedSegmentJournal openJournal(Size segmentSize) {
+        return openJournal(segmentSize, Size.petabytes(1L), Duration.standardDays(1), JournalFsyncPolicy.INTERVAL, 100);
+    }
+
+    private MappedSegmentJournal reopen(MappedSegmentJournal journal, Size segmentSize) throws IOException {
+        journal.close();
+        journals.remove(journal);
+        return openJournal(segmentSize);
+    }
+
+    private static byte[] message(int i) {
+        return ("message-" + i).getBytes(UTF_8);
+    }
+
+    private static void writeMessages(Journal journal, int from, int to) {
+        final List<Journal.Entry> entries = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            entries.add(journal.createEntry(("id-" + i).getBytes(UTF_8), message(i)));
+        }
+        journal.write(entries);
+    }
+
+    private static List<String> payloads(List<Journal.JournalReadEntry> entries) {
+        return entries.stream().map(entry -> new String(entry.getPayload(), UTF_8)).collect(Collectors.toList());
+    }
+
+    private List<Path> filesWithSuffix(String suffix) throws IOException {
+        try (Stream<Path> files = Files.list(journalDirectory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(suffix)).sorted().collect(Collectors.toList());
+        }
+    }
+
+    @Test
+    public void writeAndRead() {
+        final MappedSegmentJournal journal = openJournal(Size.megabytes(1L));
+
+        assertThat(journal.write("id".getBytes(UTF_8), "message".getBytes(UTF_8))).isEqualTo(0L);
+        assertThat(journal.write("id".getBytes(UTF_8), "other".getBytes(UTF_8))).isEqualTo(1L);
+
+        final List<Journal.JournalReadEntry> entries = journal.read(10);
+        assertThat(entries).extracting(Journal.JournalReadEntry::getOffset).containsExactly(0L, 1L);
+        assertThat(payloads(entries)).containsExactly("message", "other");
+
+        final ByteBuffer payload = entries.get(0).getPayloadBuffer();
+        assertThat(payload.isReadOnly()).isTrue();
+        assertThat(entries.get(0).getPayloadSize()).isEqualTo(7);
+
+        assertThat(journal.getNextReadOffset()).isEqualTo(2L);
+        assertThat(journal.read(10)).isEmpty();
+    }
+
+    @Test
+    public void readAtLeastOne() {
+        final MappedSegmentJournal journal = openJournal(Size.megabytes(1L));
+        writeMessages(journal, 0, 3);
+
+        assertThat(payloads(journal.read(0))).containsExactly("message-0");
+        assertThat(payloads(journal.read(5))).containsExactly("message-1", "message-2");
+    }
+
+    @Test
+    public void emptyAndOversizedMessagesAreDiscarded() {
+        final MappedSegmentJournal journal = openJournal(Size.kilobytes(1L));
+
+        final long offset = journal.write(List.of(
+                journal.createEntry("a".getBytes(UTF_8), new byte[0]),
+                journal.createEntry("b".getBytes(UTF_8), new byte[2048]),
+                journal.createEntry("c".getBytes(UTF_8), message(1))));
+
+        assertThat(offset).isEqualTo(0L);
+        assertThat(payloads(journal.read(10))).containsExactly("message-1");
+    }
+
+    @Test
+    public void segmentRotationAndReadsAcrossSegments() throws Exception {
+        final MappedSegmentJournal journal = openJournal(Size.kilobytes(1L));
+        writeMessages(journal, 0, 200);
+
+        assertThat(journal.numberOfSegments()).isGreaterThan(1);
+        assertThat(filesWithSuffix(MappedSegment.SEGMENT_FILE_SUFFIX)).hasSize(journal.numberOfSegments());
+        // all but the active segment are sealed
+        assertThat(filesWithSuffix(MappedSegment.INDEX_FILE_SUFFIX)).hasSize(journal.numberOfSegments() - 1);
+
+        final List<Journal.JournalReadEntry> entries = journal.read(1000);
+        assertThat(entries).hasSize(200);
+        for (int i = 0; i < 200; i++) {
+            assertThat(entries.get(i).getOffset()).isEqualTo(i);
+            assertThat(new String(entries.get(i).getPayload(), UTF_8)).isEqualTo("message-" + i);
+        }
+        assertThat(journal.getLogEndOffset()).isEqualTo(200L);
+    }
+
+    @Test
+    public void readsFromTheMiddleOfLargeSegments() {
+        final MappedSegmentJournal journal = openJournal(Size.megabytes(1L));
+        writeMessages(journal, 0, 20_000);
+
+        assertThat(journal.numberOfSegments()).isEqualTo(1);
+        for (int offset : new int[]{0, 1, 511, 512, 4095, 12_345, 19_999}) {
+            final List<Journal.JournalReadEntry> entries = journal.read(offset, 2);
+            assertThat(entries.get(0).getOffset()).isEqualTo(offset);
+            assertThat(new String(entries.get(0).getPayload(), UTF_8)).isEqualTo("message-" + offset);
+        }
+    }
+
+    @Test
+    public void reopenRestoresEntriesAndCommittedOffset() throws Exception {
+        MappedSegmentJournal journal = openJournal(Size.kilobytes(1L));
+        writeMessages(journal, 0, 100);
+        journal.markJournalOffsetCommitted(41L);
+        final int segments = journal.numberOfSegments();
+
+        journal = reopen(journal, Size.kilobytes(1L));
+
+        assertThat(journal.numberOfSegments()).isEqualTo(segments);
+        assertThat(journal.getLogEndOffset()).isEqualTo(100L);
+        assertThat(journal.getCommittedOffset()).isEqualTo(41L);
+        assertThat(journal.getNextReadOffset()).isEqualTo(42L);
+        assertThat(payloads(journal.read(1000))).hasSize(58).first().isEqualTo("message-42");
+
+        // appending continues in the recovered active segment
+        assertThat(journal.write("id".getBytes(UTF_8), message(100))).isEqualTo(100L);
+    }
+
+    @Test
+    public void recoveryWithoutIndexFiles() throws Exception {
+        MappedSegmentJournal journal = openJournal(Size.kilobytes(1L));
+        writeMessages(journal, 0, 100);
+        journal.close();
+        journals.remove(journal);
+        for (Path indexFile : filesWithSuffix(MappedSegment.INDEX_FILE_SUFFIX)) {
+            Files.delete(indexFile);
+        }
+
+        journal = openJournal(Size.kilobytes(1L));
+
+        assertThat(journal.getLogEndOffset()).isEqualTo(100L);
+        assertThat(payloads(journal.read(0, 1000))).hasSize(100).last().isEqualTo("message-99");
+    }
+
+    @Test
+    public void recoveryDiscardsCorruptTailOfActiveSegment() throws Exception {
+        MappedSegmentJournal journal = openJournal(Size.megabytes(1L));
+        writeMessages(journal, 0, 3);
+        journal.close();
+        journals.remove(journal);
+
+        // flip a payload byte of the last record
+        final Path segmentFile = filesWithSuffix(MappedSegment.SEGMENT_FILE_SUFFIX).get(0);
+        final int lastRecordPosition = 2 * (MappedSegment.RECORD_HEADER_SIZE + message(0).length);
+        final byte[] bytes = Files.readAllBytes(segmentFile);
+        bytes[lastRecordPosition + MappedSegment.RECORD_HEADER_SIZE] = 'X';
+        Files.write(segmentFile, bytes);
+
+        journal = openJournal(Size.megabytes(1L));
+
+        assertThat(journal.getLogEndOffset()).isEqualTo(2L);
+        assertThat(journal.write("id".getBytes(UTF_8), message(3))).isEqualTo(2L);
+        assertThat(payloads(journal.read(10))).containsExactly("message-0", "message-1", "message-3");
+    }
+
+    @Test
+    public void readSkipsOffsetsLostInTruncatedSegments() throws Exception {
+        MappedSegmentJournal journal = openJournal(Size.kilobytes(1L));
+        writeMessages(journal, 0, 100);
+        journal.close();
+        journals.remove(journal);
+
+        // truncate the first segment in the middle of a record and drop its index, so it has to be recovered
+        final Path firstSegment = filesWithSuffix(MappedSegment.SEGMENT_FILE_SUFFIX).get(0);
+        Files.delete(filesWithSuffix(MappedSegment.INDEX_FILE_SUFFIX).get(0));
+        final byte[] bytes = Files.readAllBytes(firstSegment);
+        Files.write(firstSegment, Arrays.copyOf(bytes, bytes.length - 3));
+
+        journal = openJournal(Size.kilobytes(1L));
+        final MappedSegment first = journal.getSegments().iterator().next();
+        final long lostOffset = first.getEndOffset();
+
+        final List<Journal.JournalReadEntry> entries = journal.read(0, 1000);
+        assertThat(entries).hasSize(99);
+        assertThat(entries).extracting(Journal.JournalReadEntry::getOffset).doesNotContain(lostOffset);
+        assertThat(payloads(entries)).last().isEqualTo("message-99");
+    }
+
+    @Test
+    public void segmentCommittedCleanup() throws Exception {
+        final MappedSegmentJournal journal = openJournal(Size.kilobytes(1L));
+        writeMessages(journal, 0, 200);
+        final int segments = journal.numberOfSegments();
+        assertThat(segments).isGreaterThan(2);
+
+        // nothing committed yet
+        assertThat(journal.runRetention()).isZero();
+
+        final List<MappedSegment> segmentList = new ArrayList<>();
+        journal.getSegments().forEach(segmentList::add);
+        final long secondSegmentStart = segmentList.get(1).getBaseOffset();
+
+        journal.markJournalOffsetCommitted(secondSegmentStart - 1);
+        assertThat(journal.runRetention()).as("the segment containing the committed offset is kept").isZero();
+
+        journal.markJournalOffsetCommitted(secondSegmentStart);
+        assertThat(journal.runRetention()).isEqualTo(1);
+        assertThat(journal.getLogStartOffset()).isEqualTo(secondSegmentStart);
+        assertThat(filesWithSuffix(MappedSegment.SEGMENT_FILE_SUFFIX)).hasSize(segments - 1);
+
+        journal.markJournalOffsetCommitted(1000L);
+        assertThat(journal.runRetention()).as("the active segment is never purged").isEqualTo(segments - 2);
+        assertThat(journal.numberOfSegments()).isEqualTo(1);
+        assertThat(journal.read(0, 1).get(0).getOffset()).isEqualTo(journal.getLogStartOffset());
+    }
+
+    @Test
+    public void deletedSegmentsAreUnmappedOnceTheirReaderReadsAgain() {
+        final MappedSegmentJournal journal = openJournal(Size.kilobytes(1L));
+        writeMessages(journal, 0, 200);
+        final MappedSegment firstSegment = journal.getSegments().iterator().next();
+        final long secondSegmentStart = firstSegment.getEndOffset();
+
+        final List<Journal.JournalReadEntry> entries = journal.read(0, 5);
+        journal.markJournalOffsetCommitted(secondSegmentStart);
+        assertThat(journal.runRetention()).isEqualTo(1);
+
+        assertThat(firstSegment.getFile()).doesNotExist();
+        assertThat(firstSegment.isReleased()).as("the segment is still in use by the reader").isFalse();
+        assertThat(payloads(entries)).containsExactly("message-0", "message-1", "message-2", "message-3", "message-4");
+
+        assertThat(journal.read(secondSegmentStart, 1)).hasSize(1);
+        assertThat(firstSegment.isReleased()).isTrue();
+    }
+
+    @Test
+    public void segmentSizeCleanup() {
+        final MappedSegmentJournal journal = openJournal(Size.kilobytes(1L), Size.kilobytes(3L),
+                Duration.standardDays(1), JournalFsyncPolicy.INTERVAL, SegmentedJournal.THRESHOLD_THROTTLING_DISABLED);
+        writeMessages(journal, 0, 400);
+        assertThat(journal.size()).isGreaterThan(Size.kilobytes(3L).toBytes());
+
+        final int purged = journal.runRetention();
+
+        assertThat(purged).isPositive();
+        assertThat(journal.getPurgedSegmentsInLastRetention()).isEqualTo(purged);
+        // only whole segments are deleted
+        assertThat(journal.size()).isLessThan(Size.kilobytes(4L).toBytes());
+        assertThat(journal.getLogStartOffset()).isPositive();
+        assertThat(payloads(journal.read(0, 1000))).last().isEqualTo("message-399");
+    }
+
+    @Test
+    public void segmentAgeCleanup() throws Exception {
+        final InstantMillisProvider clock = new InstantMillisProvider(DateTime.now(DateTimeZone.UTC));
+        DateTimeUtils.setCurrentMillisProvider(clock);
+        try {
+            final MappedSegmentJournal journal = openJournal(Size.kilobytes(1L), Size.petabytes(1L),
+                    Duration.standardMinutes(1), JournalFsyncPolicy.INTERVAL, 100);
+            writeMessages(journal, 0, 60);
+            clock.tick(Period.seconds(30));
+            writeMessages(journal, 60, 120);
+            final int segments = journal.numberOfSegments();
+
+            assertThat(journal.runRetention()).isZero();
+
+            clock.tick(Period.seconds(120));
+
+            assertThat(journal.runRetention()).as("all segments expired").isEqualTo(segments);
+            assertThat(journal.numberOfSegments()).as("a new active segment has been rolled").isEqualTo(1);
+            assertThat(journal.size()).isZero();
+            assertThat(journal.write("id".getBytes(UTF_8), message(120))).isEqualTo(120L);
+        } finally {
+            DateTimeUtils.setCurrentMillisSystem();
+        }
+    }
+
+    @Test
+    public void serverStatusThrottledIfJournalUtilizationIsHigherThanThreshold() {
+        serverStatus.running();
+        final MappedSegmentJournal journal = openJournal(Size.kilobytes(1L), Size.kilobytes(4L),
+                Duration.standardHours(1L), JournalFsyncPolicy.INTERVAL, 90);
+        writeMessages(journal, 0, 400);
+
+        journal.runRetention();
+
+        assertThat(serverStatus.getLifecycle()).isEqualTo(Lifecycle.THROTTLED);
+        assertThat(journal.getJournalUtilization()).hasValueSatisfying(utilization -> assertThat(utilization).isGreaterThan(90.0));
+    }
+
+    @Test
+    public void serverStatusUnthrottledIfJournalUtilizationIsLowerThanThreshold() {
+        serverStatus.throttle();
+        final MappedSegmentJournal journal = openJournal(Size.kilobytes(1L), Size.kilobytes(4L),
+                Duration.standardHours(1L), JournalFsyncPolicy.INTERVAL, 90);
+
+        journal.runRetention();
+
+        assertThat(serverStatus.getLifecycle()).isEqualTo(Lifecycle.RUNNING);
+    }
+
+    @Test
+    public void lockedJournalDir() {
+        openJournal(Size.megabytes(1L));
+
+        assertThatThrownBy(() -> openJournal(Size.megabytes(1L)))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("already in use");
+    }
+
+    @Test
+    public void fsyncPolicyAlwaysForcesEveryWrite() {
+        final MappedSegmentJournal journal = openJournal(Size.megabytes(1L), Size.petabytes(1L),
+                Duration.standardDays(1), JournalFsyncPolicy.ALWAYS, 100);
+        writeMessages(journal, 0, 10);
+
+        assertThat(gaugeValue("unflushedMessages")).isEqualTo(0L);
+        assertThat(gaugeValue("recoveryPoint")).isEqualTo(10L);
+    }
+
+    @Test
+    public void fsyncPolicyNoneLeavesFlushingToTheOperatingSystem() {
+        final MappedSegmentJournal journal = openJournal(Size.megabytes(1L), Size.petabytes(1L),
+                Duration.standardDays(1), JournalFsyncPolicy.NONE, 100);
+        writeMessages(journal, 0, 10);
+
+        assertThat(gaugeValue("unflushedMessages")).isEqualTo(10L);
+        assertThat(gaugeValue(SegmentedJournal.GAUGE_UNCOMMITTED_MESSAGES)).isEqualTo(10L);
+    }
+
+    private Object gaugeValue(String name) {
+        final Gauge<?> gauge = metricRegistry.getGauges().get(MetricRegistry.name(MappedSegmentJournal.class, name));
+        return gauge.getValue();
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.streams;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import org.bson.types.ObjectId;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.TestMessageFactory;
+import org.graylog2.plugin.streams.Stream;
+import org.graylog2.plugin.streams.StreamRuleType;
+import org.graylog2.shared.SuppressForbidden;
+import org.graylog2.streams.matchers.StreamRuleMock;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Runs all {@link StreamRouterEngineTest} tests against the {@link IndexedStreamRouterEngine}.
+ */
+public class IndexedStreamRouterEngineTest extends StreamRouterEngineTest {
+    @Override
+    @SuppressForbidden("Executors#newSingleThreadExecutor() is okay for tests")
+    protected StreamRouterEngine newEngine(List<Stream> streams) {
+        return new IndexedStreamRouterEngine(streams, Executors.newSingleThreadExecutor(), streamFaultManager,
+                streamMetrics, defaultStreamProvider, new MetricRegistry());
+    }
+
+    @Test
+    public void testExactRulesOnSameField() {
+        final StreamMock orStream = new StreamMock(ImmutableMap.of("_id", new ObjectId(), "title", "or", "matching_type", Stream.MatchingType.OR));
+        final StreamMock andStream = new StreamMock(ImmutableMap.of("_id", new ObjectId(), "title", "and", "matching_type", Stream.MatchingType.AND));
+        final StreamMock invertedStream = new StreamMock(ImmutableMap.of("_id", new ObjectId(), "title", "inverted", "matching_type", Stream.MatchingType.AND));
+
+        orStream.setStreamRules(Lists.newArrayList(
+                exactRule(orStream, "source", "host-a", false),
+                exactRule(orStream, "source", "host-b", false)));
+        andStream.setStreamRules(Lists.newArrayList(
+                exactRule(andStream, "source", "host-a", false),
+                exactRule(andStream, "facility", "kernel", false)));
+        invertedStream.setStreamRules(Lists.newArrayList(
+                exactRule(invertedStream, "source", "host-a", true)));
+
+        final StreamRouterEngine engine = newEngine(Lists.newArrayList(orStream, andStream, invertedStream));
+
+        assertThat(engine.match(message("host-a", null))).containsExactlyInAnyOrder(orStream);
+        assertThat(engine.match(message(" host-a ", "kernel"))).containsExactlyInAnyOrder(orStream, andStream);
+        assertThat(engine.match(message("host-b", "kernel"))).containsExactlyInAnyOrder(orStream, invertedStream);
+        assertThat(engine.match(message("host-c", null))).containsExactlyInAnyOrder(invertedStream);
+    }
+
+    @Test
+    public void testContainsRulesOnSameField() {
+        final StreamMock orStream = new StreamMock(ImmutableMap.of("_id", new ObjectId(), "title", "or", "matching_type", Stream.MatchingType.OR));
+        final StreamMock andStream = new StreamMock(ImmutableMap.of("_id", new ObjectId(), "title", "and", "matching_type", Stream.MatchingType.AND));
+
+        orStream.setStreamRules(Lists.newArrayList(
+                rule(orStream, StreamRuleType.CONTAINS, "message", "error", false),
+                rule(orStream, StreamRuleType.CONTAINS, "message", "fatal", false)));
+        andStream.setStreamRules(Lists.newArrayList(
+                rule(andStream, StreamRuleType.CONTAINS, "message", "disk", false),
+                rule(andStream, StreamRuleType.CONTAINS, "message", "error", true)));
+
+        final StreamRouterEngine engine = newEngine(Lists.newArrayList(orStream, andStream));
+
+        assertThat(engine.match(messageWithText("a fatal disk failure"))).containsExactlyInAnyOrder(orStream, andStream);
+        assertThat(engine.match(messageWithText("disk error"))).containsExactlyInAnyOrder(orStream);
+        assertThat(engine.match(messageWithText("disk full"))).containsExactlyInAnyOrder(andStream);
+        assertThat(engine.match(messageWithText("all good"))).isEmpty();
+    }
+
+    @Test
+    public void testRegexTimeoutRegistersStreamFault() {
+        when(streamFaultManager.getStreamProcessingTimeout()).thenReturn(50L);
+        final StreamMock stream = new StreamMock(ImmutableMap.of("_id", new ObjectId(), "title", "regex", "matching_type", Stream.MatchingType.AND));
+        stream.setStreamRules(Lists.newArrayList(rule(stream, StreamRuleType.REGEX, "message", "(.*a){12}b", false)));
+
+        final StreamRouterEngine engine = newEngine(Lists.newArrayList(stream));
+
+        assertThat(engine.match(messageWithText("a".repeat(12) + "b"))).containsExactly(stream);
+        // Catastrophic backtracking doesn't finish within the timeout
+        assertThat(engine.match(messageWithText("a".repeat(40)))).isEmpty();
+        verify(streamFaultManager).registerFailure(stream);
+    }
+
+    @Test
+    public void testBacktrackingRegexOnLongValueIsNoFault() {
+        when(streamFaultManager.getStreamProcessingTimeout()).thenReturn(2000L);
+        final StreamMock stream = new StreamMock(ImmutableMap.of("_id", new ObjectId(), "title", "regex", "matching_type", Stream.MatchingType.AND));
+        stream.setStreamRules(Lists.newArrayList(rule(stream, StreamRuleType.REGEX, "message", ".*foo", false)));
+
+        final StreamRouterEngine engine = newEngine(Lists.newArrayList(stream));
+        final String text = "x".repeat(2048);
+
+        assertThat(engine.match(messageWithText(text))).isEmpty();
+        assertThat(engine.match(messageWithText(text + "foo"))).containsExactly(stream);
+        verify(streamFaultManager, never()).registerFailure(stream);
+    }
+
+    private StreamRuleMock exactRule(Stream stream, String field, String value, boolean inverted) {
+        return rule(stream, StreamRuleType.EXACT, field, value, inverted);
+    }
+
+    private StreamRuleMock rule(Stream stream, StreamRuleType type, String field, String value, boolean inverted) {
+        return new StreamRuleMock(ImmutableMap.<String, Object>builder()
+                .put("_id", new ObjectId())
+                .put("field", field)
+                .put("value", value)
+                .put("type", type.toInteger())
+                .put("inverted", inverted)
+                .put("stream_id", stream.getId())
+                .build());
+    }
+
+    private Message messageWithText(String text) {
+        return new TestMessageFactory().createMessage(text, "localhost", new DateTime(DateTimeZone.UTC));
+    }
+
+    private Message message(String source, String facility) {
+        final Message message = new TestMessageFactory().createMessage("test message", source, new DateTime(DateTimeZone.UTC));
+        if (facility != null) {
+            message.addField("facility", facility);
+        }
+        return message;
+    }
+}
@@ -57,12 +57,12 @@ public class StreamRouterEngineTest {
     public final MockitoRule mockitoRule = MockitoJUnit.rule();
 
     @Mock
-    private StreamFaultManager streamFaultManager;
+    protected StreamFaultManager streamFaultManager;
     @Mock
     private Stream defaultStream;
-    private Provider<Stream> defaultStreamProvider;
+    protected Provider<Stream> defaultStreamProvider;
 
-    private StreamMetrics streamMetrics;
+    protected StreamMetrics streamMetrics;
     private final MessageFactory messageFactory = new TestMessageFactory();
 
     @Before
@@ -73,7 +73,7 @@ public class StreamRouterEngineTest {
     }
 
     @SuppressForbidden("Executors#newSingleThreadExecutor() is okay for tests")
-    private StreamRouterEngine newEngine(List<Stream> streams) {
+    protected StreamRouterEngine newEngine(List<Stream> streams) {
         return new StreamRouterEngine(streams, Executors.newSingleThreadExecutor(), streamFaultManager, streamMetrics,
                 defaultStreamProvider, new MetricRegistry());
     }
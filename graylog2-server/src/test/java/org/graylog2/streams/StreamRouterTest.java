@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.streams;
+
+import com.github.joschi.jadconfig.util.Duration;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.eventbus.EventBus;
+import org.bson.types.ObjectId;
+import org.graylog2.plugin.ServerStatus;
+import org.graylog2.plugin.streams.Stream;
+import org.graylog2.streams.events.StreamsChangedEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class StreamRouterTest {
+    @Mock
+    private StreamService streamService;
+    @Mock
+    private ServerStatus serverStatus;
+    @Mock
+    private StreamRouterEngine.Factory engineFactory;
+    @Mock
+    private ScheduledExecutorService scheduler;
+
+    private final Stream stream1 = stream(false);
+    private final Stream stream2 = stream(false);
+
+    private StreamRouter streamRouter;
+
+    @BeforeEach
+    void setUp() {
+        when(engineFactory.create(anyList(), any())).thenAnswer(invocation -> {
+            final List<Stream> streams = invocation.getArgument(0);
+            final StreamRouterEngine engine = mock(StreamRouterEngine.class);
+            when(engine.getStreams()).thenReturn(streams);
+            when(engine.getFingerprint()).thenReturn(new StreamListFingerprint(streams).getFingerprint());
+            return engine;
+        });
+        when(scheduler.submit(any(Runnable.class))).thenAnswer(invocation -> {
+            invocation.<Runnable>getArgument(0).run();
+            return null;
+        });
+        when(streamService.loadAllEnabled()).thenReturn(List.of(stream1, stream2));
+
+        streamRouter = new StreamRouter(streamService, serverStatus, engineFactory, new EventBus(), scheduler, Duration.minutes(5));
+    }
+
+    @Test
+    void schedulesFullReload() {
+        verify(scheduler).scheduleWithFixedDelay(any(Runnable.class), eq(300_000L), eq(300_000L), eq(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void zeroIntervalDisablesFullReload() {
+        final ScheduledExecutorService otherScheduler = mock(ScheduledExecutorService.class);
+        final StreamRouter router = new StreamRouter(streamService, serverStatus, engineFactory, new EventBus(), otherScheduler, Duration.milliseconds(0));
+
+        verify(otherScheduler, never()).scheduleWithFixedDelay(any(Runnable.class), anyLong(), anyLong(), any(TimeUnit.class));
+        assertThat(router.getRouterEngineInfo().fingerprint())
+                .isEqualTo(new StreamListFingerprint(List.of(stream1, stream2)).getFingerprint());
+    }
+
+    @Test
+    void appliesOnlyChangedStreams() {
+        final Stream updatedStream2 = stream(stream2.getId(), "updated", false);
+        final Stream newStream = stream(false);
+        when(streamService.loadByIds(Set.of(stream2.getId(), newStream.getId()))).thenReturn(Set.of(updatedStream2, newStream));
+
+        streamRouter.handleStreamsUpdate(StreamsChangedEvent.create(ImmutableSet.of(stream2.getId(), newStream.getId())));
+
+        assertEngineStreams(stream1, updatedStream2, newStream);
+        verify(streamService, times(1)).loadAllEnabled();
+    }
+
+    @Test
+    void removesDeletedAndDisabledStreams() {
+        final Stream disabledStream1 = stream(stream1.getId(), "stream", true);
+        when(streamService.loadByIds(Set.of(stream1.getId(), stream2.getId()))).thenReturn(Set.of(disabledStream1));
+
+        streamRouter.handleStreamsUpdate(StreamsChangedEvent.create(ImmutableSet.of(stream1.getId(), stream2.getId())));
+
+        assertEngineStreams();
+    }
+
+    @Test
+    void reloadsAllStreamsIfIncrementalUpdateFails() {
+        final Stream newStream = stream(false);
+        when(streamService.loadByIds(any())).thenThrow(new IllegalArgumentException("boom"));
+        when(streamService.loadAllEnabled()).thenReturn(List.of(stream1, stream2, newStream));
+
+        streamRouter.handleStreamsUpdate(StreamsChangedEvent.create(newStream.getId()));
+
+        assertEngineStreams(stream1, stream2, newStream);
+    }
+
+    private void assertEngineStreams(Stream... streams) {
+        assertThat(streamRouter.getRouterEngineInfo().fingerprint())
+                .isEqualTo(new StreamListFingerprint(List.of(streams)).getFingerprint());
+    }
+
+    private static Stream stream(boolean disabled) {
+        return stream(new ObjectId().toHexString(), "stream", disabled);
+    }
+
+    private static Stream stream(String id, String title, boolean disabled) {
+        return new StreamMock(ImmutableMap.of("_id", id, "title", title, StreamImpl.FIELD_DISABLED, disabled));
+    }
+}
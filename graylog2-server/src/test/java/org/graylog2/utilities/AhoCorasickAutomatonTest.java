@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.utilities;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+
+import java.util.BitSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AhoCorasickAutomatonTest {
+
+    @Test
+    public void testSearch() {
+        final AhoCorasickAutomaton automaton = new AhoCorasickAutomaton(ImmutableList.of("he", "she", "his", "hers", "xyz"));
+
+        assertThat(search(automaton, "ushers")).isEqualTo(bits(0, 1, 3));
+        assertThat(search(automaton, "this is it")).isEqualTo(bits(2));
+        assertThat(search(automaton, "nothing")).isEqualTo(bits());
+        assertThat(search(automaton, "")).isEqualTo(bits());
+    }
+
+    @Test
+    public void testOverlappingAndEmptyPatterns() {
+        final AhoCorasickAutomaton automaton = new AhoCorasickAutomaton(ImmutableList.of("aab", "ab", "b", ""));
+
+        assertThat(automaton.getPatternCount()).isEqualTo(4);
+        assertThat(search(automaton, "aaab")).isEqualTo(bits(0, 1, 2, 3));
+        assertThat(search(automaton, "ba")).isEqualTo(bits(2, 3));
+        assertThat(search(automaton, "")).isEqualTo(bits(3));
+    }
+
+    private static BitSet search(AhoCorasickAutomaton automaton, String text) {
+        final BitSet found = new BitSet();
+        automaton.search(text, found);
+        return found;
+    }
+
+    private static BitSet bits(int... ids) {
+        final BitSet bitSet = new BitSet();
+        for (int id : ids) {
+            bitSet.set(id);
+        }
+        return bitSet;
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.utilities;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class IPv4CIDRTrieTest {
+    @Test
+    public void emptyTrieMatchesNothing() {
+        final IPv4CIDRTrie<String> trie = IPv4CIDRTrie.<String>builder().build();
+
+        assertThat(trie.isEmpty()).isTrue();
+        assertThat(trie.longestPrefixMatch("10.0.0.1")).isNull();
+    }
+
+    @Test
+    public void returnsLongestMatchingPrefix() {
+        final IPv4CIDRTrie<String> trie = IPv4CIDRTrie.<String>builder()
+                .add("10.0.0.0/8", "ten")
+                .add("10.1.0.0/16", "ten-one")
+                .add("10.1.2.3/32", "host")
+                .build();
+
+        assertThat(trie.size()).isEqualTo(3);
+        assertThat(trie.longestPrefixMatch("10.2.0.1")).isEqualTo("ten");
+        assertThat(trie.longestPrefixMatch("10.1.0.0")).isEqualTo("ten-one");
+        assertThat(trie.longestPrefixMatch("10.1.255.255")).isEqualTo("ten-one");
+        assertThat(trie.longestPrefixMatch("10.1.2.3")).isEqualTo("host");
+        assertThat(trie.longestPrefixMatch("10.1.2.4")).isEqualTo("ten-one");
+        assertThat(trie.longestPrefixMatch("11.0.0.0")).isNull();
+    }
+
+    @Test
+    public void ignoresHostBitsAndKeepsFirstValue() {
+        final IPv4CIDRTrie<String> trie = IPv4CIDRTrie.<String>builder()
+                .add("192.168.1.77/24", "first")
+                .add("192.168.1.0/24", "second")
+                .build();
+
+        assertThat(trie.size()).isEqualTo(1);
+        assertThat(trie.longestPrefixMatch("192.168.1.1")).isEqualTo("first");
+    }
+
+    @Test
+    public void supportsDefaultRoute() {
+        final IPv4CIDRTrie<String> trie = IPv4CIDRTrie.<String>builder()
+                .add("0.0.0.0/0", "any")
+                .add("255.255.255.255/32", "broadcast")
+                .build();
+
+        assertThat(trie.longestPrefixMatch("1.2.3.4")).isEqualTo("any");
+        assertThat(trie.longestPrefixMatch("255.255.255.255")).isEqualTo("broadcast");
+    }
+
+    @Test
+    public void rejectsInvalidRanges() {
+        final IPv4CIDRTrie.Builder<String> builder = IPv4CIDRTrie.builder();
+
+        assertThatThrownBy(() -> builder.add("10.0.0.0", "x")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> builder.add("10.0.0.0/33", "x")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> builder.add("10.0.0.0/abc", "x")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> builder.add("2001:db8::/32", "x")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> builder.build().longestPrefixMatch("foo")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void parseAddress() {
+        assertThat(IPv4CIDRTrie.parseAddress("0.0.0.0")).isEqualTo(0L);
+        assertThat(IPv4CIDRTrie.parseAddress("255.255.255.255")).isEqualTo(0xFFFFFFFFL);
+        assertThat(IPv4CIDRTrie.parseAddress("192.168.1.2")).isEqualTo(0xC0A80102L);
+
+        assertThat(IPv4CIDRTrie.parseAddress(null)).isEqualTo(-1L);
+        assertThat(IPv4CIDRTrie.parseAddress("")).isEqualTo(-1L);
+        assertThat(IPv4CIDRTrie.parseAddress("null")).isEqualTo(-1L);
+        assertThat(IPv4CIDRTrie.parseAddress("1.2.3")).isEqualTo(-1L);
+        assertThat(IPv4CIDRTrie.parseAddress("1.2.3.4.5")).isEqualTo(-1L);
+        assertThat(IPv4CIDRTrie.parseAddress("1.2.3.256")).isEqualTo(-1L);
+        assertThat(IPv4CIDRTrie.parseAddress("1.2.3.0004")).isEqualTo(-1L);
+        assertThat(IPv4CIDRTrie.parseAddress("1.2..4")).isEqualTo(-1L);
+        assertThat(IPv4CIDRTrie.parseAddress("1.2.3.4 ")).isEqualTo(-1L);
+        assertThat(IPv4CIDRTrie.parseAddress("::1")).isEqualTo(-1L);
+    }
+
+    @Test
+    public void matchesLinearSearch() {
+        final Random random = new Random(42);
+        final int[] addresses = new int[500];
+        final int[] prefixLengths = new int[addresses.length];
+        final IPv4CIDRTrie.Builder<Integer> builder = IPv4CIDRTrie.builder();
+        for (int i = 0; i < addresses.length; i++) {
+            prefixLengths[i] = 8 + random.nextInt(25);
+            addresses[i] = random.nextInt() & mask(prefixLengths[i]);
+            builder.add(addresses[i], prefixLengths[i], i);
+        }
+        final IPv4CIDRTrie<Integer> trie = builder.build();
+
+        for (int n = 0; n < 10_000; n++) {
+            // Pick addresses close to a range most of the time, so that there are matches
+            final int range = random.nextInt(addresses.length);
+            final int address = addresses[range] ^ (random.nextInt() >>> (8 + random.nextInt(24)));
+
+            Integer expected = null;
+            int expectedLength = -1;
+            for (int i = 0; i < addresses.length; i++) {
+                if ((address & mask(prefixLengths[i])) == addresses[i] && prefixLengths[i] > expectedLength) {
+                    expected = i;
+                    expectedLength = prefixLengths[i];
+                }
+            }
+            if (expected != null) {
+                // Ranges which were added twice keep their first value
+                for (int i = 0; i < expected; i++) {
+                    if (addresses[i] == addresses[expected] && prefixLengths[i] == expectedLength) {
+                        expected = i;
+                        break;
+                    }
+                }
+            }
+            assertThat(trie.longestPrefixMatch(address)).isEqualTo(expected);
+        }
+    }
+
+    private static int mask(int prefixLength) {
+        return prefixLength == 0 ? 0 : -1 << (32 - prefixLength);
+    }
+}
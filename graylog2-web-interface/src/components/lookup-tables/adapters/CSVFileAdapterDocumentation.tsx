@@ -113,6 +113,16 @@ const CSVFileAdapterDocumentation = () => {
       <p>
         Given this CSV file and configuration looking up the key 192.168.101.64 would return 'IT Department subnet'.
       </p>
+
+      <h3 style={{ marginBottom: 10 }}>Memory-mapped index</h3>
+      <p style={{ marginBottom: 10, padding: 0 }}>
+        By default, all entries of the CSV file are kept in memory. For files with millions of lines, enable the
+        memory-mapped index instead. The CSV file is then compiled into an index file in the data directory of each
+        Graylog server and lookups read it directly from the operating system's page cache.
+        <br />
+        The index is compiled again whenever the CSV file changes. Lookups keep using the previous index until the new
+        one is ready. CIDR lookups and case-insensitive lookups are supported.
+      </p>
     </div>
   );
 };
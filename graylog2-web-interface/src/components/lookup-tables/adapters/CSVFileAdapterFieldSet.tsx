@@ -123,6 +123,16 @@ const CSVFileAdapterFieldSet = ({ config, handleFormEvent, validationState, vali
       help="Enable if the keys in the lookup table are in CIDR notation and lookups will be done with IPs"
       wrapperClassName="col-md-offset-3 col-md-9"
     />
+    <Input
+      type="checkbox"
+      id="memory_mapped"
+      name="memory_mapped"
+      label="Memory-mapped index"
+      checked={config.memory_mapped}
+      onChange={handleFormEvent}
+      help="Enable for very large files to serve lookups from an index file in the data directory instead of keeping all entries in memory."
+      wrapperClassName="col-md-offset-3 col-md-9"
+    />
   </fieldset>
 );
 
@@ -53,6 +53,17 @@ const CaffeineCacheDocumentation = () => (
       This results in entries that are never older than the given time, which can be important for regularly changing
       data, such as configuration state of external systems.
     </p>
+
+    <h5 style={{ marginBottom: 10 }}>Refresh after write</h5>
+    <p style={{ marginBottom: 10, padding: 0 }}>
+      Entries older than the given time are reloaded from the data adapter in the background the next time they are
+      used. Until the reload finishes, the current value is returned, so frequently used keys do not wait for the data
+      adapter.
+      <br />
+      The <em>maximum staleness</em> limits how long such a value may be returned after it became due for a refresh.
+      If refreshing keeps failing, the entry is removed once it is older than the refresh time plus the maximum
+      staleness.
+    </p>
   </div>
 );
 
@@ -102,6 +102,30 @@ const CaffeineCacheFieldSet = ({ config }: Props, ref: any) => {
         labelClassName="col-sm-3"
         wrapperClassName="col-sm-9"
       />
+      <TimeUnitInput
+        label="Refresh after write"
+        help="If enabled, entries older than the specified time are reloaded in the background on their next use while the current value is still returned."
+        update={handleUpdate('refresh_after_write')}
+        name="config.refresh_after_write"
+        unitName="config.refresh_after_write_unit"
+        value={stateConfig.refresh_after_write}
+        unit={stateConfig.refresh_after_write_unit || 'SECONDS'}
+        defaultEnabled={config.refresh_after_write > 0}
+        labelClassName="col-sm-3"
+        wrapperClassName="col-sm-9"
+      />
+      <TimeUnitInput
+        label="Maximum staleness"
+        help="If enabled together with refresh after write, entries which could not be refreshed are removed from the cache once they are older than the refresh time plus the specified time."
+        update={handleUpdate('max_staleness')}
+        name="config.max_staleness"
+        unitName="config.max_staleness_unit"
+        value={stateConfig.max_staleness}
+        unit={stateConfig.max_staleness_unit || 'SECONDS'}
+        defaultEnabled={config.max_staleness > 0}
+        labelClassName="col-sm-3"
+        wrapperClassName="col-sm-9"
+      />
       <Input
         type="checkbox"
         id="ignore_null"
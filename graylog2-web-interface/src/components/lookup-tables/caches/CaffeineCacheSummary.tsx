@@ -43,6 +43,21 @@ const CaffeineCacheSummary = ({ cache }: Props) => (
         <TimeUnit value={cache.config.expire_after_write} unit={cache.config.expire_after_write_unit} />
       </Value>
     </SummaryRow>
+    <SummaryRow>
+      <Title>Refresh after write:</Title>
+      <Value>
+        <TimeUnit
+          value={cache.config.refresh_after_write || 0}
+          unit={cache.config.refresh_after_write_unit || 'SECONDS'}
+        />
+      </Value>
+    </SummaryRow>
+    <SummaryRow>
+      <Title>Maximum staleness:</Title>
+      <Value>
+        <TimeUnit value={cache.config.max_staleness || 0} unit={cache.config.max_staleness_unit || 'SECONDS'} />
+      </Value>
+    </SummaryRow>
     <SummaryRow>
       <Title>TTL for empty results:</Title>
       <Value>
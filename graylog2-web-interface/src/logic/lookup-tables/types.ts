@@ -49,6 +49,10 @@ export type LookupTableCacheConfig = {
   ignore_null?: boolean;
   ttl_empty?: number;
   ttl_empty_unit?: 'NANOSECONDS' | 'MICROSECONDS' | 'MILLISECONDS' | 'SECONDS' | 'MINUTES' | 'HOURS' | 'DAYS' | null;
+  refresh_after_write?: number;
+  refresh_after_write_unit?: 'NANOSECONDS' | 'MICROSECONDS' | 'MILLISECONDS' | 'SECONDS' | 'MINUTES' | 'HOURS' | 'DAYS' | null;
+  max_staleness?: number;
+  max_staleness_unit?: 'NANOSECONDS' | 'MICROSECONDS' | 'MILLISECONDS' | 'SECONDS' | 'MINUTES' | 'HOURS' | 'DAYS' | null;
 };
 
 export type LookupTableCache = GenericEntityType & {
@@ -66,6 +70,7 @@ export type LookupTableDataAdapterConfig = {
   check_interval?: number;
   case_insensitive_lookup?: boolean;
   cidr_lookup?: boolean;
+  memory_mapped?: boolean;
 };
 
 export type LookupTableAdapter = GenericEntityType & {